@@ -1,10 +1,24 @@
 package com.nexuscore;
 
+import com.nexuscore.database.ConversationStore;
+import com.nexuscore.database.DatabaseMaintenance;
 import com.nexuscore.database.DatabaseManager;
+import com.nexuscore.database.SegmentConversationStore;
 import com.nexuscore.gui.NexusCoreGUI;
 import com.nexuscore.llm.LLMService;
+import com.nexuscore.llm.OllamaEndpointPool;
+import com.nexuscore.llm.ResponseCache;
 
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Main class for the Nexus Core application
@@ -12,21 +26,41 @@ import java.util.Scanner;
 public class NexusCoreApp {
 
     private DatabaseManager dbManager;
+    private ConversationStore conversationStore; // Where the transcript is written (dbManager by default)
     private LLMService llmService;
+    private final AtomicBoolean cleanedUp = new AtomicBoolean();
+    private DatabaseMaintenance maintenance;
     private int currentConversationId;
+    private volatile CompletableFuture<String> activeGeneration; // Generation that Ctrl-C stops
 
     /**
      * Constructor to initialize the application
      */
     public NexusCoreApp() {
+        this(null);
+    }
+
+    /**
+     * Constructor that writes the conversation to a separate store
+     * 
+     * @param store Store for the conversation, or null to use the SQLite database
+     */
+    public NexusCoreApp(ConversationStore store) {
         // Initialize database manager
         dbManager = new DatabaseManager();
+        conversationStore = store != null ? store : dbManager;
 
         // Initialize LLM service (model name is temporary)
         llmService = new LLMService("local-llm-model");
 
+        // Response cache for deterministic prompts (enabled with --cache)
+        llmService.setResponseCache(new ResponseCache(dbManager));
+
+        // Idle-time upkeep: retention, vacuum, ANALYZE and checkpoints
+        maintenance = new DatabaseMaintenance(dbManager);
+
         // Create a new conversation
-        currentConversationId = dbManager.createConversation("New Conversation");
+        currentConversationId = conversationStore.createConversation("New Conversation");
     }
 
     /**
@@ -37,9 +71,17 @@ public class NexusCoreApp {
         String userInput;
 
         System.out.println("Nexus Core v0.1 - Command Line Interface");
-        System.out.println("Type 'exit' to quit");
+        System.out.println("Type 'exit' to quit, '/stats' for LLM executor statistics, '/search <words>' to search");
+        System.out.println("'/archive <id>', '/archived', '/search-archive <words>' and '/restore <id>' manage archived"
+                + " conversations, '/maintenance' runs database maintenance now");
+        System.out.println("Press Ctrl-C to stop a response that is being generated");
         System.out.println("------------------------------------------");
 
+        installInterruptHandler();
+
+        // Preload the model while the user types the first prompt
+        llmService.warmUpAsync();
+
         while (scanner.hasNextLine()) {
             System.out.print("You > ");
             System.out.flush(); // Ensure prompt is displayed
@@ -51,40 +93,262 @@ public class NexusCoreApp {
                 break;
             }
 
+            // Show execution statistics
+            if ("/stats".equalsIgnoreCase(userInput.trim())) {
+                System.out.println("LLM executor: " + llmService.getExecutionStats());
+                System.out.println("LLM scheduler: " + llmService.getScheduler().getStats());
+                for (OllamaEndpointPool.Endpoint endpoint : llmService.getEndpointPool().getEndpoints()) {
+                    System.out.println("Ollama endpoint: " + endpoint);
+                }
+                ResponseCache cache = llmService.getResponseCache();
+                System.out.println("Response cache (" + (cache.isEnabled() ? "enabled" : "disabled") + "): "
+                        + cache.getStats());
+                System.out.println("Message storage: " + dbManager.getStorageReport());
+                System.out.println("Database maintenance: " + maintenance.getStats());
+                continue;
+            }
+
+            // Archive and database maintenance commands
+            if (handleArchiveCommand(userInput.trim())) {
+                continue;
+            }
+
+            // Search stored conversations
+            if (userInput.trim().toLowerCase().startsWith("/search ")) {
+                printSearchResults(userInput.trim().substring("/search ".length()));
+                continue;
+            }
+
             // Save user input to database
-            dbManager.saveMessage(currentConversationId, "User", userInput);
+            conversationStore.saveMessage(currentConversationId, "User", userInput);
 
-            // Send prompt to LLM and get response
-            String llmResponse = llmService.sendPrompt(userInput);
+            // Send prompt to LLM, printing tokens as they are generated
+            System.out.print("Nexus > ");
+            System.out.flush();
+            StringBuffer streamed = new StringBuffer();
+            CompletableFuture<String> generation = llmService.sendPromptAsync(userInput, token -> {
+                streamed.append(token);
+                System.out.print(token);
+                System.out.flush();
+            });
+            activeGeneration = generation;
 
-            // Display LLM response
-            System.out.println("Nexus > " + llmResponse);
+            String llmResponse;
+            try {
+                llmResponse = generation.get();
+
+                // Display the full response only if nothing was streamed (e.g. fallback or timeout message)
+                System.out.println(streamed.length() > 0 ? "" : llmResponse);
+            } catch (CancellationException e) {
+                // Stopped with Ctrl-C: keep whatever was generated so far
+                llmResponse = streamed.toString().trim();
+                System.out.println();
+                System.out.println("[Generation stopped]");
+            } catch (ExecutionException e) {
+                llmResponse = "Sorry, an error occurred: " + e.getCause().getMessage();
+                System.out.println(llmResponse);
+            } catch (InterruptedException e) {
+                generation.cancel(true);
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                activeGeneration = null;
+            }
 
             // Save LLM response to database
-            dbManager.saveMessage(currentConversationId, "LLM", llmResponse);
+            if (!llmResponse.isEmpty()) {
+                conversationStore.saveMessage(currentConversationId, "LLM", llmResponse);
+            }
         }
 
         scanner.close();
         cleanupResources();
     }
 
+    /**
+     * Print the best matches of a full-text search over all conversations
+     * 
+     * @param query Search words
+     */
+    private void printSearchResults(String query) {
+        long start = System.nanoTime();
+        DatabaseManager.SearchPage page = dbManager.searchMessages(query, null, 10);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        for (DatabaseManager.SearchResult result : page.getResults()) {
+            String snippet = result.getSnippet()
+                    .replace(DatabaseManager.SearchResult.HIGHLIGHT_START, '[')
+                    .replace(DatabaseManager.SearchResult.HIGHLIGHT_END, ']')
+                    .replace('\n', ' ');
+            System.out.println("#" + result.getConversationId() + " " + result.getSender() + " ("
+                    + result.getTimestamp() + "): " + snippet);
+        }
+        System.out.println(page.getResults().size() + (page.hasMore() ? "+" : "") + " matches in " + millis + " ms");
+    }
+
+    /**
+     * Handle the archive and maintenance commands
+     * 
+     * @param command Trimmed user input
+     * @return true if the input was one of these commands
+     */
+    private boolean handleArchiveCommand(String command) {
+        String lower = command.toLowerCase();
+        if (lower.equals("/maintenance")) {
+            System.out.println("Database maintenance: " + maintenance.runNow());
+        } else if (lower.equals("/archived")) {
+            for (DatabaseManager.ArchivedConversation archived : dbManager.getArchivedConversations(0, 50)) {
+                System.out.println("#" + archived.getId() + " " + archived.getTitle() + " ("
+                        + archived.getMessageCount() + " messages, last active " + archived.getLastActivity()
+                        + ", archived " + archived.getArchivedAt() + ")");
+            }
+        } else if (lower.startsWith("/search-archive ")) {
+            long start = System.nanoTime();
+            String query = command.substring("/search-archive ".length());
+            List<DatabaseManager.ArchiveHit> hits = dbManager.searchArchives(query, 10);
+            for (DatabaseManager.ArchiveHit hit : hits) {
+                System.out.println("#" + hit.getConversation().getId() + " " + hit.getConversation().getTitle()
+                        + (hit.getSender() != null ? " - " + hit.getSender() + ": " : ": ") + hit.getSnippet());
+            }
+            System.out.println(hits.size() + " archived conversations in " + (System.nanoTime() - start) / 1_000_000
+                    + " ms");
+        } else if (lower.startsWith("/archive ") || lower.startsWith("/restore ")) {
+            int conversationId;
+            try {
+                conversationId = Integer.parseInt(command.substring(command.indexOf(' ') + 1).trim());
+            } catch (NumberFormatException e) {
+                System.out.println("Usage: /archive <conversation id> or /restore <conversation id>");
+                return true;
+            }
+            if (lower.startsWith("/archive ")) {
+                if (conversationId == currentConversationId) {
+                    System.out.println("The current conversation cannot be archived");
+                } else {
+                    System.out.println(dbManager.archiveConversation(conversationId)
+                            ? "Archived conversation " + conversationId
+                            : "Conversation " + conversationId + " was not archived");
+                }
+            } else if (!dbManager.restoreConversation(conversationId)) {
+                System.out.println("Conversation " + conversationId + " is not archived");
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Make Ctrl-C stop the current generation instead of killing the application.
+     * Without a generation in progress, Ctrl-C exits as usual; resources are
+     * released by a shutdown hook, which also covers other ways of terminating.
+     * The signal API is internal to the JDK, so it is looked up reflectively
+     * and Ctrl-C simply exits where it is not available.
+     */
+    private void installInterruptHandler() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::cleanupResources, "nexus-shutdown"));
+        try {
+            Class<?> signalClass = Class.forName("sun.misc.Signal");
+            Class<?> handlerClass = Class.forName("sun.misc.SignalHandler");
+            Object interrupt = signalClass.getConstructor(String.class).newInstance("INT");
+            Object handler = Proxy.newProxyInstance(handlerClass.getClassLoader(), new Class<?>[] { handlerClass },
+                    (proxy, method, args) -> {
+                        if (!method.getName().equals("handle")) {
+                            return method.getName().equals("equals") ? proxy == args[0]
+                                    : method.getName().equals("hashCode") ? System.identityHashCode(proxy)
+                                    : "NexusCore interrupt handler";
+                        }
+                        CompletableFuture<String> generation = activeGeneration;
+                        if (generation != null && generation.cancel(true)) {
+                            return null;
+                        }
+                        // Exit as usual; the shutdown hook releases the resources
+                        System.out.println();
+                        System.exit(130);
+                        return null;
+                    });
+            signalClass.getMethod("handle", signalClass, handlerClass).invoke(null, interrupt, handler);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.err.println("Ctrl-C cannot stop a response on this JVM: " + e);
+        }
+    }
+
     /**
      * Method to clean up resources
      */
     private void cleanupResources() {
+        if (!cleanedUp.compareAndSet(false, true)) {
+            return; // Already done on a normal exit, or by the shutdown hook
+        }
         System.out.println("Shutting down application...");
 
+        // Stop database maintenance
+        if (maintenance != null) {
+            maintenance.shutdown();
+        }
+
         // Shutdown LLM service
         if (llmService != null) {
             llmService.shutdown();
         }
 
-        // Close database connection
+        // Close the separate conversation store and the database connection
+        if (conversationStore != null && conversationStore != dbManager) {
+            conversationStore.closeConnection();
+        }
         if (dbManager != null) {
             dbManager.closeConnection();
         }
     }
 
+    /**
+     * Export and/or import conversations as JSONL (--export / --import)
+     * 
+     * @param exportFile     File to export to, or null
+     * @param importFile     File to import, or null (imported after the export)
+     * @param compactStorage Whether imported contents use compact storage
+     * @return true if every transfer succeeded
+     */
+    private static boolean transferConversations(String exportFile, String importFile, boolean compactStorage) {
+        DatabaseManager dbManager = new DatabaseManager();
+        dbManager.setCompactStorage(compactStorage);
+        try {
+            if (exportFile != null) {
+                System.out.println("Exporting conversations to " + exportFile + "...");
+                System.out.println("Export finished: " + dbManager.exportConversations(Path.of(exportFile)));
+            }
+            if (importFile != null) {
+                System.out.println("Importing conversations from " + importFile + "...");
+                System.out.println("Import finished: " + dbManager.importConversations(Path.of(importFile)));
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Transfer failed: " + e.getMessage());
+            System.err.println("Run the same command again to continue where it stopped.");
+            return false;
+        } finally {
+            dbManager.closeConnection();
+        }
+    }
+
+    /**
+     * Open the append-only segment store given with --segment-store
+     * 
+     * @param directory Directory of the segment files, or null
+     * @return The store, or null to keep the conversation in the SQLite database
+     */
+    private static ConversationStore openSegmentStore(String directory) {
+        if (directory == null) {
+            return null;
+        }
+        try {
+            return new SegmentConversationStore(Path.of(directory));
+        } catch (IOException e) {
+            System.err.println("Could not open segment store " + directory + ": " + e.getMessage());
+            System.err.println("Conversations are saved to the database instead.");
+            return null;
+        }
+    }
+
     /**
      * Main method - application entry point
      */
@@ -100,21 +364,45 @@ public class NexusCoreApp {
 
             // Check if we should launch GUI or CLI
             boolean useGui = true; // デフォルトでGUIを使用
-            for (String arg : args) {
+            boolean useCache = false;
+            boolean compactStorage = false;
+            String exportFile = null;
+            String importFile = null;
+            String segmentStore = null;
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
                 if ("--cli".equals(arg) || "-c".equals(arg)) {
                     useGui = false;
-                    break;
+                } else if ("--cache".equals(arg)) {
+                    useCache = true;
+                } else if ("--compact-storage".equals(arg)) {
+                    compactStorage = true;
+                } else if ("--segment-store".equals(arg) && i + 1 < args.length) {
+                    segmentStore = args[++i];
+                } else if (("--export".equals(arg) || "--import".equals(arg)) && i + 1 < args.length) {
+                    if ("--export".equals(arg)) {
+                        exportFile = args[++i];
+                    } else {
+                        importFile = args[++i];
+                    }
                 }
             }
 
-            if (useGui) {
+            if (exportFile != null || importFile != null) {
+                // Bulk transfer without starting the GUI or the LLM service
+                System.exit(transferConversations(exportFile, importFile, compactStorage) ? 0 : 1);
+            } else if (useGui) {
                 // Launch JavaFX GUI
                 System.out.println("Starting GUI mode...");
                 NexusCoreGUI.launch(NexusCoreGUI.class, args);
             } else {
                 // Launch command-line interface
                 System.out.println("Starting CLI mode...");
-                NexusCoreApp app = new NexusCoreApp();
+                NexusCoreApp app = new NexusCoreApp(openSegmentStore(segmentStore));
+                app.llmService.getResponseCache().setEnabled(useCache);
+                app.dbManager.setCompactStorage(compactStorage);
+                app.maintenance.configure(Arrays.asList(args));
+                app.maintenance.start();
                 app.startCommandLineInterface();
             }
         } catch (Exception e) {
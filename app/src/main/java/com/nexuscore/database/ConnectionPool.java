@@ -0,0 +1,357 @@
+package com.nexuscore.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SQLite connections for one database file: a single writer connection and a
+ * small pool of read-only connections. The database runs in WAL mode, so
+ * readers see the last committed state and never wait for the writer.
+ * Each connection keeps a cache of its prepared statements and has the SQL
+ * functions the schema relies on registered.
+ */
+class ConnectionPool {
+
+    static final int DEFAULT_READERS = 4;
+    static final int STATEMENT_CACHE_SIZE = 32;
+
+    private static final long READER_WAIT_SECONDS = 30;
+
+    /**
+     * Pragmas applied to every connection: normal sync is safe in WAL mode
+     * (a crash can only lose the last commits, never corrupt the file),
+     * a 16 MB page cache and 256 MB of memory-mapped I/O
+     */
+    private static final String[] CONNECTION_PRAGMAS = {
+            "PRAGMA synchronous = NORMAL",
+            "PRAGMA cache_size = -16000",
+            "PRAGMA mmap_size = 268435456",
+            "PRAGMA temp_store = MEMORY",
+            "PRAGMA busy_timeout = 5000"
+    };
+
+    /**
+     * Database work that runs on a borrowed connection
+     */
+    interface SqlWork<T> {
+        T run(PooledConnection connection) throws SQLException;
+    }
+
+    private final PooledConnection writer;
+    private final ReentrantLock writerLock = new ReentrantLock();
+    private final List<PooledConnection> readers = new ArrayList<>();
+    private final BlockingQueue<PooledConnection> idleReaders;
+    private volatile boolean closed;
+
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong readerWaits = new AtomicLong();
+
+    /**
+     * Open the connections
+     *
+     * @param url         JDBC URL of the database
+     * @param readerCount Number of read-only connections; in-memory databases use none
+     *                    and read through the writer
+     * @throws SQLException If a connection cannot be opened
+     */
+    ConnectionPool(String url, int readerCount) throws SQLException {
+        boolean inMemory = url.contains(":memory:") || url.equals("jdbc:sqlite:");
+        int count = inMemory ? 0 : Math.max(0, readerCount);
+
+        Connection writerConnection = DriverManager.getConnection(url);
+        try (Statement statement = writerConnection.createStatement()) {
+            // Only takes effect for a new database; DatabaseMaintenance converts older ones
+            statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            if (!inMemory) {
+                try (ResultSet rs = statement.executeQuery("PRAGMA journal_mode = WAL")) {
+                    if (rs.next() && !"wal".equalsIgnoreCase(rs.getString(1))) {
+                        System.err.println("WAL mode not available, journal mode is " + rs.getString(1));
+                    }
+                }
+            }
+            for (String pragma : CONNECTION_PRAGMAS) {
+                statement.execute(pragma);
+            }
+        }
+        MessageBodies.registerFunction(writerConnection);
+        this.writer = new PooledConnection(writerConnection);
+
+        this.idleReaders = new ArrayBlockingQueue<>(Math.max(1, count));
+        try {
+            for (int i = 0; i < count; i++) {
+                Connection readerConnection = DriverManager.getConnection(url);
+                try (Statement statement = readerConnection.createStatement()) {
+                    for (String pragma : CONNECTION_PRAGMAS) {
+                        statement.execute(pragma);
+                    }
+                    statement.execute("PRAGMA query_only = ON");
+                }
+                MessageBodies.registerFunction(readerConnection);
+                PooledConnection reader = new PooledConnection(readerConnection);
+                readers.add(reader);
+                idleReaders.add(reader);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Run read-only work on a reader connection
+     *
+     * @param work Work to run
+     * @return Result of the work
+     * @throws SQLException If the work fails or the pool is closed
+     */
+    <T> T read(SqlWork<T> work) throws SQLException {
+        PooledConnection reader = acquireReader();
+        try {
+            return work.run(reader);
+        } finally {
+            release(reader);
+        }
+    }
+
+    /**
+     * Borrow a reader connection for work that outlives a single call, such as
+     * a result set that is consumed as a stream. It must be given back with
+     * {@link #release} by the same thread. Without readers (in-memory
+     * databases) the writer is lent out and writes wait until it is released.
+     *
+     * @return Reader connection
+     * @throws SQLException If no connection becomes available or the pool is closed
+     */
+    PooledConnection acquireReader() throws SQLException {
+        ensureOpen();
+        reads.incrementAndGet();
+        if (readers.isEmpty()) {
+            writerLock.lock();
+            return writer;
+        }
+
+        PooledConnection reader = idleReaders.poll();
+        if (reader == null) {
+            readerWaits.incrementAndGet();
+            try {
+                reader = idleReaders.poll(READER_WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            }
+            if (reader == null) {
+                throw new SQLException("No database connection available");
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * Give back a connection borrowed with {@link #acquireReader}. A reader
+     * returned after the pool was closed is closed instead.
+     *
+     * @param connection Borrowed connection
+     */
+    void release(PooledConnection connection) {
+        if (connection == writer) {
+            writerLock.unlock();
+            return;
+        }
+        synchronized (idleReaders) {
+            if (!closed) {
+                idleReaders.add(connection);
+                return;
+            }
+        }
+        connection.close();
+    }
+
+    /**
+     * Run work on the writer connection in autocommit mode
+     *
+     * @param work Work to run
+     * @return Result of the work
+     * @throws SQLException If the work fails or the pool is closed
+     */
+    <T> T write(SqlWork<T> work) throws SQLException {
+        ensureOpen();
+        writes.incrementAndGet();
+        writerLock.lock();
+        try {
+            return work.run(writer);
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * Run work on the writer connection in one transaction, rolled back if the work fails
+     *
+     * @param work Work to run
+     * @return Result of the work
+     * @throws SQLException If the work fails or the pool is closed
+     */
+    <T> T transaction(SqlWork<T> work) throws SQLException {
+        ensureOpen();
+        writes.incrementAndGet();
+        writerLock.lock();
+        try {
+            Connection connection = writer.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                T result = work.run(writer);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * Close every connection; readers in use are closed when they are returned
+     */
+    void close() {
+        closed = true;
+        writerLock.lock();
+        try {
+            writer.close();
+        } finally {
+            writerLock.unlock();
+        }
+        // Readers that are borrowed right now are closed by release()
+        List<PooledConnection> idle = new ArrayList<>();
+        synchronized (idleReaders) {
+            idleReaders.drainTo(idle);
+        }
+        for (PooledConnection reader : idle) {
+            reader.close();
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Counters of the pool, for diagnostics
+     */
+    String getStats() {
+        long hits = writer.hits;
+        long misses = writer.misses;
+        for (PooledConnection reader : readers) {
+            hits += reader.hits;
+            misses += reader.misses;
+        }
+        return "readers=" + readers.size() + ", reads=" + reads.get() + ", writes=" + writes.get()
+                + ", readerWaits=" + readerWaits.get() + ", statementCacheHits=" + hits
+                + ", statementCacheMisses=" + misses;
+    }
+
+    private void ensureOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Database is closed");
+        }
+    }
+
+    /**
+     * A connection with its prepared-statement cache. Only one thread uses a
+     * pooled connection at a time, so the cache needs no locking.
+     */
+    static final class PooledConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                        if (size() > STATEMENT_CACHE_SIZE) {
+                            closeQuietly(eldest.getValue());
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+        private long hits;
+        private long misses;
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Get a cached prepared statement with cleared parameters.
+         * The statement belongs to the cache and must not be closed by the caller.
+         *
+         * @param sql SQL text
+         * @return Prepared statement
+         * @throws SQLException If the statement cannot be prepared
+         */
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement != null && !statement.isClosed()) {
+                hits++;
+                statement.clearParameters();
+                return statement;
+            }
+            misses++;
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+            return statement;
+        }
+
+        /**
+         * Row ID of the last row inserted on this connection
+         */
+        long lastInsertId() throws SQLException {
+            try (ResultSet rs = prepare("SELECT last_insert_rowid()").executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+
+        /**
+         * The underlying connection, for statements that are not worth caching
+         */
+        Connection getConnection() {
+            return connection;
+        }
+
+        void close() {
+            for (PreparedStatement statement : statements.values()) {
+                closeQuietly(statement);
+            }
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing connection: " + e.getMessage());
+            }
+        }
+
+        private static void closeQuietly(PreparedStatement statement) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // Already closed
+            }
+        }
+    }
+}
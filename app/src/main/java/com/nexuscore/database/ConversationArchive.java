@@ -0,0 +1,360 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.ConnectionPool.PooledConnection;
+import com.nexuscore.database.DatabaseManager.ArchiveHit;
+import com.nexuscore.database.DatabaseManager.ArchivedConversation;
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold storage of whole conversations outside the database.
+ * An archived conversation is written to its own GZIP-compressed file in the
+ * JSONL export format ({@code conversation-<id>.jsonl.gz} in the archive
+ * directory next to the database), then deleted from the database; the
+ * delete triggers remove its full-text entries, embeddings and unused
+ * bodies. A small catalog row in {@code archived_conversations} remembers
+ * what was archived. Restoring reads the file back with the original ids,
+ * which SQLite never hands out again (AUTOINCREMENT).
+ * <p>
+ * Archives are searched by scanning the files, which is linear in the size
+ * of the archive but needs no index in the database.
+ */
+final class ConversationArchive {
+
+    static final String DIRECTORY_NAME = "archive";
+
+    private static final int SNIPPET_CHARS = 120;
+
+    // Time of the last message, or the start of an empty conversation
+    static final String LAST_ACTIVITY = "COALESCE((SELECT m.timestamp FROM messages m " +
+            "WHERE m.conversation_id = c.id ORDER BY m.id DESC LIMIT 1), c.start_time)";
+
+    private static final String CONVERSATION_SQL = "SELECT c.id, c.title, c.start_time, " + LAST_ACTIVITY +
+            " AS last_activity, (SELECT COUNT(*) FROM messages m WHERE m.conversation_id = c.id) AS message_count " +
+            "FROM conversations c WHERE c.id = ?";
+    private static final String CATALOG_INSERT_SQL = "INSERT OR REPLACE INTO archived_conversations " +
+            "(conversation_id, title, start_time, last_activity, message_count, file, bytes) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String CATALOG_COLUMNS = "conversation_id, title, start_time, last_activity, " +
+            "message_count, file, bytes, archived_at";
+    private static final String CATALOG_PAGE_SQL = "SELECT " + CATALOG_COLUMNS + " FROM archived_conversations " +
+            "WHERE conversation_id < ? ORDER BY conversation_id DESC LIMIT ?";
+    private static final String CATALOG_FIND_SQL = "SELECT " + CATALOG_COLUMNS + " FROM archived_conversations " +
+            "WHERE conversation_id = ?";
+    private static final String CATALOG_DELETE_SQL = "DELETE FROM archived_conversations WHERE conversation_id = ?";
+    private static final String DELETE_MESSAGES_SQL = "DELETE FROM messages WHERE conversation_id = ?";
+    private static final String DELETE_CONVERSATION_SQL = "DELETE FROM conversations WHERE id = ?";
+    private static final String RESTORE_CONVERSATION_SQL = "INSERT INTO conversations (id, title, start_time) " +
+            "VALUES (?, ?, COALESCE(?, CURRENT_TIMESTAMP))";
+    private static final String RESTORE_MESSAGE_SQL = "INSERT INTO messages " +
+            "(id, conversation_id, timestamp, sender, content, body_id) " +
+            "VALUES (?, ?, COALESCE(?, CURRENT_TIMESTAMP), ?, ?, ?)";
+
+    private ConversationArchive() {
+    }
+
+    /**
+     * Move a conversation into its archive file
+     *
+     * @param connections    Connection pool of the database
+     * @param directory      Archive directory
+     * @param conversationId Conversation to archive
+     * @return Catalog entry, or null if the conversation does not exist
+     * @throws IOException  If the archive file cannot be written; the conversation is kept
+     * @throws SQLException If the database cannot be read or changed
+     */
+    static ArchivedConversation archive(ConnectionPool connections, Path directory, int conversationId)
+            throws IOException, SQLException {
+        ArchivedConversation conversation = connections.read(db -> {
+            PreparedStatement pstmt = db.prepare(CONVERSATION_SQL);
+            pstmt.setInt(1, conversationId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? new ArchivedConversation(rs.getInt("id"), rs.getString("title"),
+                        rs.getString("start_time"), rs.getString("last_activity"), rs.getInt("message_count"),
+                        fileName(conversationId), 0, null) : null;
+            }
+        });
+        if (conversation == null) {
+            return null;
+        }
+
+        // Write to a temporary file first, so a crash never leaves a partial archive under the final name
+        Files.createDirectories(directory);
+        Path file = directory.resolve(conversation.getFile());
+        Path partial = directory.resolve(conversation.getFile() + ".part");
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(partial), 1 << 16), StandardCharsets.UTF_8), 1 << 16);
+             Stream<ConversationMessage> messages = MessageStreams.conversationMessages(connections,
+                     conversationId, 0)) {
+            StringBuilder line = new StringBuilder(4096);
+            JsonlTransfer.writeRecord(writer, line, JsonlTransfer.header());
+            JsonlTransfer.writeRecord(writer, line, JsonlTransfer.conversationRecord(conversation.getId(),
+                    conversation.getTitle(), conversation.getStartTime()));
+            Iterator<ConversationMessage> it = messages.iterator();
+            while (it.hasNext()) {
+                JsonlTransfer.writeRecord(writer, line, JsonlTransfer.messageRecord(it.next()));
+            }
+            JsonlTransfer.writeRecord(writer, line, JsonlTransfer.endRecord());
+        } catch (IllegalStateException e) {
+            Files.deleteIfExists(partial);
+            throw new SQLException("Failed to read conversation " + conversationId + ": " + e.getMessage(), e);
+        } catch (IOException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        long bytes = Files.size(file);
+
+        // Messages added while the file was written would be lost, so they keep the conversation
+        boolean moved = connections.transaction(db -> {
+            PreparedStatement count = db.prepare("SELECT COUNT(*) FROM messages WHERE conversation_id = ?");
+            count.setInt(1, conversationId);
+            try (ResultSet rs = count.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != conversation.getMessageCount()) {
+                    return false;
+                }
+            }
+            PreparedStatement insert = db.prepare(CATALOG_INSERT_SQL);
+            insert.setInt(1, conversation.getId());
+            insert.setString(2, conversation.getTitle());
+            insert.setString(3, conversation.getStartTime());
+            insert.setString(4, conversation.getLastActivity());
+            insert.setInt(5, conversation.getMessageCount());
+            insert.setString(6, conversation.getFile());
+            insert.setLong(7, bytes);
+            insert.executeUpdate();
+            deleteConversation(db, conversationId);
+            return true;
+        });
+        if (!moved) {
+            Files.deleteIfExists(file);
+            return null;
+        }
+        return new ArchivedConversation(conversation.getId(), conversation.getTitle(), conversation.getStartTime(),
+                conversation.getLastActivity(), conversation.getMessageCount(), conversation.getFile(), bytes, null);
+    }
+
+    /**
+     * Read a page of the catalog, most recently created conversations first
+     *
+     * @param connections Connection pool of the database
+     * @param beforeId    Id of the last conversation of the previous page, or 0 or less for the first page
+     * @param limit       Maximum number of entries
+     * @return Archived conversations
+     * @throws SQLException If the catalog cannot be read
+     */
+    static List<ArchivedConversation> list(ConnectionPool connections, int beforeId, int limit) throws SQLException {
+        return connections.read(db -> {
+            List<ArchivedConversation> conversations = new ArrayList<>();
+            PreparedStatement pstmt = db.prepare(CATALOG_PAGE_SQL);
+            pstmt.setLong(1, beforeId > 0 ? beforeId : Long.MAX_VALUE);
+            pstmt.setInt(2, Math.max(1, Math.min(MessageStreams.MAX_PAGE_SIZE, limit)));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    conversations.add(readEntry(rs));
+                }
+            }
+            return conversations;
+        });
+    }
+
+    /**
+     * Find archived conversations whose title or messages contain all words of a query
+     * (case-insensitive substring match)
+     *
+     * @param connections Connection pool of the database
+     * @param directory   Archive directory
+     * @param query       Words to look for
+     * @param limit       Maximum number of hits
+     * @return One hit per matching conversation, most recently created first
+     * @throws SQLException If the catalog cannot be read
+     */
+    static List<ArchiveHit> search(ConnectionPool connections, Path directory, String query, int limit)
+            throws SQLException {
+        List<ArchiveHit> hits = new ArrayList<>();
+        String[] words = query == null ? new String[0] : query.toLowerCase(Locale.ROOT).trim().split("\\s+");
+        if (words.length == 0 || words[0].isEmpty()) {
+            return hits;
+        }
+
+        int beforeId = 0;
+        List<ArchivedConversation> page;
+        while (hits.size() < limit && !(page = list(connections, beforeId, MessageStreams.MAX_PAGE_SIZE)).isEmpty()) {
+            for (ArchivedConversation conversation : page) {
+                ArchiveHit hit = searchFile(directory.resolve(conversation.getFile()), conversation, words);
+                if (hit != null) {
+                    hits.add(hit);
+                    if (hits.size() == limit) {
+                        break;
+                    }
+                }
+            }
+            beforeId = page.get(page.size() - 1).getId();
+        }
+        return hits;
+    }
+
+    /**
+     * Move an archived conversation back into the database with its original ids
+     *
+     * @param connections      Connection pool of the database
+     * @param directory        Archive directory
+     * @param conversationId   Archived conversation
+     * @param compactThreshold Compact storage threshold for the contents (0 = inline)
+     * @return Number of restored messages, or -1 if the conversation is not archived
+     * @throws IOException  If the archive file cannot be read
+     * @throws SQLException If the conversation cannot be written
+     */
+    static int restore(ConnectionPool connections, Path directory, int conversationId, int compactThreshold)
+            throws IOException, SQLException {
+        ArchivedConversation entry = connections.read(db -> {
+            PreparedStatement pstmt = db.prepare(CATALOG_FIND_SQL);
+            pstmt.setInt(1, conversationId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? readEntry(rs) : null;
+            }
+        });
+        if (entry == null) {
+            return -1;
+        }
+
+        // An archived conversation is small enough to be restored in one transaction
+        List<Map<String, Object>> records = new ArrayList<>();
+        Path file = directory.resolve(entry.getFile());
+        try (BufferedReader reader = JsonlTransfer.openReader(file)) {
+            String text;
+            long line = 0;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (!text.isBlank()) {
+                    records.add(JsonlTransfer.parseRecord(text, "line " + line + " of " + file));
+                }
+            }
+        }
+
+        int restored = connections.transaction(db -> {
+            int messages = 0;
+            boolean created = false;
+            for (Map<String, Object> record : records) {
+                Object type = record.get("type");
+                if ("conversation".equals(type) && !created) {
+                    PreparedStatement pstmt = db.prepare(RESTORE_CONVERSATION_SQL);
+                    pstmt.setInt(1, conversationId);
+                    pstmt.setString(2, JsonlTransfer.stringValue(record, "title"));
+                    pstmt.setString(3, JsonlTransfer.stringValue(record, "start_time"));
+                    pstmt.executeUpdate();
+                    created = true;
+                } else if ("message".equals(type) && created) {
+                    PreparedStatement pstmt = db.prepare(RESTORE_MESSAGE_SQL);
+                    pstmt.setLong(1, JsonlTransfer.longValue(record, "id", 0));
+                    pstmt.setInt(2, conversationId);
+                    pstmt.setString(3, JsonlTransfer.stringValue(record, "timestamp"));
+                    pstmt.setString(4, JsonlTransfer.stringValue(record, "sender"));
+                    MessageBodies.bindContent(db, pstmt, 5, JsonlTransfer.stringValue(record, "content"),
+                            compactThreshold);
+                    pstmt.executeUpdate();
+                    messages++;
+                }
+            }
+            if (!created) {
+                throw new SQLException(file + " does not contain the conversation");
+            }
+            PreparedStatement delete = db.prepare(CATALOG_DELETE_SQL);
+            delete.setInt(1, conversationId);
+            delete.executeUpdate();
+            return messages;
+        });
+        Files.deleteIfExists(file);
+        return restored;
+    }
+
+    /**
+     * Delete a conversation and its messages (the triggers clean up the rest)
+     */
+    private static void deleteConversation(PooledConnection db, int conversationId) throws SQLException {
+        PreparedStatement messages = db.prepare(DELETE_MESSAGES_SQL);
+        messages.setInt(1, conversationId);
+        messages.executeUpdate();
+        PreparedStatement conversation = db.prepare(DELETE_CONVERSATION_SQL);
+        conversation.setInt(1, conversationId);
+        conversation.executeUpdate();
+    }
+
+    /**
+     * Scan one archive file for the first message that contains every word
+     *
+     * @return Hit, or null if the conversation does not match or its file cannot be read
+     */
+    private static ArchiveHit searchFile(Path file, ArchivedConversation conversation, String[] words) {
+        String title = conversation.getTitle() == null ? "" : conversation.getTitle().toLowerCase(Locale.ROOT);
+        if (containsAll(title, words)) {
+            return new ArchiveHit(conversation, null, conversation.getTitle());
+        }
+        try (BufferedReader reader = JsonlTransfer.openReader(file)) {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                // Cheap pre-check on the raw line before parsing it
+                if (!text.contains("\"message\"") || !containsAll(text.toLowerCase(Locale.ROOT), words)) {
+                    continue;
+                }
+                Map<String, Object> record = JsonlTransfer.parseRecord(text, file.toString());
+                String content = JsonlTransfer.stringValue(record, "content");
+                if (content != null && containsAll(content.toLowerCase(Locale.ROOT), words)) {
+                    return new ArchiveHit(conversation, JsonlTransfer.stringValue(record, "sender"),
+                            snippet(content, words[0]));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to search archive " + file + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    private static boolean containsAll(String text, String[] words) {
+        for (String word : words) {
+            if (!text.contains(word)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Part of a content around the first occurrence of a word, on one line
+     */
+    static String snippet(String content, String word) {
+        int at = Math.max(0, content.toLowerCase(Locale.ROOT).indexOf(word));
+        int start = Math.min(content.length(), Math.max(0, at - SNIPPET_CHARS / 2));
+        int end = Math.min(content.length(), start + SNIPPET_CHARS);
+        return (start > 0 ? "..." : "") + content.substring(start, end).replace('\n', ' ')
+                + (end < content.length() ? "..." : "");
+    }
+
+    static String fileName(int conversationId) {
+        return "conversation-" + conversationId + ".jsonl.gz";
+    }
+
+    private static ArchivedConversation readEntry(ResultSet rs) throws SQLException {
+        return new ArchivedConversation(rs.getInt("conversation_id"), rs.getString("title"),
+                rs.getString("start_time"), rs.getString("last_activity"), rs.getInt("message_count"),
+                rs.getString("file"), rs.getLong("bytes"), rs.getString("archived_at"));
+    }
+}
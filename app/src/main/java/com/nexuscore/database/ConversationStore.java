@@ -0,0 +1,109 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+import com.nexuscore.database.DatabaseManager.ConversationSummary;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Storage of conversations and their messages.
+ * Message ids are assigned in append order and increase across all
+ * conversations, so they can be used as keyset cursors. Implementations are
+ * safe for concurrent use.
+ * <ul>
+ * <li>{@link DatabaseManager}: SQLite, with search, caching, semantic memory
+ * and archiving on top (the default)</li>
+ * <li>{@link SegmentConversationStore}: append-only memory-mapped segment
+ * files with an in-memory index, for write-heavy headless workloads</li>
+ * </ul>
+ */
+public interface ConversationStore {
+
+    /**
+     * Create a new conversation
+     *
+     * @param title Title of the conversation
+     * @return Id of the conversation, or -1 if it could not be created
+     */
+    int createConversation(String title);
+
+    /**
+     * Append a message; it may be written in the background
+     *
+     * @param conversationId Conversation
+     * @param sender         Sender ("User" or "LLM")
+     * @param content        Message content
+     */
+    void saveMessage(int conversationId, String sender, String content);
+
+    /**
+     * Append a message and get its id once it is stored
+     *
+     * @param conversationId Conversation
+     * @param sender         Sender ("User" or "LLM")
+     * @param content        Message content
+     * @return Future completed with the message id when the message is stored
+     */
+    CompletableFuture<Long> saveMessageAsync(int conversationId, String sender, String content);
+
+    /**
+     * Get a future that completes once every message appended so far is stored
+     *
+     * @return Future of the pending writes, completed with the last message id
+     */
+    CompletableFuture<Long> flushMessages();
+
+    /**
+     * Get the latest messages of a conversation
+     *
+     * @param conversationId Conversation
+     * @param limit          Maximum number of messages
+     * @return Messages, oldest first
+     */
+    List<ConversationMessage> getConversationHistory(int conversationId, int limit);
+
+    /**
+     * Get the page of messages that precedes a message (keyset pagination)
+     *
+     * @param conversationId Conversation
+     * @param beforeId       Id of the oldest message already shown, or 0 for the newest page
+     * @param limit          Maximum number of messages
+     * @return Messages, oldest first
+     */
+    List<ConversationMessage> getMessagesBefore(int conversationId, long beforeId, int limit);
+
+    /**
+     * Iterate over the messages of a conversation without loading them all.
+     * The stream must be closed (try-with-resources) unless it is read to the end.
+     *
+     * @param conversationId Conversation
+     * @param afterId        Only messages with a larger id (0 for all)
+     * @return Messages in id order
+     */
+    Stream<ConversationMessage> streamMessages(int conversationId, long afterId);
+
+    /**
+     * Iterate over every stored message without loading them all.
+     * The stream must be closed (try-with-resources) unless it is read to the end.
+     *
+     * @param afterId Only messages with a larger id (0 for all)
+     * @return Messages in id order
+     */
+    Stream<ConversationMessage> streamAllMessages(long afterId);
+
+    /**
+     * Get a page of conversations with their message counts (keyset pagination)
+     *
+     * @param beforeId Id of the last conversation of the previous page, or 0 for the first page
+     * @param limit    Maximum number of conversations
+     * @return Conversations, newest first
+     */
+    List<ConversationSummary> getConversations(int beforeId, int limit);
+
+    /**
+     * Store pending messages and release the store
+     */
+    void closeConnection();
+}
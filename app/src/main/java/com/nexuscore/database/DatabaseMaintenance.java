@@ -0,0 +1,432 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.ConnectionPool.PooledConnection;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background upkeep of the conversation database.
+ * While the application is idle (no conversation created or message saved
+ * for a while), a daemon thread runs a maintenance pass at most once an
+ * hour:
+ * <ol>
+ * <li>Retention: conversations beyond the configured age, count or database
+ * size limits are moved to archive files, oldest activity first (see
+ * {@link ConversationArchive}). Conversations active within the last day are
+ * never archived.</li>
+ * <li>Free pages are returned to the file system with incremental vacuum,
+ * in small steps so that the writer is never held for long. A database
+ * created before auto-vacuum was enabled is converted once with a full
+ * VACUUM when a tenth of it is free.</li>
+ * <li>ANALYZE refreshes the query planner statistics (daily, or after
+ * conversations were archived).</li>
+ * <li>A WAL checkpoint copies the log back into the database and truncates
+ * it.</li>
+ * </ol>
+ * Each pass first writes the access times of response cache hits collected
+ * since the last one ({@link DatabaseManager#getCachedResponse}).
+ * All limits are off by default; only the vacuum, ANALYZE and checkpoint
+ * steps run then.
+ */
+public class DatabaseMaintenance {
+
+    public static final long DEFAULT_IDLE_MILLIS = 120_000;
+
+    private static final long CHECK_MILLIS = 60_000;
+    private static final long PASS_INTERVAL_MILLIS = 60 * 60_000L;
+    private static final long ANALYZE_INTERVAL_MILLIS = 24 * 60 * 60_000L;
+    private static final int VACUUM_STEP_PAGES = 2048;
+    private static final double CONVERT_FREE_RATIO = 0.1;
+    private static final int ARCHIVE_BATCH = 20;
+    private static final String MIN_ARCHIVE_AGE = "-1 days";
+
+    private static final String AUTO_VACUUM_NONE = "0";
+    private static final String AUTO_VACUUM_INCREMENTAL = "2";
+
+    // Conversations ordered by their last activity, oldest first; %s limits the candidates further
+    private static final String CANDIDATES_SQL = "SELECT id FROM (SELECT c.id AS id, " +
+            ConversationArchive.LAST_ACTIVITY + " AS last_activity FROM conversations c%s) " +
+            "WHERE last_activity < datetime('now', ?) ORDER BY last_activity, id LIMIT ?";
+    private static final String OLDEST_SQL = String.format(CANDIDATES_SQL, "");
+    private static final String BEYOND_COUNT_SQL = String.format(CANDIDATES_SQL,
+            " ORDER BY last_activity DESC, c.id DESC LIMIT -1 OFFSET ?");
+
+    private final DatabaseManager store;
+
+    private volatile int maxAgeDays;        // 0 = no limit
+    private volatile int maxConversations;  // 0 = no limit
+    private volatile long maxDatabaseBytes; // 0 = no limit
+    private volatile long idleMillis = DEFAULT_IDLE_MILLIS;
+
+    private final Object passLock = new Object();
+    private Thread worker;
+    private volatile boolean stopped;
+    private long lastPassNanos;    // Guarded by passLock
+    private long lastAnalyzeNanos; // Guarded by passLock
+    private boolean analyzed;      // Guarded by passLock
+
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong archived = new AtomicLong();
+    private final AtomicLong reclaimedPages = new AtomicLong();
+    private final AtomicLong checkpoints = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param store Database to maintain
+     */
+    public DatabaseMaintenance(DatabaseManager store) {
+        this.store = store;
+    }
+
+    /**
+     * Read the retention limits from command-line arguments:
+     * {@code --retention-days N}, {@code --max-conversations N} and {@code --max-db-mb N}
+     *
+     * @param args Command-line arguments
+     */
+    public void configure(List<String> args) {
+        for (int i = 0; i + 1 < args.size(); i++) {
+            String option = args.get(i);
+            if (!option.equals("--retention-days") && !option.equals("--max-conversations")
+                    && !option.equals("--max-db-mb")) {
+                continue;
+            }
+            long value;
+            try {
+                value = Long.parseLong(args.get(++i));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring " + option + ": " + args.get(i) + " is not a number");
+                continue;
+            }
+            if (option.equals("--retention-days")) {
+                setMaxAgeDays((int) value);
+            } else if (option.equals("--max-conversations")) {
+                setMaxConversations((int) value);
+            } else {
+                setMaxDatabaseBytes(value * 1024 * 1024);
+            }
+        }
+    }
+
+    /**
+     * Archive conversations without activity for longer than this
+     *
+     * @param days Age in days, or 0 for no limit
+     */
+    public void setMaxAgeDays(int days) {
+        this.maxAgeDays = Math.max(0, days);
+    }
+
+    /**
+     * Archive the conversations with the oldest activity beyond this number
+     *
+     * @param count Conversations to keep, or 0 for no limit
+     */
+    public void setMaxConversations(int count) {
+        this.maxConversations = Math.max(0, count);
+    }
+
+    /**
+     * Archive the conversations with the oldest activity while the database
+     * (without free pages) is larger than this
+     *
+     * @param bytes Size limit, or 0 for no limit
+     */
+    public void setMaxDatabaseBytes(long bytes) {
+        this.maxDatabaseBytes = Math.max(0, bytes);
+    }
+
+    /**
+     * Set how long the application must be idle before maintenance runs
+     */
+    public void setIdleMillis(long idleMillis) {
+        this.idleMillis = Math.max(0, idleMillis);
+    }
+
+    /**
+     * Start the maintenance thread
+     */
+    public synchronized void start() {
+        if (worker == null && !stopped) {
+            worker = new Thread(this::run, "nexus-db-maintenance");
+            worker.setDaemon(true);
+            worker.setPriority(Thread.MIN_PRIORITY);
+            worker.start();
+        }
+    }
+
+    /**
+     * Run a full maintenance pass now, whether or not the application is idle
+     *
+     * @return Summary of what was done
+     */
+    public String runNow() {
+        return pass(true);
+    }
+
+    /**
+     * Stop the maintenance thread; a pass in progress stops after its current step
+     */
+    public synchronized void shutdown() {
+        stopped = true;
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+    }
+
+    /**
+     * Statistics of the maintenance, for diagnostics
+     */
+    public String getStats() {
+        return "maxAgeDays=" + maxAgeDays + ", maxConversations=" + maxConversations
+                + ", maxDatabaseMB=" + maxDatabaseBytes / (1024 * 1024) + ", passes=" + passes.get()
+                + ", archived=" + archived.get() + ", reclaimedPages=" + reclaimedPages.get()
+                + ", checkpoints=" + checkpoints.get();
+    }
+
+    /**
+     * Maintenance loop: check for idle time every minute
+     */
+    private void run() {
+        while (!stopped) {
+            try {
+                Thread.sleep(CHECK_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            boolean due;
+            synchronized (passLock) {
+                due = lastPassNanos == 0 || System.nanoTime() - lastPassNanos >= PASS_INTERVAL_MILLIS * 1_000_000;
+            }
+            if (due && isIdle()) {
+                String summary = pass(false);
+                System.out.println("Database maintenance: " + summary);
+            }
+        }
+    }
+
+    private boolean isIdle() {
+        return !stopped && store.getIdleMillis() >= idleMillis;
+    }
+
+    /**
+     * One maintenance pass
+     *
+     * @param force true to run every step to the end even if the application becomes busy
+     */
+    private String pass(boolean force) {
+        synchronized (passLock) {
+            long start = System.nanoTime();
+            List<String> done = new ArrayList<>();
+            try {
+                store.flushCacheAccessTimes();
+                int count = applyRetention(force);
+                if (count > 0) {
+                    done.add("archived " + count + " conversations");
+                }
+                long pages = reclaimSpace(force);
+                if (pages > 0) {
+                    done.add("reclaimed " + pages + " pages");
+                }
+                boolean analyzeDue = System.nanoTime() - lastAnalyzeNanos >= ANALYZE_INTERVAL_MILLIS * 1_000_000;
+                if (!analyzed || count > 0 || analyzeDue) {
+                    execute("ANALYZE");
+                    analyzed = true;
+                    lastAnalyzeNanos = System.nanoTime();
+                    done.add("analyzed");
+                }
+                done.add(checkpoint());
+            } catch (SQLException e) {
+                done.add("failed: " + e.getMessage());
+            }
+            passes.incrementAndGet();
+            lastPassNanos = System.nanoTime();
+            return String.join(", ", done) + " in " + (System.nanoTime() - start) / 1_000_000 + " ms";
+        }
+    }
+
+    /**
+     * Archive the conversations that the retention limits no longer allow
+     *
+     * @return Number of archived conversations
+     */
+    private int applyRetention(boolean force) throws SQLException {
+        if (store.getArchiveDirectory() == null) {
+            return 0;
+        }
+        int count = 0;
+        int days = maxAgeDays;
+        if (days > 0) {
+            String age = "-" + Math.max(1, days) + " days";
+            count += archiveWhile(force, () -> candidates(OLDEST_SQL, null, age));
+        }
+        int keep = maxConversations;
+        if (keep > 0) {
+            count += archiveWhile(force, () -> candidates(BEYOND_COUNT_SQL, keep, MIN_ARCHIVE_AGE));
+        }
+        long limit = maxDatabaseBytes;
+        if (limit > 0) {
+            count += archiveWhile(force, () -> liveBytes() > limit
+                    ? candidates(OLDEST_SQL, null, MIN_ARCHIVE_AGE) : new ArrayList<>());
+        }
+        return count;
+    }
+
+    /**
+     * Source of the next conversations to archive
+     */
+    private interface Candidates {
+        List<Integer> next() throws SQLException;
+    }
+
+    /**
+     * Archive batches of candidates until there are none left, or the
+     * application becomes busy, or a batch archives nothing
+     */
+    private int archiveWhile(boolean force, Candidates candidates) throws SQLException {
+        int count = 0;
+        List<Integer> batch;
+        while ((force || isIdle()) && !stopped && !(batch = candidates.next()).isEmpty()) {
+            int before = count;
+            for (int conversationId : batch) {
+                try {
+                    if (store.archive(conversationId)) {
+                        count++;
+                        archived.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    System.err.println("Failed to archive conversation " + conversationId + ": " + e.getMessage());
+                    return count; // Most likely the disk; try again in the next pass
+                }
+            }
+            if (count == before) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private List<Integer> candidates(String sql, Integer keep, String age) throws SQLException {
+        return store.db().read(db -> {
+            List<Integer> ids = new ArrayList<>();
+            PreparedStatement pstmt = db.prepare(sql);
+            int index = 1;
+            if (keep != null) {
+                pstmt.setInt(index++, keep);
+            }
+            pstmt.setString(index++, age);
+            pstmt.setInt(index, ARCHIVE_BATCH);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+            return ids;
+        });
+    }
+
+    /**
+     * Size of the pages in use (free pages do not count)
+     */
+    private long liveBytes() throws SQLException {
+        return store.db().read(db -> (pragma(db, "page_count") - pragma(db, "freelist_count"))
+                * pragma(db, "page_size"));
+    }
+
+    /**
+     * Give free pages back to the file system
+     *
+     * @return Number of pages released
+     */
+    private long reclaimSpace(boolean force) throws SQLException {
+        ConnectionPool connections = store.db();
+        long free = connections.write(db -> pragma(db, "freelist_count"));
+        if (free == 0) {
+            return 0;
+        }
+        String mode = connections.write(db -> String.valueOf(pragma(db, "auto_vacuum")));
+
+        if (AUTO_VACUUM_NONE.equals(mode)) {
+            long total = connections.write(db -> pragma(db, "page_count"));
+            if (!force && free < total * CONVERT_FREE_RATIO) {
+                return 0;
+            }
+            // Switching to incremental auto-vacuum needs one full VACUUM, which also releases the free pages
+            System.out.println("Converting the database to incremental auto-vacuum (" + free + " free pages)");
+            connections.write(db -> {
+                try (Statement statement = db.getConnection().createStatement()) {
+                    statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                    statement.execute("VACUUM");
+                }
+                return null;
+            });
+            reclaimedPages.addAndGet(free);
+            return free;
+        }
+        if (!AUTO_VACUUM_INCREMENTAL.equals(mode)) {
+            return 0; // Full auto-vacuum releases pages on every commit
+        }
+
+        long released = 0;
+        while (free > 0 && (force || isIdle())) {
+            int pages = (int) Math.min(free, VACUUM_STEP_PAGES);
+            long remaining = connections.transaction(db -> {
+                // The pragma frees one page per step, and the driver steps a statement
+                // without result columns once per execution
+                PreparedStatement vacuum = db.prepare("PRAGMA incremental_vacuum");
+                for (int i = 0; i < pages; i++) {
+                    vacuum.execute();
+                }
+                return pragma(db, "freelist_count");
+            });
+            if (remaining >= free) {
+                break;
+            }
+            released += free - remaining;
+            free = remaining;
+        }
+        reclaimedPages.addAndGet(released);
+        return released;
+    }
+
+    /**
+     * Copy the WAL into the database and truncate it
+     */
+    private String checkpoint() throws SQLException {
+        return store.db().write(db -> {
+            try (Statement statement = db.getConnection().createStatement();
+                 ResultSet rs = statement.executeQuery("PRAGMA wal_checkpoint(TRUNCATE)")) {
+                if (rs.next() && rs.getInt(1) == 0) {
+                    checkpoints.incrementAndGet();
+                    return "checkpointed " + Math.max(0, rs.getInt(3)) + " pages";
+                }
+                return "checkpoint postponed (readers active)";
+            }
+        });
+    }
+
+    private void execute(String sql) throws SQLException {
+        store.db().write(db -> {
+            try (Statement statement = db.getConnection().createStatement()) {
+                statement.execute(sql);
+            }
+            return null;
+        });
+    }
+
+    private static long pragma(PooledConnection db, String name) throws SQLException {
+        try (Statement statement = db.getConnection().createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA " + name)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
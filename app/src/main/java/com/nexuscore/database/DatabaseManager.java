@@ -1,31 +1,80 @@
 package com.nexuscore.database;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
  * Class that manages database operations
  */
-public class DatabaseManager {
-    private Connection connection;
+public class DatabaseManager implements ConversationStore {
+    private ConnectionPool connections; // null if the database could not be opened
     private static final String DB_URL = "jdbc:sqlite:nexus_core.db";
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000; // Longest wait for pending writes on close
+
+    // Contents of at least this many UTF-8 bytes are deduplicated and compressed (0 = always inline)
+    private volatile int compactStorageThreshold;
+
+    private final Path archiveDirectory; // null for in-memory databases
+    private volatile long lastActivityNanos = System.nanoTime(); // Last conversation or message write
+
+    // Messages are written by a background thread in batches (one transaction per flush)
+    private final WriteBehindQueue writeQueue = new WriteBehindQueue(this::insertMessages,
+            WriteBehindQueue.DEFAULT_MAX_BATCH_SIZE, WriteBehindQueue.DEFAULT_MAX_DELAY_MILLIS);
+
+    private final List<ArchiveListener> archiveListeners = new CopyOnWriteArrayList<>();
+
+    // Last access of cache hits not written yet; written in one transaction by flushCacheAccessTimes
+    private final Map<String, Long> cacheAccessTimes = new ConcurrentHashMap<>();
+
+    // Background database work of the UI, one thread per reader connection
+    private final ExecutorService executor = Executors.newFixedThreadPool(ConnectionPool.DEFAULT_READERS,
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "nexus-db-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
 
     /**
      * Constructor - initializes database connection
      */
     public DatabaseManager() {
+        this(DB_URL);
+    }
+
+    /**
+     * Constructor for a specific database
+     * 
+     * @param dbUrl JDBC URL of the SQLite database
+     */
+    public DatabaseManager(String dbUrl) {
+        archiveDirectory = archiveDirectoryOf(dbUrl);
         try {
             // Load SQLite JDBC driver
             Class.forName("org.sqlite.JDBC");
 
-            // Connect to the database
-            connection = DriverManager.getConnection(DB_URL);
+            // Connect to the database (one writer and a few readers, WAL mode)
+            connections = new ConnectionPool(dbUrl, ConnectionPool.DEFAULT_READERS);
             System.out.println("Connected to database");
 
             // Create tables if they don't exist
@@ -36,45 +85,63 @@ public class DatabaseManager {
     }
 
     /**
-     * Method to initialize necessary tables
+     * Method to initialize necessary tables (applies pending schema migrations)
      */
     private void initializeTables() throws SQLException {
-        String createConversationsTable = "CREATE TABLE IF NOT EXISTS conversations (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "start_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
-                "title TEXT" +
-                ");";
+        int version = SchemaMigrations.migrate(connections);
+        System.out.println("Tables initialized successfully (schema version " + version + ")");
+    }
+
+    /**
+     * Archive files are kept in a directory next to the database file
+     */
+    private static Path archiveDirectoryOf(String dbUrl) {
+        String file = dbUrl.startsWith("jdbc:sqlite:") ? dbUrl.substring("jdbc:sqlite:".length()) : "";
+        int options = file.indexOf('?');
+        if (options >= 0) {
+            file = file.substring(0, options);
+        }
+        if (file.isEmpty() || file.contains(":memory:") || file.startsWith("file:")) {
+            return null;
+        }
+        Path parent = Path.of(file).toAbsolutePath().getParent();
+        return parent.resolve(ConversationArchive.DIRECTORY_NAME);
+    }
 
-        String createMessagesTable = "CREATE TABLE IF NOT EXISTS messages (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "conversation_id INTEGER, " +
-                "timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
-                "sender TEXT, " +
-                "content TEXT, " +
-                "FOREIGN KEY (conversation_id) REFERENCES conversations(id)" +
-                ");";
+    /**
+     * Get the executor for database calls made off the JavaFX thread, so they
+     * do not block threads of the common pool
+     * 
+     * @return Executor with as many threads as there are reader connections
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
 
-        try (Statement statement = connection.createStatement()) {
-            statement.execute(createConversationsTable);
-            statement.execute(createMessagesTable);
-            System.out.println("Tables initialized successfully");
+    /**
+     * Get the connection pool, failing if the database could not be opened
+     */
+    ConnectionPool db() throws SQLException {
+        if (connections == null) {
+            throw new SQLException("Not connected to the database");
         }
+        return connections;
     }
 
     /**
      * Method to create a new conversation and return its ID
      */
+    @Override
     public int createConversation(String title) {
         String sql = "INSERT INTO conversations (title) VALUES (?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setString(1, title);
-            pstmt.executeUpdate();
-
-            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    return generatedKeys.getInt(1);
-                }
-            }
+        lastActivityNanos = System.nanoTime();
+        try {
+            return db().write(db -> {
+                PreparedStatement pstmt = db.prepare(sql);
+                pstmt.setString(1, title);
+                pstmt.executeUpdate();
+                return (int) db.lastInsertId();
+            });
         } catch (SQLException e) {
             System.err.println("Failed to create conversation: " + e.getMessage());
         }
@@ -82,63 +149,743 @@ public class DatabaseManager {
     }
 
     /**
-     * Method to save a message
+     * Method to save a message. Returns immediately; the message is written
+     * in the background together with other pending messages.
      */
+    @Override
     public void saveMessage(int conversationId, String sender, String content) {
-        String sql = "INSERT INTO messages (conversation_id, sender, content) VALUES (?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, conversationId);
-            pstmt.setString(2, sender);
-            pstmt.setString(3, content);
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Failed to save message: " + e.getMessage());
+        saveMessageAsync(conversationId, sender, content);
+    }
+
+    /**
+     * メッセージを非同期で保存（永続化の完了を待つ必要がある場合に使用）
+     * 
+     * @param conversationId 会話ID
+     * @param sender         送信者
+     * @param content        内容
+     * @return 書き込み（コミット）完了時にメッセージIDで完了するFuture
+     */
+    @Override
+    public CompletableFuture<Long> saveMessageAsync(int conversationId, String sender, String content) {
+        lastActivityNanos = System.nanoTime();
+        return writeQueue.enqueue(conversationId, sender, content);
+    }
+
+    /**
+     * Get a future that completes once every message saved so far is committed
+     * 
+     * @return Future of the pending writes
+     */
+    @Override
+    public CompletableFuture<Long> flushMessages() {
+        return writeQueue.flush();
+    }
+
+    /**
+     * Store new large message contents once per distinct text and compressed,
+     * instead of inline. Reads are unaffected: stored bodies are decoded transparently.
+     * 
+     * @param enabled true to store contents of at least {@link #getCompactStorageThreshold()} bytes compactly
+     */
+    public void setCompactStorage(boolean enabled) {
+        setCompactStorageThreshold(enabled ? MessageBodies.DEFAULT_THRESHOLD : 0);
+    }
+
+    /**
+     * Set the content size from which new messages are stored compactly
+     * 
+     * @param bytes Minimum UTF-8 size in bytes, or 0 or less to store every content inline
+     */
+    public void setCompactStorageThreshold(int bytes) {
+        this.compactStorageThreshold = Math.max(bytes, 0);
+    }
+
+    /**
+     * Get the content size from which new messages are stored compactly
+     * 
+     * @return Minimum UTF-8 size in bytes, or 0 if compact storage is disabled
+     */
+    public int getCompactStorageThreshold() {
+        return compactStorageThreshold;
+    }
+
+    /**
+     * Insert a batch of messages in one transaction (called by the writer thread)
+     * 
+     * @param batch Pending messages
+     * @return Row IDs of the inserted messages
+     * @throws SQLException If the transaction failed; it is rolled back
+     */
+    private long[] insertMessages(List<WriteBehindQueue.PendingMessage> batch) throws SQLException {
+        String sql = "INSERT INTO messages (conversation_id, sender, content, body_id) VALUES (?, ?, ?, ?)";
+        int threshold = compactStorageThreshold;
+        return db().transaction(db -> {
+            long[] ids = new long[batch.size()];
+            PreparedStatement pstmt = db.prepare(sql);
+            for (int i = 0; i < batch.size(); i++) {
+                WriteBehindQueue.PendingMessage message = batch.get(i);
+                pstmt.setInt(1, message.conversationId);
+                pstmt.setString(2, message.sender);
+                MessageBodies.bindContent(db, pstmt, 3, message.content, threshold);
+                pstmt.executeUpdate();
+                ids[i] = db.lastInsertId();
+            }
+            return ids;
+        });
+    }
+
+    /**
+     * Time since a conversation was created or a message saved, for idle-time maintenance
+     */
+    long getIdleMillis() {
+        return (System.nanoTime() - lastActivityNanos) / 1_000_000;
+    }
+
+    /**
+     * Directory of the conversation archive files, or null if the database is in memory
+     */
+    Path getArchiveDirectory() {
+        return archiveDirectory;
+    }
+
+    /**
+     * Wait until messages saved so far are visible to reads. The pending batch
+     * is written right away instead of after the batch delay.
+     */
+    private void awaitPendingWrites() {
+        try {
+            writeQueue.flush().join();
+        } catch (RuntimeException e) {
+            // The failure was already reported by the writer
+        }
+    }
+
+    /**
+     * Wait until messages saved so far to one conversation are visible to reads.
+     * Returns right away if none of its messages are still queued.
+     */
+    private void awaitPendingWrites(int conversationId) {
+        try {
+            writeQueue.flush(conversationId).join();
+        } catch (RuntimeException e) {
+            // The failure was already reported by the writer
         }
     }
 
     /**
-     * 特定の会話のメッセージ履歴を取得するメソッド
+     * 特定の会話の直近のメッセージ履歴を取得するメソッド
      * 
      * @param conversationId 会話ID
-     * @param limit          取得するメッセージ数（最大値）
-     * @return メッセージのリスト
+     * @param limit          取得するメッセージ数（最大値、新しいものから数える）
+     * @return メッセージのリスト（古い順）
      */
+    @Override
     public List<ConversationMessage> getConversationHistory(int conversationId, int limit) {
-        List<ConversationMessage> messages = new ArrayList<>();
-        String sql = "SELECT sender, content FROM messages " +
-                "WHERE conversation_id = ? " +
-                "ORDER BY timestamp ASC " +
-                "LIMIT ?";
+        return getMessagesBefore(conversationId, 0, limit);
+    }
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, conversationId);
-            pstmt.setInt(2, limit);
+    /**
+     * Get the page of messages that precedes a message (keyset pagination)
+     * 
+     * @param conversationId Conversation
+     * @param beforeId       Id of the oldest message already loaded, or 0 for the newest messages
+     * @param limit          Maximum number of messages (at most 1000)
+     * @return Messages, oldest first
+     */
+    @Override
+    public List<ConversationMessage> getMessagesBefore(int conversationId, long beforeId, int limit) {
+        // 保存待ちのメッセージを含めるため、書き込み完了を待つ
+        awaitPendingWrites(conversationId);
+
+        try {
+            return MessageStreams.pageBefore(db(), conversationId, beforeId, limit);
+        } catch (SQLException e) {
+            System.err.println("Failed to retrieve conversation history: " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Get the page of messages that follows a message (keyset pagination)
+     * 
+     * @param conversationId Conversation
+     * @param afterId        Id of the newest message already loaded, or 0 for the oldest messages
+     * @param limit          Maximum number of messages (at most 1000)
+     * @return Messages, oldest first
+     */
+    public List<ConversationMessage> getMessagesAfter(int conversationId, long afterId, int limit) {
+        awaitPendingWrites(conversationId);
+
+        try {
+            return MessageStreams.pageAfter(db(), conversationId, afterId, limit);
+        } catch (SQLException e) {
+            System.err.println("Failed to retrieve conversation history: " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Stream the messages of a conversation without loading them all into memory.
+     * The stream holds a database connection and must be closed (try-with-resources)
+     * unless it is read to the end.
+     * 
+     * @param conversationId Conversation
+     * @param afterId        Only messages with a larger id (0 for all)
+     * @return Messages in id order, with conversation id and timestamp
+     */
+    @Override
+    public Stream<ConversationMessage> streamMessages(int conversationId, long afterId) {
+        awaitPendingWrites(conversationId);
+
+        try {
+            return MessageStreams.conversationMessages(db(), conversationId, afterId);
+        } catch (SQLException e) {
+            System.err.println("Failed to stream messages: " + e.getMessage());
+        }
+        return Stream.empty();
+    }
+
+    /**
+     * Stream every stored message without loading them all into memory.
+     * The stream holds a database connection and must be closed (try-with-resources)
+     * unless it is read to the end.
+     * 
+     * @param afterId Only messages with a larger id (0 for all), to resume an earlier walk
+     * @return Messages in id order, with conversation id and timestamp
+     */
+    @Override
+    public Stream<ConversationMessage> streamAllMessages(long afterId) {
+        awaitPendingWrites();
+
+        try {
+            return MessageStreams.allMessages(db(), afterId);
+        } catch (SQLException e) {
+            System.err.println("Failed to stream messages: " + e.getMessage());
+        }
+        return Stream.empty();
+    }
+
+    /**
+     * Get a page of conversations with their message counts (keyset pagination)
+     * 
+     * @param beforeId Id of the last conversation of the previous page, or 0 for the first page
+     * @param limit    Maximum number of conversations (at most 1000)
+     * @return Conversations, newest first
+     */
+    @Override
+    public List<ConversationSummary> getConversations(int beforeId, int limit) {
+        awaitPendingWrites();
+
+        try {
+            return MessageStreams.conversations(db(), beforeId, limit);
+        } catch (SQLException e) {
+            System.err.println("Failed to list conversations: " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Export all conversations and messages to a JSONL file. Exporting to the
+     * file of an interrupted export continues it.
+     * 
+     * @param file Destination file
+     * @return Numbers of records written
+     * @throws IOException If the export failed; running it again continues where it stopped
+     */
+    public TransferReport exportConversations(Path file) throws IOException {
+        awaitPendingWrites();
+
+        try {
+            return JsonlTransfer.export(db(), file);
+        } catch (SQLException | IllegalStateException e) {
+            throw new IOException("Failed to read the database: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Import the conversations of a JSONL export as new conversations.
+     * Importing a file again continues an interrupted import and does nothing
+     * for a finished one.
+     * 
+     * @param file Export file
+     * @return Numbers of records imported
+     * @throws IOException If the import failed; the batches written so far are kept
+     */
+    public TransferReport importConversations(Path file) throws IOException {
+        awaitPendingWrites();
+
+        try {
+            return JsonlTransfer.importFile(db(), file, compactStorageThreshold);
+        } catch (SQLException e) {
+            throw new IOException("Failed to write to the database: " + e.getMessage(), e);
+        }
+    }
 
+    /**
+     * Move a conversation out of the database into a compressed archive file.
+     * It stays searchable with {@link #searchArchives} and can be restored.
+     * 
+     * @param conversationId Conversation to archive
+     * @return true if the conversation was archived
+     */
+    public boolean archiveConversation(int conversationId) {
+        awaitPendingWrites(conversationId);
+
+        if (archiveDirectory == null) {
+            System.err.println("Archiving is not available for in-memory databases");
+            return false;
+        }
+        try {
+            return archive(conversationId);
+        } catch (IOException | SQLException e) {
+            System.err.println("Failed to archive conversation " + conversationId + ": " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Archive a conversation and tell the listeners which messages left the database
+     * 
+     * @param conversationId Conversation to archive
+     * @return true if the conversation was archived
+     */
+    boolean archive(int conversationId) throws IOException, SQLException {
+        // Messages are only ever deleted by archiving, and the archive is abandoned if the
+        // conversation changes meanwhile, so these are exactly the messages that get removed
+        List<Long> messageIds = db().read(db -> {
+            List<Long> ids = new ArrayList<>();
+            PreparedStatement pstmt = db.prepare("SELECT id FROM messages WHERE conversation_id = ?");
+            pstmt.setInt(1, conversationId);
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    String sender = rs.getString("sender");
-                    String content = rs.getString("content");
-                    messages.add(new ConversationMessage(sender, content));
+                    ids.add(rs.getLong(1));
                 }
             }
+            return ids;
+        });
+        if (ConversationArchive.archive(db(), archiveDirectory, conversationId) == null) {
+            return false;
+        }
+        for (ArchiveListener listener : archiveListeners) {
+            listener.conversationArchived(conversationId, messageIds);
+        }
+        return true;
+    }
+
+    public void addArchiveListener(ArchiveListener listener) {
+        archiveListeners.add(listener);
+    }
+
+    public void removeArchiveListener(ArchiveListener listener) {
+        archiveListeners.remove(listener);
+    }
+
+    /**
+     * Get a page of archived conversations (keyset pagination)
+     * 
+     * @param beforeId Id of the last conversation of the previous page, or 0 for the first page
+     * @param limit    Maximum number of conversations (at most 1000)
+     * @return Archived conversations, newest first
+     */
+    public List<ArchivedConversation> getArchivedConversations(int beforeId, int limit) {
+        try {
+            return ConversationArchive.list(db(), beforeId, limit);
         } catch (SQLException e) {
-            System.err.println("Failed to retrieve conversation history: " + e.getMessage());
+            System.err.println("Failed to list archived conversations: " + e.getMessage());
         }
+        return new ArrayList<>();
+    }
 
+    /**
+     * Search the archived conversations (reads the archive files, so it is
+     * slower than {@link #searchMessages})
+     * 
+     * @param query Words that must all occur in the title or in one message
+     * @param limit Maximum number of conversations
+     * @return Matching conversations, newest first
+     */
+    public List<ArchiveHit> searchArchives(String query, int limit) {
+        if (archiveDirectory == null) {
+            return new ArrayList<>();
+        }
+        try {
+            return ConversationArchive.search(db(), archiveDirectory, query, limit);
+        } catch (SQLException e) {
+            System.err.println("Failed to search archives: " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Move an archived conversation back into the database, with its original id
+     * 
+     * @param conversationId Archived conversation
+     * @return true if the conversation was restored
+     */
+    public boolean restoreConversation(int conversationId) {
+        if (archiveDirectory == null) {
+            return false;
+        }
+        try {
+            int messages = ConversationArchive.restore(db(), archiveDirectory, conversationId,
+                    compactStorageThreshold);
+            if (messages >= 0) {
+                System.out.println("Restored conversation " + conversationId + " (" + messages + " messages)");
+                for (ArchiveListener listener : archiveListeners) {
+                    listener.conversationRestored(conversationId);
+                }
+                return true;
+            }
+        } catch (IOException | SQLException e) {
+            System.err.println("Failed to restore conversation " + conversationId + ": " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Search all stored messages
+     * 
+     * @param query Words or "quoted phrases" that must all occur (at least three characters each)
+     * @param after Cursor of the previous page ({@link SearchPage#getNextCursor()}), or null for the first page
+     * @param limit Maximum number of results (at most 100)
+     * @return Page of results ordered by relevance
+     */
+    public SearchPage searchMessages(String query, SearchCursor after, int limit) {
+        // 保存待ちのメッセージも検索対象にする
+        awaitPendingWrites();
+
+        try {
+            return MessageSearch.search(db(), query, after, limit);
+        } catch (SQLException e) {
+            System.err.println("Failed to search messages: " + e.getMessage());
+        }
+        return new SearchPage(new ArrayList<>(), null);
+    }
+
+    /**
+     * Get messages that have no embedding from the given model yet
+     * 
+     * @param model   Embedding model
+     * @param afterId Only messages with a larger id are returned
+     * @param limit   Maximum number of messages
+     * @return Messages in id order
+     */
+    public List<ConversationMessage> getMessagesWithoutEmbedding(String model, long afterId, int limit) {
+        String sql = "SELECT m.id, m.sender, m.content FROM message_texts m " +
+                "LEFT JOIN message_embeddings e ON e.message_id = m.id AND e.model = ? " +
+                "WHERE m.id > ? AND e.message_id IS NULL " +
+                "ORDER BY m.id LIMIT ?";
+        awaitPendingWrites();
+
+        try {
+            return db().read(db -> {
+                List<ConversationMessage> messages = new ArrayList<>();
+                PreparedStatement pstmt = db.prepare(sql);
+                pstmt.setString(1, model);
+                pstmt.setLong(2, afterId);
+                pstmt.setInt(3, limit);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        messages.add(new ConversationMessage(rs.getLong("id"), rs.getString("sender"),
+                                rs.getString("content")));
+                    }
+                }
+                return messages;
+            });
+        } catch (SQLException e) {
+            System.err.println("Failed to read messages to embed: " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Store embeddings of messages in one transaction, replacing older ones of
+     * the same model (each model keeps its own vector of a message)
+     * 
+     * @param model      Embedding model
+     * @param messageIds Message ids
+     * @param vectors    Embedding of each message, in the same order
+     * @return true if stored
+     */
+    public boolean saveEmbeddings(String model, List<Long> messageIds, List<float[]> vectors) {
+        String sql = "INSERT OR REPLACE INTO message_embeddings (message_id, model, vector) VALUES (?, ?, ?)";
+        try {
+            db().transaction(db -> {
+                PreparedStatement pstmt = db.prepare(sql);
+                for (int i = 0; i < messageIds.size(); i++) {
+                    pstmt.setLong(1, messageIds.get(i));
+                    pstmt.setString(2, model);
+                    pstmt.setBytes(3, VectorBlobs.encode(vectors.get(i)));
+                    pstmt.executeUpdate();
+                }
+                return null;
+            });
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Failed to save embeddings: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Stream all stored embeddings of a model
+     * 
+     * @param model    Embedding model
+     * @param consumer Receives each message id and vector
+     * @return Number of embeddings read
+     */
+    public int loadEmbeddings(String model, EmbeddingConsumer consumer) {
+        String sql = "SELECT message_id, vector FROM message_embeddings WHERE model = ? ORDER BY message_id";
+        try {
+            return db().read(db -> {
+                int count = 0;
+                PreparedStatement pstmt = db.prepare(sql);
+                pstmt.setString(1, model);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        consumer.accept(rs.getLong(1), VectorBlobs.decode(rs.getBytes(2)));
+                        count++;
+                    }
+                }
+                return count;
+            });
+        } catch (SQLException e) {
+            System.err.println("Failed to load embeddings: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * Get messages by id
+     * 
+     * @param messageIds Message ids
+     * @return The messages that exist, in the order of the ids
+     */
+    public List<ConversationMessage> getMessages(List<Long> messageIds) {
+        List<ConversationMessage> messages = new ArrayList<>();
+        if (messageIds.isEmpty()) {
+            return messages;
+        }
+        String sql = "SELECT id, sender, content FROM message_texts WHERE id = ?";
+        try {
+            return db().read(db -> {
+                PreparedStatement pstmt = db.prepare(sql);
+                for (Long id : messageIds) {
+                    pstmt.setLong(1, id);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (rs.next()) {
+                            messages.add(new ConversationMessage(rs.getLong("id"), rs.getString("sender"),
+                                    rs.getString("content")));
+                        }
+                    }
+                }
+                return messages;
+            });
+        } catch (SQLException e) {
+            System.err.println("Failed to read messages: " + e.getMessage());
+        }
         return messages;
     }
 
     /**
-     * Method to close the database connection
+     * Measure how message contents are stored (reads every row; for diagnostics)
+     * 
+     * @return Storage report, or null if the database cannot be read
      */
-    public void closeConnection() {
+    public StorageReport getStorageReport() {
+        awaitPendingWrites();
+
+        try {
+            return db().read(db -> {
+                long[] values = new long[9];
+                try (Statement statement = db.getConnection().createStatement()) {
+                    try (ResultSet rs = statement.executeQuery(
+                            "SELECT COUNT(*), COUNT(m.body_id), COALESCE(SUM(LENGTH(CAST(m.content AS BLOB))), 0), " +
+                                    "COALESCE(SUM(b.size), 0) FROM messages m " +
+                                    "LEFT JOIN message_bodies b ON b.id = m.body_id")) {
+                        rs.next();
+                        for (int i = 0; i < 4; i++) {
+                            values[i] = rs.getLong(i + 1);
+                        }
+                    }
+                    try (ResultSet rs = statement.executeQuery(
+                            "SELECT COUNT(*), COALESCE(SUM(size), 0), COALESCE(SUM(LENGTH(data)), 0) " +
+                                    "FROM message_bodies")) {
+                        rs.next();
+                        for (int i = 0; i < 3; i++) {
+                            values[4 + i] = rs.getLong(i + 1);
+                        }
+                    }
+                }
+                values[7] = pragmaValue(db, "PRAGMA page_count") * pragmaValue(db, "PRAGMA page_size");
+                values[8] = pragmaValue(db, "PRAGMA freelist_count") * pragmaValue(db, "PRAGMA page_size");
+                return new StorageReport(values);
+            });
+        } catch (SQLException e) {
+            System.err.println("Failed to measure storage: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private static long pragmaValue(ConnectionPool.PooledConnection db, String pragma) throws SQLException {
+        try (ResultSet rs = db.prepare(pragma).executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Look up a cached LLM response. The access time of a hit is kept in memory
+     * and written later with {@link #flushCacheAccessTimes}.
+     * 
+     * @param cacheKey       Cache key
+     * @param minCreatedAt   Entries created before this time (epoch millis) are treated as expired
+     * @return Cached response, or null if missing or expired
+     */
+    public CachedResponse getCachedResponse(String cacheKey, long minCreatedAt) {
+        String sql = "SELECT response, created_at FROM response_cache WHERE cache_key = ? AND created_at >= ?";
+        try {
+            CachedResponse cached = db().read(db -> {
+                PreparedStatement pstmt = db.prepare(sql);
+                pstmt.setString(1, cacheKey);
+                pstmt.setLong(2, minCreatedAt);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? new CachedResponse(rs.getString("response"), rs.getLong("created_at")) : null;
+                }
+            });
+            if (cached != null) {
+                cacheAccessTimes.merge(cacheKey, System.currentTimeMillis(), Math::max);
+            }
+            return cached;
+        } catch (SQLException e) {
+            System.err.println("Failed to read response cache: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Store an LLM response in the cache table
+     * 
+     * @param cacheKey  Cache key
+     * @param model     Model that produced the response
+     * @param response  Response text
+     * @param createdAt Creation time (epoch millis)
+     */
+    public void putCachedResponse(String cacheKey, String model, String response, long createdAt) {
+        String sql = "INSERT OR REPLACE INTO response_cache (cache_key, model, response, created_at, last_access) " +
+                "VALUES (?, ?, ?, ?, ?)";
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-                System.out.println("Database connection closed");
+            db().write(db -> {
+                PreparedStatement pstmt = db.prepare(sql);
+                pstmt.setString(1, cacheKey);
+                pstmt.setString(2, model);
+                pstmt.setString(3, response);
+                pstmt.setLong(4, createdAt);
+                pstmt.setLong(5, createdAt);
+                return pstmt.executeUpdate();
+            });
+        } catch (SQLException e) {
+            System.err.println("Failed to write response cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Remove expired cache entries and keep at most the given number of most recently used ones
+     * 
+     * @param minCreatedAt Entries created before this time (epoch millis) are removed
+     * @param maxEntries   Maximum number of entries to keep
+     */
+    public void evictCachedResponses(long minCreatedAt, int maxEntries) {
+        try {
+            int removed = db().transaction(db -> {
+                writeCacheAccessTimes(db); // Evict by up-to-date access times
+                PreparedStatement expired = db.prepare("DELETE FROM response_cache WHERE created_at < ?");
+                expired.setLong(1, minCreatedAt);
+                int count = expired.executeUpdate();
+                PreparedStatement overflow = db.prepare("DELETE FROM response_cache WHERE cache_key NOT IN " +
+                        "(SELECT cache_key FROM response_cache ORDER BY last_access DESC LIMIT ?)");
+                overflow.setInt(1, maxEntries);
+                return count + overflow.executeUpdate();
+            });
+            if (removed > 0) {
+                System.out.println("Evicted " + removed + " cached responses");
             }
         } catch (SQLException e) {
-            System.err.println("Error closing connection: " + e.getMessage());
+            System.err.println("Failed to evict response cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the access times of cache hits since the last flush, in one transaction
+     */
+    void flushCacheAccessTimes() {
+        if (cacheAccessTimes.isEmpty()) {
+            return;
+        }
+        try {
+            db().transaction(this::writeCacheAccessTimes);
+        } catch (SQLException e) {
+            System.err.println("Failed to update response cache access times: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the pending access times on a connection that is inside a transaction.
+     * A newer access recorded meanwhile is kept for the next flush. If the
+     * transaction rolls back the times are lost, which only makes eviction less
+     * precise.
+     */
+    private int writeCacheAccessTimes(ConnectionPool.PooledConnection db) throws SQLException {
+        List<Map.Entry<String, Long>> pending = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : cacheAccessTimes.entrySet()) {
+            pending.add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        PreparedStatement touch = db.prepare(
+                "UPDATE response_cache SET last_access = MAX(COALESCE(last_access, 0), ?) WHERE cache_key = ?");
+        for (Map.Entry<String, Long> entry : pending) {
+            touch.setLong(1, entry.getValue());
+            touch.setString(2, entry.getKey());
+            touch.addBatch();
+        }
+        touch.executeBatch();
+        for (Map.Entry<String, Long> entry : pending) {
+            cacheAccessTimes.remove(entry.getKey(), entry.getValue());
+        }
+        return pending.size();
+    }
+
+    /**
+     * Remove all cached responses
+     */
+    public void clearCachedResponses() {
+        cacheAccessTimes.clear();
+        try {
+            db().write(db -> db.prepare("DELETE FROM response_cache").executeUpdate());
+        } catch (SQLException e) {
+            System.err.println("Failed to clear response cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Method to close the database connection
+     */
+    @Override
+    public void closeConnection() {
+        executor.shutdownNow();
+        flushCacheAccessTimes();
+        // Write all pending messages before closing
+        if (!writeQueue.close(CLOSE_TIMEOUT_MILLIS)) {
+            System.err.println("Timed out writing " + writeQueue.getPendingCount() + " pending messages");
+        }
+        System.out.println("Saved " + writeQueue.getMessagesWritten() + " messages in "
+                + writeQueue.getTransactions() + " transactions");
+        if (connections != null && !connections.isClosed()) {
+            System.out.println("Database stats: " + connections.getStats());
+            connections.close();
+            System.out.println("Database connection closed");
         }
     }
 
@@ -146,12 +893,47 @@ public class DatabaseManager {
      * 会話メッセージを表現するための内部クラス
      */
     public static class ConversationMessage {
+        private final long id;
+        private final int conversationId;
         private String sender;
         private String content;
+        private final String timestamp;
 
         public ConversationMessage(String sender, String content) {
+            this(0, sender, content);
+        }
+
+        public ConversationMessage(long id, String sender, String content) {
+            this(id, 0, sender, content, null);
+        }
+
+        public ConversationMessage(long id, int conversationId, String sender, String content, String timestamp) {
+            this.id = id;
+            this.conversationId = conversationId;
             this.sender = sender;
             this.content = content;
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * Row ID of the stored message (0 if not stored)
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * Conversation of the stored message (0 if not read with the message)
+         */
+        public int getConversationId() {
+            return conversationId;
+        }
+
+        /**
+         * Time the message was stored, in UTC as "yyyy-MM-dd HH:mm:ss" (null if not read with the message)
+         */
+        public String getTimestamp() {
+            return timestamp;
         }
 
         public String getSender() {
@@ -162,4 +944,445 @@ public class DatabaseManager {
             return content;
         }
     }
+
+    /**
+     * A conversation with the number of its messages
+     */
+    public static class ConversationSummary {
+        private final int id;
+        private final String title;
+        private final String startTime;
+        private final int messageCount;
+
+        public ConversationSummary(int id, String title, String startTime, int messageCount) {
+            this.id = id;
+            this.title = title;
+            this.startTime = startTime;
+            this.messageCount = messageCount;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * Time the conversation was created, in UTC as "yyyy-MM-dd HH:mm:ss"
+         */
+        public String getStartTime() {
+            return startTime;
+        }
+
+        public int getMessageCount() {
+            return messageCount;
+        }
+    }
+
+    /**
+     * How message contents are stored, from {@link #getStorageReport()}
+     */
+    public static class StorageReport {
+        private final long messages;
+        private final long compactMessages;
+        private final long inlineBytes;
+        private final long compactTextBytes;
+        private final long bodies;
+        private final long bodyTextBytes;
+        private final long bodyStoredBytes;
+        private final long fileBytes;
+        private final long freeBytes;
+
+        StorageReport(long[] values) {
+            this.messages = values[0];
+            this.compactMessages = values[1];
+            this.inlineBytes = values[2];
+            this.compactTextBytes = values[3];
+            this.bodies = values[4];
+            this.bodyTextBytes = values[5];
+            this.bodyStoredBytes = values[6];
+            this.fileBytes = values[7];
+            this.freeBytes = values[8];
+        }
+
+        public long getMessages() {
+            return messages;
+        }
+
+        /**
+         * Messages whose content is stored in message_bodies
+         */
+        public long getCompactMessages() {
+            return compactMessages;
+        }
+
+        /**
+         * UTF-8 bytes of the contents stored inline
+         */
+        public long getInlineBytes() {
+            return inlineBytes;
+        }
+
+        /**
+         * UTF-8 bytes of the compactly stored contents, counting every message
+         */
+        public long getCompactTextBytes() {
+            return compactTextBytes;
+        }
+
+        /**
+         * Distinct stored bodies
+         */
+        public long getBodies() {
+            return bodies;
+        }
+
+        /**
+         * Bytes the stored bodies take after compression
+         */
+        public long getBodyStoredBytes() {
+            return bodyStoredBytes;
+        }
+
+        /**
+         * Size of the database file (without the WAL), including free pages
+         */
+        public long getFileBytes() {
+            return fileBytes;
+        }
+
+        public long getFreeBytes() {
+            return freeBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "messages=" + messages + " (" + compactMessages + " compact), inlineBytes=" + inlineBytes
+                    + ", compactTextBytes=" + compactTextBytes + " in " + bodies + " bodies of "
+                    + bodyTextBytes + " bytes stored as " + bodyStoredBytes
+                    + ", fileBytes=" + fileBytes + " (" + freeBytes + " free)";
+        }
+    }
+
+    /**
+     * Catalog entry of a conversation moved to an archive file
+     */
+    public static class ArchivedConversation {
+        private final int id;
+        private final String title;
+        private final String startTime;
+        private final String lastActivity;
+        private final int messageCount;
+        private final String file;
+        private final long bytes;
+        private final String archivedAt;
+
+        public ArchivedConversation(int id, String title, String startTime, String lastActivity, int messageCount,
+                String file, long bytes, String archivedAt) {
+            this.id = id;
+            this.title = title;
+            this.startTime = startTime;
+            this.lastActivity = lastActivity;
+            this.messageCount = messageCount;
+            this.file = file;
+            this.bytes = bytes;
+            this.archivedAt = archivedAt;
+        }
+
+        /**
+         * Original conversation id, which it gets back when restored
+         */
+        public int getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * Time of the last message before archiving
+         */
+        public String getLastActivity() {
+            return lastActivity;
+        }
+
+        public int getMessageCount() {
+            return messageCount;
+        }
+
+        /**
+         * Name of the archive file in the archive directory
+         */
+        public String getFile() {
+            return file;
+        }
+
+        /**
+         * Compressed size of the archive file
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public String getArchivedAt() {
+            return archivedAt;
+        }
+    }
+
+    /**
+     * Archived conversation that matches a search
+     */
+    public static class ArchiveHit {
+        private final ArchivedConversation conversation;
+        private final String sender;
+        private final String snippet;
+
+        public ArchiveHit(ArchivedConversation conversation, String sender, String snippet) {
+            this.conversation = conversation;
+            this.sender = sender;
+            this.snippet = snippet;
+        }
+
+        public ArchivedConversation getConversation() {
+            return conversation;
+        }
+
+        /**
+         * Sender of the matching message, or null if the title matched
+         */
+        public String getSender() {
+            return sender;
+        }
+
+        /**
+         * Text around the first match
+         */
+        public String getSnippet() {
+            return snippet;
+        }
+    }
+
+    /**
+     * Result of a JSONL export or import
+     */
+    public static class TransferReport {
+        private final long conversations;
+        private final long messages;
+        private final boolean complete;
+        private final boolean resumed;
+        private final long millis;
+
+        TransferReport(long conversations, long messages, boolean complete, boolean resumed, long millis) {
+            this.conversations = conversations;
+            this.messages = messages;
+            this.complete = complete;
+            this.resumed = resumed;
+            this.millis = millis;
+        }
+
+        /**
+         * Conversations written by this run
+         */
+        public long getConversations() {
+            return conversations;
+        }
+
+        /**
+         * Messages written by this run
+         */
+        public long getMessages() {
+            return messages;
+        }
+
+        /**
+         * Whether the whole file has been transferred (false for an import of an unfinished export)
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * Whether this run continued an interrupted one
+         */
+        public boolean isResumed() {
+            return resumed;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return conversations + " conversations, " + messages + " messages in " + millis + " ms ("
+                    + (millis > 0 ? messages * 60_000 / millis : messages) + " messages/min)"
+                    + (resumed ? ", resumed" : "") + (complete ? "" : ", incomplete");
+        }
+    }
+
+    /**
+     * Receives conversations that were moved to or from the archive (called on
+     * the thread that archived or restored them)
+     */
+    public interface ArchiveListener {
+        /**
+         * @param conversationId Archived conversation
+         * @param messageIds     Messages that were removed from the database
+         */
+        void conversationArchived(int conversationId, List<Long> messageIds);
+
+        /**
+         * @param conversationId Restored conversation; its messages have their original ids
+         *                       again but no embeddings
+         */
+        void conversationRestored(int conversationId);
+    }
+
+    /**
+     * Receives stored embeddings from {@link #loadEmbeddings}
+     */
+    public interface EmbeddingConsumer {
+        void accept(long messageId, float[] vector);
+    }
+
+    /**
+     * キャッシュされたLLM応答を表現するための内部クラス
+     */
+    public static class CachedResponse {
+        private final String response;
+        private final long createdAt;
+
+        public CachedResponse(String response, long createdAt) {
+            this.response = response;
+            this.createdAt = createdAt;
+        }
+
+        public String getResponse() {
+            return response;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+    }
+
+    /**
+     * 検索結果の1件（メッセージ）を表現するための内部クラス
+     */
+    public static class SearchResult {
+        /** Marks the start of a matched part in {@link #getSnippet()} */
+        public static final char HIGHLIGHT_START = '\u0002';
+        /** Marks the end of a matched part in {@link #getSnippet()} */
+        public static final char HIGHLIGHT_END = '\u0003';
+
+        private final long messageId;
+        private final int conversationId;
+        private final String conversationTitle;
+        private final String sender;
+        private final String timestamp;
+        private final String snippet;
+        private final double score;
+
+        public SearchResult(long messageId, int conversationId, String conversationTitle, String sender,
+                String timestamp, String snippet, double score) {
+            this.messageId = messageId;
+            this.conversationId = conversationId;
+            this.conversationTitle = conversationTitle;
+            this.sender = sender;
+            this.timestamp = timestamp;
+            this.snippet = snippet;
+            this.score = score;
+        }
+
+        public long getMessageId() {
+            return messageId;
+        }
+
+        public int getConversationId() {
+            return conversationId;
+        }
+
+        public String getConversationTitle() {
+            return conversationTitle;
+        }
+
+        public String getSender() {
+            return sender;
+        }
+
+        public String getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Part of the message around the matches; matches are enclosed in
+         * {@link #HIGHLIGHT_START} and {@link #HIGHLIGHT_END}
+         */
+        public String getSnippet() {
+            return snippet;
+        }
+
+        /**
+         * BM25 score (lower is more relevant)
+         */
+        public double getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * Position after the last result of a search page
+     */
+    public static class SearchCursor {
+        private final double score;
+        private final long messageId;
+
+        public SearchCursor(double score, long messageId) {
+            this.score = score;
+            this.messageId = messageId;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public long getMessageId() {
+            return messageId;
+        }
+    }
+
+    /**
+     * 検索結果の1ページ
+     */
+    public static class SearchPage {
+        private final List<SearchResult> results;
+        private final SearchCursor nextCursor;
+
+        public SearchPage(List<SearchResult> results, SearchCursor nextCursor) {
+            this.results = results;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<SearchResult> getResults() {
+            return results;
+        }
+
+        /**
+         * Cursor for the next page, or null if this is the last page
+         */
+        public SearchCursor getNextCursor() {
+            return nextCursor;
+        }
+
+        public boolean hasMore() {
+            return nextCursor != null;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,614 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.ConnectionPool.PooledConnection;
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+import com.nexuscore.database.DatabaseManager.TransferReport;
+import com.nexuscore.util.Json;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Export and import of conversations as JSONL (one JSON object per line).
+ * <p>
+ * File layout: a header record, every conversation in id order, every
+ * message in id order, and an end record:
+ * <pre>
+ * {"type":"nexuscore-export","version":1,"export_id":"...","created_at":"..."}
+ * {"type":"conversation","id":1,"title":"...","start_time":"2024-05-01 10:00:00"}
+ * {"type":"message","id":1,"conversation_id":1,"timestamp":"...","sender":"User","content":"..."}
+ * {"type":"end"}
+ * </pre>
+ * Export reads both tables with streaming cursors, so memory use does not
+ * depend on the size of the database. An interrupted export is continued by
+ * exporting to the same file again: a partly written last line is cut off
+ * and the export resumes after the last complete record.
+ * <p>
+ * Import inserts records in large transactions. Conversations get new ids;
+ * the mapping from the ids in the file is kept in
+ * {@code import_conversations}, with a bounded cache in front of it. Per-row
+ * full-text indexing is the most expensive part of an insert, so each batch
+ * suspends the insert trigger of {@code messages_fts} and indexes its new
+ * messages with one statement instead (inside the same transaction, so other
+ * connections never see the index out of date). The number of lines applied
+ * is committed together with each batch in {@code import_progress}; running
+ * the import again skips them, and a finished import is not applied twice.
+ * Files ending in {@code .gz} (such as conversation archives) are read
+ * through a GZIP stream.
+ */
+final class JsonlTransfer {
+
+    static final int FORMAT_VERSION = 1;
+    static final String HEADER_TYPE = "nexuscore-export";
+    static final String IMPORTED_TITLE = "Imported conversation"; // For messages whose conversation is missing
+
+    static final int BATCH_RECORDS = 5000;
+    private static final long BATCH_CHARS = 32L * 1024 * 1024; // Keeps batches of long messages bounded too
+    private static final int CONVERSATION_CACHE_SIZE = 10_000;
+    private static final int IO_BUFFER_SIZE = 1 << 20;
+    private static final long PROGRESS_INTERVAL_NANOS = 2_000_000_000L;
+
+    private static final String FTS_TRIGGER = "messages_fts_insert";
+
+    private static final String CONVERSATIONS_SQL = "SELECT id, title, start_time FROM conversations " +
+            "WHERE id > ? ORDER BY id";
+    private static final String TRIGGER_SQL = "SELECT sql FROM sqlite_master WHERE type = 'trigger' AND name = ?";
+    private static final String MAX_MESSAGE_ID_SQL = "SELECT COALESCE(MAX(id), 0) FROM messages";
+    private static final String INSERT_CONVERSATION_SQL = "INSERT INTO conversations (title, start_time) " +
+            "VALUES (?, COALESCE(?, CURRENT_TIMESTAMP))";
+    private static final String INSERT_MESSAGE_SQL = "INSERT INTO messages " +
+            "(conversation_id, timestamp, sender, content, body_id) " +
+            "VALUES (?, COALESCE(?, CURRENT_TIMESTAMP), ?, ?, ?)";
+    private static final String INDEX_NEW_MESSAGES_SQL = "INSERT INTO messages_fts (rowid, content) " +
+            "SELECT id, content FROM message_texts WHERE id > ?";
+    private static final String FIND_MAPPING_SQL = "SELECT new_id FROM import_conversations " +
+            "WHERE source = ? AND old_id = ?";
+    private static final String INSERT_MAPPING_SQL = "INSERT OR REPLACE INTO import_conversations " +
+            "(source, old_id, new_id) VALUES (?, ?, ?)";
+    private static final String FIND_PROGRESS_SQL = "SELECT line, conversations, messages, completed " +
+            "FROM import_progress WHERE source = ?";
+    private static final String SAVE_PROGRESS_SQL = "INSERT OR REPLACE INTO import_progress " +
+            "(source, line, conversations, messages, completed, updated_at) VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP)";
+    private static final String DELETE_MAPPINGS_SQL = "DELETE FROM import_conversations WHERE source = ?";
+
+    private JsonlTransfer() {
+    }
+
+    /**
+     * Write every conversation and message to a file, or continue an
+     * interrupted export to the same file
+     *
+     * @param connections Connection pool of the database
+     * @param file        Destination; a finished export there is replaced
+     * @return Numbers of records written by this run
+     * @throws IOException  If the file cannot be written, or exists and is not an export
+     * @throws SQLException If the database cannot be read (IllegalStateException while reading rows)
+     */
+    static TransferReport export(ConnectionPool connections, Path file) throws IOException, SQLException {
+        if (isCompressed(file)) {
+            throw new IOException("Exports are written uncompressed so that they can be resumed; use a .jsonl file");
+        }
+        Progress progress = new Progress("Exported");
+        int afterConversation = 0;
+        long afterMessage = 0;
+        boolean messagePhase = false;
+
+        Map<String, Object> last = Files.exists(file) ? resumePoint(file) : null;
+        boolean resumed = last != null && !"end".equals(last.get("type"));
+        if (resumed) {
+            Object type = last.get("type");
+            if ("conversation".equals(type)) {
+                afterConversation = (int) longValue(last, "id", 0);
+            } else if ("message".equals(type)) {
+                messagePhase = true;
+                afterMessage = longValue(last, "id", 0);
+            }
+            System.out.println("Resuming export to " + file + " after the last " + type + " record");
+        }
+
+        StandardOpenOption mode = resumed ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode), StandardCharsets.UTF_8), IO_BUFFER_SIZE)) {
+            StringBuilder line = new StringBuilder(4096);
+            if (!resumed) {
+                writeRecord(writer, line, header());
+            }
+
+            if (!messagePhase) {
+                int fromId = afterConversation;
+                try (Stream<Map<String, Object>> conversations = MessageStreams.stream(connections, CONVERSATIONS_SQL,
+                        statement -> statement.setInt(1, fromId), JsonlTransfer::readConversation)) {
+                    Iterator<Map<String, Object>> it = conversations.iterator();
+                    while (it.hasNext()) {
+                        writeRecord(writer, line, it.next());
+                        progress.conversations++;
+                        progress.maybeReport();
+                    }
+                }
+            }
+
+            try (Stream<ConversationMessage> messages = MessageStreams.allMessages(connections, afterMessage)) {
+                Iterator<ConversationMessage> it = messages.iterator();
+                while (it.hasNext()) {
+                    writeRecord(writer, line, messageRecord(it.next()));
+                    progress.messages++;
+                    progress.maybeReport();
+                }
+            }
+
+            writeRecord(writer, line, endRecord());
+        }
+        return progress.finish(true, resumed);
+    }
+
+    /**
+     * Import an export file, or continue an interrupted import of it
+     *
+     * @param connections       Connection pool of the database
+     * @param file              Export file
+     * @param compactThreshold  Compact storage threshold for the contents (0 = inline)
+     * @return Numbers of records imported by this run
+     * @throws IOException  If the file cannot be read or is not a valid export
+     * @throws SQLException If a batch cannot be written; the batches before it stay imported
+     */
+    static TransferReport importFile(ConnectionPool connections, Path file, int compactThreshold)
+            throws IOException, SQLException {
+        try (BufferedReader reader = openReader(file)) {
+            String first = reader.readLine();
+            Map<String, Object> header = first == null ? null : parseRecord(first, "line 1");
+            if (header == null || !HEADER_TYPE.equals(header.get("type"))) {
+                throw new IOException(file + " is not a NexusCore export");
+            }
+            if (longValue(header, "version", 0) > FORMAT_VERSION) {
+                throw new IOException("Unsupported export version " + header.get("version"));
+            }
+
+            Importer importer = new Importer(connections, sourceOf(header, first), compactThreshold);
+            Progress progress = new Progress("Imported");
+            long line = importer.loadProgress();
+            if (importer.completed) {
+                System.out.println(file + " has already been imported (" + importer.conversations
+                        + " conversations, " + importer.messages + " messages)");
+                return progress.finish(true, true);
+            }
+            boolean resumed = line > 1;
+            for (long skipped = 1; skipped < line; skipped++) {
+                if (reader.readLine() == null) {
+                    throw new IOException(file + " is shorter than the part imported before (" + line + " lines)");
+                }
+            }
+            if (resumed) {
+                System.out.println("Resuming import of " + file + " after line " + line);
+            }
+            line = Math.max(line, 1); // The header
+
+            List<Map<String, Object>> batch = new ArrayList<>();
+            long batchChars = 0;
+            boolean ended = false;
+            String text;
+            while (!ended && (text = reader.readLine()) != null) {
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                Map<String, Object> record = parseRecord(text, "line " + line);
+                Object type = record.get("type");
+                if ("end".equals(type)) {
+                    ended = true;
+                } else if ("conversation".equals(type) || "message".equals(type)) {
+                    batch.add(record);
+                    batchChars += text.length();
+                }
+                // Other record types are from newer versions and are skipped
+
+                if (batch.size() >= BATCH_RECORDS || batchChars >= BATCH_CHARS) {
+                    importer.apply(batch, line, false, progress);
+                    batch.clear();
+                    batchChars = 0;
+                    progress.maybeReport();
+                }
+            }
+            importer.apply(batch, line, ended, progress);
+            if (!ended) {
+                System.out.println(file + " has no end record (the export is not finished); imported up to line "
+                        + line + ". Run the import again to continue once the export is complete.");
+            }
+            return progress.finish(ended, resumed);
+        }
+    }
+
+    /**
+     * Writes batches of records and keeps the id mapping and progress of one export file
+     */
+    private static final class Importer {
+        private final ConnectionPool connections;
+        private final String source;
+        private final int compactThreshold;
+        // Recently used conversation ids (id in the file -> new id); the table has all of them
+        private final Map<Long, Integer> conversationIds = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+                return size() > CONVERSATION_CACHE_SIZE;
+            }
+        };
+        long conversations;
+        long messages;
+        boolean completed;
+
+        Importer(ConnectionPool connections, String source, int compactThreshold) {
+            this.connections = connections;
+            this.source = source;
+            this.compactThreshold = compactThreshold;
+        }
+
+        /**
+         * Read the progress of an earlier run
+         *
+         * @return Number of lines already applied (0 if none)
+         */
+        long loadProgress() throws SQLException {
+            return connections.read(db -> {
+                PreparedStatement pstmt = db.prepare(FIND_PROGRESS_SQL);
+                pstmt.setString(1, source);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return 0L;
+                    }
+                    conversations = rs.getLong("conversations");
+                    messages = rs.getLong("messages");
+                    completed = rs.getInt("completed") != 0;
+                    return rs.getLong("line");
+                }
+            });
+        }
+
+        /**
+         * Insert a batch and record the progress in one transaction
+         *
+         * @param batch    Conversation and message records
+         * @param line     Number of lines of the file applied after this batch
+         * @param finished Whether the end record was reached
+         * @param progress Counters of this run
+         */
+        void apply(List<Map<String, Object>> batch, long line, boolean finished, Progress progress)
+                throws SQLException {
+            // Conversations of this batch; only cached once the batch is committed
+            Map<Long, Integer> added = new LinkedHashMap<>();
+            long[] counts = connections.transaction(db -> {
+                String triggerSql = null;
+                PreparedStatement findTrigger = db.prepare(TRIGGER_SQL);
+                findTrigger.setString(1, FTS_TRIGGER);
+                try (ResultSet rs = findTrigger.executeQuery()) {
+                    if (rs.next()) {
+                        triggerSql = rs.getString(1);
+                    }
+                }
+                long lastIdBefore;
+                try (ResultSet rs = db.prepare(MAX_MESSAGE_ID_SQL).executeQuery()) {
+                    lastIdBefore = rs.next() ? rs.getLong(1) : 0;
+                }
+                if (triggerSql != null) {
+                    execute(db, "DROP TRIGGER " + FTS_TRIGGER);
+                }
+
+                long newConversations = 0;
+                long newMessages = 0;
+                PreparedStatement insertMessage = db.prepare(INSERT_MESSAGE_SQL);
+                for (Map<String, Object> record : batch) {
+                    if ("conversation".equals(record.get("type"))) {
+                        long oldId = longValue(record, "id", 0);
+                        int newId = insertConversation(db, stringValue(record, "title"),
+                                stringValue(record, "start_time"));
+                        saveMapping(db, oldId, newId);
+                        added.put(oldId, newId);
+                        newConversations++;
+                        continue;
+                    }
+                    long oldConversation = longValue(record, "conversation_id", 0);
+                    Integer conversationId = added.get(oldConversation);
+                    if (conversationId == null) {
+                        conversationId = findConversation(db, oldConversation);
+                    }
+                    if (conversationId == null) {
+                        conversationId = insertConversation(db, IMPORTED_TITLE, null);
+                        saveMapping(db, oldConversation, conversationId);
+                        newConversations++;
+                    }
+                    added.put(oldConversation, conversationId);
+
+                    insertMessage.setInt(1, conversationId);
+                    insertMessage.setString(2, stringValue(record, "timestamp"));
+                    insertMessage.setString(3, stringValue(record, "sender"));
+                    MessageBodies.bindContent(db, insertMessage, 4, stringValue(record, "content"),
+                            compactThreshold);
+                    insertMessage.executeUpdate();
+                    newMessages++;
+                }
+
+                if (triggerSql != null) {
+                    PreparedStatement index = db.prepare(INDEX_NEW_MESSAGES_SQL);
+                    index.setLong(1, lastIdBefore);
+                    index.executeUpdate();
+                    execute(db, triggerSql);
+                }
+
+                PreparedStatement save = db.prepare(SAVE_PROGRESS_SQL);
+                save.setString(1, source);
+                save.setLong(2, line);
+                save.setLong(3, conversations + newConversations);
+                save.setLong(4, messages + newMessages);
+                save.setInt(5, finished ? 1 : 0);
+                save.executeUpdate();
+                if (finished) {
+                    PreparedStatement delete = db.prepare(DELETE_MAPPINGS_SQL);
+                    delete.setString(1, source);
+                    delete.executeUpdate();
+                }
+                return new long[] {newConversations, newMessages};
+            });
+            conversations += counts[0];
+            messages += counts[1];
+            progress.conversations += counts[0];
+            progress.messages += counts[1];
+            conversationIds.putAll(added);
+        }
+
+        private Integer findConversation(PooledConnection db, long oldId) throws SQLException {
+            Integer cached = conversationIds.get(oldId);
+            if (cached != null) {
+                return cached;
+            }
+            PreparedStatement pstmt = db.prepare(FIND_MAPPING_SQL);
+            pstmt.setString(1, source);
+            pstmt.setLong(2, oldId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    int newId = rs.getInt(1);
+                    conversationIds.put(oldId, newId);
+                    return newId;
+                }
+            }
+            return null;
+        }
+
+        private int insertConversation(PooledConnection db, String title, String startTime) throws SQLException {
+            PreparedStatement pstmt = db.prepare(INSERT_CONVERSATION_SQL);
+            pstmt.setString(1, title);
+            pstmt.setString(2, startTime);
+            pstmt.executeUpdate();
+            return (int) db.lastInsertId();
+        }
+
+        private void saveMapping(PooledConnection db, long oldId, int newId) throws SQLException {
+            PreparedStatement pstmt = db.prepare(INSERT_MAPPING_SQL);
+            pstmt.setString(1, source);
+            pstmt.setLong(2, oldId);
+            pstmt.setInt(3, newId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Counts records and prints the rate every few seconds
+     */
+    private static final class Progress {
+        private final String verb;
+        private final long start = System.nanoTime();
+        private long lastReport = start;
+        long conversations;
+        long messages;
+
+        Progress(String verb) {
+            this.verb = verb;
+        }
+
+        void maybeReport() {
+            long now = System.nanoTime();
+            if (now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                lastReport = now;
+                System.out.println(verb + " " + conversations + " conversations, " + messages + " messages ("
+                        + Math.round(messages * 60e9 / (now - start)) + " messages/min)");
+            }
+        }
+
+        TransferReport finish(boolean complete, boolean resumed) {
+            return new TransferReport(conversations, messages, complete, resumed,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private static Map<String, Object> readConversation(ResultSet rs) throws SQLException {
+        return conversationRecord(rs.getInt("id"), rs.getString("title"), rs.getString("start_time"));
+    }
+
+    /**
+     * Header record of a new export, with a fresh export id
+     */
+    static Map<String, Object> header() {
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("type", HEADER_TYPE);
+        header.put("version", FORMAT_VERSION);
+        header.put("export_id", UUID.randomUUID().toString());
+        header.put("created_at", Instant.now().toString());
+        return header;
+    }
+
+    static Map<String, Object> conversationRecord(int id, String title, String startTime) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("type", "conversation");
+        record.put("id", id);
+        record.put("title", title);
+        record.put("start_time", startTime);
+        return record;
+    }
+
+    static Map<String, Object> messageRecord(ConversationMessage message) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("type", "message");
+        record.put("id", message.getId());
+        record.put("conversation_id", message.getConversationId());
+        record.put("timestamp", message.getTimestamp());
+        record.put("sender", message.getSender());
+        record.put("content", message.getContent());
+        return record;
+    }
+
+    static Map<String, Object> endRecord() {
+        Map<String, Object> end = new LinkedHashMap<>();
+        end.put("type", "end");
+        return end;
+    }
+
+    /**
+     * Open an export file for reading; files ending in .gz are decompressed
+     */
+    static BufferedReader openReader(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        try {
+            if (isCompressed(file)) {
+                in = new GZIPInputStream(in, IO_BUFFER_SIZE);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), IO_BUFFER_SIZE);
+    }
+
+    static boolean isCompressed(Path file) {
+        return file.getFileName().toString().endsWith(".gz");
+    }
+
+    static void writeRecord(BufferedWriter writer, StringBuilder line, Map<String, Object> record)
+            throws IOException {
+        line.setLength(0);
+        Json.write(record, line);
+        line.append('\n');
+        writer.append(line);
+    }
+
+    static Map<String, Object> parseRecord(String text, String location) throws IOException {
+        try {
+            return Json.parseObject(text);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid record at " + location + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void execute(PooledConnection db, String sql) throws SQLException {
+        try (Statement statement = db.getConnection().createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    /**
+     * Key of an export file in import_progress: its export id, which stays the
+     * same when an interrupted export is continued, or a hash of the header
+     */
+    private static String sourceOf(Map<String, Object> header, String headerLine) {
+        Object exportId = header.get("export_id");
+        if (exportId instanceof String) {
+            return (String) exportId;
+        }
+        try {
+            StringBuilder hex = new StringBuilder("sha256:");
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(headerLine.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Check that a file is an export, cut off a partly written last line and
+     * return the last complete record
+     *
+     * @return Last record (the header if nothing followed it), or null to start over
+     */
+    private static Map<String, Object> resumePoint(Path file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            // The header is always written with its type first
+            byte[] prefix = ("{\"type\":\"" + HEADER_TYPE + "\"").getBytes(StandardCharsets.UTF_8);
+            byte[] start = new byte[(int) Math.min(prefix.length, raf.length())];
+            raf.readFully(start);
+            for (int i = 0; i < start.length; i++) {
+                if (start[i] != prefix[i]) {
+                    throw new IOException(file + " exists and is not a NexusCore export");
+                }
+            }
+
+            long lastNewline = previousNewline(raf, raf.length());
+            if (lastNewline + 1 < raf.length()) {
+                raf.setLength(lastNewline + 1); // The record after the last newline was not finished
+            }
+            if (lastNewline < 0) {
+                return null; // Not even the header was finished
+            }
+            long lineStart = previousNewline(raf, lastNewline) + 1;
+            return parseRecord(readRange(raf, lineStart, lastNewline), "the last line of " + file);
+        }
+    }
+
+    /**
+     * Position of the last newline before a position, or -1
+     */
+    private static long previousNewline(RandomAccessFile raf, long before) throws IOException {
+        byte[] buffer = new byte[8192];
+        long end = before;
+        while (end > 0) {
+            int length = (int) Math.min(buffer.length, end);
+            raf.seek(end - length);
+            raf.readFully(buffer, 0, length);
+            for (int i = length - 1; i >= 0; i--) {
+                if (buffer[i] == '\n') {
+                    return end - length + i;
+                }
+            }
+            end -= length;
+        }
+        return -1;
+    }
+
+    private static String readRange(RandomAccessFile raf, long start, long end) throws IOException {
+        byte[] bytes = new byte[(int) (end - start)];
+        raf.seek(start);
+        raf.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long longValue(Map<String, Object> record, String key, long fallback) {
+        Object value = record.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : fallback;
+    }
+
+    static String stringValue(Map<String, Object> record, String key) {
+        Object value = record.get(key);
+        return value == null ? null : value.toString();
+    }
+}
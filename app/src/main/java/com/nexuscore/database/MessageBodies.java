@@ -0,0 +1,208 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.ConnectionPool.PooledConnection;
+import org.sqlite.Function;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact storage of large message contents.
+ * Contents above a size threshold are stored once per distinct text in
+ * {@code message_bodies}, keyed by their SHA-256 hash, and compressed with
+ * Deflate when that saves at least a tenth. The message row then keeps only
+ * the body id. Reads go through the {@code message_texts} view, which
+ * decodes bodies with the {@code message_body_text} SQL function, so the
+ * full-text index and every query see plain text.
+ */
+final class MessageBodies {
+
+    static final int DEFAULT_THRESHOLD = 256; // Bytes of UTF-8; smaller contents stay inline
+    static final int ENCODING_TEXT = 0;
+    static final int ENCODING_DEFLATE = 1;
+
+    /**
+     * SQL function (encoding, data) returning the text of a stored body
+     */
+    static final String TEXT_FUNCTION = "message_body_text";
+
+    private static final int COMPRESSION_LEVEL = 6;
+    private static final double MIN_SAVING = 0.1;
+
+    private static final String FIND_SQL = "SELECT id FROM message_bodies WHERE hash = ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO message_bodies (hash, encoding, size, data) VALUES (?, ?, ?, ?)";
+
+    private MessageBodies() {
+    }
+
+    /**
+     * Register the decoding function on a connection; every connection of the
+     * database needs it, since the view and the full-text triggers call it
+     *
+     * @param connection SQLite connection
+     * @throws SQLException If the function cannot be registered
+     */
+    static void registerFunction(Connection connection) throws SQLException {
+        Function.create(connection, TEXT_FUNCTION, new Function() {
+            @Override
+            protected void xFunc() throws SQLException {
+                byte[] data = value_blob(1);
+                if (data == null) {
+                    result();
+                } else {
+                    result(decode(value_int(0), data));
+                }
+            }
+        }, 2, Function.FLAG_DETERMINISTIC);
+    }
+
+    /**
+     * Store a body, or find the identical body stored before
+     *
+     * @param db   Writer connection (inside the caller's transaction)
+     * @param text Message content
+     * @return Id of the body
+     * @throws SQLException If the body cannot be stored
+     */
+    static long store(PooledConnection db, String text) throws SQLException {
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        byte[] hash = sha256(raw);
+
+        PreparedStatement find = db.prepare(FIND_SQL);
+        find.setBytes(1, hash);
+        try (ResultSet rs = find.executeQuery()) {
+            if (rs.next()) {
+                return rs.getLong(1);
+            }
+        }
+
+        byte[] compressed = deflate(raw);
+        boolean worthIt = compressed.length <= raw.length * (1 - MIN_SAVING);
+        PreparedStatement insert = db.prepare(INSERT_SQL);
+        insert.setBytes(1, hash);
+        insert.setInt(2, worthIt ? ENCODING_DEFLATE : ENCODING_TEXT);
+        insert.setInt(3, raw.length);
+        insert.setBytes(4, worthIt ? compressed : raw);
+        insert.executeUpdate();
+        return db.lastInsertId();
+    }
+
+    /**
+     * Bind a message content to an insert with a content and a body_id
+     * parameter: large contents (at least the threshold in UTF-8 bytes) are
+     * stored as a body, everything else inline
+     *
+     * @param db           Writer connection (inside the caller's transaction)
+     * @param statement    Insert statement
+     * @param contentIndex Index of the content parameter; body_id follows it
+     * @param content      Message content
+     * @param threshold    Compact storage threshold, or 0 or less to store everything inline
+     * @throws SQLException If the body cannot be stored
+     */
+    static void bindContent(PooledConnection db, PreparedStatement statement, int contentIndex, String content,
+            int threshold) throws SQLException {
+        if (threshold > 0 && content != null && utf8Length(content) >= threshold) {
+            statement.setNull(contentIndex, Types.VARCHAR);
+            statement.setLong(contentIndex + 1, store(db, content));
+        } else {
+            statement.setString(contentIndex, content);
+            statement.setNull(contentIndex + 1, Types.INTEGER);
+        }
+    }
+
+    /**
+     * Decode a stored body
+     *
+     * @param encoding {@link #ENCODING_TEXT} or {@link #ENCODING_DEFLATE}
+     * @param data     Stored bytes
+     * @return Text
+     * @throws SQLException If the data is corrupt or the encoding unknown
+     */
+    static String decode(int encoding, byte[] data) throws SQLException {
+        switch (encoding) {
+            case ENCODING_TEXT:
+                return new String(data, StandardCharsets.UTF_8);
+            case ENCODING_DEFLATE:
+                return new String(inflate(data), StandardCharsets.UTF_8);
+            default:
+                throw new SQLException("Unknown message body encoding " + encoding);
+        }
+    }
+
+    static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(COMPRESSION_LEVEL);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] inflate(byte[] compressed) throws SQLException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new SQLException("Truncated message body");
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new SQLException("Corrupt message body: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Size of a string in UTF-8 without encoding it
+     */
+    static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e); // Required of every JVM
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.DatabaseManager.SearchCursor;
+import com.nexuscore.database.DatabaseManager.SearchPage;
+import com.nexuscore.database.DatabaseManager.SearchResult;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Full-text search over message contents.
+ * Uses the {@code messages_fts} FTS5 index (trigram tokenizer, so Japanese
+ * text without spaces and partial words are found as well). Results are
+ * ranked by BM25 and paged with a keyset cursor of (score, message id), so
+ * later pages cost the same as the first. Snippets are only built for the
+ * rows of the requested page.
+ */
+final class MessageSearch {
+
+    static final int MAX_PAGE_SIZE = 100;
+
+    // The trigram tokenizer cannot match terms shorter than three characters
+    private static final int MIN_TERM_LENGTH = 3;
+    private static final int SNIPPET_TOKENS = 64;
+
+    // "LIMIT -1" keeps the subquery from being flattened, so bm25() is only used as a result column
+    private static final String RANKED_SQL = "SELECT id, score FROM (" +
+            "SELECT rowid AS id, bm25(messages_fts) AS score FROM messages_fts " +
+            "WHERE messages_fts MATCH ? LIMIT -1) " +
+            "WHERE score > ? OR (score = ? AND id > ?) " +
+            "ORDER BY score, id LIMIT ?";
+
+    private MessageSearch() {
+    }
+
+    /**
+     * Run a search
+     *
+     * @param connections Connection pool of the database
+     * @param query       Text entered by the user
+     * @param after       Cursor of the previous page, or null for the first page
+     * @param limit       Maximum number of results
+     * @return Page of results, best first
+     * @throws SQLException If the search fails
+     */
+    static SearchPage search(ConnectionPool connections, String query, SearchCursor after, int limit)
+            throws SQLException {
+        String match = toMatchQuery(query);
+        int pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, limit));
+        if (match.isEmpty()) {
+            return new SearchPage(new ArrayList<>(), null);
+        }
+
+        return connections.read(db -> {
+            // 1. Rank the matches and keep the ids of this page
+            List<Long> ids = new ArrayList<>();
+            List<Double> scores = new ArrayList<>();
+            PreparedStatement ranked = db.prepare(RANKED_SQL);
+            ranked.setString(1, match);
+            ranked.setDouble(2, after == null ? Double.NEGATIVE_INFINITY : after.getScore());
+            ranked.setDouble(3, after == null ? Double.NEGATIVE_INFINITY : after.getScore());
+            ranked.setLong(4, after == null ? Long.MIN_VALUE : after.getMessageId());
+            // One extra row tells whether there is a next page
+            ranked.setInt(5, pageSize + 1);
+            try (ResultSet rs = ranked.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong("id"));
+                    scores.add(rs.getDouble("score"));
+                }
+            }
+            boolean hasMore = ids.size() > pageSize;
+            if (hasMore) {
+                ids.remove(pageSize);
+                scores.remove(pageSize);
+            }
+            if (ids.isEmpty()) {
+                return new SearchPage(new ArrayList<>(), null);
+            }
+
+            // 2. Load the details and snippets of those rows only
+            PreparedStatement details = db.prepare(detailsSql(pageSize));
+            int index = 1;
+            details.setString(index++, String.valueOf(SearchResult.HIGHLIGHT_START));
+            details.setString(index++, String.valueOf(SearchResult.HIGHLIGHT_END));
+            details.setString(index++, match);
+            for (int i = 0; i < pageSize; i++) {
+                // Unused placeholders get an id that does not exist
+                details.setLong(index++, i < ids.size() ? ids.get(i) : -1);
+            }
+            Map<Long, SearchResult> rows = new HashMap<>();
+            try (ResultSet rs = details.executeQuery()) {
+                while (rs.next()) {
+                    long id = rs.getLong("id");
+                    rows.put(id, new SearchResult(id, rs.getInt("conversation_id"), rs.getString("title"),
+                            rs.getString("sender"), rs.getString("timestamp"), rs.getString("snippet"),
+                            scores.get(ids.indexOf(id))));
+                }
+            }
+
+            List<SearchResult> results = new ArrayList<>();
+            for (Long id : ids) {
+                SearchResult result = rows.get(id);
+                if (result != null) {
+                    results.add(result);
+                }
+            }
+            int last = ids.size() - 1;
+            SearchCursor next = hasMore ? new SearchCursor(scores.get(last), ids.get(last)) : null;
+            return new SearchPage(results, next);
+        });
+    }
+
+    /**
+     * Turn user input into an FTS5 query.
+     * Every word (or "quoted phrase") becomes a quoted FTS5 string, so
+     * operators and special characters in the input are matched literally;
+     * all of them must occur. Terms too short for the trigram index are dropped.
+     *
+     * @param query Text entered by the user
+     * @return FTS5 MATCH expression, or an empty string if nothing can be searched
+     */
+    static String toMatchQuery(String query) {
+        if (query == null) {
+            return "";
+        }
+        List<String> terms = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '"') {
+                addTerm(terms, current);
+                quoted = !quoted;
+            } else if (!quoted && Character.isWhitespace(c)) {
+                addTerm(terms, current);
+            } else {
+                current.append(c);
+            }
+        }
+        addTerm(terms, current);
+        return String.join(" ", terms);
+    }
+
+    private static void addTerm(List<String> terms, StringBuilder term) {
+        String text = term.toString().strip();
+        term.setLength(0);
+        if (text.codePointCount(0, text.length()) >= MIN_TERM_LENGTH) {
+            terms.add("\"" + text.replace("\"", "\"\"") + "\"");
+        }
+    }
+
+    private static String detailsSql(int placeholders) {
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < placeholders; i++) {
+            in.append(i == 0 ? "?" : ", ?");
+        }
+        return "SELECT m.id, m.conversation_id, c.title, m.sender, m.timestamp, " +
+                "snippet(messages_fts, 0, ?, ?, '…', " + SNIPPET_TOKENS + ") AS snippet " +
+                "FROM messages_fts " +
+                "JOIN messages m ON m.id = messages_fts.rowid " +
+                "LEFT JOIN conversations c ON c.id = m.conversation_id " +
+                "WHERE messages_fts MATCH ? AND messages_fts.rowid IN (" + in + ")";
+    }
+}
@@ -0,0 +1,252 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.ConnectionPool.PooledConnection;
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+import com.nexuscore.database.DatabaseManager.ConversationSummary;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads messages and conversations without loading them all into memory.
+ * Streams keep a live result set on a borrowed reader connection and read
+ * rows as they are consumed, so walking the whole database runs in constant
+ * memory. Pages use keyset pagination on the row id (ids are assigned in
+ * insert order), so a page deep in a long conversation costs the same as the
+ * first one and uses the (conversation_id, id) index.
+ */
+final class MessageStreams {
+
+    static final int FETCH_SIZE = 256;
+    static final int MAX_PAGE_SIZE = 1000;
+
+    // message_texts decodes contents that are stored in message_bodies
+    private static final String MESSAGE_COLUMNS = "id, conversation_id, timestamp, sender, content";
+
+    private static final String CONVERSATION_MESSAGES_SQL = "SELECT " + MESSAGE_COLUMNS + " FROM message_texts " +
+            "WHERE conversation_id = ? AND id > ? ORDER BY id";
+    private static final String ALL_MESSAGES_SQL = "SELECT " + MESSAGE_COLUMNS + " FROM message_texts " +
+            "WHERE id > ? ORDER BY id";
+    private static final String PAGE_BEFORE_SQL = "SELECT " + MESSAGE_COLUMNS + " FROM message_texts " +
+            "WHERE conversation_id = ? AND id < ? ORDER BY id DESC LIMIT ?";
+    private static final String PAGE_AFTER_SQL = "SELECT " + MESSAGE_COLUMNS + " FROM message_texts " +
+            "WHERE conversation_id = ? AND id > ? ORDER BY id LIMIT ?";
+    // The count only reads the (conversation_id, id) index
+    private static final String CONVERSATIONS_SQL = "SELECT c.id, c.title, c.start_time, " +
+            "(SELECT COUNT(*) FROM messages m WHERE m.conversation_id = c.id) AS message_count " +
+            "FROM conversations c WHERE c.id < ? ORDER BY c.id DESC LIMIT ?";
+
+    /**
+     * Sets the parameters of a statement
+     */
+    interface Binder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    /**
+     * Converts the current row of a result set
+     */
+    interface RowReader<T> {
+        T read(ResultSet rs) throws SQLException;
+    }
+
+    private MessageStreams() {
+    }
+
+    /**
+     * Stream the messages of a conversation in id order
+     *
+     * @param connections    Connection pool of the database
+     * @param conversationId Conversation
+     * @param afterId        Only messages with a larger id (0 for all)
+     * @return Open stream; closing it (or reading it to the end) returns the connection
+     * @throws SQLException If the query cannot be started
+     */
+    static Stream<ConversationMessage> conversationMessages(ConnectionPool connections, int conversationId,
+            long afterId) throws SQLException {
+        return stream(connections, CONVERSATION_MESSAGES_SQL, statement -> {
+            statement.setInt(1, conversationId);
+            statement.setLong(2, afterId);
+        }, MessageStreams::readMessage);
+    }
+
+    /**
+     * Stream every stored message in id order
+     *
+     * @param connections Connection pool of the database
+     * @param afterId     Only messages with a larger id (0 for all)
+     * @return Open stream; closing it (or reading it to the end) returns the connection
+     * @throws SQLException If the query cannot be started
+     */
+    static Stream<ConversationMessage> allMessages(ConnectionPool connections, long afterId) throws SQLException {
+        return stream(connections, ALL_MESSAGES_SQL, statement -> statement.setLong(1, afterId),
+                MessageStreams::readMessage);
+    }
+
+    /**
+     * Read the page of messages that precedes a message
+     *
+     * @param connections    Connection pool of the database
+     * @param conversationId Conversation
+     * @param beforeId       Id of the oldest message already shown, or 0 or less for the newest page
+     * @param limit          Maximum number of messages
+     * @return Messages, oldest first
+     * @throws SQLException If the query fails
+     */
+    static List<ConversationMessage> pageBefore(ConnectionPool connections, int conversationId, long beforeId,
+            int limit) throws SQLException {
+        List<ConversationMessage> messages = page(connections, PAGE_BEFORE_SQL, conversationId,
+                beforeId > 0 ? beforeId : Long.MAX_VALUE, limit);
+        Collections.reverse(messages);
+        return messages;
+    }
+
+    /**
+     * Read the page of messages that follows a message
+     *
+     * @param connections    Connection pool of the database
+     * @param conversationId Conversation
+     * @param afterId        Id of the newest message already shown (0 for the first page)
+     * @param limit          Maximum number of messages
+     * @return Messages, oldest first
+     * @throws SQLException If the query fails
+     */
+    static List<ConversationMessage> pageAfter(ConnectionPool connections, int conversationId, long afterId,
+            int limit) throws SQLException {
+        return page(connections, PAGE_AFTER_SQL, conversationId, afterId, limit);
+    }
+
+    /**
+     * Read a page of conversations, newest first, with their message counts
+     *
+     * @param connections Connection pool of the database
+     * @param beforeId    Id of the last conversation of the previous page, or 0 or less for the first page
+     * @param limit       Maximum number of conversations
+     * @return Conversations, newest first
+     * @throws SQLException If the query fails
+     */
+    static List<ConversationSummary> conversations(ConnectionPool connections, int beforeId, int limit)
+            throws SQLException {
+        return connections.read(db -> {
+            List<ConversationSummary> conversations = new ArrayList<>();
+            PreparedStatement pstmt = db.prepare(CONVERSATIONS_SQL);
+            pstmt.setLong(1, beforeId > 0 ? beforeId : Long.MAX_VALUE);
+            pstmt.setInt(2, pageSize(limit));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    conversations.add(new ConversationSummary(rs.getInt("id"), rs.getString("title"),
+                            rs.getString("start_time"), rs.getInt("message_count")));
+                }
+            }
+            return conversations;
+        });
+    }
+
+    private static List<ConversationMessage> page(ConnectionPool connections, String sql, int conversationId,
+            long boundaryId, int limit) throws SQLException {
+        return connections.read(db -> {
+            List<ConversationMessage> messages = new ArrayList<>();
+            PreparedStatement pstmt = db.prepare(sql);
+            pstmt.setInt(1, conversationId);
+            pstmt.setLong(2, boundaryId);
+            pstmt.setInt(3, pageSize(limit));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(readMessage(rs));
+                }
+            }
+            return messages;
+        });
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(MAX_PAGE_SIZE, limit));
+    }
+
+    private static ConversationMessage readMessage(ResultSet rs) throws SQLException {
+        return new ConversationMessage(rs.getLong("id"), rs.getInt("conversation_id"), rs.getString("sender"),
+                rs.getString("content"), rs.getString("timestamp"));
+    }
+
+    /**
+     * Run a query on a borrowed reader and expose its rows as a stream
+     */
+    static <T> Stream<T> stream(ConnectionPool connections, String sql, Binder binder, RowReader<T> reader)
+            throws SQLException {
+        PooledConnection connection = connections.acquireReader();
+        ResultSet rs;
+        try {
+            PreparedStatement statement = connection.prepare(sql);
+            binder.bind(statement);
+            statement.setFetchSize(FETCH_SIZE);
+            rs = statement.executeQuery();
+        } catch (SQLException | RuntimeException e) {
+            connections.release(connection);
+            throw e;
+        }
+        RowCursor<T> cursor = new RowCursor<>(connections, connection, rs, reader);
+        return StreamSupport.stream(cursor, false).onClose(cursor::close);
+    }
+
+    /**
+     * Spliterator over a live result set; the connection is returned when the
+     * rows are exhausted, reading fails, or the stream is closed
+     */
+    private static final class RowCursor<T> extends Spliterators.AbstractSpliterator<T> {
+        private final ConnectionPool connections;
+        private final PooledConnection connection;
+        private final ResultSet rs;
+        private final RowReader<T> reader;
+        private boolean closed;
+
+        RowCursor(ConnectionPool connections, PooledConnection connection, ResultSet rs, RowReader<T> reader) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.connections = connections;
+            this.connection = connection;
+            this.rs = rs;
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed) {
+                return false;
+            }
+            T row;
+            try {
+                if (!rs.next()) {
+                    close();
+                    return false;
+                }
+                row = reader.read(rs);
+            } catch (SQLException e) {
+                close();
+                throw new IllegalStateException("Failed to read rows: " + e.getMessage(), e);
+            }
+            action.accept(row);
+            return true;
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                rs.close();
+            } catch (SQLException e) {
+                // Already closed
+            }
+            connections.release(connection);
+        }
+    }
+}
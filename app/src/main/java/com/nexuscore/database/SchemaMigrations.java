@@ -0,0 +1,307 @@
+package com.nexuscore.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Versioned schema migrations.
+ * The version of a database is the highest version recorded in the
+ * {@code schema_version} table (0 for a database created before the table
+ * existed). Pending migrations run in version order, each in its own
+ * transaction together with its {@code schema_version} row, so a failed
+ * migration leaves the database at the previous version. New migrations are
+ * appended to {@link #MIGRATIONS}; released ones must never change.
+ */
+final class SchemaMigrations {
+
+    /**
+     * One step of a migration
+     */
+    interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    /**
+     * A numbered migration
+     */
+    static final class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    /**
+     * All migrations, in version order
+     */
+    static final List<Migration> MIGRATIONS = List.of(
+            // Databases from before versioning already have these tables, so this is a no-op for them
+            new Migration(1, "Create conversations, messages and response_cache tables", sql(
+                    "CREATE TABLE IF NOT EXISTS conversations (" +
+                            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            "start_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                            "title TEXT" +
+                            ")",
+                    "CREATE TABLE IF NOT EXISTS messages (" +
+                            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            "conversation_id INTEGER, " +
+                            "timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                            "sender TEXT, " +
+                            "content TEXT, " +
+                            "FOREIGN KEY (conversation_id) REFERENCES conversations(id)" +
+                            ")",
+                    "CREATE TABLE IF NOT EXISTS response_cache (" +
+                            "cache_key TEXT PRIMARY KEY, " +
+                            "model TEXT, " +
+                            "response TEXT, " +
+                            "created_at INTEGER, " +
+                            "last_access INTEGER" +
+                            ")")),
+
+            // History is read per conversation in id order (ids are assigned in insert order,
+            // unlike the one-second timestamps). The index answers both the filter and the
+            // ORDER BY id, so "latest N messages" is a short index range scan instead of a
+            // full table scan plus sort.
+            new Migration(2, "Index messages by conversation and id", sql(
+                    "CREATE INDEX IF NOT EXISTS idx_messages_conversation ON messages (conversation_id, id)")),
+
+            // Cache eviction keeps the most recently used entries
+            new Migration(3, "Index response cache by last access", sql(
+                    "CREATE INDEX IF NOT EXISTS idx_response_cache_last_access ON response_cache (last_access)",
+                    "ANALYZE")),
+
+            // Full-text index over message contents, kept up to date by triggers. It is an
+            // external-content table, so the text itself is stored only once (in messages).
+            // The trigram tokenizer also finds text without word boundaries (Japanese) and
+            // parts of words.
+            new Migration(4, "Add full-text index of messages", sql(
+                    "CREATE VIRTUAL TABLE IF NOT EXISTS messages_fts USING fts5(" +
+                            "content, content = 'messages', content_rowid = 'id', tokenize = 'trigram')",
+                    "CREATE TRIGGER IF NOT EXISTS messages_fts_insert AFTER INSERT ON messages BEGIN " +
+                            "INSERT INTO messages_fts (rowid, content) VALUES (new.id, new.content); " +
+                            "END",
+                    "CREATE TRIGGER IF NOT EXISTS messages_fts_delete AFTER DELETE ON messages BEGIN " +
+                            "INSERT INTO messages_fts (messages_fts, rowid, content) " +
+                            "VALUES ('delete', old.id, old.content); " +
+                            "END",
+                    "CREATE TRIGGER IF NOT EXISTS messages_fts_update AFTER UPDATE OF content ON messages BEGIN " +
+                            "INSERT INTO messages_fts (messages_fts, rowid, content) " +
+                            "VALUES ('delete', old.id, old.content); " +
+                            "INSERT INTO messages_fts (rowid, content) VALUES (new.id, new.content); " +
+                            "END",
+                    // Index the messages that already exist
+                    "INSERT INTO messages_fts (messages_fts) VALUES ('rebuild')")),
+
+            // Embedding vectors of messages for semantic recall, as little-endian float32 blobs
+            new Migration(5, "Add message embeddings", sql(
+                    "CREATE TABLE IF NOT EXISTS message_embeddings (" +
+                            "message_id INTEGER PRIMARY KEY, " +
+                            "model TEXT NOT NULL, " +
+                            "vector BLOB NOT NULL" +
+                            ")",
+                    "CREATE TRIGGER IF NOT EXISTS message_embeddings_delete AFTER DELETE ON messages BEGIN " +
+                            "DELETE FROM message_embeddings WHERE message_id = old.id; " +
+                            "END")),
+
+            // Large contents can be stored once per distinct text, compressed (see MessageBodies).
+            // Such messages have a NULL content and a body_id; the message_texts view returns the
+            // text of every message. The full-text index is recreated on top of the view, and its
+            // delete trigger also removes bodies that no message uses any more.
+            new Migration(6, "Add deduplicated, compressed message bodies", sql(
+                    "CREATE TABLE IF NOT EXISTS message_bodies (" +
+                            "id INTEGER PRIMARY KEY, " +
+                            "hash BLOB NOT NULL UNIQUE, " +
+                            "encoding INTEGER NOT NULL, " +
+                            "size INTEGER NOT NULL, " +
+                            "data BLOB NOT NULL" +
+                            ")",
+                    "ALTER TABLE messages ADD COLUMN body_id INTEGER REFERENCES message_bodies (id)",
+                    "CREATE INDEX IF NOT EXISTS idx_messages_body ON messages (body_id) WHERE body_id IS NOT NULL",
+                    "CREATE VIEW IF NOT EXISTS message_texts AS " +
+                            "SELECT m.id AS id, m.conversation_id AS conversation_id, m.timestamp AS timestamp, " +
+                            "m.sender AS sender, " +
+                            "COALESCE(m.content, " + MessageBodies.TEXT_FUNCTION + "(b.encoding, b.data)) AS content " +
+                            "FROM messages m LEFT JOIN message_bodies b ON b.id = m.body_id",
+                    "DROP TRIGGER IF EXISTS messages_fts_insert",
+                    "DROP TRIGGER IF EXISTS messages_fts_delete",
+                    "DROP TRIGGER IF EXISTS messages_fts_update",
+                    "DROP TABLE IF EXISTS messages_fts",
+                    "CREATE VIRTUAL TABLE messages_fts USING fts5(" +
+                            "content, content = 'message_texts', content_rowid = 'id', tokenize = 'trigram')",
+                    "CREATE TRIGGER messages_fts_insert AFTER INSERT ON messages BEGIN " +
+                            "INSERT INTO messages_fts (rowid, content) " +
+                            "SELECT id, content FROM message_texts WHERE id = new.id; " +
+                            "END",
+                    "CREATE TRIGGER messages_fts_delete AFTER DELETE ON messages BEGIN " +
+                            "INSERT INTO messages_fts (messages_fts, rowid, content) " +
+                            "VALUES ('delete', old.id, " + oldText() + "); " +
+                            "DELETE FROM message_bodies WHERE id = old.body_id " +
+                            "AND NOT EXISTS (SELECT 1 FROM messages WHERE body_id = old.body_id); " +
+                            "END",
+                    "CREATE TRIGGER messages_fts_update AFTER UPDATE OF content, body_id ON messages BEGIN " +
+                            "INSERT INTO messages_fts (messages_fts, rowid, content) " +
+                            "VALUES ('delete', old.id, " + oldText() + "); " +
+                            "INSERT INTO messages_fts (rowid, content) " +
+                            "SELECT id, content FROM message_texts WHERE id = new.id; " +
+                            "DELETE FROM message_bodies WHERE id = old.body_id AND old.body_id IS NOT new.body_id " +
+                            "AND NOT EXISTS (SELECT 1 FROM messages WHERE body_id = old.body_id); " +
+                            "END",
+                    "INSERT INTO messages_fts (messages_fts) VALUES ('rebuild')")),
+
+            // Progress of JSONL imports (see JsonlTransfer), keyed by the export id of the file, and
+            // the conversation ids of unfinished imports (id in the file -> id in this database)
+            new Migration(7, "Add import progress and conversation id mapping", sql(
+                    "CREATE TABLE IF NOT EXISTS import_progress (" +
+                            "source TEXT PRIMARY KEY, " +
+                            "line INTEGER NOT NULL, " +
+                            "conversations INTEGER NOT NULL, " +
+                            "messages INTEGER NOT NULL, " +
+                            "completed INTEGER NOT NULL DEFAULT 0, " +
+                            "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                            ")",
+                    "CREATE TABLE IF NOT EXISTS import_conversations (" +
+                            "source TEXT NOT NULL, " +
+                            "old_id INTEGER NOT NULL, " +
+                            "new_id INTEGER NOT NULL, " +
+                            "PRIMARY KEY (source, old_id)" +
+                            ") WITHOUT ROWID")),
+
+            // Conversations moved to archive files (see ConversationArchive)
+            new Migration(8, "Add catalog of archived conversations", sql(
+                    "CREATE TABLE IF NOT EXISTS archived_conversations (" +
+                            "conversation_id INTEGER PRIMARY KEY, " +
+                            "title TEXT, " +
+                            "start_time TIMESTAMP, " +
+                            "last_activity TIMESTAMP, " +
+                            "message_count INTEGER NOT NULL, " +
+                            "file TEXT NOT NULL, " +
+                            "bytes INTEGER NOT NULL, " +
+                            "archived_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                            ")")),
+
+            // Migration 5 keyed embeddings by message only, so storing a vector of another model
+            // replaced the existing one. Each model now keeps its own vector of a message. The
+            // delete trigger is dropped while the table is replaced and created again afterwards.
+            new Migration(9, "Key message embeddings by message and model", sql(
+                    "DROP TRIGGER IF EXISTS message_embeddings_delete",
+                    "CREATE TABLE message_embeddings_new (" +
+                            "message_id INTEGER NOT NULL, " +
+                            "model TEXT NOT NULL, " +
+                            "vector BLOB NOT NULL, " +
+                            "PRIMARY KEY (message_id, model)" +
+                            ")",
+                    "INSERT INTO message_embeddings_new (message_id, model, vector) " +
+                            "SELECT message_id, model, vector FROM message_embeddings",
+                    "DROP TABLE message_embeddings",
+                    "ALTER TABLE message_embeddings_new RENAME TO message_embeddings",
+                    "CREATE TRIGGER message_embeddings_delete AFTER DELETE ON messages BEGIN " +
+                            "DELETE FROM message_embeddings WHERE message_id = old.id; " +
+                            "END"))
+    );
+
+    /**
+     * Text of the deleted or replaced row in a messages trigger
+     */
+    private static String oldText() {
+        return "COALESCE(old.content, (SELECT " + MessageBodies.TEXT_FUNCTION + "(encoding, data) " +
+                "FROM message_bodies WHERE id = old.body_id))";
+    }
+
+    private SchemaMigrations() {
+    }
+
+    /**
+     * Bring the database up to the latest version
+     *
+     * @param connections Connection pool of the database
+     * @return Schema version after migrating
+     * @throws SQLException If a migration fails (earlier migrations stay applied)
+     */
+    static int migrate(ConnectionPool connections) throws SQLException {
+        return migrate(connections, MIGRATIONS);
+    }
+
+    /**
+     * Apply the given migrations that are newer than the database
+     *
+     * @param connections Connection pool of the database
+     * @param migrations  Migrations in version order
+     * @return Schema version after migrating
+     * @throws SQLException If a migration fails (earlier migrations stay applied)
+     */
+    static int migrate(ConnectionPool connections, List<Migration> migrations) throws SQLException {
+        connections.write(db -> {
+            try (Statement statement = db.getConnection().createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                        "version INTEGER PRIMARY KEY, " +
+                        "description TEXT, " +
+                        "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                        ")");
+            }
+            return null;
+        });
+
+        int version = currentVersion(connections);
+        int latest = migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version;
+        if (version > latest) {
+            System.err.println("Database schema version " + version + " is newer than this application ("
+                    + latest + ")");
+            return version;
+        }
+
+        for (Migration migration : migrations) {
+            if (migration.version <= version) {
+                continue;
+            }
+            connections.transaction(db -> {
+                migration.step.apply(db.getConnection());
+                PreparedStatement record = db.prepare(
+                        "INSERT INTO schema_version (version, description) VALUES (?, ?)");
+                record.setInt(1, migration.version);
+                record.setString(2, migration.description);
+                record.executeUpdate();
+                return null;
+            });
+            version = migration.version;
+            System.out.println("Applied database migration " + migration.version + ": " + migration.description);
+        }
+        return version;
+    }
+
+    /**
+     * Get the schema version of the database
+     *
+     * @param connections Connection pool of the database
+     * @return Highest applied migration, 0 if none
+     * @throws SQLException If the version table cannot be read
+     */
+    static int currentVersion(ConnectionPool connections) throws SQLException {
+        return connections.write(db -> {
+            try (ResultSet rs = db.prepare("SELECT COALESCE(MAX(version), 0) FROM schema_version").executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        });
+    }
+
+    /**
+     * A step that executes the given SQL statements in order
+     */
+    static Step sql(String... statements) {
+        return connection -> {
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : statements) {
+                    statement.execute(sql);
+                }
+            }
+        };
+    }
+}
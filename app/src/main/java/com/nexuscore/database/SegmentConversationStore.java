@@ -0,0 +1,531 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+import com.nexuscore.database.DatabaseManager.ConversationSummary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Conversation store on append-only, memory-mapped segment files.
+ * <p>
+ * Records are appended to {@code segment-NNNNNN.log} files of a fixed size; a
+ * record that does not fit starts the next segment. Each record is
+ * {@code [int length][int CRC32C][body]}; a zero length marks the end of the
+ * written data and a length of -1 the end of a full segment. Conversation and
+ * message ids are the sequence numbers of their records, so they are not
+ * stored. The positions of all messages and the message ids of every
+ * conversation are kept in memory and rebuilt by scanning the segments on
+ * open; a torn or corrupt record at the tail (crash while writing) is discarded.
+ * <p>
+ * Appends copy an already encoded record into the mapped segment under a
+ * short write lock, and reads decode records straight from the mapping, so
+ * there is no write-behind queue: an append is visible to readers as soon as
+ * it returns. {@link #flushMessages()} forces the written segments to disk.
+ * There is no search, cache or semantic memory; use {@link DatabaseManager}
+ * for those.
+ */
+public class SegmentConversationStore implements ConversationStore {
+
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int HEADER_BYTES = 8; // length + CRC32C
+    private static final int CONTINUED = -1; // Length marking that the log continues in the next segment
+    private static final byte CONVERSATION_RECORD = 1;
+    private static final byte MESSAGE_RECORD = 2;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{6})\\.log");
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneOffset.UTC);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private int writePosition; // in the last segment
+    private int firstUnflushedSegment;
+    private long[] positions = new long[1024]; // message id - 1 -> segment << 32 | offset
+    private int messageCount;
+    private final List<Conversation> conversations = new ArrayList<>(); // conversation id - 1
+    private boolean closed;
+
+    /**
+     * Open (or create) a store in a directory
+     *
+     * @param directory Directory of the segment files
+     * @throws IOException If the segments cannot be created or mapped
+     */
+    public SegmentConversationStore(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open a store with a specific segment size (small sizes for tests)
+     */
+    SegmentConversationStore(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        recover();
+        if (segments.isEmpty()) {
+            segments.add(map(0, segmentSize));
+        }
+        firstUnflushedSegment = segments.size() - 1;
+        System.out.println("Opened segment store " + directory + " (" + conversations.size()
+                + " conversations, " + messageCount + " messages, " + segments.size() + " segments)");
+    }
+
+    /**
+     * Map the existing segments and rebuild the index up to the first invalid record
+     */
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> SEGMENT_NAME.matcher(path.getFileName().toString()).matches())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (int i = 0; i < files.size(); i++) {
+            Matcher matcher = SEGMENT_NAME.matcher(files.get(i).getFileName().toString());
+            matcher.matches();
+            if (Integer.parseInt(matcher.group(1)) != i) {
+                // A gap in the numbering: nothing after it can be trusted
+                dropSegments(files.subList(i, files.size()));
+                return;
+            }
+            MappedByteBuffer segment = map(i, (int) Math.min(Integer.MAX_VALUE, Files.size(files.get(i))));
+            segments.add(segment);
+            int end = replay(i, segment);
+            if (end >= 0) {
+                writePosition = end;
+                dropSegments(files.subList(i + 1, files.size()));
+                return;
+            }
+        }
+        // Every segment is full up to its end; the next append starts a new one
+        writePosition = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).capacity();
+    }
+
+    /**
+     * Index the records of a segment
+     *
+     * @return Position after the last valid record, or -1 if the segment was filled to the end
+     */
+    private int replay(int segmentIndex, MappedByteBuffer segment) {
+        int position = 0;
+        int capacity = segment.capacity();
+        while (position + HEADER_BYTES <= capacity) {
+            int length = segment.getInt(position);
+            if (length == 0) {
+                return position;
+            }
+            if (length == CONTINUED) {
+                return -1;
+            }
+            if (length < 0 || length > capacity - position - HEADER_BYTES
+                    || segment.getInt(position + 4) != checksum(segment, position + HEADER_BYTES, length)
+                    || !index(segmentIndex, position, segment)) {
+                System.err.println("Discarding torn record at " + segmentIndex + ":" + position);
+                int end = length > 0 && length <= capacity - position - HEADER_BYTES
+                        ? position + HEADER_BYTES + length : Math.min(capacity, position + HEADER_BYTES);
+                for (int i = position; i < end; i++) {
+                    segment.put(i, (byte) 0);
+                }
+                segment.force();
+                return position;
+            }
+            position += HEADER_BYTES + length;
+        }
+        // Too little space left for a record: the log continues in the next segment
+        return -1;
+    }
+
+    /**
+     * Add a replayed record to the index
+     *
+     * @return false if the record is not valid
+     */
+    private boolean index(int segmentIndex, int position, MappedByteBuffer segment) {
+        int body = position + HEADER_BYTES;
+        byte type = segment.get(body);
+        if (type == CONVERSATION_RECORD) {
+            long startMillis = segment.getLong(body + 1);
+            String title = readString(segment, body + 9);
+            conversations.add(new Conversation(title, startMillis));
+            return true;
+        }
+        if (type == MESSAGE_RECORD) {
+            int conversationId = segment.getInt(body + 1);
+            if (conversationId < 1 || conversationId > conversations.size()) {
+                return false;
+            }
+            addMessage(conversationId, (long) segmentIndex << 32 | position);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Delete segment files that follow the end of the valid data
+     */
+    private void dropSegments(List<Path> files) throws IOException {
+        for (Path file : files) {
+            System.err.println("Removing segment after the end of the log: " + file.getFileName());
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Map a segment file, creating it if it does not exist
+     */
+    private MappedByteBuffer map(int segmentIndex, int size) throws IOException {
+        Path file = directory.resolve(String.format("segment-%06d.log", segmentIndex));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    @Override
+    public int createConversation(String title) {
+        long startMillis = System.currentTimeMillis();
+        byte[] record = encode(CONVERSATION_RECORD, 0, startMillis, title, null);
+        lock.writeLock().lock();
+        try {
+            append(record);
+            conversations.add(new Conversation(title, startMillis));
+            return conversations.size();
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            System.err.println("Failed to create conversation: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return -1;
+    }
+
+    @Override
+    public void saveMessage(int conversationId, String sender, String content) {
+        saveMessageAsync(conversationId, sender, content);
+    }
+
+    /**
+     * Append a message. The message is written before this method returns;
+     * {@link #flushMessages()} makes it durable.
+     */
+    @Override
+    public CompletableFuture<Long> saveMessageAsync(int conversationId, String sender, String content) {
+        byte[] record = encode(MESSAGE_RECORD, conversationId, System.currentTimeMillis(), sender, content);
+        lock.writeLock().lock();
+        try {
+            if (conversationId < 1 || conversationId > conversations.size()) {
+                throw new IllegalArgumentException("Unknown conversation " + conversationId);
+            }
+            append(record);
+            int segmentIndex = segments.size() - 1;
+            addMessage(conversationId, (long) segmentIndex << 32 | (writePosition - record.length));
+            return CompletableFuture.completedFuture((long) messageCount);
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            System.err.println("Failed to save message: " + e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Force the segments written since the last flush to disk
+     */
+    @Override
+    public CompletableFuture<Long> flushMessages() {
+        List<MappedByteBuffer> dirty;
+        long lastId;
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return CompletableFuture.completedFuture((long) messageCount);
+            }
+            dirty = new ArrayList<>(segments.subList(firstUnflushedSegment, segments.size()));
+            firstUnflushedSegment = segments.size() - 1;
+            lastId = messageCount;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Appends continue while the pages are written
+        for (MappedByteBuffer segment : dirty) {
+            segment.force();
+        }
+        return CompletableFuture.completedFuture(lastId);
+    }
+
+    @Override
+    public List<ConversationMessage> getConversationHistory(int conversationId, int limit) {
+        return getMessagesBefore(conversationId, 0, limit);
+    }
+
+    @Override
+    public List<ConversationMessage> getMessagesBefore(int conversationId, long beforeId, int limit) {
+        List<ConversationMessage> messages = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Conversation conversation = conversation(conversationId);
+            if (conversation == null) {
+                return messages;
+            }
+            int end = beforeId > 0 ? conversation.indexOf(beforeId) : conversation.size;
+            int start = Math.max(0, end - Math.max(1, Math.min(MessageStreams.MAX_PAGE_SIZE, limit)));
+            for (int i = start; i < end; i++) {
+                messages.add(read(conversation.ids[i]));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return messages;
+    }
+
+    /**
+     * Iterate over the messages of a conversation. The message ids are copied
+     * when the stream is created; the messages are read as the stream is consumed.
+     */
+    @Override
+    public Stream<ConversationMessage> streamMessages(int conversationId, long afterId) {
+        long[] ids;
+        lock.readLock().lock();
+        try {
+            Conversation conversation = conversation(conversationId);
+            if (conversation == null) {
+                return Stream.empty();
+            }
+            int from = conversation.indexOf(afterId + 1);
+            ids = Arrays.copyOfRange(conversation.ids, from, conversation.size);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return Arrays.stream(ids).mapToObj(this::readLocked);
+    }
+
+    /**
+     * Iterate over every message appended before the stream was created
+     */
+    @Override
+    public Stream<ConversationMessage> streamAllMessages(long afterId) {
+        long last;
+        lock.readLock().lock();
+        try {
+            last = messageCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+        return LongStream.rangeClosed(Math.max(1, afterId + 1), last).mapToObj(this::readLocked);
+    }
+
+    @Override
+    public List<ConversationSummary> getConversations(int beforeId, int limit) {
+        List<ConversationSummary> page = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int id = beforeId > 0 ? Math.min(beforeId - 1, conversations.size()) : conversations.size();
+            int size = Math.max(1, Math.min(MessageStreams.MAX_PAGE_SIZE, limit));
+            for (; id >= 1 && page.size() < size; id--) {
+                Conversation conversation = conversations.get(id - 1);
+                page.add(new ConversationSummary(id, conversation.title,
+                        TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(conversation.startMillis)), conversation.size));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return page;
+    }
+
+    /**
+     * Number of segment files in use
+     */
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void closeConnection() {
+        flushMessages();
+        lock.writeLock().lock();
+        try {
+            if (!closed) {
+                closed = true;
+                System.out.println("Segment store closed (" + messageCount + " messages)");
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copy a record to the end of the log, starting a new segment if it does not fit
+     * (caller holds the write lock)
+     */
+    private void append(byte[] record) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Segment store is closed");
+        }
+        if (record.length > segmentSize) {
+            throw new IllegalArgumentException("Record of " + record.length + " bytes does not fit in a segment");
+        }
+        MappedByteBuffer segment = segments.get(segments.size() - 1);
+        if (record.length > segment.capacity() - writePosition) {
+            if (segment.capacity() - writePosition >= HEADER_BYTES) {
+                segment.putInt(writePosition, CONTINUED);
+            }
+            segment = map(segments.size(), segmentSize);
+            segments.add(segment);
+            writePosition = 0;
+        }
+        segment.put(writePosition, record);
+        writePosition += record.length;
+    }
+
+    /**
+     * Record the position of a new message (caller holds the write lock)
+     */
+    private void addMessage(int conversationId, long position) {
+        if (messageCount == positions.length) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+        }
+        positions[messageCount++] = position;
+        conversations.get(conversationId - 1).add(messageCount);
+    }
+
+    /**
+     * Get a conversation by id (caller holds the lock), or null
+     */
+    private Conversation conversation(int conversationId) {
+        return conversationId >= 1 && conversationId <= conversations.size()
+                ? conversations.get(conversationId - 1) : null;
+    }
+
+    /**
+     * Read a message, taking the read lock
+     */
+    private ConversationMessage readLocked(long id) {
+        lock.readLock().lock();
+        try {
+            return read(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Decode a message record (caller holds the lock)
+     */
+    private ConversationMessage read(long id) {
+        long position = positions[(int) (id - 1)];
+        MappedByteBuffer segment = segments.get((int) (position >>> 32));
+        int body = (int) position + HEADER_BYTES + 1;
+        int conversationId = segment.getInt(body);
+        long timestamp = segment.getLong(body + 4);
+        String sender = readString(segment, body + 12);
+        int contentAt = body + 12 + 4 + Math.max(0, segment.getInt(body + 12));
+        return new ConversationMessage(id, conversationId, sender, readString(segment, contentAt),
+                TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(timestamp)));
+    }
+
+    /**
+     * Encode a complete record, header included.
+     * Conversation: type, start time, title. Message: type, conversation id, time, sender, content.
+     */
+    static byte[] encode(byte type, int conversationId, long millis, String first, String second) {
+        byte[] firstBytes = first != null ? first.getBytes(StandardCharsets.UTF_8) : null;
+        byte[] secondBytes = second != null ? second.getBytes(StandardCharsets.UTF_8) : null;
+        int length = 1 + (type == MESSAGE_RECORD ? 4 : 0) + 8 + 4 + (firstBytes != null ? firstBytes.length : 0)
+                + (type == MESSAGE_RECORD ? 4 + (secondBytes != null ? secondBytes.length : 0) : 0);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + length);
+        buffer.putInt(length).putInt(0).put(type);
+        if (type == MESSAGE_RECORD) {
+            buffer.putInt(conversationId);
+        }
+        buffer.putLong(millis);
+        putString(buffer, firstBytes);
+        if (type == MESSAGE_RECORD) {
+            putString(buffer, secondBytes);
+        }
+        buffer.putInt(4, checksum(buffer, HEADER_BYTES, length));
+        return buffer.array();
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int position) {
+        int length = buffer.getInt(position);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(ByteBuffer buffer, int position, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().limit(position + length).position(position));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Index entry of a conversation: its message ids in append order
+     */
+    private static class Conversation {
+        final String title;
+        final long startMillis;
+        long[] ids = new long[8];
+        int size;
+
+        Conversation(String title, long startMillis) {
+            this.title = title;
+            this.startMillis = startMillis;
+        }
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        /**
+         * Index of the first message with an id of at least the given one
+         */
+        int indexOf(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.nexuscore.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind queue for message inserts.
+ * Callers enqueue and return immediately; a single writer thread collects
+ * pending messages and writes them in one transaction per flush. A flush
+ * happens when {@code maxBatchSize} messages are waiting or
+ * {@code maxDelayMillis} after the first message of a batch arrived,
+ * whichever comes first, or right away when a reader asks for it
+ * ({@link #flush}).
+ */
+class WriteBehindQueue {
+
+    static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    static final long DEFAULT_MAX_DELAY_MILLIS = 50;
+
+    /**
+     * Writes a batch of messages in one transaction
+     */
+    interface BatchWriter {
+        /**
+         * @param batch Messages to insert, in enqueue order
+         * @return Row IDs of the inserted messages, in the same order
+         * @throws Exception If the transaction failed (nothing was written)
+         */
+        long[] write(List<PendingMessage> batch) throws Exception;
+    }
+
+    private static final PendingMessage CLOSE = new PendingMessage(0, null, null);
+    private static final PendingMessage FLUSH = new PendingMessage(0, null, null);
+
+    private final BatchWriter writer;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+    private final BlockingQueue<PendingMessage> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile CompletableFuture<Long> lastEnqueued = CompletableFuture.completedFuture(0L);
+    // Last queued message of each conversation that still has messages waiting (guarded by this)
+    private final Map<Integer, CompletableFuture<Long>> lastEnqueuedByConversation = new HashMap<>();
+
+    private final AtomicLong messagesWritten = new AtomicLong();
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong failedMessages = new AtomicLong();
+
+    /**
+     * Constructor; starts the writer thread
+     *
+     * @param writer         Performs the actual inserts
+     * @param maxBatchSize   Messages per transaction at most
+     * @param maxDelayMillis Longest time a message waits before its batch is written
+     */
+    WriteBehindQueue(BatchWriter writer, int maxBatchSize, long maxDelayMillis) {
+        this.writer = writer;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxDelayMillis = Math.max(0, maxDelayMillis);
+        this.thread = new Thread(this::run, "nexus-db-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queue a message for writing
+     *
+     * @return Future completed with the row ID once the message is committed
+     */
+    CompletableFuture<Long> enqueue(int conversationId, String sender, String content) {
+        PendingMessage message = new PendingMessage(conversationId, sender, content);
+        synchronized (this) {
+            if (closed) {
+                message.done.completeExceptionally(new IllegalStateException("Database writer is closed"));
+                return message.done;
+            }
+            lastEnqueued = message.done;
+            lastEnqueuedByConversation.put(conversationId, message.done);
+            queue.add(message);
+        }
+        return message.done;
+    }
+
+    /**
+     * Future completed once every message queued so far is committed (or failed)
+     *
+     * @return Future of the most recently queued message
+     */
+    CompletableFuture<Long> flushed() {
+        return lastEnqueued;
+    }
+
+    /**
+     * Write the messages queued so far without waiting for the batch delay
+     *
+     * @return Future completed once every message queued so far is committed (or failed)
+     */
+    CompletableFuture<Long> flush() {
+        synchronized (this) {
+            if (!closed && !lastEnqueued.isDone()) {
+                queue.add(FLUSH);
+            }
+            return lastEnqueued;
+        }
+    }
+
+    /**
+     * Write the queued messages of one conversation without waiting for the
+     * batch delay. Nothing is flushed if the conversation has no queued messages.
+     *
+     * @param conversationId Conversation
+     * @return Future completed once the messages of the conversation queued so far are committed (or failed)
+     */
+    CompletableFuture<Long> flush(int conversationId) {
+        synchronized (this) {
+            CompletableFuture<Long> last = lastEnqueuedByConversation.get(conversationId);
+            if (last == null) {
+                return CompletableFuture.completedFuture(0L);
+            }
+            if (!closed && !last.isDone()) {
+                queue.add(FLUSH);
+            }
+            return last;
+        }
+    }
+
+    /**
+     * Write everything still queued and stop the writer thread
+     *
+     * @param timeoutMillis How long to wait for the queue to drain
+     * @return true if the queue was fully drained
+     */
+    boolean close(long timeoutMillis) {
+        synchronized (this) {
+            if (closed) {
+                return !thread.isAlive();
+            }
+            closed = true;
+            queue.add(CLOSE);
+        }
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !thread.isAlive();
+    }
+
+    /**
+     * Messages waiting to be written
+     */
+    int getPendingCount() {
+        return queue.size();
+    }
+
+    long getMessagesWritten() {
+        return messagesWritten.get();
+    }
+
+    long getTransactions() {
+        return transactions.get();
+    }
+
+    long getFailedMessages() {
+        return failedMessages.get();
+    }
+
+    private void run() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                PendingMessage first = queue.take();
+                if (first == CLOSE) {
+                    break;
+                }
+                if (first == FLUSH) {
+                    continue; // Its messages were already written
+                }
+                batch.add(first);
+
+                // Collect more messages until the batch is full or the delay has passed
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingMessage next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == CLOSE) {
+                        stopping = true;
+                        break;
+                    }
+                    if (next == FLUSH) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                stopping = true; // Write what we have, then stop
+            }
+
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+
+        // Drain anything left after the close marker was seen early
+        List<PendingMessage> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        rest.removeIf(message -> message == CLOSE || message == FLUSH);
+        for (int i = 0; i < rest.size(); i += maxBatchSize) {
+            writeBatch(rest.subList(i, Math.min(rest.size(), i + maxBatchSize)));
+        }
+    }
+
+    private void writeBatch(List<PendingMessage> batch) {
+        try {
+            long[] ids = writer.write(batch);
+            transactions.incrementAndGet();
+            messagesWritten.addAndGet(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).done.complete(ids != null && i < ids.length ? ids[i] : -1L);
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to save " + batch.size() + " messages: " + e.getMessage());
+            failedMessages.addAndGet(batch.size());
+            for (PendingMessage message : batch) {
+                message.done.completeExceptionally(e);
+            }
+        }
+        synchronized (this) {
+            // Messages are written in order, so a conversation has nothing left once its last message is done
+            for (PendingMessage message : batch) {
+                lastEnqueuedByConversation.remove(message.conversationId, message.done);
+            }
+        }
+    }
+
+    /**
+     * A message waiting to be written
+     */
+    static final class PendingMessage {
+        final int conversationId;
+        final String sender;
+        final String content;
+        final CompletableFuture<Long> done = new CompletableFuture<>();
+
+        PendingMessage(int conversationId, String sender, String content) {
+            this.conversationId = conversationId;
+            this.sender = sender;
+            this.content = content;
+        }
+    }
+}
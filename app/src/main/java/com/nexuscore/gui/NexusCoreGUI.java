@@ -23,9 +23,11 @@ public class NexusCoreGUI extends Application {
 
             // Get controller reference for later access
             controller = loader.getController();
+            controller.setCompactStorage(getParameters().getRaw().contains("--compact-storage"));
+            controller.configureMaintenance(getParameters().getRaw());
 
             // Load CSS
-            Scene scene = new Scene(root, 800, 600);
+            Scene scene = new Scene(root, 1000, 600);
             scene.getStylesheets().add(getClass().getResource("/css/styles.css").toExternalForm());
 
             // Configure stage
@@ -0,0 +1,343 @@
+package com.nexuscore.gui;
+
+import com.nexuscore.gui.components.ChatMessage;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Applies UI updates once per frame on the JavaFX thread.
+ * <p>
+ * Background threads (token streams, database loads) queue updates here
+ * instead of calling {@link Platform#runLater} for each one. An
+ * {@link AnimationTimer} runs only while updates are pending and applies them
+ * in order at the next pulse:
+ * <ul>
+ * <li>text appended to the same message is merged into one text change per
+ * frame, as long as no other update was queued after it</li>
+ * <li>scroll-to-bottom requests are merged into one scroll at the end of the
+ * frame</li>
+ * <li>a frame stops after {@link #FRAME_BUDGET_NANOS}; the rest waits for the
+ * next frame, so a burst never blocks rendering or input</li>
+ * </ul>
+ * All methods except {@link #flush()} may be called from any thread.
+ */
+public class UiUpdateDispatcher {
+
+    static final long FRAME_BUDGET_NANOS = 8_000_000; // Half of a 60 Hz frame
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Object> queue = new ArrayDeque<>(); // Runnable or TextAppend, in order
+    private final Map<ChatMessage, TextAppend> openAppends = new HashMap<>(); // Appends nothing was queued after
+    private final Runnable scrollAction;
+    private final Executor fxExecutor; // Starts the timer on the JavaFX thread
+    private AnimationTimer timer; // Created when first started (needs the JavaFX toolkit)
+
+    // Guarded by lock
+    private boolean scrollRequested;
+    private boolean running; // Timer started or about to start
+    private int maxQueued;
+    private long posted;
+    private long textAppends;
+    private long mergedAppends;
+    private long frames;
+    private long framesOverBudget;
+    private long totalFrameNanos;
+    private long maxFrameNanos;
+
+    /**
+     * Create a dispatcher
+     *
+     * @param scrollAction Scrolls the transcript to the bottom (run on the JavaFX thread)
+     */
+    public UiUpdateDispatcher(Runnable scrollAction) {
+        this(scrollAction, Platform::runLater);
+    }
+
+    /**
+     * Create a dispatcher that starts its timer through a specific executor (tests)
+     */
+    UiUpdateDispatcher(Runnable scrollAction, Executor fxExecutor) {
+        this.scrollAction = scrollAction;
+        this.fxExecutor = fxExecutor;
+    }
+
+    /**
+     * Queue an update, such as adding or removing a message
+     *
+     * @param update Runs on the JavaFX thread after the updates queued before it
+     */
+    public void post(Runnable update) {
+        boolean start;
+        synchronized (lock) {
+            queue.add(update);
+            openAppends.clear(); // Later appends must not move before this update
+            posted++;
+            maxQueued = Math.max(maxQueued, queue.size());
+            start = wake();
+        }
+        startIfNeeded(start);
+    }
+
+    /**
+     * Queue text to append to a message. Text is only appended while the
+     * message is streaming, so chunks that arrive after it was finished or
+     * stopped are dropped.
+     *
+     * @param target Message being streamed
+     * @param text   Text to append
+     */
+    public void appendText(ChatMessage target, String text) {
+        boolean start;
+        synchronized (lock) {
+            textAppends++;
+            TextAppend append = openAppends.get(target);
+            if (append != null) {
+                append.text.append(text);
+                mergedAppends++;
+            } else {
+                append = new TextAppend(target, text);
+                queue.add(append);
+                openAppends.put(target, append);
+                maxQueued = Math.max(maxQueued, queue.size());
+            }
+            start = wake();
+        }
+        startIfNeeded(start);
+    }
+
+    /**
+     * Scroll to the bottom at the end of the next frame
+     */
+    public void requestScrollToBottom() {
+        boolean start;
+        synchronized (lock) {
+            scrollRequested = true;
+            start = wake();
+        }
+        startIfNeeded(start);
+    }
+
+    /**
+     * Apply every pending update now (JavaFX thread), e.g. before the
+     * transcript is replaced or a generation is stopped
+     */
+    public void flush() {
+        runFrame(Long.MAX_VALUE);
+    }
+
+    /**
+     * Get a snapshot of queue depth and frame times
+     *
+     * @return Current statistics
+     */
+    public Stats getStats() {
+        synchronized (lock) {
+            return new Stats(queue.size(), maxQueued, posted, textAppends, mergedAppends, frames, framesOverBudget,
+                    frames == 0 ? 0 : totalFrameNanos / frames / 1000, maxFrameNanos / 1000);
+        }
+    }
+
+    /**
+     * Mark the timer as running (caller holds the lock)
+     *
+     * @return true if the timer has to be started
+     */
+    private boolean wake() {
+        if (running) {
+            return false;
+        }
+        running = true;
+        return true;
+    }
+
+    private void startIfNeeded(boolean start) {
+        if (start) {
+            fxExecutor.execute(this::startTimer);
+        }
+    }
+
+    /**
+     * Start the frame timer (JavaFX thread)
+     */
+    private void startTimer() {
+        if (timer == null) {
+            timer = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    runFrame(FRAME_BUDGET_NANOS);
+                }
+            };
+        }
+        timer.start();
+    }
+
+    /**
+     * Apply pending updates until the queue is empty or the budget is used up,
+     * then scroll once if requested (JavaFX thread)
+     *
+     * @param budgetNanos Longest time to spend on updates
+     */
+    void runFrame(long budgetNanos) {
+        long start = System.nanoTime();
+        boolean overBudget = false;
+        while (true) {
+            Object update;
+            synchronized (lock) {
+                update = queue.poll();
+                if (update instanceof TextAppend) {
+                    openAppends.remove(((TextAppend) update).target, update);
+                }
+            }
+            if (update == null) {
+                break;
+            }
+            apply(update);
+            if (System.nanoTime() - start > budgetNanos) {
+                overBudget = true;
+                break;
+            }
+        }
+
+        boolean scroll;
+        synchronized (lock) {
+            scroll = scrollRequested;
+            scrollRequested = false;
+        }
+        if (scroll) {
+            scrollAction.run();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        boolean stop;
+        synchronized (lock) {
+            frames++;
+            totalFrameNanos += elapsed;
+            maxFrameNanos = Math.max(maxFrameNanos, elapsed);
+            if (overBudget) {
+                framesOverBudget++;
+            }
+            // Nothing left: stop until the next update (an idle timer would keep pulses running)
+            stop = queue.isEmpty() && !scrollRequested;
+            if (stop) {
+                running = false;
+            }
+        }
+        if (stop && timer != null) {
+            timer.stop();
+        }
+    }
+
+    private static void apply(Object update) {
+        try {
+            if (update instanceof TextAppend) {
+                TextAppend append = (TextAppend) update;
+                if (append.target.isStreaming()) {
+                    append.target.appendText(append.text.toString());
+                }
+            } else {
+                ((Runnable) update).run();
+            }
+        } catch (RuntimeException e) {
+            System.err.println("UI update failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Text waiting to be appended to a message
+     */
+    private static class TextAppend {
+        final ChatMessage target;
+        final StringBuilder text;
+
+        TextAppend(ChatMessage target, String text) {
+            this.target = target;
+            this.text = new StringBuilder(text);
+        }
+    }
+
+    /**
+     * Snapshot of the dispatcher's queue and frame statistics
+     */
+    public static class Stats {
+        private final int queued;
+        private final int maxQueued;
+        private final long posted;
+        private final long textAppends;
+        private final long mergedAppends;
+        private final long frames;
+        private final long framesOverBudget;
+        private final long averageFrameMicros;
+        private final long maxFrameMicros;
+
+        public Stats(int queued, int maxQueued, long posted, long textAppends, long mergedAppends, long frames,
+                long framesOverBudget, long averageFrameMicros, long maxFrameMicros) {
+            this.queued = queued;
+            this.maxQueued = maxQueued;
+            this.posted = posted;
+            this.textAppends = textAppends;
+            this.mergedAppends = mergedAppends;
+            this.frames = frames;
+            this.framesOverBudget = framesOverBudget;
+            this.averageFrameMicros = averageFrameMicros;
+            this.maxFrameMicros = maxFrameMicros;
+        }
+
+        /** Updates waiting for the next frame */
+        public int getQueued() {
+            return queued;
+        }
+
+        /** Largest number of updates that were waiting at once */
+        public int getMaxQueued() {
+            return maxQueued;
+        }
+
+        /** Updates queued with {@link UiUpdateDispatcher#post} */
+        public long getPosted() {
+            return posted;
+        }
+
+        /** Calls of {@link UiUpdateDispatcher#appendText} */
+        public long getTextAppends() {
+            return textAppends;
+        }
+
+        /** Appends merged into an earlier pending append (saved text changes) */
+        public long getMergedAppends() {
+            return mergedAppends;
+        }
+
+        /** Frames that applied updates */
+        public long getFrames() {
+            return frames;
+        }
+
+        /** Frames that stopped at the time budget and left updates for the next frame */
+        public long getFramesOverBudget() {
+            return framesOverBudget;
+        }
+
+        /** Average time a frame spent applying updates */
+        public long getAverageFrameMicros() {
+            return averageFrameMicros;
+        }
+
+        /** Longest time a frame spent applying updates */
+        public long getMaxFrameMicros() {
+            return maxFrameMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "queued=" + queued + ", maxQueued=" + maxQueued + ", posted=" + posted
+                    + ", textAppends=" + textAppends + ", merged=" + mergedAppends + ", frames=" + frames
+                    + ", overBudget=" + framesOverBudget + ", avgFrameUs=" + averageFrameMicros
+                    + ", maxFrameUs=" + maxFrameMicros;
+        }
+    }
+}
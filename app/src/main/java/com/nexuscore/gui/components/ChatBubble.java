@@ -1,86 +1,195 @@
 package com.nexuscore.gui.components;
 
+import com.nexuscore.gui.markdown.RenderedMarkdown;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.control.Label;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.VBox;
-import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 /**
  * モダンなデザインのチャットバブルコンポーネント
+ * <p>
+ * フォントと余白は全バブルで共有し、色と背景はスタイルシート（styles.css）の
+ * スタイルクラスで指定する。インラインスタイルを使わないため、バブルごとの
+ * CSSの解析が発生しない。
+ * <p>
+ * 本文はMarkdownの描画結果（{@link RenderedMarkdown}）があればそのノードを、
+ * なければテキストのラベルを表示する。
  */
 public class ChatBubble extends HBox {
 
     private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
 
+    // 全バブルで共有（Font.fontの呼び出しはフォントの検索を伴う）
+    private static final Font SENDER_FONT = Font.font("Segoe UI", FontWeight.BOLD, 12);
+    private static final Font TIME_FONT = Font.font("Segoe UI", 10);
+    private static final Font MESSAGE_FONT = Font.font("Segoe UI", 14);
+    private static final Insets BOX_PADDING = new Insets(10);
+    private static final Insets BUBBLE_PADDING = new Insets(5, 20, 5, 20); // 左右の余白を増やす
+
+    // スタイルクラス（styles.css）
+    private static final String USER_BOX_CLASS = "user-message-box";
+    private static final String SYSTEM_BOX_CLASS = "system-message-box";
+
+    private final VBox messageBox;
+    private final Label senderLabel;
+    private final Label timeLabel;
+    private final Label messageLabel;
+    private final VBox markdownBox; // Markdownとして描画した本文（ブロックごとのノード）
+    private RenderedMarkdown rendered; // 表示中の描画結果（テキスト表示の場合はnull）
+    private Boolean user; // 現在のスタイル（未設定の場合はnull）
+
     /**
      * チャットバブルを作成
-     * 
+     *
      * @param sender  送信者名
      * @param message メッセージ内容
      * @param isUser  ユーザーからのメッセージかどうか（スタイリングと配置に影響）
      */
     public ChatBubble(String sender, String message, boolean isUser) {
-        super(10); // 子要素間の水平方向の間隔
+        this();
+        update(sender, message, isUser, LocalDateTime.now().format(TIME_FORMATTER));
+    }
 
-        // 基本設定
-        if (isUser) {
-            this.setAlignment(Pos.CENTER_RIGHT);
-        } else {
-            this.setAlignment(Pos.CENTER_LEFT);
-        }
+    /**
+     * 空のチャットバブルを作成（リストのセルで再利用し、{@link #update}で内容を設定）
+     */
+    public ChatBubble() {
+        super(10); // 子要素間の水平方向の間隔
+        getStyleClass().add("chat-bubble");
 
         // メッセージコンテナ
-        VBox messageBox = new VBox(5);
+        messageBox = new VBox(5);
         messageBox.setMaxWidth(500); // 最大幅
 
         // 送信者名とタイムスタンプのヘッダー
-        HBox header = new HBox(5);
-
-        Label senderLabel = new Label(sender);
-        senderLabel.setFont(Font.font("Segoe UI", FontWeight.BOLD, 12));
+        senderLabel = new Label();
+        senderLabel.setFont(SENDER_FONT);
+        senderLabel.getStyleClass().add("chat-sender");
 
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
 
-        Label timeLabel = new Label(LocalDateTime.now().format(TIME_FORMATTER));
-        timeLabel.setFont(Font.font("Segoe UI", 10));
-        timeLabel.setTextFill(Color.GRAY);
+        timeLabel = new Label();
+        timeLabel.setFont(TIME_FONT);
+        timeLabel.getStyleClass().add("chat-time");
 
-        header.getChildren().addAll(senderLabel, spacer, timeLabel);
+        HBox header = new HBox(5, senderLabel, spacer, timeLabel);
 
         // メッセージの本文
-        Label messageLabel = new Label(message);
+        messageLabel = new Label();
         messageLabel.setWrapText(true);
-        messageLabel.setFont(Font.font("Segoe UI", 14));
-        // 文字色を黒に設定
-        messageLabel.setTextFill(Color.BLACK);
+        messageLabel.setFont(MESSAGE_FONT);
+        messageLabel.getStyleClass().add("chat-text");
         messageLabel.setMaxWidth(480);
 
+        markdownBox = new VBox(6);
+        markdownBox.setMaxWidth(480);
+        markdownBox.getStyleClass().add("chat-markdown");
+
         // コンポーネントをメッセージボックスに追加
         messageBox.getChildren().addAll(header, messageLabel);
-        messageBox.setPadding(new Insets(10));
-
-        // 送信者に基づいてスタイリングとレイアウト
-        if (isUser) {
-            // ユーザーメッセージ（右寄せ）
-            messageBox.setStyle("-fx-background-color: #e3f2fd; -fx-background-radius: 15px 2px 15px 15px;");
-            senderLabel.setTextFill(Color.web("#0277bd"));
-        } else {
-            // システムメッセージ（左寄せ）
-            messageBox.setStyle("-fx-background-color: #f5f5f5; -fx-background-radius: 2px 15px 15px 15px;");
-            senderLabel.setTextFill(Color.web("#2c3e50"));
-        }
+        messageBox.setPadding(BOX_PADDING);
 
         this.getChildren().add(messageBox);
-        this.setPadding(new Insets(5, 20, 5, 20)); // 左右の余白を増やす
+        this.setPadding(BUBBLE_PADDING);
+    }
+
+    /**
+     * 表示する内容を設定（セルの再利用時にノードを作り直さずに呼ぶ）
+     *
+     * @param sender  送信者名
+     * @param message メッセージ内容
+     * @param isUser  ユーザーからのメッセージかどうか（スタイリングと配置に影響）
+     * @param time    表示する時刻（整形済み）
+     */
+    public void update(String sender, String message, boolean isUser, String time) {
+        senderLabel.setText(sender);
+        timeLabel.setText(time);
+        messageLabel.setText(message);
+
+        // 送信者が変わった場合のみスタイルクラスを切り替える
+        if (user == null || user != isUser) {
+            user = isUser;
+            // ユーザーメッセージは右寄せ、システムメッセージは左寄せ
+            this.setAlignment(isUser ? Pos.CENTER_RIGHT : Pos.CENTER_LEFT);
+            messageBox.getStyleClass().removeAll(USER_BOX_CLASS, SYSTEM_BOX_CLASS);
+            messageBox.getStyleClass().add(isUser ? USER_BOX_CLASS : SYSTEM_BOX_CLASS);
+        }
+    }
+
+    /**
+     * Markdownの描画結果を本文として表示（nullの場合はテキストを表示）。
+     * ストリーミング中は前回と同じノードのブロックを残し、変わったブロックから後ろだけを差し替える。
+     *
+     * @param value 描画結果
+     */
+    public void setRendered(RenderedMarkdown value) {
+        if (value == rendered) {
+            return;
+        }
+        rendered = value;
+        ObservableList<Node> body = messageBox.getChildren();
+        List<Node> children = markdownBox.getChildren();
+        if (value == null) {
+            children.clear(); // ノードを手放す（他のセルで同じメッセージを表示できるように）
+            if (body.get(1) != messageLabel) {
+                body.set(1, messageLabel);
+            }
+            return;
+        }
+
+        List<Node> nodes = value.getNodes();
+        int same = 0;
+        while (same < children.size() && same < nodes.size() && children.get(same) == nodes.get(same)) {
+            same++;
+        }
+        children.subList(same, children.size()).clear();
+        for (int i = same; i < nodes.size(); i++) {
+            // 別のバブルが表示中のノード（セルの入れ替わり途中など）は奪わずに作り直す
+            Node node = nodes.get(i);
+            children.add(node.getParent() == null ? node : value.createNode(i));
+        }
+        if (body.get(1) != markdownBox) {
+            body.set(1, markdownBox);
+        }
+    }
+
+    /**
+     * ストリーミング中の応答テキストを末尾に追加
+     *
+     * @param text 追加するテキスト
+     */
+    public void appendText(String text) {
+        messageLabel.setText(messageLabel.getText() + text);
+    }
+
+    /**
+     * メッセージ本文を置き換え
+     *
+     * @param message 新しいメッセージ内容
+     */
+    public void setText(String message) {
+        messageLabel.setText(message);
+    }
+
+    /**
+     * 現在のメッセージ本文を取得
+     *
+     * @return メッセージ内容
+     */
+    public String getText() {
+        return messageLabel.getText();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,204 @@
+package com.nexuscore.gui.components;
+
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+import com.nexuscore.gui.markdown.RenderedMarkdown;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * チャット表示の1行分のモデル（表示用のノードは持たない）
+ * <p>
+ * トランスクリプトは {@link ChatMessageCell} で表示され、画面に見えている
+ * 行だけがバブルとして生成・再利用される。ストリーミング中の本文は
+ * {@link #textProperty()} の変更として表示中のセルに反映される。
+ * LLMの応答は {@link #renderedProperty()} にMarkdownの描画結果が設定され、
+ * 設定されるまでは本文をそのまま表示する。
+ */
+public class ChatMessage {
+
+    private static final DateTimeFormatter STORED_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm");
+
+    private final long id;
+    private final String sender;
+    private final boolean user;
+    private final boolean indicator;
+    private final String time; // 表示用に整形済みの時刻
+    private final StringProperty text;
+    private final ObjectProperty<RenderedMarkdown> rendered; // Markdownとして描画した本文（未描画の場合はnull）
+    private volatile boolean streaming; // 応答の受信中（追記を受け付ける）
+
+    private ChatMessage(long id, String sender, String text, boolean user, boolean indicator, String time) {
+        this.id = id;
+        this.sender = sender;
+        this.user = user;
+        this.indicator = indicator;
+        this.time = time;
+        this.text = new SimpleStringProperty(this, "text", text);
+        this.rendered = new SimpleObjectProperty<>(this, "rendered");
+    }
+
+    /**
+     * 今入力されたユーザーのメッセージ（右寄せ）
+     *
+     * @param sender 表示する送信者名
+     * @param text   本文
+     */
+    public static ChatMessage user(String sender, String text) {
+        return new ChatMessage(0, sender, text, true, false, LocalDateTime.now().format(TIME_FORMATTER));
+    }
+
+    /**
+     * 今表示するLLMまたはシステムのメッセージ（左寄せ）
+     *
+     * @param sender 表示する送信者名
+     * @param text   本文
+     */
+    public static ChatMessage system(String sender, String text) {
+        return new ChatMessage(0, sender, text, false, false, LocalDateTime.now().format(TIME_FORMATTER));
+    }
+
+    /**
+     * 保存済みのメッセージ（時刻は保存された行のもの）。
+     * バックグラウンドスレッドで作成でき、表示時には整形済みの時刻を使う。
+     *
+     * @param message データベースから読み込んだメッセージ
+     */
+    public static ChatMessage stored(ConversationMessage message) {
+        boolean user = "User".equals(message.getSender());
+        return new ChatMessage(message.getId(), user ? "You" : "Nexus", message.getContent(), user, false,
+                formatStoredTime(message.getTimestamp(), LocalDate.now()));
+    }
+
+    /**
+     * 「入力中...」などの一時的な表示（バブルではなく斜体のテキスト）
+     *
+     * @param text 表示するテキスト
+     */
+    public static ChatMessage indicator(String text) {
+        return new ChatMessage(0, null, text, false, true, "");
+    }
+
+    /**
+     * 保存時刻（UTCの "yyyy-MM-dd HH:mm:ss"）をローカル時刻で表示用に整形
+     * （今日なら時刻のみ、それ以外は日付付き）
+     *
+     * @param timestamp 保存時刻（nullの場合は空文字）
+     * @param today     今日の日付
+     * @return 表示する時刻
+     */
+    static String formatStoredTime(String timestamp, LocalDate today) {
+        if (timestamp == null) {
+            return "";
+        }
+        try {
+            LocalDateTime local = LocalDateTime.parse(timestamp, STORED_FORMATTER).atOffset(ZoneOffset.UTC)
+                    .atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+            return local.format(local.toLocalDate().equals(today) ? TIME_FORMATTER : DATE_TIME_FORMATTER);
+        } catch (DateTimeParseException e) {
+            return timestamp;
+        }
+    }
+
+    /**
+     * 保存済みメッセージのID（未保存の場合は0）
+     */
+    public long getId() {
+        return id;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    /**
+     * ユーザーからのメッセージかどうか
+     */
+    public boolean isUser() {
+        return user;
+    }
+
+    /**
+     * バブルではなく一時的な表示かどうか
+     */
+    public boolean isIndicator() {
+        return indicator;
+    }
+
+    /**
+     * バブルに表示する時刻（整形済み）
+     */
+    public String getTime() {
+        return time;
+    }
+
+    public String getText() {
+        return text.get();
+    }
+
+    public void setText(String value) {
+        text.set(value);
+    }
+
+    /**
+     * ストリーミング中の応答テキストを末尾に追加
+     *
+     * @param value 追加するテキスト
+     */
+    public void appendText(String value) {
+        text.set(text.get() + value);
+    }
+
+    /**
+     * ストリーミング中の応答かどうか（終了・停止後に届いた追記は破棄される）
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * 本文（表示中のセルが変更を監視する）
+     */
+    public ReadOnlyStringProperty textProperty() {
+        return text;
+    }
+
+    /**
+     * Markdownとして描画した本文（未描画の場合はnull）
+     */
+    public RenderedMarkdown getRendered() {
+        return rendered.get();
+    }
+
+    /**
+     * 描画結果を設定（JavaFXスレッド、または表示前のメッセージに対して任意のスレッド）
+     *
+     * @param value 描画結果（nullの場合は本文をそのまま表示）
+     */
+    public void setRendered(RenderedMarkdown value) {
+        rendered.set(value);
+    }
+
+    /**
+     * Markdownの描画結果（表示中のセルが変更を監視する）
+     */
+    public ReadOnlyObjectProperty<RenderedMarkdown> renderedProperty() {
+        return rendered;
+    }
+}
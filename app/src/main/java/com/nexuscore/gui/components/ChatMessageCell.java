@@ -0,0 +1,68 @@
+package com.nexuscore.gui.components;
+
+import com.nexuscore.gui.markdown.RenderedMarkdown;
+import javafx.beans.value.ChangeListener;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+
+/**
+ * チャット表示のセル
+ * <p>
+ * ListViewは画面に見えている行の分だけセルを作り、スクロール時に再利用する。
+ * 各セルは1つの {@link ChatBubble} を持ち続け、表示する {@link ChatMessage}
+ * が変わるたびに内容だけを差し替える。
+ */
+public class ChatMessageCell extends ListCell<ChatMessage> {
+
+    private final ChatBubble bubble = new ChatBubble();
+    private final Label indicatorLabel = new Label();
+    // ストリーミング中の本文の変更を表示中のバブルに反映
+    private final ChangeListener<String> textListener = (observable, oldText, newText) -> bubble.setText(newText);
+    // Markdownの描画結果が届いたら表示中のバブルに反映（変わったブロックだけ差し替わる）
+    private final ChangeListener<RenderedMarkdown> renderedListener =
+            (observable, oldRendered, newRendered) -> bubble.setRendered(newRendered);
+    private ChatMessage shown; // リスナーを登録しているメッセージ
+
+    /**
+     * セルを作成
+     */
+    public ChatMessageCell() {
+        getStyleClass().add("chat-message-cell");
+        // セルの幅をリストの幅に合わせる（横スクロールバーを出さない）
+        setPrefWidth(0);
+        indicatorLabel.getStyleClass().add("chat-indicator");
+        setText(null);
+    }
+
+    @Override
+    protected void updateItem(ChatMessage message, boolean empty) {
+        super.updateItem(message, empty);
+        if (shown != null) {
+            shown.textProperty().removeListener(textListener);
+            shown.renderedProperty().removeListener(renderedListener);
+            shown = null;
+        }
+
+        if (empty || message == null) {
+            setGraphic(null);
+            return;
+        }
+
+        if (message.isIndicator()) {
+            // 「入力中...」表示
+            indicatorLabel.setText(message.getText());
+            setAlignment(Pos.CENTER_LEFT);
+            setGraphic(indicatorLabel);
+            return;
+        }
+
+        bubble.update(message.getSender(), message.getText(), message.isUser(), message.getTime());
+        bubble.setRendered(message.getRendered());
+        setAlignment(message.isUser() ? Pos.CENTER_RIGHT : Pos.CENTER_LEFT);
+        message.textProperty().addListener(textListener);
+        message.renderedProperty().addListener(renderedListener);
+        shown = message;
+        setGraphic(bubble);
+    }
+}
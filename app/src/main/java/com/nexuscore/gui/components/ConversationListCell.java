@@ -0,0 +1,55 @@
+package com.nexuscore.gui.components;
+
+import com.nexuscore.database.DatabaseManager.ConversationSummary;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+
+import java.time.LocalDate;
+
+/**
+ * サイドバーの会話一覧のセル（タイトルとメッセージ数・開始時刻）
+ * <p>
+ * {@link ChatMessageCell} と同様に、ラベルは作り直さずに内容だけを差し替える。
+ */
+public class ConversationListCell extends ListCell<ConversationSummary> {
+
+    private static final Font TITLE_FONT = Font.font("Segoe UI", FontWeight.BOLD, 12);
+    private static final Font DETAIL_FONT = Font.font("Segoe UI", 10);
+
+    private final Label titleLabel = new Label();
+    private final Label detailLabel = new Label();
+    private final VBox content = new VBox(2, titleLabel, detailLabel);
+
+    /**
+     * セルを作成
+     */
+    public ConversationListCell() {
+        getStyleClass().add("conversation-cell");
+        // セルの幅をリストの幅に合わせる（長いタイトルは省略表示）
+        setPrefWidth(0);
+        titleLabel.setFont(TITLE_FONT);
+        titleLabel.getStyleClass().add("conversation-title");
+        detailLabel.setFont(DETAIL_FONT);
+        detailLabel.getStyleClass().add("conversation-detail");
+        setText(null);
+    }
+
+    @Override
+    protected void updateItem(ConversationSummary conversation, boolean empty) {
+        super.updateItem(conversation, empty);
+        if (empty || conversation == null) {
+            setGraphic(null);
+            return;
+        }
+
+        String title = conversation.getTitle() != null ? conversation.getTitle() : "Conversation";
+        titleLabel.setText(title + " #" + conversation.getId());
+        int count = conversation.getMessageCount();
+        detailLabel.setText(count + (count == 1 ? " message · " : " messages · ")
+                + ChatMessage.formatStoredTime(conversation.getStartTime(), LocalDate.now()));
+        setGraphic(content);
+    }
+}
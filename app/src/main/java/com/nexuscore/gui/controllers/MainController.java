@@ -1,21 +1,38 @@
 package com.nexuscore.gui.controllers;
 
+import com.nexuscore.database.DatabaseMaintenance;
 import com.nexuscore.database.DatabaseManager;
 import com.nexuscore.database.DatabaseManager.ConversationMessage;
-import com.nexuscore.gui.components.ChatBubble;
+import com.nexuscore.database.DatabaseManager.ConversationSummary;
+import com.nexuscore.gui.UiUpdateDispatcher;
+import com.nexuscore.gui.components.ChatMessage;
+import com.nexuscore.gui.components.ChatMessageCell;
+import com.nexuscore.gui.components.ConversationListCell;
+import com.nexuscore.gui.dialogs.ConversationSearchDialog;
 import com.nexuscore.gui.dialogs.OllamaSettingsDialog;
+import com.nexuscore.gui.markdown.MarkdownRenderPipeline;
 import com.nexuscore.llm.LLMService;
+import com.nexuscore.llm.ModelWarmupManager.ModelState;
+import com.nexuscore.llm.ResponseCache;
+import com.nexuscore.llm.SemanticMemory;
+import com.nexuscore.llm.TokenListener;
 import javafx.application.Platform;
+import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
-import javafx.geometry.Insets;
-import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.control.*;
-import javafx.scene.layout.HBox;
-import javafx.scene.layout.VBox;
+import javafx.scene.control.skin.VirtualFlow;
+import javafx.scene.input.ScrollEvent;
 import javafx.stage.Stage;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * アプリケーションのメインウィンドウのコントローラー
@@ -23,35 +40,70 @@ import java.util.ResourceBundle;
 public class MainController {
 
     @FXML
-    private ScrollPane chatScrollPane;
+    private ListView<ChatMessage> chatList; // 仮想化されたチャット表示（見えている行だけセルを生成）
     @FXML
-    private VBox chatBox;
+    private ListView<ConversationSummary> conversationList; // サイドバーの会話一覧（新しい順）
+    @FXML
+    private Button moreConversationsButton;
     @FXML
     private TextField userInputField;
     @FXML
     private Button sendButton;
     @FXML
+    private Button stopButton;
+    @FXML
     private CheckBox thinkModeCheckbox; // 新しいチェックボックスを参照
+    @FXML
+    private Label modelStatusLabel; // モデルのロード状態（warm/cold）
 
     private DatabaseManager dbManager;
     private LLMService llmService;
+    private SemanticMemory semanticMemory;
+    private DatabaseMaintenance maintenance;
+    private ObservableList<ChatMessage> messages; // チャット表示の内容
+    private UiUpdateDispatcher uiUpdates; // バックグラウンドからのUI更新をフレームごとにまとめて適用
+    private MarkdownRenderPipeline markdown; // LLMの応答のMarkdownをバックグラウンドで描画
     private int currentConversationId;
-    private static final int HISTORY_LIMIT = 10; // 履歴で考慮するメッセージの最大数
+    private static final int HISTORY_LIMIT = 200; // 履歴として読み込むメッセージの最大数（実際に送る量はトークン予算で決まる）
+    private Runnable stopGenerationAction; // 実行中の生成を停止する処理（生成中のみ設定）
+
+    private static final int CONVERSATION_PAGE_SIZE = 50; // 会話一覧の1ページの件数
+    private static final int MESSAGE_PAGE_SIZE = 50; // 会話を開いたとき・上端までスクロールしたときに読み込む件数
+    private int nextConversationBeforeId; // 会話一覧の次のページの起点
+    private int conversationListGeneration; // 一覧を読み直すと増える（古い読み込み結果は破棄）
+    private int transcriptGeneration; // 表示する会話を切り替えると増える（古い読み込み結果は破棄）
+    private long oldestLoadedId; // 表示中の最も古い保存済みメッセージのID
+    private boolean hasOlderMessages; // さらに古いメッセージが残っている可能性があるか
+    private boolean loadingOlderMessages;
+    private VirtualFlow<?> chatFlow; // チャット表示のスクロール位置（スキンの作成後に設定）
 
     /**
      * コントローラーの初期化
      */
     @FXML
     public void initialize() {
-        // スクロールペインの設定
-        chatScrollPane.setFitToWidth(true);
-        chatScrollPane.setFitToHeight(true);
-        chatScrollPane.setHbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
-        chatScrollPane.setVbarPolicy(ScrollPane.ScrollBarPolicy.AS_NEEDED);
+        // チャット表示の設定（セルは再利用され、メッセージ数が増えても見えている分しか生成されない）
+        chatList.setCellFactory(list -> new ChatMessageCell());
+        chatList.setFocusTraversable(false);
+        messages = chatList.getItems();
+        uiUpdates = new UiUpdateDispatcher(this::scrollToBottom);
+        markdown = new MarkdownRenderPipeline(uiUpdates::post);
+
+        // 上端までスクロールしたら古いメッセージを読み込む
+        chatList.skinProperty().addListener((observable, oldSkin, skin) -> watchChatScrollPosition());
+        chatList.addEventFilter(ScrollEvent.SCROLL, event -> {
+            if (event.getDeltaY() > 0) {
+                loadOlderMessagesIfAtTop(); // 上端にいる状態でさらに上へスクロールした場合
+            }
+        });
 
-        // チャットボックスの設定
-        chatBox.setSpacing(15);
-        chatBox.setPadding(new Insets(15));
+        // サイドバーの会話一覧（選択した会話を開く）
+        conversationList.setCellFactory(list -> new ConversationListCell());
+        conversationList.getSelectionModel().selectedItemProperty().addListener((observable, oldItem, item) -> {
+            if (item != null && item.getId() != currentConversationId) {
+                openConversation(item.getId());
+            }
+        });
 
         // データベースマネージャーの初期化
         dbManager = new DatabaseManager();
@@ -59,21 +111,59 @@ public class MainController {
         // LLMサービスの初期化（デフォルトは「llama2」モデル）
         llmService = new LLMService("llama2");
 
-        // 新しい会話を作成
-        currentConversationId = dbManager.createConversation("New Conversation");
+        // 応答キャッシュ（設定画面で有効化するまで無効）
+        llmService.setResponseCache(new ResponseCache(dbManager));
+
+        // セマンティックメモリ（設定画面で有効化するまで無効）
+        semanticMemory = new SemanticMemory(dbManager, llmService);
+        llmService.setSemanticMemory(semanticMemory);
+
+        // アイドル時のデータベース保守（保存期間の制限はコマンドライン引数で設定）
+        maintenance = new DatabaseMaintenance(dbManager);
+        maintenance.start();
+
+        // モデルの状態をステータス表示に反映し、バックグラウンドでモデルをプリロード
+        llmService.getWarmupManager().addListener((model, state) ->
+                uiUpdates.post(() -> updateModelStatus(model, state)));
+        llmService.warmUpAsync();
+
+        // 新しい会話を作成し、会話一覧を読み込む
+        startNewConversation();
 
         // 歓迎メッセージを追加
-        Platform.runLater(() -> {
+        uiUpdates.post(() -> {
             addSystemMessage("Nexus Core", "Welcome to Nexus Core. How can I help you today?\n\n" +
                     "Note: Please configure Ollama in Settings to use your preferred local LLM model.");
         });
     }
 
+    /**
+     * 大きなメッセージを重複排除・圧縮して保存するかを設定（--compact-storage）
+     * 
+     * @param enabled 有効にする場合はtrue
+     */
+    public void setCompactStorage(boolean enabled) {
+        dbManager.setCompactStorage(enabled);
+    }
+
+    /**
+     * 会話の保存期間の制限を設定（--retention-days, --max-conversations, --max-db-mb）
+     * 
+     * @param args コマンドライン引数
+     */
+    public void configureMaintenance(List<String> args) {
+        maintenance.configure(args);
+    }
+
     /**
      * 送信ボタンクリックとテキストフィールドのEnterキー押下を処理
      */
     @FXML
     public void handleSendMessage() {
+        // 生成中（Enterキーはテキストフィールドから届く）や会話の読み込み中は送信しない
+        if (stopGenerationAction != null || sendButton.isDisable()) {
+            return;
+        }
         String message = userInputField.getText().trim();
         if (message.isEmpty()) {
             return;
@@ -82,135 +172,271 @@ public class MainController {
         // ユーザーメッセージを表示
         addUserMessage("You", message);
 
-        // データベースに保存
-        dbManager.saveMessage(currentConversationId, "User", message);
+        // Think モードのステータスをチェック
+        boolean isThinkModeEnabled = thinkModeCheckbox.isSelected();
+        int conversationId = currentConversationId;
 
         // 入力フィールドをクリア
         userInputField.clear();
 
-        // 送信ボタンを無効化
+        // 送信ボタンを無効化し、停止ボタンを有効化
         sendButton.setDisable(true);
-
-        // Think モードのステータスをチェック
-        boolean isThinkModeEnabled = thinkModeCheckbox.isSelected();
+        stopButton.setDisable(false);
 
         // 「入力中...」表示
-        Label typingLabel = new Label("Nexus is " + (isThinkModeEnabled ? "thinking..." : "responding..."));
-        typingLabel.setStyle("-fx-font-style: italic; -fx-text-fill: gray;");
-        HBox typingBox = new HBox(typingLabel);
-        typingBox.setAlignment(Pos.CENTER_LEFT);
-        chatBox.getChildren().add(typingBox);
+        ChatMessage typingIndicator = ChatMessage.indicator(
+                "Nexus is " + (isThinkModeEnabled ? "thinking..." : "responding..."));
+        messages.add(typingIndicator);
 
         // 自動的に下にスクロール
-        Platform.runLater(() -> {
-            chatScrollPane.setVvalue(1.0);
-        });
+        uiUpdates.requestScrollToBottom();
+
+        // 応答メッセージ（最初のチャンク到着時に表示し、以降はフレームごとにまとめて伸ばす）
+        ChatMessage responseMessage = ChatMessage.system("Nexus", "");
+        responseMessage.setStreaming(true);
+        // 応答メッセージを表示済み（表示の更新を依頼済み）か
+        AtomicBoolean responseShown = new AtomicBoolean(false);
+        // 完了または停止済みか（以降に届いたUI更新は破棄する）
+        AtomicBoolean finished = new AtomicBoolean(false);
+        // 停止時に保存するため、受信済みのテキストを保持
+        StringBuffer partialText = new StringBuffer();
+        TokenListener streamListener = token -> {
+            partialText.append(token);
+            if (finished.get()) {
+                return;
+            }
+            if (responseShown.compareAndSet(false, true)) {
+                // 受信したテキストを描画スレッドでMarkdownとして描画（変わった末尾のブロックだけ）
+                markdown.startStreaming(responseMessage);
+                // 「入力中...」表示を応答メッセージに置き換え
+                uiUpdates.post(() -> {
+                    if (responseMessage.isStreaming()) {
+                        messages.remove(typingIndicator);
+                        messages.add(responseMessage);
+                    }
+                });
+            }
+            uiUpdates.appendText(responseMessage, token);
+            markdown.append(responseMessage, token);
+            uiUpdates.requestScrollToBottom();
+        };
 
         // Think モードに応じてLLMにプロンプトを送信
+        CompletableFuture<String> responseFuture;
+        // 送信済みのLLMリクエスト（停止時にキャンセルする）
+        AtomicReference<CompletableFuture<String>> llmRequest = new AtomicReference<>();
         if (isThinkModeEnabled) {
-            // 過去の会話履歴を取得
-            List<ConversationMessage> history = dbManager.getConversationHistory(currentConversationId, HISTORY_LIMIT);
+            // 履歴の読み込み（保存待ちの書き込みを含む）はJavaFXスレッドを止めないようバックグラウンドで行い、
+            // 今回のメッセージは履歴に含めないよう読み込み後に保存する
+            responseFuture = CompletableFuture.supplyAsync(() -> {
+                List<ConversationMessage> history = dbManager.getConversationHistory(conversationId, HISTORY_LIMIT);
+                dbManager.saveMessage(conversationId, "User", message);
+                return history;
+            }, dbManager.getExecutor()).thenCompose(history -> {
+                if (finished.get()) {
+                    throw new CancellationException(); // 履歴の読み込み中に停止された
+                }
+                // 履歴付きのLLMリクエストを実行（前のターンのコンテキストがあれば再利用）
+                CompletableFuture<String> request = llmService.sendPromptInConversationAsync(conversationId,
+                        message, history, streamListener);
+                llmRequest.set(request);
+                if (finished.get()) {
+                    request.cancel(true);
+                }
+                return request;
+            });
+        } else {
+            // データベースに保存（書き込みはバックグラウンドでまとめて行われる）
+            dbManager.saveMessage(conversationId, "User", message);
+            // 標準の応答モード（このターンを含まない前のコンテキストは破棄される）
+            responseFuture = llmService.sendPromptAsync(conversationId, message, streamListener);
+        }
 
-            // 履歴付きのLLMリクエストを実行
-            llmService.sendPromptWithHistoryAsync(message, history).thenAccept(response -> {
-                // JavaFXスレッドでUIを更新
-                Platform.runLater(() -> {
-                    // 「入力中...」表示を削除
-                    chatBox.getChildren().remove(typingBox);
+        // 停止ボタン: 生成を中断し、途中までの応答を表示・保存
+        AtomicReference<Runnable> stopAction = new AtomicReference<>();
+        stopAction.set(() -> {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            // Ollamaのプロセス/リクエストを停止
+            responseFuture.cancel(true);
+            CompletableFuture<String> request = llmRequest.get();
+            if (request != null) {
+                request.cancel(true);
+            }
 
-                    // LLM応答を表示
-                    addSystemMessage("Nexus", response);
+            // 反映待ちの表示を適用してから、以降の追記を止める
+            uiUpdates.flush();
+            responseMessage.setStreaming(false);
+            messages.remove(typingIndicator);
+            String partial = partialText.toString().trim();
+            String shown = partial.isEmpty() ? "(stopped)" : partial + "\n\n(stopped)";
+            showResponse(responseMessage, responseShown.get(), shown);
+
+            // 途中までの応答をデータベースに保存
+            if (!partial.isEmpty()) {
+                dbManager.saveMessage(conversationId, "LLM", partial);
+            }
+            finishGeneration(stopAction.get());
+        });
+        stopGenerationAction = stopAction.get();
 
-                    // データベースに保存
-                    dbManager.saveMessage(currentConversationId, "LLM", response);
+        responseFuture.thenAccept(response -> {
+            // JavaFXスレッドでUIを更新（ストリーミング中の更新より後に適用される）
+            uiUpdates.post(() -> {
+                if (!finished.compareAndSet(false, true)) {
+                    return; // 停止済み
+                }
 
-                    // 送信ボタンを再度有効化
-                    sendButton.setDisable(false);
-                });
-            }).exceptionally(e -> {
-                // エラー処理
-                Platform.runLater(() -> {
-                    // 「入力中...」表示を削除
-                    chatBox.getChildren().remove(typingBox);
+                // 「入力中...」表示を削除
+                responseMessage.setStreaming(false);
+                messages.remove(typingIndicator);
 
-                    // エラーメッセージを表示
-                    addSystemMessage("Nexus", "Sorry, an error occurred: " + e.getMessage());
+                // 最終的な応答を表示（フォールバック応答の場合もあるため置き換える）
+                showResponse(responseMessage, responseShown.get(), response);
 
-                    // 送信ボタンを再度有効化
-                    sendButton.setDisable(false);
-                });
-                return null;
+                // データベースに保存し、セマンティックメモリの索引を更新
+                dbManager.saveMessage(conversationId, "LLM", response);
+                semanticMemory.requestUpdate();
+
+                // 送信ボタンを再度有効化
+                finishGeneration(stopAction.get());
             });
-        } else {
-            // 標準の応答モード
-            llmService.sendPromptAsync(message).thenAccept(response -> {
-                // JavaFXスレッドでUIを更新
-                Platform.runLater(() -> {
-                    // 「入力中...」表示を削除
-                    chatBox.getChildren().remove(typingBox);
+        }).exceptionally(e -> {
+            // 停止ボタンによるキャンセルは停止処理側で対応済み
+            if (e instanceof CancellationException || e.getCause() instanceof CancellationException) {
+                return null;
+            }
 
-                    // LLM応答を表示
-                    addSystemMessage("Nexus", response);
+            // エラー処理
+            uiUpdates.post(() -> {
+                if (!finished.compareAndSet(false, true)) {
+                    return;
+                }
 
-                    // データベースに保存
-                    dbManager.saveMessage(currentConversationId, "LLM", response);
+                // 「入力中...」表示を削除
+                responseMessage.setStreaming(false);
+                messages.remove(typingIndicator);
 
-                    // 送信ボタンを再度有効化
-                    sendButton.setDisable(false);
-                });
-            }).exceptionally(e -> {
-                // エラー処理
-                Platform.runLater(() -> {
-                    // 「入力中...」表示を削除
-                    chatBox.getChildren().remove(typingBox);
+                // 途中まで表示した応答はその内容で描画を確定
+                if (responseShown.get()) {
+                    markdown.finish(responseMessage, responseMessage.getText());
+                } else {
+                    markdown.discard(responseMessage);
+                }
 
-                    // エラーメッセージを表示
-                    addSystemMessage("Nexus", "Sorry, an error occurred: " + e.getMessage());
+                // エラーメッセージを表示
+                addSystemMessage("Nexus", "Sorry, an error occurred: " + e.getMessage());
 
-                    // 送信ボタンを再度有効化
-                    sendButton.setDisable(false);
-                });
-                return null;
+                // 送信ボタンを再度有効化
+                finishGeneration(stopAction.get());
             });
+            return null;
+        });
+    }
+
+    /**
+     * [停止]ボタンを処理 - 生成中の応答をキャンセル
+     */
+    @FXML
+    public void handleStopGeneration() {
+        if (stopGenerationAction != null) {
+            stopGenerationAction.run();
         }
     }
 
     /**
-     * システムメッセージをチャット表示に追加（左寄せ）
+     * 生成終了後にボタンの状態を戻す
+     *
+     * @param stopAction 終了した生成の停止処理（別の生成のものなら何もしない）
      */
-    private void addSystemMessage(String sender, String message) {
-        HBox messageContainer = new HBox();
-        messageContainer.setMaxWidth(Double.MAX_VALUE);
-        messageContainer.setAlignment(Pos.CENTER_LEFT); // 左寄せ
+    private void finishGeneration(Runnable stopAction) {
+        if (stopGenerationAction != stopAction) {
+            return;
+        }
+        stopGenerationAction = null;
+        sendButton.setDisable(false);
+        stopButton.setDisable(true);
+    }
 
-        ChatBubble bubble = new ChatBubble(sender, message, false);
-        messageContainer.getChildren().add(bubble);
+    /**
+     * 応答の最終的な本文を表示し、Markdownとして描画する
+     *
+     * @param responseMessage ストリーミング用の応答メッセージ
+     * @param shown           応答メッセージを表示済みか（未表示の場合は新しいメッセージとして追加）
+     * @param text            最終的な本文
+     */
+    private void showResponse(ChatMessage responseMessage, boolean shown, String text) {
+        if (shown) {
+            responseMessage.setText(text);
+            markdown.finish(responseMessage, text);
+        } else {
+            markdown.discard(responseMessage);
+            markdown.finish(addSystemMessage("Nexus", text), text);
+        }
+    }
 
-        chatBox.getChildren().add(messageContainer);
+    /**
+     * システムメッセージをチャット表示に追加（左寄せ）
+     * 
+     * @return 追加したメッセージ（ストリーミングで本文を更新する場合に使用）
+     */
+    private ChatMessage addSystemMessage(String sender, String message) {
+        ChatMessage chatMessage = ChatMessage.system(sender, message);
+        messages.add(chatMessage);
 
-        // 自動的に下にスクロール
-        Platform.runLater(() -> {
-            chatScrollPane.setVvalue(1.0);
-        });
+        // 自動的に下にスクロール（次のフレームで1回だけ）
+        uiUpdates.requestScrollToBottom();
+        return chatMessage;
     }
 
     /**
      * ユーザーメッセージをチャット表示に追加（右寄せ）
      */
     private void addUserMessage(String sender, String message) {
-        HBox messageContainer = new HBox();
-        messageContainer.setMaxWidth(Double.MAX_VALUE);
-        messageContainer.setAlignment(Pos.CENTER_RIGHT); // 右寄せ
+        messages.add(ChatMessage.user(sender, message));
 
-        ChatBubble bubble = new ChatBubble(sender, message, true);
-        messageContainer.getChildren().add(bubble);
+        // 自動的に下にスクロール（次のフレームで1回だけ）
+        uiUpdates.requestScrollToBottom();
+    }
 
-        chatBox.getChildren().add(messageContainer);
+    /**
+     * チャット表示を最後のメッセージまでスクロール
+     */
+    private void scrollToBottom() {
+        if (!messages.isEmpty()) {
+            chatList.scrollTo(messages.size() - 1);
+        }
+    }
 
-        // 自動的に下にスクロール
-        Platform.runLater(() -> {
-            chatScrollPane.setVvalue(1.0);
-        });
+    /**
+     * モデルのロード状態をステータスラベルに表示
+     */
+    private void updateModelStatus(String model, ModelState state) {
+        String text;
+        String styleClass; // 状態ごとの文字色（styles.css）
+        switch (state) {
+            case WARM:
+                text = "ready";
+                styleClass = "model-warm";
+                break;
+            case LOADING:
+                text = "loading...";
+                styleClass = "model-loading";
+                break;
+            case FAILED:
+                text = "failed to load";
+                styleClass = "model-failed";
+                break;
+            default:
+                text = "not loaded";
+                styleClass = null;
+        }
+        modelStatusLabel.setText("Model: " + model + " (" + text + ")");
+        modelStatusLabel.getStyleClass().removeAll("model-warm", "model-loading", "model-failed");
+        if (styleClass != null) {
+            modelStatusLabel.getStyleClass().add(styleClass);
+        }
     }
 
     /**
@@ -218,9 +444,279 @@ public class MainController {
      */
     @FXML
     public void handleNewConversation() {
-        currentConversationId = dbManager.createConversation("New Conversation");
-        chatBox.getChildren().clear();
+        // 生成中の応答は停止してから切り替える
+        handleStopGeneration();
+        messages.clear();
         addSystemMessage("Nexus", "Started a new conversation. How can I help you?");
+        startNewConversation();
+    }
+
+    /**
+     * 新しい会話をバックグラウンドで作成して表示中の会話にし、会話一覧を読み直す。
+     * 作成が終わるまではメッセージの入力を受け付けない。
+     */
+    private void startNewConversation() {
+        int generation = showTranscript(0);
+        setInputDisabled(true);
+        CompletableFuture.supplyAsync(() -> dbManager.createConversation("New Conversation"), dbManager.getExecutor())
+                .whenComplete((conversationId, error) -> uiUpdates.post(() -> {
+                    if (generation != transcriptGeneration) {
+                        return; // 作成中に別の会話に切り替えられた
+                    }
+                    if (error != null || conversationId < 0) {
+                        // 保存先の会話が無いため入力は無効のまま（一覧から会話を開くか作り直せる）
+                        addSystemMessage("Nexus", "Sorry, a new conversation could not be created"
+                                + (error != null ? ": " + errorMessage(error) : "."));
+                    } else {
+                        currentConversationId = conversationId;
+                        setInputDisabled(false);
+                    }
+                    // 新しい会話を一覧の先頭に表示
+                    reloadConversationList();
+                }));
+    }
+
+    /**
+     * [さらに読み込む]ボタンを処理 - 会話一覧の次のページを読み込む
+     */
+    @FXML
+    public void handleMoreConversations() {
+        loadConversationPage(nextConversationBeforeId, conversationListGeneration);
+    }
+
+    /**
+     * 会話一覧を先頭のページから読み直す
+     */
+    private void reloadConversationList() {
+        conversationListGeneration++;
+        loadConversationPage(0, conversationListGeneration);
+    }
+
+    /**
+     * 会話一覧の1ページをバックグラウンドで読み込む
+     *
+     * @param beforeId   前のページの最後の会話のID（先頭のページは0）
+     * @param generation 読み込みを開始したときの一覧の世代
+     */
+    private void loadConversationPage(int beforeId, int generation) {
+        moreConversationsButton.setDisable(true);
+        CompletableFuture.supplyAsync(() -> dbManager.getConversations(beforeId, CONVERSATION_PAGE_SIZE),
+                        dbManager.getExecutor())
+                .whenComplete((page, error) -> uiUpdates.post(() -> {
+                    if (error != null) {
+                        showLoadError("the conversation list", error, generation == conversationListGeneration);
+                        if (generation == conversationListGeneration) {
+                            moreConversationsButton.setDisable(false); // [さらに読み込む]で再試行できる
+                        }
+                    } else {
+                        showConversationPage(page, beforeId, generation);
+                    }
+                }));
+    }
+
+    /**
+     * 読み込んだ会話一覧のページを表示（JavaFXスレッド）
+     */
+    private void showConversationPage(List<ConversationSummary> page, int beforeId, int generation) {
+        if (generation != conversationListGeneration) {
+            return; // 読み込み中に一覧が読み直された
+        }
+        if (beforeId == 0) {
+            conversationList.getItems().setAll(page);
+        } else {
+            conversationList.getItems().addAll(page);
+        }
+        if (!page.isEmpty()) {
+            nextConversationBeforeId = page.get(page.size() - 1).getId();
+        }
+        moreConversationsButton.setDisable(page.size() < CONVERSATION_PAGE_SIZE);
+        selectCurrentConversation();
+    }
+
+    /**
+     * 表示中の会話を一覧で選択状態にする（一覧に読み込まれていない場合は選択を解除）
+     */
+    private void selectCurrentConversation() {
+        for (ConversationSummary conversation : conversationList.getItems()) {
+            if (conversation.getId() == currentConversationId) {
+                conversationList.getSelectionModel().select(conversation);
+                return;
+            }
+        }
+        conversationList.getSelectionModel().clearSelection();
+    }
+
+    /**
+     * [会話を検索]メニュー項目を処理 - 選択された結果の会話を開く
+     */
+    @FXML
+    public void handleSearch() {
+        ConversationSearchDialog dialog = new ConversationSearchDialog(dbManager);
+        dialog.showAndWait().ifPresent(result -> openConversation(result.getConversationId()));
+    }
+
+    /**
+     * 保存済みの会話を表示し、以降のメッセージをその会話に追加する。
+     * 最新のページだけをバックグラウンドで読み込み、古いメッセージは
+     * 上端までスクロールしたときに読み込む（会話の長さによらずすぐに開ける）。
+     */
+    private void openConversation(int conversationId) {
+        // 生成中の応答は停止してから切り替える
+        handleStopGeneration();
+        int generation = showTranscript(conversationId);
+        selectCurrentConversation();
+
+        // 読み込みが終わるまでは入力を受け付けない（読み込んだページと送信したメッセージが重複しないように）
+        messages.setAll(ChatMessage.indicator("Loading conversation..."));
+        setInputDisabled(true);
+        long start = System.nanoTime();
+        CompletableFuture.supplyAsync(() -> loadMessagePage(conversationId, 0), dbManager.getExecutor())
+                .whenComplete((page, error) -> uiUpdates.post(() -> {
+                    if (error == null) {
+                        showLatestMessages(page, generation, start);
+                    } else if (generation == transcriptGeneration) {
+                        // 読み込めなかった会話にも続けて送信できるようにする
+                        messages.clear();
+                        setInputDisabled(false);
+                        showLoadError("the conversation", error, true);
+                    }
+                }));
+    }
+
+    /**
+     * 表示する会話を切り替え、古いメッセージの読み込み状態をリセットする
+     *
+     * @param conversationId 表示する会話
+     * @return 新しい表示の世代（これより前に始めた読み込みの結果は破棄される）
+     */
+    private int showTranscript(int conversationId) {
+        currentConversationId = conversationId;
+        oldestLoadedId = 0;
+        hasOlderMessages = false;
+        loadingOlderMessages = false;
+        return ++transcriptGeneration;
+    }
+
+    /**
+     * 保存済みメッセージの1ページを読み込み、表示用のモデルに変換（バックグラウンドスレッド）
+     *
+     * @param conversationId 会話
+     * @param beforeId       表示中の最も古いメッセージのID（最新のページは0）
+     * @return メッセージ（古い順）
+     */
+    private List<ChatMessage> loadMessagePage(int conversationId, long beforeId) {
+        List<ChatMessage> page = new ArrayList<>();
+        for (ConversationMessage message : dbManager.getMessagesBefore(conversationId, beforeId,
+                MESSAGE_PAGE_SIZE)) {
+            ChatMessage chatMessage = ChatMessage.stored(message);
+            if (!chatMessage.isUser()) {
+                // LLMの応答はこのスレッドでMarkdownとして描画しておく（表示時はノードを付けるだけ）
+                chatMessage.setRendered(markdown.renderNow(chatMessage.getText()));
+            }
+            page.add(chatMessage);
+        }
+        return page;
+    }
+
+    /**
+     * 開いた会話の最新のページを表示（JavaFXスレッド）
+     */
+    private void showLatestMessages(List<ChatMessage> page, int generation, long start) {
+        if (generation != transcriptGeneration) {
+            return; // 読み込み中に別の会話に切り替えられた
+        }
+        messages.setAll(page);
+        setInputDisabled(false);
+        scrollToBottom();
+        if (!page.isEmpty()) {
+            oldestLoadedId = page.get(0).getId();
+        }
+        hasOlderMessages = page.size() == MESSAGE_PAGE_SIZE;
+        System.out.println("Opened conversation " + currentConversationId + " (" + page.size() + " messages, "
+                + (System.nanoTime() - start) / 1_000_000 + " ms)");
+    }
+
+    /**
+     * チャット表示のスクロール位置の監視を開始（スキンの作成後）
+     */
+    private void watchChatScrollPosition() {
+        Node flow = chatList.lookup(".virtual-flow");
+        if (flow instanceof VirtualFlow) {
+            chatFlow = (VirtualFlow<?>) flow;
+            chatFlow.positionProperty().addListener((observable, oldPosition, position) ->
+                    loadOlderMessagesIfAtTop());
+        }
+    }
+
+    /**
+     * 上端までスクロールしている場合、表示中より古いメッセージの1ページをバックグラウンドで読み込む
+     */
+    private void loadOlderMessagesIfAtTop() {
+        if (!hasOlderMessages || loadingOlderMessages || chatFlow == null || chatFlow.getPosition() > 0) {
+            return;
+        }
+        loadingOlderMessages = true;
+        int generation = transcriptGeneration;
+        int conversationId = currentConversationId;
+        long beforeId = oldestLoadedId;
+        CompletableFuture.supplyAsync(() -> loadMessagePage(conversationId, beforeId), dbManager.getExecutor())
+                .whenComplete((page, error) -> uiUpdates.post(() -> {
+                    if (error == null) {
+                        showOlderMessages(page, generation);
+                    } else if (generation == transcriptGeneration) {
+                        // スクロールのたびに失敗を繰り返さないよう、古いメッセージの読み込みをやめる
+                        hasOlderMessages = false;
+                        loadingOlderMessages = false;
+                        showLoadError("older messages", error, true);
+                    }
+                }));
+    }
+
+    /**
+     * 読み込んだ古いメッセージを先頭に追加（JavaFXスレッド）
+     */
+    private void showOlderMessages(List<ChatMessage> page, int generation) {
+        if (generation != transcriptGeneration) {
+            return; // 読み込み中に別の会話に切り替えられた
+        }
+        if (!page.isEmpty()) {
+            messages.addAll(0, page);
+            oldestLoadedId = page.get(0).getId();
+            // 追加前に先頭にあったメッセージを上端に表示（読んでいた位置を保つ）
+            chatList.scrollTo(page.size());
+        }
+        hasOlderMessages = page.size() == MESSAGE_PAGE_SIZE;
+        loadingOlderMessages = false;
+    }
+
+    /**
+     * バックグラウンドでの読み込みの失敗を記録し、必要ならチャットに表示（JavaFXスレッド）
+     *
+     * @param what  読み込もうとしたもの
+     * @param error 発生した例外
+     * @param show  チャットに表示するか（読み込み中に表示が切り替わった場合は記録のみ）
+     */
+    private void showLoadError(String what, Throwable error, boolean show) {
+        System.err.println("Failed to load " + what + ": " + errorMessage(error));
+        if (show) {
+            addSystemMessage("Nexus", "Sorry, " + what + " could not be loaded: " + errorMessage(error));
+        }
+    }
+
+    /**
+     * CompletableFutureが包んだ例外から元の例外のメッセージを取り出す
+     */
+    private static String errorMessage(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    /**
+     * メッセージの入力と送信を無効化または有効化
+     */
+    private void setInputDisabled(boolean disabled) {
+        userInputField.setDisable(disabled);
+        sendButton.setDisable(disabled);
     }
 
     /**
@@ -268,6 +764,10 @@ public class MainController {
     public void cleanupResources() {
         System.out.println("Shutting down application...");
 
+        if (maintenance != null) {
+            maintenance.shutdown();
+        }
+
         if (llmService != null) {
             llmService.shutdown();
         }
@@ -275,5 +775,14 @@ public class MainController {
         if (dbManager != null) {
             dbManager.closeConnection();
         }
+
+        if (uiUpdates != null) {
+            System.out.println("UI updates: " + uiUpdates.getStats());
+        }
+
+        if (markdown != null) {
+            markdown.shutdown();
+            System.out.println("Markdown rendering: " + markdown.getStats());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,238 @@
+package com.nexuscore.gui.dialogs;
+
+import com.nexuscore.database.DatabaseManager;
+import com.nexuscore.database.DatabaseManager.SearchCursor;
+import com.nexuscore.database.DatabaseManager.SearchPage;
+import com.nexuscore.database.DatabaseManager.SearchResult;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.control.*;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Dialog for searching all stored conversations.
+ * Searches run in the background; results are shown best match first and
+ * further pages are loaded on demand. The result is the selected message,
+ * whose conversation the caller can open.
+ */
+public class ConversationSearchDialog extends Dialog<SearchResult> {
+
+    private static final int PAGE_SIZE = 50;
+
+    private final DatabaseManager dbManager;
+
+    private TextField queryField;
+    private ListView<SearchResult> resultList;
+    private Button moreButton;
+    private Label statusLabel;
+
+    private String currentQuery;
+    private SearchCursor nextCursor;
+    private int searchGeneration; // Results of older searches are discarded
+
+    /**
+     * Constructor
+     *
+     * @param dbManager Database to search
+     */
+    public ConversationSearchDialog(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+
+        setTitle("Search Conversations");
+        setHeaderText("Search all conversations");
+        setResizable(true);
+        getDialogPane().getStylesheets().add(getClass().getResource("/css/styles.css").toExternalForm());
+
+        createContent();
+
+        ButtonType openButtonType = new ButtonType("Open", ButtonBar.ButtonData.OK_DONE);
+        getDialogPane().getButtonTypes().addAll(openButtonType, ButtonType.CLOSE);
+        Button openButton = (Button) getDialogPane().lookupButton(openButtonType);
+        openButton.disableProperty().bind(resultList.getSelectionModel().selectedItemProperty().isNull());
+
+        setResultConverter(buttonType -> buttonType == openButtonType
+                ? resultList.getSelectionModel().getSelectedItem()
+                : null);
+
+        Platform.runLater(() -> queryField.requestFocus());
+    }
+
+    /**
+     * Create the content of the dialog
+     */
+    private void createContent() {
+        queryField = new TextField();
+        queryField.setPromptText("Words or \"a phrase\" (at least 3 characters each)");
+        queryField.setOnAction(e -> startSearch());
+        HBox.setHgrow(queryField, Priority.ALWAYS);
+
+        Button searchButton = new Button("Search");
+        searchButton.setOnAction(e -> startSearch());
+
+        HBox queryBox = new HBox(10, queryField, searchButton);
+
+        resultList = new ListView<>();
+        resultList.setPrefHeight(400);
+        resultList.setCellFactory(list -> new SearchResultCell());
+        VBox.setVgrow(resultList, Priority.ALWAYS);
+
+        moreButton = new Button("Load more");
+        moreButton.setDisable(true);
+        moreButton.setOnAction(e -> loadPage(currentQuery, nextCursor, searchGeneration));
+
+        statusLabel = new Label("");
+        statusLabel.getStyleClass().add("search-status");
+
+        HBox footer = new HBox(10, moreButton, statusLabel);
+
+        VBox content = new VBox(10, queryBox, resultList, footer);
+        content.setPadding(new Insets(10));
+
+        getDialogPane().setContent(content);
+        getDialogPane().setPrefWidth(600);
+    }
+
+    /**
+     * Start a new search with the text in the query field
+     */
+    private void startSearch() {
+        String query = queryField.getText().trim();
+        if (query.isEmpty()) {
+            return;
+        }
+        currentQuery = query;
+        nextCursor = null;
+        searchGeneration++;
+        resultList.getItems().clear();
+        loadPage(query, null, searchGeneration);
+    }
+
+    /**
+     * Load one page of results in the background
+     */
+    private void loadPage(String query, SearchCursor after, int generation) {
+        moreButton.setDisable(true);
+        statusLabel.getStyleClass().remove("search-error");
+        statusLabel.setText("Searching...");
+        long start = System.nanoTime();
+
+        CompletableFuture.supplyAsync(() -> dbManager.searchMessages(query, after, PAGE_SIZE), dbManager.getExecutor())
+                .thenAccept(page -> Platform.runLater(() -> showPage(page, generation, start)))
+                .exceptionally(e -> {
+                    Platform.runLater(() -> showError(e, after, generation));
+                    return null;
+                });
+    }
+
+    /**
+     * Report a failed search (JavaFX thread)
+     */
+    private void showError(Throwable error, SearchCursor after, int generation) {
+        if (generation != searchGeneration) {
+            return;
+        }
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        System.err.println("Search failed: " + cause);
+        statusLabel.getStyleClass().add("search-error");
+        statusLabel.setText("Search failed: " + (cause.getMessage() != null ? cause.getMessage()
+                : cause.getClass().getSimpleName()));
+        // A failed further page can be requested again
+        moreButton.setDisable(after == null);
+    }
+
+    /**
+     * Append a page of results (JavaFX thread)
+     */
+    private void showPage(SearchPage page, int generation, long start) {
+        if (generation != searchGeneration) {
+            return; // A newer search was started meanwhile
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        resultList.getItems().addAll(page.getResults());
+        nextCursor = page.getNextCursor();
+        moreButton.setDisable(!page.hasMore());
+
+        int shown = resultList.getItems().size();
+        if (shown == 0) {
+            statusLabel.setText("No matches (" + millis + " ms)");
+        } else {
+            statusLabel.setText(shown + (page.hasMore() ? "+" : "") + " matches (" + millis + " ms)");
+        }
+    }
+
+    /**
+     * List cell showing the conversation, sender and the highlighted snippet of a result
+     */
+    private static class SearchResultCell extends ListCell<SearchResult> {
+        private static final Font HEADER_FONT = Font.font("System", FontWeight.BOLD, 11);
+        private static final Font TEXT_FONT = Font.font("System", 13);
+        private static final Font MATCH_FONT = Font.font("System", FontWeight.BOLD, 13);
+
+        @Override
+        protected void updateItem(SearchResult result, boolean empty) {
+            super.updateItem(result, empty);
+            if (empty || result == null) {
+                setGraphic(null);
+                setText(null);
+                return;
+            }
+
+            String title = result.getConversationTitle() != null ? result.getConversationTitle() : "Conversation";
+            Label header = new Label(title + " #" + result.getConversationId() + " · " + result.getSender()
+                    + " · " + result.getTimestamp());
+            header.setFont(HEADER_FONT);
+            header.getStyleClass().add("search-result-header");
+
+            TextFlow snippet = highlight(result.getSnippet());
+            snippet.setMaxWidth(540);
+
+            setText(null);
+            setGraphic(new VBox(3, header, snippet));
+        }
+
+        /**
+         * Split a snippet at the highlight markers into normal and bold text
+         */
+        private static TextFlow highlight(String snippet) {
+            TextFlow flow = new TextFlow();
+            if (snippet == null) {
+                return flow;
+            }
+            StringBuilder part = new StringBuilder();
+            boolean match = false;
+            for (int i = 0; i < snippet.length(); i++) {
+                char c = snippet.charAt(i);
+                if (c == SearchResult.HIGHLIGHT_START || c == SearchResult.HIGHLIGHT_END) {
+                    addText(flow, part, match);
+                    match = c == SearchResult.HIGHLIGHT_START;
+                } else {
+                    part.append(c == '\n' ? ' ' : c);
+                }
+            }
+            addText(flow, part, match);
+            return flow;
+        }
+
+        private static void addText(TextFlow flow, StringBuilder part, boolean match) {
+            if (part.length() == 0) {
+                return;
+            }
+            Text text = new Text(part.toString());
+            text.setFont(match ? MATCH_FONT : TEXT_FONT);
+            if (match) {
+                text.getStyleClass().add("search-match");
+            }
+            flow.getChildren().add(text);
+            part.setLength(0);
+        }
+    }
+}
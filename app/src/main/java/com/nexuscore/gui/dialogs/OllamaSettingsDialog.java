@@ -1,6 +1,9 @@
 package com.nexuscore.gui.dialogs;
 
 import com.nexuscore.llm.LLMService;
+import com.nexuscore.llm.OllamaEndpointPool;
+import com.nexuscore.llm.ResponseCache;
+import com.nexuscore.llm.SemanticMemory;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
@@ -9,6 +12,7 @@ import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -16,10 +20,21 @@ import java.util.List;
  */
 public class OllamaSettingsDialog extends Dialog<Boolean> {
 
+    private static final String BACKEND_HTTP = "HTTP API (ollama serve)";
+    private static final String BACKEND_PROCESS = "Process (ollama run)";
+
+    private ComboBox<String> backendComboBox;
+    private TextField ollamaHostField;
     private ComboBox<String> modelComboBox;
     private TextField ollamaPathField;
     private Button browseButton;
     private Slider temperatureSlider;
+    private TextField keepAliveField;
+    private TextField contextBudgetField;
+    private TextField maxParallelField;
+    private CheckBox cacheCheckBox;
+    private CheckBox memoryCheckBox;
+    private TextField embeddingModelField;
     private Button refreshButton;
     private Button testButton;
     private Label statusLabel;
@@ -68,49 +83,123 @@ public class OllamaSettingsDialog extends Dialog<Boolean> {
         grid.setVgap(10);
         grid.setPadding(new Insets(20, 20, 10, 10));
 
+        // Backend selection
+        Label backendLabel = new Label("Backend:");
+        grid.add(backendLabel, 0, 0);
+
+        backendComboBox = new ComboBox<>();
+        backendComboBox.getItems().addAll(BACKEND_HTTP, BACKEND_PROCESS);
+        backendComboBox.setValue(llmService.isUsingHttpBackend() ? BACKEND_HTTP : BACKEND_PROCESS);
+        backendComboBox.setPrefWidth(200);
+        grid.add(backendComboBox, 1, 0, 2, 1);
+
+        // Ollama server URL
+        Label hostLabel = new Label("Ollama Hosts:");
+        grid.add(hostLabel, 0, 1);
+
+        ollamaHostField = new TextField(String.join(", ", llmService.getOllamaHosts()));
+        ollamaHostField.setTooltip(new Tooltip("One or more server URLs separated by commas; requests go to "
+                + "the least busy healthy server and a conversation stays on the same server"));
+        grid.add(ollamaHostField, 1, 1, 2, 1);
+
         // Ollama path
         Label pathLabel = new Label("Ollama Path:");
-        grid.add(pathLabel, 0, 0);
+        grid.add(pathLabel, 0, 2);
 
-        ollamaPathField = new TextField("ollama");
-        grid.add(ollamaPathField, 1, 0);
+        ollamaPathField = new TextField(llmService.getOllamaPath());
+        grid.add(ollamaPathField, 1, 2);
 
         browseButton = new Button("Browse...");
         browseButton.setOnAction(e -> browsePath());
-        grid.add(browseButton, 2, 0);
+        grid.add(browseButton, 2, 2);
 
         // Model selection
         Label modelLabel = new Label("Ollama Model:");
-        grid.add(modelLabel, 0, 1);
+        grid.add(modelLabel, 0, 3);
 
         modelComboBox = new ComboBox<>();
         modelComboBox.setEditable(true); // Allows manual input
         modelComboBox.setPrefWidth(200);
-        grid.add(modelComboBox, 1, 1);
+        grid.add(modelComboBox, 1, 3);
 
         refreshButton = new Button("Refresh");
         refreshButton.setOnAction(e -> refreshModelList());
-        grid.add(refreshButton, 2, 1);
+        grid.add(refreshButton, 2, 3);
 
         // Temperature setting
         Label tempLabel = new Label("Temperature:");
-        grid.add(tempLabel, 0, 2);
+        grid.add(tempLabel, 0, 4);
 
-        temperatureSlider = new Slider(0.0, 1.0, 0.7);
+        temperatureSlider = new Slider(0.0, 1.0, llmService.getTemperature());
         temperatureSlider.setShowTickLabels(true);
         temperatureSlider.setShowTickMarks(true);
         temperatureSlider.setMajorTickUnit(0.25);
         temperatureSlider.setBlockIncrement(0.1);
-        grid.add(temperatureSlider, 1, 2, 2, 1);
+        grid.add(temperatureSlider, 1, 4, 2, 1);
+
+        // Keep-alive setting
+        Label keepAliveLabel = new Label("Keep Loaded:");
+        grid.add(keepAliveLabel, 0, 5);
+
+        keepAliveField = new TextField(llmService.getKeepAlive());
+        keepAliveField.setTooltip(new Tooltip("How long the model stays in memory after the last prompt "
+                + "(e.g. 30m, 1h, -1 for indefinitely)"));
+        grid.add(keepAliveField, 1, 5, 2, 1);
+
+        // Context window used to pack the conversation history in Think mode
+        Label contextBudgetLabel = new Label("Context (tokens):");
+        grid.add(contextBudgetLabel, 0, 6);
+
+        contextBudgetField = new TextField(String.valueOf(llmService.getContextBudget(llmService.getModelName())));
+        contextBudgetField.setTooltip(new Tooltip("Context window of the selected model; Think mode keeps "
+                + "as many recent messages as fit"));
+        grid.add(contextBudgetField, 1, 6, 2, 1);
+        // The field always shows the budget of the model it will be saved for
+        modelComboBox.valueProperty().addListener((observable, oldModel, model) -> {
+            if (model != null && !model.isBlank()) {
+                contextBudgetField.setText(String.valueOf(llmService.getContextBudget(model)));
+            }
+        });
+
+        // Number of generations allowed to run at once
+        Label maxParallelLabel = new Label("Parallel Requests:");
+        grid.add(maxParallelLabel, 0, 7);
+
+        maxParallelField = new TextField(String.valueOf(llmService.getScheduler().getMaxParallel()));
+        maxParallelField.setTooltip(new Tooltip("Generations running at once; match OLLAMA_NUM_PARALLEL "
+                + "of the server. Further requests wait in a queue."));
+        grid.add(maxParallelField, 1, 7, 2, 1);
+
+        // Response cache (only deterministic prompts at temperature 0 are cached)
+        cacheCheckBox = new CheckBox("Cache responses at temperature 0");
+        ResponseCache cache = llmService.getResponseCache();
+        cacheCheckBox.setSelected(cache != null && cache.isEnabled());
+        cacheCheckBox.setDisable(cache == null);
+        grid.add(cacheCheckBox, 1, 8, 2, 1);
+
+        // Semantic memory (related messages from other conversations in Think mode)
+        SemanticMemory memory = llmService.getSemanticMemory();
+        Label embeddingModelLabel = new Label("Embedding Model:");
+        grid.add(embeddingModelLabel, 0, 9);
+
+        embeddingModelField = new TextField(memory != null ? memory.getModel() : SemanticMemory.DEFAULT_MODEL);
+        embeddingModelField.setTooltip(new Tooltip("Ollama embedding model used to find related messages "
+                + "(pull it first, e.g. ollama pull nomic-embed-text)"));
+        grid.add(embeddingModelField, 1, 9, 2, 1);
+
+        memoryCheckBox = new CheckBox("Recall related past messages in Think mode");
+        memoryCheckBox.setSelected(memory != null && memory.isEnabled());
+        memoryCheckBox.setDisable(memory == null);
+        grid.add(memoryCheckBox, 1, 10, 2, 1);
 
         // Test connection button
         testButton = new Button("Test Ollama");
         testButton.setOnAction(e -> testOllama());
-        grid.add(testButton, 0, 3);
+        grid.add(testButton, 0, 11);
 
         // Status label
         statusLabel = new Label("");
-        grid.add(statusLabel, 1, 3, 2, 1);
+        grid.add(statusLabel, 1, 11, 2, 1);
 
         getDialogPane().setContent(grid);
         getDialogPane().setPrefWidth(450);
@@ -148,8 +237,8 @@ public class OllamaSettingsDialog extends Dialog<Boolean> {
         // Fetch model list in a new thread
         new Thread(() -> {
             try {
-                // Temporarily set the Ollama path
-                llmService.setOllamaPath(ollamaPathField.getText());
+                // Temporarily apply the connection settings
+                applyConnectionSettings();
 
                 // Retrieve the model list
                 List<String> models = llmService.getInstalledModels();
@@ -199,7 +288,7 @@ public class OllamaSettingsDialog extends Dialog<Boolean> {
 
             try {
                 // Set current input values to the LLM service
-                llmService.setOllamaPath(ollamaPathField.getText());
+                applyConnectionSettings();
 
                 // Perform connection test
                 isAvailable = llmService.isAvailable();
@@ -211,7 +300,11 @@ public class OllamaSettingsDialog extends Dialog<Boolean> {
             final boolean finalIsAvailable = isAvailable;
             Platform.runLater(() -> {
                 if (finalIsAvailable) {
-                    statusLabel.setText("Ollama is available!");
+                    List<OllamaEndpointPool.Endpoint> endpoints = llmService.getEndpointPool().getEndpoints();
+                    long healthy = endpoints.stream().filter(OllamaEndpointPool.Endpoint::isHealthy).count();
+                    statusLabel.setText(endpoints.size() > 1 && llmService.isUsingHttpBackend()
+                            ? "Ollama is available! (" + healthy + "/" + endpoints.size() + " servers)"
+                            : "Ollama is available!");
                     statusLabel.setStyle("-fx-text-fill: green;");
 
                     // If Ollama is available, update the model list as well
@@ -225,20 +318,61 @@ public class OllamaSettingsDialog extends Dialog<Boolean> {
         }).start();
     }
 
+    /**
+     * Applies the backend, host and path fields to the LLM service
+     */
+    private void applyConnectionSettings() {
+        llmService.setUseHttpBackend(!BACKEND_PROCESS.equals(backendComboBox.getValue()));
+        llmService.setOllamaHosts(Arrays.asList(ollamaHostField.getText().split(",")));
+        llmService.setOllamaPath(ollamaPathField.getText());
+    }
+
     /**
      * Saves the settings and applies them to the LLM service
      */
     private void saveSettings() {
-        String ollamaPath = ollamaPathField.getText();
         String modelName = modelComboBox.getValue();
         float temperature = (float) temperatureSlider.getValue();
 
         // Apply settings to the LLM service
-        llmService.setOllamaPath(ollamaPath);
-        llmService.setModelName(modelName);
+        applyConnectionSettings();
+        try {
+            llmService.setKeepAlive(keepAliveField.getText());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring keep-alive setting: " + e.getMessage());
+        }
         llmService.setTemperature(temperature);
+        // Without a model (e.g. the model list failed to load) there is nothing to set the budget for
+        if (modelName != null && !modelName.isBlank()) {
+            try {
+                int contextBudget = Integer.parseInt(contextBudgetField.getText().trim());
+                // Only an explicitly changed value is sent to Ollama as num_ctx
+                if (contextBudget != llmService.getContextBudget(modelName)) {
+                    llmService.setContextBudget(modelName, contextBudget);
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring context setting: " + e.getMessage());
+            }
+        }
+        try {
+            llmService.getScheduler().setMaxParallel(Integer.parseInt(maxParallelField.getText().trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring parallel requests setting: " + e.getMessage());
+        }
+        if (llmService.getResponseCache() != null) {
+            llmService.getResponseCache().setEnabled(cacheCheckBox.isSelected());
+        }
+        if (llmService.getSemanticMemory() != null) {
+            llmService.getSemanticMemory().setModel(embeddingModelField.getText());
+            llmService.getSemanticMemory().setEnabled(memoryCheckBox.isSelected());
+        }
+        // Changing the model preloads it in the background
+        if (modelName != null && !modelName.isBlank()) {
+            llmService.setModelName(modelName);
+        }
 
-        System.out.println("Ollama settings saved. Path: " + ollamaPath +
+        System.out.println("Ollama settings saved. Backend: " + llmService.getBackend().getName() +
+                ", Path: " + llmService.getOllamaPath() +
                 ", Model: " + modelName +
                 ", Temperature: " + temperature);
     }
@@ -0,0 +1,70 @@
+package com.nexuscore.gui.markdown;
+
+import com.nexuscore.gui.markdown.MarkdownBlock.Kind;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of parsed blocks, keyed by what the block was
+ * parsed from. Messages that are shown again (e.g. when a conversation is
+ * reopened) find their blocks here instead of parsing them again.
+ * Safe for use from several threads.
+ */
+final class BlockCache {
+
+    private final Map<String, MarkdownBlock> blocks;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructor
+     *
+     * @param capacity Blocks kept at most
+     */
+    BlockCache(int capacity) {
+        this.blocks = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MarkdownBlock> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Get a parsed block, parsing it on a miss
+     *
+     * @param store Whether a newly parsed block is kept (false for blocks that are still growing)
+     * @return The block
+     */
+    MarkdownBlock get(Kind kind, int level, String marker, String language, String content, boolean store) {
+        String key = kind.ordinal() + "\u0000" + level + "\u0000" + marker + "\u0000" + language + "\u0000"
+                + content;
+        synchronized (this) {
+            MarkdownBlock block = blocks.get(key);
+            if (block != null) {
+                hits++;
+                return block;
+            }
+            misses++;
+        }
+        MarkdownBlock block = MarkdownBlock.create(kind, level, marker, language, content);
+        if (store) {
+            synchronized (this) {
+                blocks.put(key, block);
+            }
+        }
+        return block;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Blocks that had to be parsed
+     */
+    synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,229 @@
+package com.nexuscore.gui.markdown;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Render model of one Markdown block (paragraph, heading, code block, list
+ * item, quote or rule). Blocks are immutable, so one parsed block can be
+ * shared by every message that contains the same source.
+ */
+public final class MarkdownBlock {
+
+    /**
+     * Kind of block
+     */
+    public enum Kind {
+        PARAGRAPH, HEADING, CODE, LIST_ITEM, QUOTE, RULE
+    }
+
+    private static final Pattern LINK = Pattern.compile("\\[([^\\]\\n]*)\\]\\(([^)\\s]*)\\)");
+
+    private final Kind kind;
+    private final int level; // Heading level, or list nesting depth
+    private final String marker; // List marker ("•" or "1.")
+    private final String language; // Code block language ("" if none)
+    private final String content; // Block text without the Markdown markers
+    private final List<Span> spans; // Inline formatting of the content (one plain span for code)
+
+    private MarkdownBlock(Kind kind, int level, String marker, String language, String content, List<Span> spans) {
+        this.kind = kind;
+        this.level = level;
+        this.marker = marker;
+        this.language = language;
+        this.content = content;
+        this.spans = spans;
+    }
+
+    /**
+     * Create a block and parse its inline formatting
+     *
+     * @param kind     Kind of block
+     * @param level    Heading level or list nesting depth (0 otherwise)
+     * @param marker   List marker (empty otherwise)
+     * @param language Code block language (empty otherwise)
+     * @param content  Block text without the Markdown markers
+     */
+    static MarkdownBlock create(Kind kind, int level, String marker, String language, String content) {
+        List<Span> spans;
+        if (kind == Kind.CODE) {
+            spans = Collections.singletonList(new Span(content, Span.CODE, null));
+        } else if (kind == Kind.RULE) {
+            spans = Collections.emptyList();
+        } else {
+            spans = parseSpans(content);
+        }
+        return new MarkdownBlock(kind, level, marker, language, content, spans);
+    }
+
+    /**
+     * Split text into spans of bold, italic, inline code and link text.
+     * An emphasis marker opens only before a non-space character and closes
+     * only after one, so "2 * 3" stays literal; a marker left open (e.g. while
+     * the text is still streaming) formats the rest of the block.
+     *
+     * @param text Inline text
+     * @return Spans in order
+     */
+    static List<Span> parseSpans(String text) {
+        List<Span> spans = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int style = 0;
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < n && isPunctuation(text.charAt(i + 1))) {
+                current.append(text.charAt(i + 1));
+                i += 2;
+            } else if (c == '`') {
+                int run = runLength(text, i, '`');
+                int close = text.indexOf(text.substring(i, i + run), i + run);
+                if (close < 0) {
+                    current.append(text, i, i + run);
+                } else {
+                    flush(spans, current, style);
+                    spans.add(new Span(text.substring(i + run, close).strip(), style | Span.CODE, null));
+                    run = close + run - i;
+                }
+                i += run;
+            } else if (c == '*' || c == '_') {
+                int run = runLength(text, i, c);
+                int flags = run == 1 ? Span.ITALIC : run == 2 ? Span.BOLD : run == 3 ? Span.BOLD | Span.ITALIC : 0;
+                boolean afterText = i > 0 && !Character.isWhitespace(text.charAt(i - 1));
+                boolean beforeText = i + run < n && !Character.isWhitespace(text.charAt(i + run));
+                boolean intraword = c == '_' && i > 0 && Character.isLetterOrDigit(text.charAt(i - 1));
+                if (flags != 0 && !intraword && (style & flags) == flags && afterText) {
+                    flush(spans, current, style);
+                    style &= ~flags;
+                } else if (flags != 0 && !intraword && beforeText) {
+                    flush(spans, current, style);
+                    style |= flags;
+                } else {
+                    current.append(text, i, i + run);
+                }
+                i += run;
+            } else if (c == '[') {
+                Matcher link = LINK.matcher(text).region(i, n);
+                if (link.lookingAt()) {
+                    flush(spans, current, style);
+                    spans.add(new Span(link.group(1), style | Span.LINK, link.group(2)));
+                    i = link.end();
+                } else {
+                    current.append(c);
+                    i++;
+                }
+            } else {
+                current.append(c);
+                i++;
+            }
+        }
+        flush(spans, current, style);
+        return Collections.unmodifiableList(spans);
+    }
+
+    private static int runLength(String text, int start, char c) {
+        int end = start;
+        while (end < text.length() && text.charAt(end) == c) {
+            end++;
+        }
+        return end - start;
+    }
+
+    private static boolean isPunctuation(char c) {
+        return c < 128 && !Character.isLetterOrDigit(c) && !Character.isWhitespace(c);
+    }
+
+    private static void flush(List<Span> spans, StringBuilder current, int style) {
+        if (current.length() > 0) {
+            spans.add(new Span(current.toString(), style, null));
+            current.setLength(0);
+        }
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Heading level (1-6) or list nesting depth (0 for top-level items)
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * List marker as displayed ("•" for bullets, "1." for numbered items)
+     */
+    public String getMarker() {
+        return marker;
+    }
+
+    /**
+     * Language given after the opening fence of a code block, or ""
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * Block text without the Markdown markers
+     */
+    public String getContent() {
+        return content;
+    }
+
+    public List<Span> getSpans() {
+        return spans;
+    }
+
+    @Override
+    public String toString() {
+        return kind + (level > 0 ? "(" + level + ")" : "") + ": " + content;
+    }
+
+    /**
+     * Run of text with the same formatting
+     */
+    public static final class Span {
+        public static final int BOLD = 1;
+        public static final int ITALIC = 2;
+        public static final int CODE = 4;
+        public static final int LINK = 8;
+
+        private final String text;
+        private final int style;
+        private final String url;
+
+        Span(String text, int style, String url) {
+            this.text = text;
+            this.style = style;
+            this.url = url;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Combination of {@link #BOLD}, {@link #ITALIC}, {@link #CODE} and {@link #LINK}
+         */
+        public int getStyle() {
+            return style;
+        }
+
+        public boolean has(int flag) {
+            return (style & flag) != 0;
+        }
+
+        /**
+         * Link target (links only)
+         */
+        public String getUrl() {
+            return url;
+        }
+    }
+}
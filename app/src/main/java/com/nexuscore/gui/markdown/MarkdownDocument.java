@@ -0,0 +1,216 @@
+package com.nexuscore.gui.markdown;
+
+import com.nexuscore.gui.markdown.MarkdownBlock.Kind;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Incremental block parser for the text of one message.
+ * <p>
+ * Only complete lines are fed to the block state. A block that a complete
+ * line has ended is never parsed again; when the text grows (a streamed
+ * response), parsing resumes after the last complete line, and only the
+ * block that is still open plus the unfinished last line (the tail) is
+ * parsed on each update. The classification of a line depends only on the
+ * line and the open block, so text appended later never changes a closed
+ * block. Not thread-safe; one render thread owns each document.
+ */
+final class MarkdownDocument {
+
+    private static final Pattern FENCE = Pattern.compile("^ {0,3}(`{3,}|~{3,})\\s*([^`\\s]*).*$");
+    private static final Pattern HEADING = Pattern.compile("^ {0,3}(#{1,6})(?:\\s+(.*?))?\\s*$");
+    private static final Pattern RULE = Pattern.compile("^ {0,3}([-*_])(?:\\s*\\1){2,}\\s*$");
+    private static final Pattern LIST_ITEM = Pattern.compile("^(\\s*)([-*+]|\\d{1,9}[.)])\\s+(.*)$");
+    private static final Pattern QUOTE = Pattern.compile("^ {0,3}>\\s?(.*)$");
+
+    private final BlockCache cache;
+    private final List<MarkdownBlock> closed = new ArrayList<>();
+    private String text = "";
+    private int scanned; // End of the last complete line fed to the block state
+    private OpenBlock open; // Block that later lines may still extend
+
+    /**
+     * Constructor
+     *
+     * @param cache Parsed blocks shared between documents
+     */
+    MarkdownDocument(BlockCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Parse the current text of the message. If it extends the text of the
+     * previous call, the blocks closed before are reused as they are.
+     *
+     * @param newText  Current text
+     * @param complete Whether the text is final (its last block is cached too)
+     * @return Blocks in order
+     */
+    List<MarkdownBlock> update(String newText, boolean complete) {
+        if (newText.length() < scanned || !newText.regionMatches(0, text, 0, scanned)) {
+            // Not an extension (e.g. a fallback response replaced the streamed text)
+            closed.clear();
+            scanned = 0;
+            open = null;
+        }
+        text = newText;
+
+        int lineEnd;
+        while ((lineEnd = newText.indexOf('\n', scanned)) >= 0) {
+            open = feed(open, stripCarriageReturn(newText.substring(scanned, lineEnd)), closed, true);
+            scanned = lineEnd + 1;
+        }
+
+        // The tail: the open block plus the unfinished last line, parsed on a copy
+        List<MarkdownBlock> blocks = new ArrayList<>(closed.size() + 2);
+        blocks.addAll(closed);
+        OpenBlock tail = open == null ? null : open.copy();
+        if (scanned < newText.length()) {
+            tail = feed(tail, stripCarriageReturn(newText.substring(scanned)), blocks, complete);
+        }
+        if (tail != null) {
+            blocks.add(close(tail, complete));
+        }
+        return blocks;
+    }
+
+    /**
+     * Feed one line to the block state
+     *
+     * @param open  Open block, or null
+     * @param line  Line without its line break
+     * @param out   Receives the blocks this line closes
+     * @param store Whether closed blocks are kept in the cache
+     * @return The open block after the line, or null
+     */
+    private OpenBlock feed(OpenBlock open, String line, List<MarkdownBlock> out, boolean store) {
+        if (open != null && open.kind == Kind.CODE) {
+            if (isClosingFence(line, open)) {
+                out.add(close(open, store));
+                return null;
+            }
+            open.append(line);
+            return open;
+        }
+
+        if (line.isBlank()) {
+            closeInto(open, out, store);
+            return null;
+        }
+        Matcher m = FENCE.matcher(line);
+        if (m.matches()) {
+            closeInto(open, out, store);
+            OpenBlock code = new OpenBlock(Kind.CODE, 0, "", m.group(2));
+            code.fenceChar = m.group(1).charAt(0);
+            code.fenceLength = m.group(1).length();
+            return code;
+        }
+        m = HEADING.matcher(line);
+        if (m.matches()) {
+            closeInto(open, out, store);
+            out.add(cache.get(Kind.HEADING, m.group(1).length(), "", "",
+                    m.group(2) == null ? "" : m.group(2).replaceFirst("\\s+#+$", ""), store));
+            return null;
+        }
+        if (RULE.matcher(line).matches()) {
+            closeInto(open, out, store);
+            out.add(cache.get(Kind.RULE, 0, "", "", "", store));
+            return null;
+        }
+        m = LIST_ITEM.matcher(line);
+        if (m.matches()) {
+            closeInto(open, out, store);
+            String marker = Character.isDigit(m.group(2).charAt(0)) ? m.group(2) : "•";
+            OpenBlock item = new OpenBlock(Kind.LIST_ITEM, m.group(1).replace("\t", "    ").length() / 2, marker, "");
+            item.append(m.group(3));
+            return item;
+        }
+        m = QUOTE.matcher(line);
+        if (m.matches()) {
+            if (open != null && open.kind == Kind.QUOTE) {
+                open.append(m.group(1));
+                return open;
+            }
+            closeInto(open, out, store);
+            OpenBlock quote = new OpenBlock(Kind.QUOTE, 0, "", "");
+            quote.append(m.group(1));
+            return quote;
+        }
+
+        // Plain text continues a paragraph, list item or quote
+        if (open != null) {
+            open.append(line.strip());
+            return open;
+        }
+        OpenBlock paragraph = new OpenBlock(Kind.PARAGRAPH, 0, "", "");
+        paragraph.append(line.strip());
+        return paragraph;
+    }
+
+    private static boolean isClosingFence(String line, OpenBlock code) {
+        String fence = line.strip();
+        if (fence.length() < code.fenceLength || line.length() - line.stripLeading().length() > 3) {
+            return false;
+        }
+        for (int i = 0; i < fence.length(); i++) {
+            if (fence.charAt(i) != code.fenceChar) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void closeInto(OpenBlock open, List<MarkdownBlock> out, boolean store) {
+        if (open != null) {
+            out.add(close(open, store));
+        }
+    }
+
+    private MarkdownBlock close(OpenBlock open, boolean store) {
+        return cache.get(open.kind, open.level, open.marker, open.language, open.content.toString(), store);
+    }
+
+    private static String stripCarriageReturn(String line) {
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    /**
+     * Block whose lines are still being collected
+     */
+    private static final class OpenBlock {
+        final Kind kind;
+        final int level;
+        final String marker;
+        final String language;
+        final StringBuilder content = new StringBuilder();
+        int lines;
+        char fenceChar;
+        int fenceLength;
+
+        OpenBlock(Kind kind, int level, String marker, String language) {
+            this.kind = kind;
+            this.level = level;
+            this.marker = marker;
+            this.language = language;
+        }
+
+        void append(String line) {
+            if (lines++ > 0) {
+                content.append('\n');
+            }
+            content.append(line);
+        }
+
+        OpenBlock copy() {
+            OpenBlock copy = new OpenBlock(kind, level, marker, language);
+            copy.content.append(content);
+            copy.lines = lines;
+            copy.fenceChar = fenceChar;
+            copy.fenceLength = fenceLength;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.nexuscore.gui.markdown;
+
+import com.nexuscore.gui.components.ChatMessage;
+import javafx.scene.Node;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Renders the Markdown of LLM responses off the JavaFX thread.
+ * <p>
+ * One render thread parses message text into blocks and builds their
+ * nodes; the JavaFX thread only attaches the finished result
+ * ({@link ChatMessage#setRendered}). While a response streams in, text is
+ * appended here as it arrives, renders are coalesced (the render thread
+ * always takes all text received so far) and only the unfinished tail block
+ * is parsed and built again; the other blocks keep their nodes. Parsed
+ * blocks are cached by content, so messages loaded again parse nothing.
+ * All methods may be called from any thread.
+ */
+public class MarkdownRenderPipeline {
+
+    private static final int CACHE_BLOCKS = 4096;
+
+    private final BlockCache cache = new BlockCache(CACHE_BLOCKS);
+    private final Executor fxExecutor; // Applies results on the JavaFX thread
+    private final ExecutorService renderer;
+    private final Object lock = new Object();
+    private final Map<ChatMessage, Job> streaming = new HashMap<>(); // Guarded by lock
+
+    // Guarded by lock
+    private long renders;
+    private long nodesBuilt;
+    private long nodesReused;
+    private long totalRenderNanos;
+    private long maxRenderNanos;
+
+    /**
+     * Create a pipeline with its render thread
+     *
+     * @param fxExecutor Runs result updates on the JavaFX thread (e.g. {@code UiUpdateDispatcher::post})
+     */
+    public MarkdownRenderPipeline(Executor fxExecutor) {
+        this.fxExecutor = fxExecutor;
+        this.renderer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "nexus-markdown");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start rendering a response as it streams in. Nothing happens if the
+     * message is no longer streaming, so a late call cannot revive a
+     * response that was already finished.
+     *
+     * @param message Response being streamed
+     */
+    public void startStreaming(ChatMessage message) {
+        synchronized (lock) {
+            if (message.isStreaming() && !streaming.containsKey(message)) {
+                streaming.put(message, new Job(message, new MarkdownDocument(cache)));
+            }
+        }
+    }
+
+    /**
+     * Append streamed text to a response started with {@link #startStreaming}
+     *
+     * @param message Response being streamed
+     * @param text    Text to append
+     */
+    public void append(ChatMessage message, String text) {
+        synchronized (lock) {
+            Job job = streaming.get(message);
+            if (job != null) {
+                job.text.append(text);
+                schedule(job);
+            }
+        }
+    }
+
+    /**
+     * Render the final text of a message (a finished or stopped response, or
+     * one that was not streamed). Later appends to the message are ignored.
+     *
+     * @param message Message to render
+     * @param text    Final text
+     */
+    public void finish(ChatMessage message, String text) {
+        synchronized (lock) {
+            Job job = streaming.remove(message);
+            if (job == null) {
+                job = new Job(message, new MarkdownDocument(cache));
+            }
+            job.text.setLength(0);
+            job.text.append(text);
+            job.finished = true;
+            schedule(job);
+        }
+    }
+
+    /**
+     * Stop rendering a response that will not be shown
+     *
+     * @param message Response that was started with {@link #startStreaming}
+     */
+    public void discard(ChatMessage message) {
+        synchronized (lock) {
+            streaming.remove(message);
+        }
+    }
+
+    /**
+     * Render text on the calling thread, e.g. a background thread loading
+     * stored messages. The nodes are ready to attach on the JavaFX thread.
+     *
+     * @param text Message text
+     * @return Rendered body
+     */
+    public RenderedMarkdown renderNow(String text) {
+        long start = System.nanoTime();
+        RenderedMarkdown result = build(new MarkdownDocument(cache), null, text, true);
+        record(start);
+        return result;
+    }
+
+    /**
+     * Get a snapshot of render counts and times
+     *
+     * @return Current statistics
+     */
+    public Stats getStats() {
+        synchronized (lock) {
+            return new Stats(renders, cache.getMisses(), cache.getHits(), nodesBuilt, nodesReused,
+                    renders == 0 ? 0 : totalRenderNanos / renders / 1000, maxRenderNanos / 1000);
+        }
+    }
+
+    /**
+     * Stop the render thread; pending renders are dropped
+     */
+    public void shutdown() {
+        renderer.shutdownNow();
+    }
+
+    /**
+     * Queue a render of the job unless one is already queued (caller holds the lock)
+     */
+    private void schedule(Job job) {
+        if (job.scheduled) {
+            return;
+        }
+        job.scheduled = true;
+        try {
+            renderer.execute(() -> render(job));
+        } catch (RejectedExecutionException e) {
+            job.scheduled = false; // Shut down
+        }
+    }
+
+    /**
+     * Render all text the job has received so far (render thread)
+     */
+    private void render(Job job) {
+        String text;
+        boolean complete;
+        synchronized (lock) {
+            text = job.text.toString();
+            complete = job.finished;
+            job.scheduled = false;
+        }
+
+        long start = System.nanoTime();
+        RenderedMarkdown result;
+        try {
+            result = build(job.document, job.last, text, complete);
+        } catch (RuntimeException e) {
+            System.err.println("Markdown rendering failed: " + e.getMessage());
+            return; // The message keeps showing its plain text
+        }
+        job.last = result;
+        record(start);
+
+        // Apply only the newest result, at most one update queued per message
+        boolean apply;
+        synchronized (lock) {
+            job.pending = result;
+            apply = !job.applyQueued;
+            job.applyQueued = true;
+        }
+        if (apply) {
+            fxExecutor.execute(() -> {
+                RenderedMarkdown latest;
+                synchronized (lock) {
+                    latest = job.pending;
+                    job.pending = null;
+                    job.applyQueued = false;
+                }
+                job.message.setRendered(latest);
+            });
+        }
+    }
+
+    /**
+     * Parse text and build its nodes, reusing the nodes of blocks that are
+     * unchanged since the previous result
+     *
+     * @param document Parse state of the message
+     * @param previous Previous result for the message, or null
+     * @param text     Current text
+     * @param complete Whether the text is final
+     */
+    private RenderedMarkdown build(MarkdownDocument document, RenderedMarkdown previous, String text,
+            boolean complete) {
+        List<MarkdownBlock> blocks = document.update(text, complete);
+        List<Node> nodes = new ArrayList<>(blocks.size());
+        int reused = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            if (previous != null && i < previous.getBlocks().size() && previous.getBlocks().get(i) == blocks.get(i)) {
+                nodes.add(previous.getNodes().get(i));
+                reused++;
+            } else {
+                nodes.add(MarkdownRenderer.render(blocks.get(i)));
+            }
+        }
+        synchronized (lock) {
+            nodesReused += reused;
+            nodesBuilt += blocks.size() - reused;
+        }
+        return new RenderedMarkdown(blocks, nodes);
+    }
+
+    private void record(long start) {
+        long elapsed = System.nanoTime() - start;
+        synchronized (lock) {
+            renders++;
+            totalRenderNanos += elapsed;
+            maxRenderNanos = Math.max(maxRenderNanos, elapsed);
+        }
+    }
+
+    /**
+     * Render state of one message
+     */
+    private static class Job {
+        final ChatMessage message;
+        final MarkdownDocument document;
+        final StringBuilder text = new StringBuilder(); // Guarded by lock
+        boolean finished; // Guarded by lock
+        boolean scheduled; // Guarded by lock
+        RenderedMarkdown pending; // Guarded by lock
+        boolean applyQueued; // Guarded by lock
+        RenderedMarkdown last; // Render thread only
+
+        Job(ChatMessage message, MarkdownDocument document) {
+            this.message = message;
+            this.document = document;
+        }
+    }
+
+    /**
+     * Snapshot of the pipeline's render statistics
+     */
+    public static class Stats {
+        private final long renders;
+        private final long blocksParsed;
+        private final long blockCacheHits;
+        private final long nodesBuilt;
+        private final long nodesReused;
+        private final long averageRenderMicros;
+        private final long maxRenderMicros;
+
+        public Stats(long renders, long blocksParsed, long blockCacheHits, long nodesBuilt, long nodesReused,
+                long averageRenderMicros, long maxRenderMicros) {
+            this.renders = renders;
+            this.blocksParsed = blocksParsed;
+            this.blockCacheHits = blockCacheHits;
+            this.nodesBuilt = nodesBuilt;
+            this.nodesReused = nodesReused;
+            this.averageRenderMicros = averageRenderMicros;
+            this.maxRenderMicros = maxRenderMicros;
+        }
+
+        /** Texts rendered (each streaming update counts) */
+        public long getRenders() {
+            return renders;
+        }
+
+        /** Blocks that had to be parsed */
+        public long getBlocksParsed() {
+            return blocksParsed;
+        }
+
+        /** Blocks taken from the cache instead of being parsed */
+        public long getBlockCacheHits() {
+            return blockCacheHits;
+        }
+
+        /** Block nodes built */
+        public long getNodesBuilt() {
+            return nodesBuilt;
+        }
+
+        /** Block nodes carried over from the previous result of a streaming message */
+        public long getNodesReused() {
+            return nodesReused;
+        }
+
+        /** Average time of a render */
+        public long getAverageRenderMicros() {
+            return averageRenderMicros;
+        }
+
+        /** Longest time of a render */
+        public long getMaxRenderMicros() {
+            return maxRenderMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "renders=" + renders + ", parsed=" + blocksParsed + ", cacheHits=" + blockCacheHits
+                    + ", nodesBuilt=" + nodesBuilt + ", nodesReused=" + nodesReused
+                    + ", avgRenderUs=" + averageRenderMicros + ", maxRenderUs=" + maxRenderMicros;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.nexuscore.gui.markdown;
+
+import com.nexuscore.gui.markdown.MarkdownBlock.Span;
+import javafx.geometry.Insets;
+import javafx.scene.Node;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontPosture;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+
+import java.util.List;
+
+/**
+ * Builds the nodes for a parsed block. Nodes may be built on any thread as
+ * long as they are not attached to a showing scene yet, so the render thread
+ * builds them and the JavaFX thread only attaches them. Colors and spacing
+ * come from the style classes in styles.css.
+ */
+final class MarkdownRenderer {
+
+    private static final String FAMILY = "Segoe UI";
+    private static final double TEXT_SIZE = 14;
+    private static final Font REGULAR = Font.font(FAMILY, TEXT_SIZE);
+    private static final Font BOLD = Font.font(FAMILY, FontWeight.BOLD, TEXT_SIZE);
+    private static final Font ITALIC = Font.font(FAMILY, FontWeight.NORMAL, FontPosture.ITALIC, TEXT_SIZE);
+    private static final Font BOLD_ITALIC = Font.font(FAMILY, FontWeight.BOLD, FontPosture.ITALIC, TEXT_SIZE);
+    private static final Font CODE = Font.font("Monospaced", 13);
+    private static final Font CODE_LANGUAGE = Font.font(FAMILY, 10);
+    private static final Font[] HEADINGS = {
+            Font.font(FAMILY, FontWeight.BOLD, 20),
+            Font.font(FAMILY, FontWeight.BOLD, 18),
+            Font.font(FAMILY, FontWeight.BOLD, 16),
+            BOLD
+    };
+    private static final double INDENT = 16; // Per list nesting level
+    static final double MAX_WIDTH = 480; // Same as the plain message text
+
+    private MarkdownRenderer() {
+    }
+
+    /**
+     * Build the node for a block
+     *
+     * @param block Parsed block
+     * @return Node, not attached to any parent
+     */
+    static Node render(MarkdownBlock block) {
+        switch (block.getKind()) {
+            case HEADING: {
+                TextFlow flow = flow(block.getSpans(), HEADINGS[Math.min(block.getLevel(), HEADINGS.length) - 1]);
+                flow.getStyleClass().add("md-heading");
+                return flow;
+            }
+            case CODE:
+                return codeBlock(block);
+            case LIST_ITEM: {
+                Text marker = new Text(block.getMarker());
+                marker.setFont(REGULAR);
+                TextFlow flow = flow(block.getSpans(), null);
+                HBox.setHgrow(flow, Priority.ALWAYS);
+                HBox item = new HBox(6, marker, flow);
+                item.setPadding(new Insets(0, 0, 0, block.getLevel() * INDENT));
+                item.getStyleClass().add("md-list-item");
+                return item;
+            }
+            case QUOTE: {
+                VBox quote = new VBox(flow(block.getSpans(), null));
+                quote.getStyleClass().add("md-quote");
+                return quote;
+            }
+            case RULE: {
+                Region rule = new Region();
+                rule.setMinHeight(1);
+                rule.setPrefHeight(1);
+                rule.getStyleClass().add("md-rule");
+                return rule;
+            }
+            default: {
+                TextFlow flow = flow(block.getSpans(), null);
+                flow.getStyleClass().add("md-paragraph");
+                return flow;
+            }
+        }
+    }
+
+    private static Node codeBlock(MarkdownBlock block) {
+        Text code = new Text(block.getContent());
+        code.setFont(CODE);
+        code.getStyleClass().add("md-code-text");
+        TextFlow flow = new TextFlow(code);
+
+        VBox box = new VBox(4);
+        if (!block.getLanguage().isEmpty()) {
+            Text language = new Text(block.getLanguage());
+            language.setFont(CODE_LANGUAGE);
+            language.getStyleClass().add("md-code-language");
+            box.getChildren().add(language);
+        }
+        box.getChildren().add(flow);
+        box.getStyleClass().add("md-code-block");
+        return box;
+    }
+
+    /**
+     * Build a text flow of formatted spans
+     *
+     * @param spans Spans in order
+     * @param font  Font for every span (headings), or null to choose by span style
+     */
+    private static TextFlow flow(List<Span> spans, Font font) {
+        TextFlow flow = new TextFlow();
+        flow.setMaxWidth(MAX_WIDTH);
+        for (Span span : spans) {
+            Text text = new Text(span.getText());
+            text.setFont(font != null ? font : fontOf(span));
+            if (span.has(Span.CODE)) {
+                text.getStyleClass().add("md-code");
+            }
+            flow.getChildren().add(text);
+            if (span.has(Span.LINK)) {
+                text.getStyleClass().add("md-link");
+                if (!span.getUrl().equals(span.getText())) {
+                    Text url = new Text(" (" + span.getUrl() + ")");
+                    url.setFont(CODE_LANGUAGE);
+                    url.getStyleClass().add("md-link-url");
+                    flow.getChildren().add(url);
+                }
+            }
+        }
+        return flow;
+    }
+
+    private static Font fontOf(Span span) {
+        if (span.has(Span.CODE)) {
+            return CODE;
+        }
+        boolean bold = span.has(Span.BOLD);
+        boolean italic = span.has(Span.ITALIC);
+        return bold && italic ? BOLD_ITALIC : bold ? BOLD : italic ? ITALIC : REGULAR;
+    }
+}
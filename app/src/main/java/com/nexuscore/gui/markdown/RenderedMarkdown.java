@@ -0,0 +1,44 @@
+package com.nexuscore.gui.markdown;
+
+import javafx.scene.Node;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rendered body of a message: its parsed blocks and one ready-to-attach node
+ * per block. Results for a growing message share the nodes of the blocks
+ * that did not change, so attaching a newer result only replaces the tail.
+ */
+public final class RenderedMarkdown {
+
+    private final List<MarkdownBlock> blocks;
+    private final List<Node> nodes;
+
+    RenderedMarkdown(List<MarkdownBlock> blocks, List<Node> nodes) {
+        this.blocks = Collections.unmodifiableList(blocks);
+        this.nodes = Collections.unmodifiableList(nodes);
+    }
+
+    public List<MarkdownBlock> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Node of each block, in order
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Build a new node for a block, for a container that cannot take the
+     * shared node because another container shows it (JavaFX thread)
+     *
+     * @param index Index of the block
+     * @return New node
+     */
+    public Node createNode(int index) {
+        return MarkdownRenderer.render(blocks.get(index));
+    }
+}
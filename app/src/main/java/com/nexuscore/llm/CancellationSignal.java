@@ -0,0 +1,74 @@
+package com.nexuscore.llm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cancellation flag for one generation. Backends register callbacks that
+ * tear down the underlying resource (the Ollama process or the HTTP
+ * exchange), so cancelling actually stops the work instead of abandoning it.
+ */
+public class CancellationSignal {
+
+    private final List<Runnable> callbacks = new ArrayList<>();
+    private boolean cancelled;
+
+    /**
+     * Cancel the generation and run all registered callbacks once
+     */
+    public void cancel() {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        for (Runnable callback : toRun) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                System.err.println("Error while cancelling generation: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Check whether the generation was cancelled
+     *
+     * @return true if cancelled
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Register a callback that releases a resource on cancellation.
+     * Runs immediately if the signal is already cancelled.
+     *
+     * @param callback Cleanup action
+     */
+    public void onCancel(Runnable callback) {
+        synchronized (this) {
+            if (!cancelled) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * Throw if the generation was cancelled
+     *
+     * @throws CancellationException If cancelled
+     */
+    public void throwIfCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("Generation cancelled");
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.nexuscore.llm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the model context returned by Ollama for the last completed turn of
+ * each conversation, so the next turn only has to evaluate the new prompt.
+ * A context is handed out once ({@link #take}); it is only stored again when
+ * the following turn completes, so a cancelled, failed or timed-out turn
+ * leaves the conversation without one and the next turn falls back to
+ * sending the full history.
+ */
+public class ConversationContextStore {
+
+    public static final int DEFAULT_MAX_CONVERSATIONS = 16;
+
+    private final Map<Integer, State> contexts;
+
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong rebuilt = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param maxConversations Number of conversations whose context is kept
+     *                         (the least recently used one is dropped first)
+     */
+    public ConversationContextStore(int maxConversations) {
+        this.contexts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, State> eldest) {
+                return size() > maxConversations;
+            }
+        };
+    }
+
+    /**
+     * Remove and return the context of a conversation. The context grows by
+     * every turn, so one that no longer fits the token budget is discarded and
+     * the turn falls back to the packed history.
+     *
+     * @param conversationId Conversation ID
+     * @param model          Model of the new turn; a context from another model is discarded
+     * @param maxTokens      Longest context that may be reused
+     * @return Context, or null if the full history has to be sent
+     */
+    public synchronized int[] take(int conversationId, String model, int maxTokens) {
+        State state = contexts.remove(conversationId);
+        if (state == null || !state.model.equals(model) || state.context.length > maxTokens) {
+            rebuilt.incrementAndGet();
+            return null;
+        }
+        reused.incrementAndGet();
+        return state.context;
+    }
+
+    /**
+     * Store the context after a completed turn
+     *
+     * @param conversationId Conversation ID
+     * @param model          Model that produced the context
+     * @param context        Context returned by Ollama
+     */
+    public synchronized void put(int conversationId, String model, int[] context) {
+        contexts.put(conversationId, new State(model, context));
+    }
+
+    /**
+     * Forget the context of a conversation
+     *
+     * @param conversationId Conversation ID
+     */
+    public synchronized void invalidate(int conversationId) {
+        contexts.remove(conversationId);
+    }
+
+    /**
+     * Forget every stored context
+     */
+    public synchronized void clear() {
+        contexts.clear();
+    }
+
+    /**
+     * Number of turns that reused a stored context
+     */
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    /**
+     * Number of turns that had to send the full history
+     */
+    public long getRebuiltCount() {
+        return rebuilt.get();
+    }
+
+    private static final class State {
+        final String model;
+        final int[] context;
+
+        State(String model, int[] context) {
+            this.model = model;
+            this.context = context;
+        }
+    }
+}
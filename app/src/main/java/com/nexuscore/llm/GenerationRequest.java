@@ -0,0 +1,266 @@
+package com.nexuscore.llm;
+
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single generation request passed from LLMService to a backend
+ */
+public class GenerationRequest {
+
+    /**
+     * Conversation id of requests that do not belong to a stored conversation
+     */
+    public static final int NO_CONVERSATION = -1;
+
+    /**
+     * Header placed before the transcript when a history request is flattened into one prompt
+     */
+    static final String HISTORY_HEADER = "Below is a history of past conversations.Please take this into account when answering the last question.\n\n";
+
+    /**
+     * Header placed before messages recalled from other conversations by semantic memory
+     */
+    static final String RELATED_HEADER = "Related messages from earlier conversations (use them only if they help):\n\n";
+
+    private final String model;
+    private final String prompt;
+    private final List<ConversationMessage> history;
+    private float temperature = 0.7f;
+    private int maxTokens;
+    private String keepAlive;
+    private int contextWindow;
+    private int conversationId = NO_CONVERSATION;
+    private RequestScheduler.Priority priority = RequestScheduler.Priority.INTERACTIVE;
+    private int[] context;
+    private volatile int[] resultContext;
+    private final CancellationSignal cancellationSignal = new CancellationSignal();
+    private int memoryBudget;
+    private volatile List<ConversationMessage> relatedMessages = Collections.emptyList();
+
+    /**
+     * Constructor for a plain prompt
+     *
+     * @param model  Model name
+     * @param prompt User's prompt
+     */
+    public GenerationRequest(String model, String prompt) {
+        this(model, prompt, Collections.emptyList());
+    }
+
+    /**
+     * Constructor for a prompt that follows a conversation history
+     *
+     * @param model   Model name
+     * @param prompt  User's prompt
+     * @param history Past messages, oldest first
+     */
+    public GenerationRequest(String model, String prompt, List<ConversationMessage> history) {
+        this.model = model;
+        this.prompt = prompt;
+        this.history = history != null ? history : Collections.emptyList();
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+
+    public List<ConversationMessage> getHistory() {
+        return history;
+    }
+
+    public boolean hasHistory() {
+        return !history.isEmpty();
+    }
+
+    public float getTemperature() {
+        return temperature;
+    }
+
+    public void setTemperature(float temperature) {
+        this.temperature = temperature;
+    }
+
+    /**
+     * Maximum number of tokens to generate; values of 0 or less mean "no limit"
+     */
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    public void setMaxTokens(int maxTokens) {
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * How long Ollama keeps the model loaded after this request (null for the server default)
+     */
+    public String getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(String keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Context window in tokens to request from the model; 0 or less means the server default
+     */
+    public int getContextWindow() {
+        return contextWindow;
+    }
+
+    public void setContextWindow(int contextWindow) {
+        this.contextWindow = contextWindow;
+    }
+
+    /**
+     * Conversation this request belongs to, or {@link #NO_CONVERSATION}
+     */
+    public int getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(int conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public boolean hasConversation() {
+        return conversationId != NO_CONVERSATION;
+    }
+
+    /**
+     * Scheduling priority of this request (interactive by default)
+     */
+    public RequestScheduler.Priority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(RequestScheduler.Priority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Model context returned by the previous turn of the conversation; when
+     * set, only the new prompt has to be evaluated (null to send the full history)
+     */
+    public int[] getContext() {
+        return context;
+    }
+
+    public void setContext(int[] context) {
+        this.context = context;
+    }
+
+    /**
+     * Model context after this request, set by backends that return one
+     */
+    public int[] getResultContext() {
+        return resultContext;
+    }
+
+    public void setResultContext(int[] resultContext) {
+        this.resultContext = resultContext;
+    }
+
+    /**
+     * Tokens reserved for messages recalled by semantic memory; 0 means no recall
+     */
+    public int getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(int memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Messages from earlier conversations that are related to the prompt, most similar first
+     */
+    public List<ConversationMessage> getRelatedMessages() {
+        return relatedMessages;
+    }
+
+    public void setRelatedMessages(List<ConversationMessage> relatedMessages) {
+        this.relatedMessages = relatedMessages != null ? relatedMessages : Collections.emptyList();
+    }
+
+    public boolean hasRelatedMessages() {
+        return !relatedMessages.isEmpty();
+    }
+
+    /**
+     * Signal that stops this request's process or HTTP exchange when cancelled
+     */
+    public CancellationSignal getCancellationSignal() {
+        return cancellationSignal;
+    }
+
+    /**
+     * Flatten the history and prompt into a single text prompt, for backends
+     * that cannot take structured chat messages
+     *
+     * @return Prompt text
+     */
+    public String toPromptText() {
+        if (history.isEmpty() && relatedMessages.isEmpty()) {
+            return prompt;
+        }
+
+        StringBuilder enhancedPrompt = new StringBuilder();
+
+        // 関連する過去のメッセージ
+        if (!relatedMessages.isEmpty()) {
+            enhancedPrompt.append(relatedText());
+        }
+
+        // ヘッダー
+        enhancedPrompt.append(HISTORY_HEADER);
+
+        // 会話履歴を追加
+        for (ConversationMessage message : history) {
+            enhancedPrompt.append(roleOf(message)).append(": ").append(message.getContent()).append("\n\n");
+        }
+
+        // 新しいプロンプト
+        enhancedPrompt.append("User: ").append(prompt).append("\n\n");
+        enhancedPrompt.append("Assistant: ");
+        return enhancedPrompt.toString();
+    }
+
+    /**
+     * Prompt for a request that continues from a model context: the new
+     * prompt, preceded by the related messages if any were recalled
+     *
+     * @return Prompt text
+     */
+    public String toContinuationText() {
+        return relatedMessages.isEmpty() ? prompt : relatedText() + prompt;
+    }
+
+    /**
+     * Render the related messages as a transcript section
+     *
+     * @return Section text, ending with a blank line
+     */
+    String relatedText() {
+        StringBuilder text = new StringBuilder(RELATED_HEADER);
+        for (ConversationMessage message : relatedMessages) {
+            text.append(roleOf(message)).append(": ").append(message.getContent()).append("\n\n");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Map a stored sender name to a transcript role
+     */
+    static String roleOf(ConversationMessage message) {
+        return "User".equals(message.getSender()) ? "User" : "Assistant";
+    }
+}
@@ -0,0 +1,154 @@
+package com.nexuscore.llm;
+
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the part of a conversation history that fits a token budget.
+ * Messages are taken newest-first until the budget is used up, and the
+ * latest exchange is always kept even if it alone exceeds the budget.
+ * Token counts are estimated (no tokenizer is available for every model)
+ * and cached per stored message.
+ */
+public class HistoryPacker {
+
+    /**
+     * Messages that are kept regardless of the budget (the latest user/assistant exchange)
+     */
+    static final int MIN_KEPT_MESSAGES = 2;
+
+    /**
+     * Tokens added per message for the role label and separators
+     */
+    static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private static final int MAX_CACHED_COUNTS = 4096;
+
+    private final Map<Long, Integer> tokenCounts = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+            return size() > MAX_CACHED_COUNTS;
+        }
+    };
+
+    /**
+     * Pack a history into a token budget
+     *
+     * @param history      Messages, oldest first
+     * @param budgetTokens Tokens available for the history
+     * @return Selected messages and their estimated size
+     */
+    public PackedHistory pack(List<ConversationMessage> history, int budgetTokens) {
+        if (history == null || history.isEmpty()) {
+            return new PackedHistory(Collections.emptyList(), 0, 0);
+        }
+
+        List<ConversationMessage> selected = new ArrayList<>();
+        int tokens = 0;
+        for (int i = history.size() - 1; i >= 0; i--) {
+            ConversationMessage message = history.get(i);
+            int cost = tokensOf(message);
+            if (selected.size() >= MIN_KEPT_MESSAGES && tokens + cost > budgetTokens) {
+                break; // Stop at the first message that does not fit, so the kept history stays contiguous
+            }
+            selected.add(message);
+            tokens += cost;
+        }
+        Collections.reverse(selected);
+        return new PackedHistory(selected, tokens, history.size() - selected.size());
+    }
+
+    /**
+     * Estimated tokens of a message including its role label; cached for stored messages
+     *
+     * @param message Message
+     * @return Token estimate
+     */
+    public int tokensOf(ConversationMessage message) {
+        if (message.getId() <= 0) {
+            return estimateTokens(message.getContent()) + MESSAGE_OVERHEAD_TOKENS;
+        }
+        synchronized (tokenCounts) {
+            Integer cached = tokenCounts.get(message.getId());
+            if (cached != null) {
+                return cached;
+            }
+        }
+        int count = estimateTokens(message.getContent()) + MESSAGE_OVERHEAD_TOKENS;
+        synchronized (tokenCounts) {
+            tokenCounts.put(message.getId(), count);
+        }
+        return count;
+    }
+
+    /**
+     * Estimate the number of tokens of a text. Latin text averages about four
+     * characters per token; CJK and other non-ASCII characters are counted as
+     * one token each, which is close for Japanese with common tokenizers.
+     *
+     * @param text Text (may be null)
+     * @return Token estimate
+     */
+    public static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                ascii++;
+            } else if (!Character.isLowSurrogate(c)) {
+                other++;
+            }
+        }
+        return (ascii + 3) / 4 + other;
+    }
+
+    /**
+     * Result of packing a history
+     */
+    public static class PackedHistory {
+        private final List<ConversationMessage> messages;
+        private final int tokens;
+        private final int droppedMessages;
+
+        public PackedHistory(List<ConversationMessage> messages, int tokens, int droppedMessages) {
+            this.messages = messages;
+            this.tokens = tokens;
+            this.droppedMessages = droppedMessages;
+        }
+
+        /**
+         * Selected messages, oldest first
+         */
+        public List<ConversationMessage> getMessages() {
+            return messages;
+        }
+
+        /**
+         * Estimated tokens of the selected messages
+         */
+        public int getTokens() {
+            return tokens;
+        }
+
+        /**
+         * Number of older messages left out
+         */
+        public int getDroppedMessages() {
+            return droppedMessages;
+        }
+
+        @Override
+        public String toString() {
+            return messages.size() + " messages (" + tokens + " tokens, " + droppedMessages + " older dropped)";
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.nexuscore.llm;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Backend that executes generation requests against Ollama
+ */
+public interface LLMBackend {
+
+    /**
+     * Run a generation request and return the complete response
+     *
+     * @param request Generation request
+     * @return Generated text
+     * @throws IOException          If the backend cannot be reached or fails
+     * @throws InterruptedException If the calling thread is interrupted
+     */
+    default String generate(GenerationRequest request) throws IOException, InterruptedException {
+        return generate(request, null);
+    }
+
+    /**
+     * Run a generation request, streaming chunks to the listener as they are
+     * produced, and return the complete response
+     *
+     * @param request  Generation request
+     * @param listener Receives chunks of the response (may be null)
+     * @return Generated text
+     * @throws IOException          If the backend cannot be reached or fails
+     * @throws InterruptedException If the calling thread is interrupted
+     */
+    String generate(GenerationRequest request, TokenListener listener) throws IOException, InterruptedException;
+
+    /**
+     * Load a model into memory without generating anything
+     *
+     * @param model     Model name
+     * @param keepAlive How long the model stays loaded afterwards (Ollama duration format)
+     * @throws IOException          If the model cannot be loaded
+     * @throws InterruptedException If the calling thread is interrupted
+     */
+    void warmUp(String model, String keepAlive) throws IOException, InterruptedException;
+
+    /**
+     * Compute embedding vectors of texts
+     *
+     * @param model Embedding model name
+     * @param texts Texts to embed
+     * @return One vector per text, in the same order
+     * @throws IOException          If the backend cannot compute embeddings or fails
+     * @throws InterruptedException If the calling thread is interrupted
+     */
+    default List<float[]> embed(String model, List<String> texts) throws IOException, InterruptedException {
+        throw new IOException(getName() + " cannot compute embeddings");
+    }
+
+    /**
+     * Check whether the backend can currently serve requests
+     *
+     * @return true if the backend is available
+     */
+    boolean isAvailable();
+
+    /**
+     * Get a list of installed models
+     *
+     * @return List of model names
+     */
+    List<String> getInstalledModels();
+
+    /**
+     * Get a short human-readable name for logs and settings
+     *
+     * @return Backend name
+     */
+    String getName();
+}
@@ -0,0 +1,289 @@
+package com.nexuscore.llm;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared execution engine for LLM calls.
+ * Uses virtual threads when the runtime supports them (JDK 21+), otherwise a
+ * bounded pool of daemon threads. Keeps counters of in-flight work and of
+ * "leaked" work, i.e. tasks that are still running after their caller gave up.
+ */
+public class LLMExecutor {
+
+    /**
+     * Maximum pool size on JDKs without virtual threads ({@code -Dnexuscore.llm.threads})
+     */
+    public static final String THREADS_PROPERTY = "nexuscore.llm.threads";
+
+    /**
+     * Set to false to force the platform thread pool ({@code -Dnexuscore.llm.virtualThreads})
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "nexuscore.llm.virtualThreads";
+
+    private static final int DEFAULT_THREADS = 8;
+
+    private static LLMExecutor shared;
+
+    private final ExecutorService executor;
+    private final ScheduledThreadPoolExecutor watchdog;
+    private final boolean virtualThreads;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger leaked = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param maxThreads        Pool size used when virtual threads are not available
+     * @param useVirtualThreads Try to use virtual threads
+     */
+    public LLMExecutor(int maxThreads, boolean useVirtualThreads) {
+        ExecutorService virtual = useVirtualThreads ? createVirtualThreadExecutor() : null;
+        this.virtualThreads = virtual != null;
+        if (virtual != null) {
+            this.executor = virtual;
+        } else {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), daemonThreadFactory("nexus-llm-"));
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+        }
+        this.watchdog = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("nexus-llm-watchdog-"));
+        this.watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Get the process-wide executor, configured from system properties on first use
+     *
+     * @return Shared executor
+     */
+    public static synchronized LLMExecutor getShared() {
+        if (shared == null) {
+            int threads = Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREADS);
+            boolean virtual = Boolean.parseBoolean(System.getProperty(VIRTUAL_THREADS_PROPERTY, "true"));
+            shared = new LLMExecutor(Math.max(1, threads), virtual);
+            System.out.println("LLM executor started (" + (shared.virtualThreads ? "virtual threads"
+                    : threads + " platform threads") + ")");
+        }
+        return shared;
+    }
+
+    /**
+     * Run a task on the executor. Cancelling the returned future cancels the
+     * signal, which stops the underlying process or HTTP request.
+     *
+     * @param task   Task to run
+     * @param signal Cancellation signal of the task
+     * @return Future completed with the task's result
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task, CancellationSignal signal) {
+        return submit(task, signal, null);
+    }
+
+    /**
+     * Run a task on the executor and report when it has really finished
+     *
+     * @param task     Task to run
+     * @param signal   Cancellation signal of the task
+     * @param onFinish Called once the task has stopped running (or was skipped
+     *                 because it was cancelled first), even if the returned
+     *                 future was completed earlier (may be null)
+     * @return Future completed with the task's result
+     */
+    <T> CompletableFuture<T> submit(Callable<T> task, CancellationSignal signal, Runnable onFinish) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        AtomicInteger state = new AtomicInteger(); // 0 = pending/running, 1 = finished, 2 = abandoned
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                cancelled.incrementAndGet();
+                signal.cancel();
+            }
+            // The caller stopped waiting while the task is still running
+            if (state.compareAndSet(0, 2)) {
+                leaked.incrementAndGet();
+            }
+        });
+
+        inFlight.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                T result = null;
+                Throwable error = null;
+                try {
+                    if (!signal.isCancelled()) {
+                        result = task.call();
+                    }
+                } catch (Throwable e) {
+                    error = e;
+                } finally {
+                    inFlight.decrementAndGet();
+                    if (!state.compareAndSet(0, 1)) {
+                        // Abandoned work has now finished
+                        leaked.decrementAndGet();
+                    }
+                    if (onFinish != null) {
+                        onFinish.run();
+                    }
+                }
+
+                if (error != null) {
+                    if (!signal.isCancelled()) {
+                        failed.incrementAndGet();
+                    }
+                    future.completeExceptionally(error);
+                } else {
+                    completed.incrementAndGet();
+                    future.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.decrementAndGet();
+            state.set(1);
+            if (onFinish != null) {
+                onFinish.run();
+            }
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Scheduler for timeouts and periodic checks
+     *
+     * @return Single-threaded scheduler
+     */
+    public ScheduledExecutorService scheduler() {
+        return watchdog;
+    }
+
+    /**
+     * Record a generation that was stopped because it timed out
+     */
+    void recordTimeout() {
+        timedOut.incrementAndGet();
+    }
+
+    /**
+     * Get a snapshot of the counters
+     *
+     * @return Current statistics
+     */
+    public Stats getStats() {
+        int queued = executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+        return new Stats(inFlight.get(), queued, leaked.get(), completed.get(), failed.get(),
+                cancelled.get(), timedOut.get());
+    }
+
+    /**
+     * Check whether tasks run on virtual threads
+     *
+     * @return true if virtual threads are used
+     */
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Stop accepting work and interrupt running tasks
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null; // JDK 17-20
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Snapshot of executor counters
+     */
+    public static class Stats {
+        private final int inFlight;
+        private final int queued;
+        private final int leaked;
+        private final long completed;
+        private final long failed;
+        private final long cancelled;
+        private final long timedOut;
+
+        public Stats(int inFlight, int queued, int leaked, long completed, long failed, long cancelled,
+                long timedOut) {
+            this.inFlight = inFlight;
+            this.queued = queued;
+            this.leaked = leaked;
+            this.completed = completed;
+            this.failed = failed;
+            this.cancelled = cancelled;
+            this.timedOut = timedOut;
+        }
+
+        /** Tasks submitted and not yet finished (including queued ones) */
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        /** Tasks waiting for a pool thread */
+        public int getQueued() {
+            return queued;
+        }
+
+        /** Tasks still running although their caller already timed out or cancelled */
+        public int getLeaked() {
+            return leaked;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /** Tasks given up before they finished, by their caller or after a timeout */
+        public long getCancelled() {
+            return cancelled;
+        }
+
+        /** Generations that were answered with the timeout response */
+        public long getTimedOut() {
+            return timedOut;
+        }
+
+        @Override
+        public String toString() {
+            return "inFlight=" + inFlight + ", queued=" + queued + ", leaked=" + leaked
+                    + ", completed=" + completed + ", failed=" + failed
+                    + ", cancelled=" + cancelled + ", timedOut=" + timedOut;
+        }
+    }
+}
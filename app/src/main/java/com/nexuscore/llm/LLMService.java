@@ -1,18 +1,21 @@
 package com.nexuscore.llm;
 
-import com.nexuscore.database.DatabaseManager;
 import com.nexuscore.database.DatabaseManager.ConversationMessage;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Local LLM service using Ollama
@@ -20,18 +23,65 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class LLMService {
 
     private String modelName;
-    private String ollamaPath = "ollama"; // Assumes path is set by default
-    private int maxTokens = 50;
+    private int maxTokens = 0; // 0 = no limit (Ollama's default)
     private float temperature = 0.7f;
     private int timeoutSeconds = 30; // Timeout duration in seconds
 
+    public static final int DEFAULT_CONTEXT_BUDGET = 2048; // Ollama's default context window (tokens)
+    static final int DEFAULT_RESPONSE_RESERVE = 512; // Tokens left for the answer when maxTokens is unlimited
+    static final int MEMORY_BUDGET_DIVISOR = 4; // Share of the history budget given to recalled messages
+    private static final String EMBEDDING_FAIRNESS_KEY = "embeddings";
+
+    private static final String TIMEOUT_RESPONSE = "Sorry, the response took too long to generate. Please try again with a shorter prompt or a different model.";
+
+    private final OllamaEndpointPool httpBackend =
+            new OllamaEndpointPool(List.of(OllamaHttpBackend.DEFAULT_BASE_URL));
+    private final OllamaProcessBackend processBackend = new OllamaProcessBackend("ollama"); // Assumes path is set by default
+    private volatile LLMBackend backend = httpBackend;
+    private volatile boolean processFallbackEnabled = true;
+
+    private final LLMExecutor executor;
+    private final RequestScheduler scheduler;
+    private volatile ResponseCache responseCache; // null = caching disabled
+    private volatile SemanticMemory semanticMemory; // null = no recall
+    private final Map<String, Integer> contextBudgets = new ConcurrentHashMap<>();
+    private final HistoryPacker historyPacker = new HistoryPacker();
+    private volatile HistoryPacker.PackedHistory lastPackedHistory;
+    private final ConversationContextStore contextStore =
+            new ConversationContextStore(ConversationContextStore.DEFAULT_MAX_CONVERSATIONS);
+    private final Set<CompletableFuture<String>> activeRequests = ConcurrentHashMap.newKeySet();
+
+    private final ModelWarmupManager warmupManager = new ModelWarmupManager(this::loadModel);
+
     /**
      * Constructor
      * 
      * @param modelName Name of the Ollama model to be used
      */
     public LLMService(String modelName) {
+        this(modelName, RequestScheduler.getShared());
+    }
+
+    /**
+     * Constructor with a private scheduler on the given executor
+     * 
+     * @param modelName Name of the Ollama model to be used
+     * @param executor  Executor that runs the LLM calls
+     */
+    public LLMService(String modelName, LLMExecutor executor) {
+        this(modelName, new RequestScheduler(executor, RequestScheduler.defaultMaxParallel()));
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param modelName Name of the Ollama model to be used
+     * @param scheduler Scheduler that limits and orders the LLM calls
+     */
+    public LLMService(String modelName, RequestScheduler scheduler) {
         this.modelName = modelName;
+        this.scheduler = scheduler;
+        this.executor = scheduler.getExecutor();
         System.out.println("LLM service initialized with Ollama model: " + modelName);
     }
 
@@ -41,7 +91,7 @@ public class LLMService {
      * @param path Path to the Ollama executable
      */
     public void setOllamaPath(String path) {
-        this.ollamaPath = path;
+        processBackend.setOllamaPath(path);
     }
 
     /**
@@ -50,7 +100,98 @@ public class LLMService {
      * @return Path to the Ollama executable
      */
     public String getOllamaPath() {
-        return ollamaPath;
+        return processBackend.getOllamaPath();
+    }
+
+    /**
+     * Set the base URL of the Ollama server used by the HTTP backend
+     * 
+     * @param host Base URL (e.g. http://localhost:11434)
+     */
+    public void setOllamaHost(String host) {
+        setOllamaHosts(List.of(host == null ? "" : host));
+    }
+
+    /**
+     * Get the base URL of the (first) Ollama server used by the HTTP backend
+     * 
+     * @return Base URL
+     */
+    public String getOllamaHost() {
+        return httpBackend.getBaseUrls().get(0);
+    }
+
+    /**
+     * Spread requests over several Ollama servers
+     * 
+     * @param hosts Base URLs of the servers
+     */
+    public void setOllamaHosts(List<String> hosts) {
+        httpBackend.setBaseUrls(hosts);
+    }
+
+    /**
+     * Get the base URLs of the Ollama servers used by the HTTP backend
+     * 
+     * @return Base URLs
+     */
+    public List<String> getOllamaHosts() {
+        return httpBackend.getBaseUrls();
+    }
+
+    /**
+     * Get the pool of Ollama servers used by the HTTP backend
+     * 
+     * @return Endpoint pool
+     */
+    public OllamaEndpointPool getEndpointPool() {
+        return httpBackend;
+    }
+
+    /**
+     * Choose between the Ollama REST API and spawning the Ollama CLI
+     * 
+     * @param useHttp true to use the HTTP backend, false for the process backend
+     */
+    public void setUseHttpBackend(boolean useHttp) {
+        this.backend = useHttp ? httpBackend : processBackend;
+    }
+
+    /**
+     * Check whether the HTTP backend is selected
+     * 
+     * @return true if requests go to the Ollama REST API
+     */
+    public boolean isUsingHttpBackend() {
+        return backend == httpBackend;
+    }
+
+    /**
+     * Replace the backend with a custom implementation
+     * 
+     * @param backend Backend to use for all requests
+     */
+    public void setBackend(LLMBackend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Get the currently selected backend
+     * 
+     * @return Backend
+     */
+    public LLMBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Enable or disable falling back to the process backend when the Ollama
+     * server cannot be reached
+     * 
+     * @param enabled true to enable the fallback
+     */
+    public void setProcessFallbackEnabled(boolean enabled) {
+        this.processFallbackEnabled = enabled;
     }
 
     /**
@@ -59,7 +200,12 @@ public class LLMService {
      * @param modelName Name of the model to be used
      */
     public void setModelName(String modelName) {
+        boolean changed = modelName != null && !modelName.equals(this.modelName);
         this.modelName = modelName;
+        if (changed && warmupManager.getModel() != null) {
+            // Preload the new model so the next prompt does not pay the load time
+            warmUpAsync();
+        }
     }
 
     /**
@@ -74,7 +220,7 @@ public class LLMService {
     /**
      * Set the maximum number of tokens to be generated
      * 
-     * @param maxTokens Maximum token count
+     * @param maxTokens Maximum token count (0 or less for no limit)
      */
     public void setMaxTokens(int maxTokens) {
         this.maxTokens = maxTokens;
@@ -98,6 +244,163 @@ public class LLMService {
         return temperature;
     }
 
+    /**
+     * Set how long Ollama keeps the model loaded after the last request
+     * 
+     * @param keepAlive Ollama duration ("30m", "1h", a number of seconds, or "-1" for indefinitely)
+     * @throws IllegalArgumentException If the value cannot be parsed
+     */
+    public void setKeepAlive(String keepAlive) {
+        warmupManager.setKeepAlive(keepAlive);
+    }
+
+    /**
+     * Get the keep-alive duration sent with every request
+     * 
+     * @return Keep-alive in Ollama's duration format
+     */
+    public String getKeepAlive() {
+        return warmupManager.getKeepAlive();
+    }
+
+    /**
+     * Get the manager that tracks whether the model is loaded
+     * 
+     * @return Warm-up manager
+     */
+    public ModelWarmupManager getWarmupManager() {
+        return warmupManager;
+    }
+
+    /**
+     * Attach a response cache for deterministic prompts
+     * 
+     * @param responseCache Cache to use, or null to disable caching
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Get the attached response cache
+     * 
+     * @return Response cache, or null if none is attached
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Attach a semantic memory that recalls related past messages for
+     * requests with conversation history
+     * 
+     * @param semanticMemory Memory to use, or null to disable recall
+     */
+    public void setSemanticMemory(SemanticMemory semanticMemory) {
+        this.semanticMemory = semanticMemory;
+    }
+
+    /**
+     * Get the attached semantic memory
+     * 
+     * @return Semantic memory, or null if none is attached
+     */
+    public SemanticMemory getSemanticMemory() {
+        return semanticMemory;
+    }
+
+    /**
+     * Compute embeddings on the Ollama servers right away, bypassing the
+     * scheduler (used for the prompt of a request that is already running)
+     * 
+     * @param model Embedding model
+     * @param texts Texts to embed
+     * @return One vector per text
+     * @throws IOException          If no server can compute the embeddings
+     * @throws InterruptedException If the thread is interrupted
+     */
+    public List<float[]> embed(String model, List<String> texts) throws IOException, InterruptedException {
+        return httpBackend.embed(model, texts);
+    }
+
+    /**
+     * Compute embeddings at background priority, so they wait for interactive requests
+     * 
+     * @param model Embedding model
+     * @param texts Texts to embed
+     * @return Future completed with one vector per text
+     */
+    public CompletableFuture<List<float[]>> embedAsync(String model, List<String> texts) {
+        return scheduler.submit(() -> httpBackend.embed(model, texts), RequestScheduler.Priority.BACKGROUND,
+                EMBEDDING_FAIRNESS_KEY, new CancellationSignal());
+    }
+
+    /**
+     * Set the context window of a model in tokens. The conversation history is
+     * packed newest-first into this budget, and the value is passed to Ollama
+     * as num_ctx.
+     * 
+     * @param model  Model name
+     * @param tokens Context window, or 0 or less to use the default
+     */
+    public void setContextBudget(String model, int tokens) {
+        if (tokens > 0) {
+            contextBudgets.put(model, tokens);
+        } else {
+            contextBudgets.remove(model);
+        }
+    }
+
+    /**
+     * Get the context window used for a model
+     * 
+     * @param model Model name
+     * @return Context window in tokens
+     */
+    public int getContextBudget(String model) {
+        return contextBudgets.getOrDefault(model, DEFAULT_CONTEXT_BUDGET);
+    }
+
+    /**
+     * Get the result of the most recent history packing
+     * 
+     * @return Packed history, or null if no history has been sent yet
+     */
+    public HistoryPacker.PackedHistory getLastPackedHistory() {
+        return lastPackedHistory;
+    }
+
+    /**
+     * Get the scheduler that limits how many LLM calls run at once
+     * 
+     * @return Request scheduler
+     */
+    public RequestScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Get counters of the executor that runs LLM calls
+     * 
+     * @return In-flight, leaked, completed, failed, cancelled and timed-out counts
+     */
+    public LLMExecutor.Stats getExecutionStats() {
+        return executor.getStats();
+    }
+
+    /**
+     * Preload the configured model in the background
+     * 
+     * @return Future completed with true if the model was loaded
+     */
+    public CompletableFuture<Boolean> warmUpAsync() {
+        String model = modelName;
+        if (model == null || model.isBlank()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return warmupManager.warmUp(model);
+    }
+
     /**
      * Set the timeout duration in seconds
      * 
@@ -114,13 +417,18 @@ public class LLMService {
      * @return Response from the LLM
      */
     public String sendPrompt(String prompt) {
-        try {
-            return runOllamaWithTimeout(prompt);
-        } catch (Exception e) {
-            System.err.println("Error running Ollama: " + e.getMessage());
-            e.printStackTrace();
-            return getFallbackResponse(prompt, e.getMessage());
-        }
+        return sendPrompt(prompt, null);
+    }
+
+    /**
+     * Send a prompt to the LLM, streaming the response as it is generated
+     * 
+     * @param prompt   User's prompt
+     * @param listener Receives chunks of the response as they arrive (may be null)
+     * @return Complete response from the LLM
+     */
+    public String sendPrompt(String prompt, TokenListener listener) {
+        return awaitResponse(prompt, sendPromptAsync(prompt, listener));
     }
 
     /**
@@ -131,31 +439,20 @@ public class LLMService {
      * @return LLMからの応答
      */
     public String sendPromptWithHistory(String prompt, List<ConversationMessage> conversationHistory) {
-        try {
-            // 会話履歴とユーザープロンプトを結合
-            StringBuilder enhancedPrompt = new StringBuilder();
-
-            // ヘッダー
-            enhancedPrompt.append(
-                    "Below is a history of past conversations.Please take this into account when answering the last question.\n\n");
-
-            // 会話履歴を追加
-            for (ConversationMessage message : conversationHistory) {
-                String role = "User".equals(message.getSender()) ? "User" : "Assistant";
-                enhancedPrompt.append(role).append(": ").append(message.getContent()).append("\n\n");
-            }
-
-            // 新しいプロンプト
-            enhancedPrompt.append("User: ").append(prompt).append("\n\n");
-            enhancedPrompt.append("Assistant: ");
+        return sendPromptWithHistory(prompt, conversationHistory, null);
+    }
 
-            System.out.println("Sending enhanced prompt with conversation history");
-            return runOllamaWithTimeout(enhancedPrompt.toString());
-        } catch (Exception e) {
-            System.err.println("Error running Ollama with history: " + e.getMessage());
-            e.printStackTrace();
-            return getFallbackResponse(prompt, e.getMessage());
-        }
+    /**
+     * 過去の会話履歴を考慮して、プロンプトを送信（応答はストリーミング）
+     * 
+     * @param prompt              ユーザーのプロンプト
+     * @param conversationHistory 会話履歴
+     * @param listener            生成されたチャンクを受け取るリスナー（null可）
+     * @return LLMからの応答
+     */
+    public String sendPromptWithHistory(String prompt, List<ConversationMessage> conversationHistory,
+            TokenListener listener) {
+        return awaitResponse(prompt, sendPromptWithHistoryAsync(prompt, conversationHistory, listener));
     }
 
     /**
@@ -165,7 +462,48 @@ public class LLMService {
      * @return 応答を含むCompletableFuture
      */
     public CompletableFuture<String> sendPromptAsync(String prompt) {
-        return CompletableFuture.supplyAsync(() -> sendPrompt(prompt));
+        return sendPromptAsync(prompt, null);
+    }
+
+    /**
+     * 標準プロンプトを非同期で送信し、応答をストリーミングで受け取る
+     * 
+     * @param prompt   User's prompt
+     * @param listener 生成されたチャンクを受け取るリスナー（バックグラウンドスレッドで呼ばれる）
+     * @return 完全な応答を含むCompletableFuture（cancelすると生成プロセス/リクエストも停止）
+     */
+    public CompletableFuture<String> sendPromptAsync(String prompt, TokenListener listener) {
+        return execute(createRequest(prompt, null), listener);
+    }
+
+    /**
+     * 会話の中で履歴を付けずに標準プロンプトを非同期で送信する。
+     * このターンは保存済みのモデルコンテキストに含まれないため、その会話のコンテキストを破棄し、
+     * 次の{@link #sendPromptInConversationAsync}は会話履歴全体から組み立て直す。
+     * 
+     * @param conversationId 会話ID
+     * @param prompt         User's prompt
+     * @param listener       生成されたチャンクを受け取るリスナー（バックグラウンドスレッドで呼ばれる）
+     * @return 完全な応答を含むCompletableFuture（cancelすると生成プロセス/リクエストも停止）
+     */
+    public CompletableFuture<String> sendPromptAsync(int conversationId, String prompt, TokenListener listener) {
+        contextStore.invalidate(conversationId);
+        return sendPromptAsync(prompt, listener);
+    }
+
+    /**
+     * 標準プロンプトを指定した優先度で非同期に送信（バッチ処理などはBACKGROUNDを使用）
+     * 
+     * @param prompt   User's prompt
+     * @param listener 生成されたチャンクを受け取るリスナー（null可）
+     * @param priority スケジューラ上の優先度
+     * @return 完全な応答を含むCompletableFuture（cancelすると待機中の要求はキューから外れる）
+     */
+    public CompletableFuture<String> sendPromptAsync(String prompt, TokenListener listener,
+            RequestScheduler.Priority priority) {
+        GenerationRequest request = createRequest(prompt, null);
+        request.setPriority(priority);
+        return execute(request, listener);
     }
 
     /**
@@ -177,122 +515,303 @@ public class LLMService {
      */
     public CompletableFuture<String> sendPromptWithHistoryAsync(String prompt,
             List<ConversationMessage> conversationHistory) {
-        return CompletableFuture.supplyAsync(() -> sendPromptWithHistory(prompt, conversationHistory));
+        return sendPromptWithHistoryAsync(prompt, conversationHistory, null);
     }
 
     /**
-     * Run the Ollama command with a timeout
+     * 会話履歴付きのプロンプトを非同期で送信し、応答をストリーミングで受け取る
      * 
-     * @param prompt User's prompt
-     * @return Response from Ollama
-     * @throws IOException          If process execution fails
-     * @throws InterruptedException If the thread is interrupted
+     * @param prompt              ユーザープロンプト
+     * @param conversationHistory 会話履歴
+     * @param listener            生成されたチャンクを受け取るリスナー（バックグラウンドスレッドで呼ばれる）
+     * @return 完全な応答を含むCompletableFuture（cancelすると生成プロセス/リクエストも停止）
      */
-    private String runOllamaWithTimeout(String prompt) throws IOException, InterruptedException {
-        // Separate thread pool to run the process
-        ExecutorService executor = Executors.newSingleThreadExecutor();
+    public CompletableFuture<String> sendPromptWithHistoryAsync(String prompt,
+            List<ConversationMessage> conversationHistory, TokenListener listener) {
+        System.out.println("Sending enhanced prompt with conversation history");
+        return execute(createRequest(prompt, conversationHistory), listener);
+    }
 
-        try {
-            // Run the Ollama process asynchronously
-            CompletableFuture<String> future = CompletableFuture.supplyAsync(() -> {
-                try {
-                    return runOllama(prompt);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }, executor);
-
-            // Set the timeout and wait for the result
-            try {
-                return future.get(timeoutSeconds, TimeUnit.SECONDS);
-            } catch (java.util.concurrent.TimeoutException e) {
-                System.err.println("Ollama process timed out after " + timeoutSeconds + " seconds");
-                return "Sorry, the response took too long to generate. Please try again with a shorter prompt or a different model.";
-            } catch (Exception e) {
-                Throwable cause = e.getCause();
-                if (cause instanceof IOException) {
-                    throw (IOException) cause;
-                } else if (cause instanceof InterruptedException) {
-                    throw (InterruptedException) cause;
-                }
-                throw new RuntimeException("Error executing Ollama process", e);
-            }
-        } finally {
-            // Always shut down the executor
-            executor.shutdownNow();
+    /**
+     * 会話の続きとしてプロンプトを非同期で送信し、応答をストリーミングで受け取る。
+     * 前のターンでOllamaが返したコンテキストが残っていれば新しいプロンプトだけを評価させ、
+     * 無ければ（停止・エラー・モデル変更・再起動後・トークン予算の超過など）会話履歴全体を組み立てて送信する。
+     * 
+     * @param conversationId      会話ID
+     * @param prompt              ユーザープロンプト
+     * @param conversationHistory 会話履歴（コンテキストが無い場合に使用）
+     * @param listener            生成されたチャンクを受け取るリスナー（バックグラウンドスレッドで呼ばれる）
+     * @return 完全な応答を含むCompletableFuture（cancelすると生成プロセス/リクエストも停止）
+     */
+    public CompletableFuture<String> sendPromptInConversationAsync(int conversationId, String prompt,
+            List<ConversationMessage> conversationHistory, TokenListener listener) {
+        GenerationRequest request = createRequest(prompt, conversationHistory);
+        request.setConversationId(conversationId);
+        // The stored context must fit the same budget as the packed history it replaces
+        request.setContext(contextStore.take(conversationId, request.getModel(),
+                historyBudget(request.getModel(), prompt)));
+        if (request.getContext() != null) {
+            System.out.println("Reusing model context for conversation " + conversationId
+                    + " (" + request.getContext().length + " tokens)");
+        } else {
+            System.out.println("Sending enhanced prompt with conversation history");
+        }
+        return execute(request, listener);
+    }
+
+    /**
+     * Get the per-conversation context store used by
+     * {@link #sendPromptInConversationAsync}
+     * 
+     * @return Context store
+     */
+    public ConversationContextStore getContextStore() {
+        return contextStore;
+    }
+
+    /**
+     * Build a generation request from the current settings
+     * 
+     * @param prompt              User's prompt
+     * @param conversationHistory Conversation history (may be null)
+     * @return Generation request
+     */
+    private GenerationRequest createRequest(String prompt, List<ConversationMessage> conversationHistory) {
+        String model = modelName;
+        List<ConversationMessage> history = conversationHistory;
+        SemanticMemory memory = semanticMemory;
+        boolean recall = history != null && memory != null && memory.isEnabled();
+        int memoryBudget = 0;
+        if (recall) {
+            memoryBudget = historyBudget(model, prompt) / MEMORY_BUDGET_DIVISOR;
+        }
+        if (history != null && !history.isEmpty()) {
+            history = packHistory(model, prompt, history, memoryBudget);
         }
+
+        GenerationRequest request = new GenerationRequest(model, prompt, history);
+        request.setMemoryBudget(memoryBudget);
+        request.setTemperature(temperature);
+        request.setMaxTokens(maxTokens);
+        request.setKeepAlive(warmupManager.getKeepAlive());
+        Integer contextWindow = contextBudgets.get(model);
+        if (contextWindow != null) {
+            request.setContextWindow(contextWindow);
+        }
+        return request;
     }
 
     /**
-     * Run the Ollama command and send the prompt
+     * Tokens left for history after reserving room for the prompt and the answer
      * 
+     * @param model  Model name
      * @param prompt User's prompt
-     * @return Response from Ollama
-     * @throws IOException          If process execution fails
-     * @throws InterruptedException If the thread is interrupted
+     * @return History budget in tokens (0 or more)
+     */
+    private int historyBudget(String model, String prompt) {
+        int budget = getContextBudget(model)
+                - (maxTokens > 0 ? maxTokens : DEFAULT_RESPONSE_RESERVE)
+                - HistoryPacker.estimateTokens(GenerationRequest.HISTORY_HEADER)
+                - HistoryPacker.estimateTokens(prompt) - HistoryPacker.MESSAGE_OVERHEAD_TOKENS;
+        return Math.max(budget, 0);
+    }
+
+    /**
+     * Select the most recent messages that fit the model's context budget,
+     * after reserving room for the prompt, the answer and recalled messages
+     * 
+     * @param model        Model name
+     * @param prompt       User's prompt
+     * @param history      Conversation history, oldest first
+     * @param memoryBudget Tokens reserved for recalled messages
+     * @return Packed history, oldest first
      */
-    private String runOllama(String prompt) throws IOException, InterruptedException {
-        List<String> command = new ArrayList<>();
-        command.add(ollamaPath);
-        command.add("run");
-        command.add(modelName);
-
-        System.out.println("Executing command: " + String.join(" ", command));
-
-        // Execute the command
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-        Process process = processBuilder.start();
-
-        // Write the prompt to standard input
-        process.getOutputStream().write((prompt + "\n").getBytes());
-        process.getOutputStream().flush();
-        process.getOutputStream().close();
-
-        // Read the response from standard output
-        StringBuilder output = new StringBuilder();
-
-        // Read output asynchronously
-        AtomicBoolean outputComplete = new AtomicBoolean(false);
-        Thread outputThread = new Thread(() -> {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
+    private List<ConversationMessage> packHistory(String model, String prompt, List<ConversationMessage> history,
+            int memoryBudget) {
+        int budget = historyBudget(model, prompt) - memoryBudget;
+        HistoryPacker.PackedHistory packed = historyPacker.pack(history, Math.max(budget, 0));
+        lastPackedHistory = packed;
+        System.out.println("Packed history: " + packed + ", budget " + Math.max(budget, 0) + " tokens");
+        return packed.getMessages();
+    }
+
+    /**
+     * Queue a request on the scheduler and run it with a timeout. The timeout
+     * starts when the request leaves the queue and is measured from the last
+     * received chunk, so a long answer that keeps streaming is not cut off.
+     * On timeout the underlying process or HTTP request is stopped.
+     * 
+     * @param request  Generation request
+     * @param listener Receives chunks of the response (may be null)
+     * @return Future completed with the response, a timeout message or a fallback
+     *         response; cancelling it stops the generation
+     */
+    private CompletableFuture<String> execute(GenerationRequest request, TokenListener listener) {
+        CancellationSignal signal = request.getCancellationSignal();
+        AtomicLong lastActivity = new AtomicLong(System.nanoTime());
+
+        long timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+
+        ResponseCache cache = responseCache;
+        boolean cacheable = cache != null && cache.isCacheable(request);
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        activeRequests.add(result);
+
+        CompletableFuture<String> task = scheduler.submit(() -> {
+            // Time spent waiting in the queue does not count towards the timeout
+            lastActivity.set(System.nanoTime());
+            scheduleTimeoutCheck(result, signal, lastActivity, timeoutNanos);
+
+            // Add related messages from other conversations before the cache key is computed
+            SemanticMemory memory = semanticMemory;
+            if (request.getMemoryBudget() > 0 && memory != null) {
+                Set<Long> excluded = new HashSet<>();
+                for (ConversationMessage message : request.getHistory()) {
+                    excluded.add(message.getId());
                 }
-            } catch (IOException e) {
-                System.err.println("Error reading process output: " + e.getMessage());
-            } finally {
-                outputComplete.set(true);
+                request.setRelatedMessages(memory.recall(request.getPrompt(), excluded, request.getMemoryBudget()));
             }
-        });
-        outputThread.start();
-
-        // Also read error output asynchronously
-        StringBuilder errorOutput = new StringBuilder();
-        Thread errorThread = new Thread(() -> {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    errorOutput.append(line).append("\n");
+
+            // Serve deterministic repeats from the cache without touching the model
+            if (cacheable) {
+                String cached = cache.get(request);
+                if (cached != null) {
+                    if (listener != null) {
+                        listener.onToken(cached);
+                    }
+                    return cached;
+                }
+            }
+
+            String response = runOllama(request, token -> {
+                lastActivity.set(System.nanoTime());
+                if (listener != null && !signal.isCancelled()) {
+                    listener.onToken(token);
                 }
-            } catch (IOException e) {
-                System.err.println("Error reading process error output: " + e.getMessage());
+            });
+            if (cacheable && !signal.isCancelled()) {
+                cache.put(request, response);
+            }
+            // Keep the model context so the next turn only evaluates the new prompt
+            if (request.hasConversation() && request.getResultContext() != null && !signal.isCancelled()) {
+                contextStore.put(request.getConversationId(), request.getModel(), request.getResultContext());
+            }
+            return response;
+        }, request.getPriority(), request.getConversationId(), signal);
+
+        result.whenComplete((response, error) -> {
+            activeRequests.remove(result);
+            // A timed-out task is given up too, so it shows as leaked until it really stops
+            if (result.isCancelled() || response == TIMEOUT_RESPONSE) {
+                task.cancel(true);
+            }
+        });
+
+        task.whenComplete((response, error) -> {
+            if (error == null) {
+                result.complete(response);
+            } else if (!result.isDone()) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                System.err.println("Error running Ollama: " + cause.getMessage());
+                cause.printStackTrace();
+                result.complete(getFallbackResponse(request.getPrompt(), cause.getMessage()));
             }
         });
-        errorThread.start();
+        return result;
+    }
 
-        // Wait for the process to finish
-        int exitCode = process.waitFor();
+    /**
+     * Check for inactivity when the timeout could have elapsed, and stop the
+     * generation if no chunk arrived within the timeout
+     */
+    private void scheduleTimeoutCheck(CompletableFuture<String> result, CancellationSignal signal,
+            AtomicLong lastActivity, long timeoutNanos) {
+        long delay = Math.max(lastActivity.get() + timeoutNanos - System.nanoTime(), 0);
+        ScheduledFuture<?> check = executor.scheduler().schedule(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            if (lastActivity.get() + timeoutNanos - System.nanoTime() > 0) {
+                scheduleTimeoutCheck(result, signal, lastActivity, timeoutNanos);
+                return;
+            }
+            // Counted only if the timeout response is what the caller gets, not a response that won the race
+            if (result.complete(TIMEOUT_RESPONSE)) {
+                System.err.println("Ollama produced no output for " + timeoutSeconds + " seconds");
+                executor.recordTimeout();
+                signal.cancel();
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+        result.whenComplete((response, error) -> check.cancel(false));
+    }
 
-        // Wait for the output reading threads to finish (up to 5 seconds)
-        outputThread.join(5000);
-        errorThread.join(1000);
+    /**
+     * Block until an asynchronous request finishes
+     * 
+     * @param prompt User's prompt (for the fallback response)
+     * @param future Pending response
+     * @return Response from the LLM
+     */
+    private String awaitResponse(String prompt, CompletableFuture<String> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return getFallbackResponse(prompt, "Interrupted");
+        } catch (ExecutionException e) {
+            return getFallbackResponse(prompt, e.getCause().getMessage());
+        }
+    }
 
-        if (exitCode != 0) {
-            throw new IOException("Ollama process exited with code " + exitCode + ": " + errorOutput.toString());
+    /**
+     * Run a request on the selected backend, falling back to the process
+     * backend when the Ollama server is not reachable
+     * 
+     * @param request  Generation request
+     * @param listener Receives chunks of the response
+     * @return Response from Ollama
+     * @throws IOException          If the backend fails
+     * @throws InterruptedException If the thread is interrupted
+     */
+    private String runOllama(GenerationRequest request, TokenListener listener)
+            throws IOException, InterruptedException {
+        LLMBackend selected = backend;
+        String response;
+        try {
+            response = selected.generate(request, listener);
+        } catch (ConnectException | HttpConnectTimeoutException e) {
+            if (selected != httpBackend || !processFallbackEnabled) {
+                throw e;
+            }
+            System.err.println("Ollama server not reachable at " + String.join(", ", httpBackend.getBaseUrls())
+                    + ", falling back to " + processBackend.getName());
+            response = processBackend.generate(request, listener);
         }
+        warmupManager.markUsed(request.getModel());
+        return response;
+    }
 
-        return output.toString().trim();
+    /**
+     * Load a model on the selected backend, with the same fallback as generation
+     * 
+     * @param model     Model name
+     * @param keepAlive Keep-alive duration
+     * @throws IOException          If the model cannot be loaded
+     * @throws InterruptedException If the thread is interrupted
+     */
+    private void loadModel(String model, String keepAlive) throws IOException, InterruptedException {
+        LLMBackend selected = backend;
+        try {
+            selected.warmUp(model, keepAlive);
+        } catch (ConnectException | HttpConnectTimeoutException e) {
+            if (selected != httpBackend || !processFallbackEnabled) {
+                throw e;
+            }
+            processBackend.warmUp(model, keepAlive);
+        }
     }
 
     /**
@@ -319,16 +838,11 @@ public class LLMService {
      * @return true if Ollama is available
      */
     public boolean isAvailable() {
-        try {
-            // Test by running Ollama's version command
-            ProcessBuilder processBuilder = new ProcessBuilder(ollamaPath, "--version");
-            Process process = processBuilder.start();
-            int exitCode = process.waitFor();
-            return exitCode == 0;
-        } catch (Exception e) {
-            System.err.println("Ollama availability check failed: " + e.getMessage());
-            return false;
+        LLMBackend selected = backend;
+        if (selected.isAvailable()) {
+            return true;
         }
+        return selected == httpBackend && processFallbackEnabled && processBackend.isAvailable();
     }
 
     /**
@@ -337,27 +851,10 @@ public class LLMService {
      * @return List of model names
      */
     public List<String> getInstalledModels() {
-        List<String> models = new ArrayList<>();
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder(ollamaPath, "list");
-            Process process = processBuilder.start();
-
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    // Extract model name (first word in the line)
-                    if (!line.trim().isEmpty()) {
-                        String[] parts = line.trim().split("\\s+");
-                        if (parts.length > 0) {
-                            models.add(parts[0]);
-                        }
-                    }
-                }
-            }
-
-            process.waitFor();
-        } catch (Exception e) {
-            System.err.println("Failed to get installed models: " + e.getMessage());
+        LLMBackend selected = backend;
+        List<String> models = selected.getInstalledModels();
+        if (models.isEmpty() && selected == httpBackend && processFallbackEnabled) {
+            models = processBackend.getInstalledModels();
         }
         return models;
     }
@@ -367,6 +864,18 @@ public class LLMService {
      */
     public void shutdown() {
         System.out.println("Shutting down LLM service...");
-        // No special cleanup is required
+        warmupManager.shutdown();
+        SemanticMemory memory = semanticMemory;
+        if (memory != null) {
+            memory.shutdown();
+        }
+        httpBackend.shutdown();
+
+        // Stop generations that are still running so no Ollama process outlives the app
+        for (CompletableFuture<String> request : activeRequests) {
+            request.cancel(true);
+        }
+        System.out.println("LLM executor stats: " + executor.getStats());
+        System.out.println("LLM scheduler stats: " + scheduler.getStats());
     }
 }
\ No newline at end of file
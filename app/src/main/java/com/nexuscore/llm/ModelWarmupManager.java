@@ -0,0 +1,263 @@
+package com.nexuscore.llm;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Preloads the configured model in the background and tracks whether it is
+ * still resident in Ollama, so the first real prompt does not pay the model
+ * load time.
+ */
+public class ModelWarmupManager {
+
+    /**
+     * Residency state of the configured model
+     */
+    public enum ModelState {
+        COLD, LOADING, WARM, FAILED
+    }
+
+    /**
+     * Receives state changes of the configured model (called on a background thread)
+     */
+    @FunctionalInterface
+    public interface StateListener {
+        void onStateChanged(String model, ModelState state);
+    }
+
+    /**
+     * Loads a model into memory with the given keep-alive
+     */
+    @FunctionalInterface
+    interface ModelLoader {
+        void load(String model, String keepAlive) throws Exception;
+    }
+
+    public static final String DEFAULT_KEEP_ALIVE = "30m";
+
+    private final ModelLoader loader;
+    private final ScheduledExecutorService scheduler;
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<Boolean>> pendingWarmUps = new CopyOnWriteArrayList<>();
+
+    private volatile String keepAlive = DEFAULT_KEEP_ALIVE;
+    private String model;
+    private ModelState state = ModelState.COLD;
+    private long lastUsedNanos;
+    private ScheduledFuture<?> expiryCheck;
+
+    /**
+     * Constructor
+     *
+     * @param loader Function that loads a model on the backend
+     */
+    ModelWarmupManager(ModelLoader loader) {
+        this.loader = loader;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "nexus-model-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Set how long Ollama keeps the model loaded after the last request.
+     * Accepts Ollama's duration format ("30s", "10m", "1h"), a number of
+     * seconds, or a negative value to keep the model loaded indefinitely.
+     *
+     * @param keepAlive Keep-alive duration
+     */
+    public void setKeepAlive(String keepAlive) {
+        parseKeepAlive(keepAlive); // validate
+        this.keepAlive = keepAlive.trim();
+    }
+
+    /**
+     * Get the keep-alive duration sent with every request
+     *
+     * @return Keep-alive duration in Ollama's format
+     */
+    public String getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void addListener(StateListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(StateListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Get the model whose state is tracked
+     *
+     * @return Model name, or null before the first warm-up
+     */
+    public synchronized String getModel() {
+        return model;
+    }
+
+    /**
+     * Get the state of the tracked model
+     *
+     * @return Current state
+     */
+    public synchronized ModelState getState() {
+        return state;
+    }
+
+    /**
+     * Load the model in the background. A warm-up for a different model
+     * replaces the tracked model; the result of a stale warm-up is ignored.
+     *
+     * @param modelName Model to load
+     * @return Future completed with true if the model was loaded
+     */
+    public CompletableFuture<Boolean> warmUp(String modelName) {
+        synchronized (this) {
+            if (modelName.equals(model) && (state == ModelState.LOADING || state == ModelState.WARM)) {
+                return CompletableFuture.completedFuture(state == ModelState.WARM);
+            }
+            if (!modelName.equals(model)) {
+                model = modelName;
+                state = ModelState.COLD;
+            }
+        }
+        updateState(modelName, ModelState.LOADING);
+
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        pendingWarmUps.add(result);
+        result.whenComplete((loaded, error) -> pendingWarmUps.remove(result));
+        String requestedKeepAlive = keepAlive;
+        try {
+            scheduler.execute(() -> load(modelName, requestedKeepAlive, result));
+        } catch (RejectedExecutionException e) {
+            updateState(modelName, ModelState.FAILED); // Already shut down
+            result.complete(false);
+        }
+        return result;
+    }
+
+    /**
+     * Load the model on the background thread and complete the warm-up's future
+     */
+    private void load(String modelName, String requestedKeepAlive, CompletableFuture<Boolean> result) {
+        long start = System.nanoTime();
+        try {
+            loader.load(modelName, requestedKeepAlive);
+            System.out.println("Model " + modelName + " warmed up in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            markUsed(modelName);
+            result.complete(true);
+        } catch (Exception e) {
+            System.err.println("Model warm-up failed for " + modelName + ": " + e.getMessage());
+            updateState(modelName, ModelState.FAILED);
+            result.complete(false);
+        }
+    }
+
+    /**
+     * Record that the model just served a request, which restarts Ollama's keep-alive timer
+     *
+     * @param modelName Model that was used
+     */
+    public void markUsed(String modelName) {
+        Duration residency = parseKeepAlive(keepAlive);
+        synchronized (this) {
+            if (!modelName.equals(model)) {
+                return;
+            }
+            lastUsedNanos = System.nanoTime();
+            if (expiryCheck != null) {
+                expiryCheck.cancel(false);
+                expiryCheck = null;
+            }
+            if (residency != null) {
+                long usedAt = lastUsedNanos;
+                expiryCheck = scheduler.schedule(() -> expire(modelName, usedAt),
+                        residency.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+        updateState(modelName, ModelState.WARM);
+    }
+
+    /**
+     * Mark the model cold once its keep-alive has elapsed without further use
+     */
+    private void expire(String modelName, long usedAt) {
+        synchronized (this) {
+            if (!modelName.equals(model) || lastUsedNanos != usedAt) {
+                return;
+            }
+        }
+        updateState(modelName, ModelState.COLD);
+    }
+
+    private void updateState(String modelName, ModelState newState) {
+        synchronized (this) {
+            if (!modelName.equals(model) || state == newState) {
+                return;
+            }
+            state = newState;
+        }
+        for (StateListener listener : listeners) {
+            listener.onStateChanged(modelName, newState);
+        }
+    }
+
+    /**
+     * Stop the background thread. A warm-up in progress is interrupted, which
+     * aborts its request or kills its process; its future completes with false.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        for (CompletableFuture<Boolean> pending : pendingWarmUps) {
+            pending.complete(false);
+        }
+    }
+
+    /**
+     * Parse a keep-alive value
+     *
+     * @param value Keep-alive in Ollama's format
+     * @return Duration, or null if the model stays loaded indefinitely
+     * @throws IllegalArgumentException If the value cannot be parsed
+     */
+    static Duration parseKeepAlive(String value) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Keep-alive must not be empty");
+        }
+        String v = value.trim();
+        try {
+            char unit = v.charAt(v.length() - 1);
+            if (Character.isDigit(unit)) {
+                long seconds = Long.parseLong(v);
+                return seconds < 0 ? null : Duration.ofSeconds(seconds);
+            }
+            long amount = Long.parseLong(v.substring(0, v.length() - 1));
+            if (amount < 0) {
+                return null;
+            }
+            switch (unit) {
+                case 's':
+                    return Duration.ofSeconds(amount);
+                case 'm':
+                    return Duration.ofMinutes(amount);
+                case 'h':
+                    return Duration.ofHours(amount);
+                default:
+                    throw new IllegalArgumentException("Unknown keep-alive unit: " + unit);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid keep-alive: " + value);
+        }
+    }
+}
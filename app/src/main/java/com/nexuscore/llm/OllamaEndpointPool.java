@@ -0,0 +1,397 @@
+package com.nexuscore.llm;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Backend that spreads requests over several Ollama servers.
+ * Each request goes to the healthy endpoint with the fewest outstanding
+ * requests, except that a conversation stays on the endpoint that served its
+ * previous turn (which still holds its context in memory) while that endpoint
+ * is healthy. Endpoints are marked unhealthy when a connection fails or a
+ * periodic health check gets no answer; they receive no new traffic until a
+ * check succeeds again, while requests already running on them finish.
+ * When no endpoint can be reached a {@link ConnectException} is thrown, so
+ * LLMService can still fall back to the process backend.
+ */
+public class OllamaEndpointPool implements LLMBackend {
+
+    public static final Duration DEFAULT_HEALTH_CHECK_INTERVAL = Duration.ofSeconds(15);
+
+    private static final int MAX_STICKY_CONVERSATIONS = 1024;
+
+    private volatile List<Endpoint> endpoints = Collections.emptyList();
+    private final Map<Integer, Endpoint> stickyEndpoints = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Endpoint> eldest) {
+            return size() > MAX_STICKY_CONVERSATIONS;
+        }
+    };
+
+    private final Duration healthCheckInterval;
+    private ScheduledThreadPoolExecutor healthChecker;
+    private ScheduledFuture<?> healthCheck;
+
+    /**
+     * Constructor with the default health check interval
+     *
+     * @param baseUrls Base URLs of the Ollama servers
+     */
+    public OllamaEndpointPool(List<String> baseUrls) {
+        this(baseUrls, DEFAULT_HEALTH_CHECK_INTERVAL);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param baseUrls            Base URLs of the Ollama servers
+     * @param healthCheckInterval Time between health checks when the pool has more than one endpoint
+     */
+    public OllamaEndpointPool(List<String> baseUrls, Duration healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval;
+        setBaseUrls(baseUrls);
+    }
+
+    /**
+     * Replace the endpoints of the pool. Endpoints whose URL is unchanged keep
+     * their state and outstanding requests.
+     *
+     * @param baseUrls Base URLs; blank entries are ignored and an empty list means the default local server
+     */
+    public synchronized void setBaseUrls(List<String> baseUrls) {
+        Set<String> urls = new LinkedHashSet<>();
+        if (baseUrls != null) {
+            for (String url : baseUrls) {
+                if (url != null && !url.isBlank()) {
+                    urls.add(OllamaHttpBackend.normalizeBaseUrl(url));
+                }
+            }
+        }
+        if (urls.isEmpty()) {
+            urls.add(OllamaHttpBackend.DEFAULT_BASE_URL);
+        }
+
+        List<Endpoint> updated = new ArrayList<>();
+        for (String url : urls) {
+            Endpoint existing = null;
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint.getBaseUrl().equals(url)) {
+                    existing = endpoint;
+                }
+            }
+            updated.add(existing != null ? existing : new Endpoint(new OllamaHttpBackend(url)));
+        }
+        endpoints = Collections.unmodifiableList(updated);
+        synchronized (stickyEndpoints) {
+            stickyEndpoints.values().removeIf(endpoint -> !updated.contains(endpoint));
+        }
+
+        // Health checks only matter when there is a choice of endpoint
+        if (updated.size() > 1) {
+            startHealthChecks();
+        } else {
+            stopHealthChecks();
+        }
+    }
+
+    /**
+     * Get the base URLs of the endpoints
+     *
+     * @return Base URLs in configuration order
+     */
+    public List<String> getBaseUrls() {
+        List<String> urls = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            urls.add(endpoint.getBaseUrl());
+        }
+        return urls;
+    }
+
+    /**
+     * Get the endpoints and their current state
+     *
+     * @return Endpoints in configuration order
+     */
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    @Override
+    public String getName() {
+        List<Endpoint> current = endpoints;
+        return current.size() == 1 ? current.get(0).backend.getName()
+                : "HTTP pool (" + String.join(", ", getBaseUrls()) + ")";
+    }
+
+    /**
+     * Send the request to the chosen endpoint; if it cannot be connected to,
+     * mark it unhealthy and try the next one
+     */
+    @Override
+    public String generate(GenerationRequest request, TokenListener listener)
+            throws IOException, InterruptedException {
+        IOException lastFailure = null;
+        for (Endpoint endpoint : candidates(request)) {
+            endpoint.outstanding.incrementAndGet();
+            try {
+                String response = endpoint.backend.generate(request, listener);
+                endpoint.requests.incrementAndGet();
+                endpoint.markHealthy();
+                if (request.hasConversation()) {
+                    synchronized (stickyEndpoints) {
+                        stickyEndpoints.put(request.getConversationId(), endpoint);
+                    }
+                }
+                return response;
+            } catch (ConnectException | HttpConnectTimeoutException e) {
+                // Nothing was generated yet, so the request can go elsewhere
+                endpoint.markUnhealthy(e);
+                lastFailure = e;
+            } finally {
+                endpoint.outstanding.decrementAndGet();
+            }
+        }
+        throw connectFailure(lastFailure);
+    }
+
+    /**
+     * Compute embeddings on the least busy endpoint; if it cannot be connected
+     * to, mark it unhealthy and try the next one
+     */
+    @Override
+    public List<float[]> embed(String model, List<String> texts) throws IOException, InterruptedException {
+        IOException lastFailure = null;
+        for (Endpoint endpoint : orderedByHealth()) {
+            endpoint.outstanding.incrementAndGet();
+            try {
+                List<float[]> vectors = endpoint.backend.embed(model, texts);
+                endpoint.markHealthy();
+                return vectors;
+            } catch (ConnectException | HttpConnectTimeoutException e) {
+                endpoint.markUnhealthy(e);
+                lastFailure = e;
+            } finally {
+                endpoint.outstanding.decrementAndGet();
+            }
+        }
+        throw connectFailure(lastFailure);
+    }
+
+    /**
+     * Load the model on every endpoint that can be reached
+     */
+    @Override
+    public void warmUp(String model, String keepAlive) throws IOException, InterruptedException {
+        IOException lastFailure = null;
+        boolean loaded = false;
+        for (Endpoint endpoint : orderedByHealth()) {
+            try {
+                endpoint.backend.warmUp(model, keepAlive);
+                endpoint.markHealthy();
+                loaded = true;
+            } catch (ConnectException | HttpConnectTimeoutException e) {
+                endpoint.markUnhealthy(e);
+                lastFailure = e;
+            } catch (IOException e) {
+                lastFailure = e;
+            }
+        }
+        if (!loaded) {
+            if (lastFailure == null || lastFailure instanceof ConnectException
+                    || lastFailure instanceof HttpConnectTimeoutException) {
+                throw connectFailure(lastFailure);
+            }
+            throw lastFailure;
+        }
+    }
+
+    /**
+     * Check every endpoint now
+     *
+     * @return true if at least one endpoint is healthy
+     */
+    @Override
+    public boolean isAvailable() {
+        checkHealth();
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isHealthy()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the models installed on any reachable endpoint
+     *
+     * @return Model names without duplicates
+     */
+    @Override
+    public List<String> getInstalledModels() {
+        Set<String> models = new LinkedHashSet<>();
+        for (Endpoint endpoint : orderedByHealth()) {
+            models.addAll(endpoint.backend.getInstalledModels());
+        }
+        return new ArrayList<>(models);
+    }
+
+    /**
+     * Probe every endpoint and update its health
+     */
+    public void checkHealth() {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.backend.isAvailable()) {
+                endpoint.markHealthy();
+            } else {
+                endpoint.markUnhealthy(null);
+            }
+        }
+    }
+
+    /**
+     * Stop the periodic health checks
+     */
+    public synchronized void shutdown() {
+        stopHealthChecks();
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+            healthChecker = null;
+        }
+    }
+
+    /**
+     * Endpoints to try for a request, best first: the conversation's endpoint
+     * if it is healthy, then healthy endpoints by outstanding requests, then
+     * unhealthy ones (their state may be stale, and a refused connection fails fast)
+     */
+    List<Endpoint> candidates(GenerationRequest request) {
+        List<Endpoint> ordered = orderedByHealth();
+        if (request.hasConversation()) {
+            Endpoint sticky;
+            synchronized (stickyEndpoints) {
+                sticky = stickyEndpoints.get(request.getConversationId());
+            }
+            if (sticky != null && sticky.isHealthy() && ordered.remove(sticky)) {
+                ordered.add(0, sticky);
+            }
+        }
+        return ordered;
+    }
+
+    private List<Endpoint> orderedByHealth() {
+        List<Endpoint> ordered = new ArrayList<>(endpoints);
+        // Stable sort keeps configuration order between equally loaded endpoints
+        ordered.sort(Comparator.comparing((Endpoint endpoint) -> !endpoint.isHealthy())
+                .thenComparingInt(endpoint -> endpoint.outstanding.get()));
+        return ordered;
+    }
+
+    private ConnectException connectFailure(IOException cause) {
+        ConnectException failure = new ConnectException("No Ollama server reachable at "
+                + String.join(", ", getBaseUrls()));
+        if (cause != null) {
+            failure.initCause(cause);
+        }
+        return failure;
+    }
+
+    private void startHealthChecks() {
+        if (healthCheck != null) {
+            return;
+        }
+        if (healthChecker == null) {
+            healthChecker = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "nexus-ollama-health");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long interval = healthCheckInterval.toMillis();
+        healthCheck = healthChecker.scheduleWithFixedDelay(this::checkHealth, interval, interval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void stopHealthChecks() {
+        if (healthCheck != null) {
+            healthCheck.cancel(false);
+            healthCheck = null;
+        }
+    }
+
+    /**
+     * One Ollama server of the pool
+     */
+    public static class Endpoint {
+        private final OllamaHttpBackend backend;
+        private volatile boolean healthy = true; // Assume healthy until proven otherwise
+        private volatile String lastError;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+
+        Endpoint(OllamaHttpBackend backend) {
+            this.backend = backend;
+        }
+
+        public String getBaseUrl() {
+            return backend.getBaseUrl();
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        /** Requests currently running on this endpoint */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        /** Requests completed on this endpoint */
+        public long getRequestCount() {
+            return requests.get();
+        }
+
+        /** Reason of the last failed connection or health check (null if none) */
+        public String getLastError() {
+            return lastError;
+        }
+
+        void markHealthy() {
+            if (!healthy) {
+                System.out.println("Ollama endpoint " + getBaseUrl() + " is healthy again");
+            }
+            healthy = true;
+            lastError = null;
+        }
+
+        void markUnhealthy(IOException cause) {
+            String reason = cause == null ? "Health check failed"
+                    : cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+            if (healthy) {
+                System.err.println("Ollama endpoint " + getBaseUrl() + " is unhealthy: " + reason);
+            }
+            healthy = false;
+            lastError = reason;
+        }
+
+        @Override
+        public String toString() {
+            return getBaseUrl() + " (" + (healthy ? "healthy" : "unhealthy") + ", outstanding=" + outstanding.get()
+                    + ", requests=" + requests.get() + ")";
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package com.nexuscore.llm;
+
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+import com.nexuscore.util.Json;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Backend that talks to a long-lived Ollama server through its REST API.
+ * A single keep-alive {@link HttpClient} is shared by all requests, so the
+ * connection and the loaded model are reused between prompts.
+ */
+public class OllamaHttpBackend implements LLMBackend {
+
+    public static final String DEFAULT_BASE_URL = "http://localhost:11434";
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(3);
+    private static final Duration WARMUP_TIMEOUT = Duration.ofMinutes(5);
+    private static final Duration EMBED_TIMEOUT = Duration.ofMinutes(2); // Includes loading the embedding model
+
+    private final HttpClient httpClient;
+    private volatile String baseUrl;
+
+    /**
+     * Constructor using the default local server address
+     */
+    public OllamaHttpBackend() {
+        this(DEFAULT_BASE_URL);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param baseUrl Base URL of the Ollama server (e.g. http://localhost:11434)
+     */
+    public OllamaHttpBackend(String baseUrl) {
+        setBaseUrl(baseUrl);
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .build();
+    }
+
+    /**
+     * Set the base URL of the Ollama server
+     *
+     * @param baseUrl Base URL, a trailing slash is ignored
+     */
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = normalizeBaseUrl(baseUrl);
+    }
+
+    /**
+     * Normalize a base URL: blank means the default server, a trailing slash is removed
+     *
+     * @param baseUrl Base URL as entered
+     * @return Normalized base URL
+     */
+    static String normalizeBaseUrl(String baseUrl) {
+        String url = baseUrl == null || baseUrl.isBlank() ? DEFAULT_BASE_URL : baseUrl.trim();
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    /**
+     * Get the base URL of the Ollama server
+     *
+     * @return Base URL
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    @Override
+    public String getName() {
+        return "HTTP (" + baseUrl + ")";
+    }
+
+    /**
+     * Send the request to /api/chat when it carries a history, otherwise to /api/generate.
+     * Requests that belong to a conversation always use /api/generate so that the
+     * model context is returned: with the previous turn's context only the new
+     * prompt is sent, without it the full history is flattened into the prompt.
+     * Responses are always streamed; each chunk is passed to the listener as it arrives.
+     */
+    @Override
+    public String generate(GenerationRequest request, TokenListener listener)
+            throws IOException, InterruptedException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", request.getModel());
+        body.put("stream", true);
+        body.put("options", buildOptions(request));
+        if (request.getKeepAlive() != null) {
+            body.put("keep_alive", request.getKeepAlive());
+        }
+
+        if (request.getContext() != null) {
+            body.put("prompt", request.toContinuationText());
+            body.put("context", request.getContext());
+        } else if (request.hasConversation()) {
+            body.put("prompt", request.toPromptText());
+        } else if (request.hasHistory()) {
+            body.put("messages", buildChatMessages(request));
+            return postStreaming("/api/chat", body, listener, request).trim();
+        } else {
+            body.put("prompt", request.toPromptText());
+        }
+        return postStreaming("/api/generate", body, listener, request).trim();
+    }
+
+    /**
+     * Load the model by sending an empty /api/generate request, which Ollama
+     * answers once the model is in memory. Interrupting the thread aborts the exchange.
+     */
+    @Override
+    public void warmUp(String model, String keepAlive) throws IOException, InterruptedException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", model);
+        body.put("stream", false);
+        body.put("keep_alive", keepAlive);
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/generate"))
+                .header("Content-Type", "application/json")
+                .timeout(WARMUP_TIMEOUT)
+                .POST(HttpRequest.BodyPublishers.ofString(Json.write(body)))
+                .build();
+        HttpResponse<String> response = await(
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()), new CancellationSignal());
+        if (response.statusCode() != 200) {
+            throw new IOException("Ollama returned HTTP " + response.statusCode() + ": " + response.body());
+        }
+    }
+
+    /**
+     * Compute embeddings with /api/embed (all texts in one request). Servers
+     * older than that endpoint answer 404 and are asked text by text through
+     * /api/embeddings instead.
+     */
+    @Override
+    public List<float[]> embed(String model, List<String> texts) throws IOException, InterruptedException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", model);
+        body.put("input", texts);
+        HttpResponse<String> response = postJson("/api/embed", body, EMBED_TIMEOUT);
+        if (response.statusCode() == 404 && !response.body().contains("model")) {
+            return embedOneByOne(model, texts);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Ollama returned HTTP " + response.statusCode() + ": " + response.body());
+        }
+
+        Object embeddings = parseJson(response).get("embeddings");
+        if (!(embeddings instanceof List) || ((List<?>) embeddings).size() != texts.size()) {
+            throw new IOException("Invalid embeddings response from Ollama");
+        }
+        List<float[]> vectors = new ArrayList<>();
+        for (Object embedding : (List<?>) embeddings) {
+            vectors.add(toVector(embedding));
+        }
+        return vectors;
+    }
+
+    private List<float[]> embedOneByOne(String model, List<String> texts) throws IOException, InterruptedException {
+        List<float[]> vectors = new ArrayList<>();
+        for (String text : texts) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("model", model);
+            body.put("prompt", text);
+            HttpResponse<String> response = postJson("/api/embeddings", body, EMBED_TIMEOUT);
+            if (response.statusCode() != 200) {
+                throw new IOException("Ollama returned HTTP " + response.statusCode() + ": " + response.body());
+            }
+            vectors.add(toVector(parseJson(response).get("embedding")));
+        }
+        return vectors;
+    }
+
+    private HttpResponse<String> postJson(String path, Map<String, Object> body, Duration timeout)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .timeout(timeout)
+                .POST(HttpRequest.BodyPublishers.ofString(Json.write(body)))
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static Map<String, Object> parseJson(HttpResponse<String> response) throws IOException {
+        try {
+            return Json.parseObject(response.body());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid response from Ollama: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Convert a JSON number array to a vector
+     */
+    static float[] toVector(Object values) throws IOException {
+        if (!(values instanceof List) || ((List<?>) values).isEmpty()) {
+            throw new IOException("Invalid embedding in Ollama response");
+        }
+        List<?> list = (List<?>) values;
+        float[] vector = new float[list.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = ((Number) list.get(i)).floatValue();
+        }
+        return vector;
+    }
+
+    /**
+     * Build the "options" object of a request
+     */
+    static Map<String, Object> buildOptions(GenerationRequest request) {
+        Map<String, Object> options = new LinkedHashMap<>();
+        options.put("temperature", (double) request.getTemperature());
+        if (request.getMaxTokens() > 0) {
+            options.put("num_predict", request.getMaxTokens());
+        }
+        if (request.getContextWindow() > 0) {
+            options.put("num_ctx", request.getContextWindow());
+        }
+        return options;
+    }
+
+    /**
+     * Convert the history and the new prompt into an /api/chat messages array
+     */
+    static List<Map<String, Object>> buildChatMessages(GenerationRequest request) {
+        List<Map<String, Object>> messages = new ArrayList<>();
+        if (request.hasRelatedMessages()) {
+            messages.add(chatMessage("system", request.relatedText().trim()));
+        }
+        for (ConversationMessage message : request.getHistory()) {
+            String role = "User".equals(GenerationRequest.roleOf(message)) ? "user" : "assistant";
+            messages.add(chatMessage(role, message.getContent()));
+        }
+        messages.add(chatMessage("user", request.getPrompt()));
+        return messages;
+    }
+
+    private static Map<String, Object> chatMessage(String role, String content) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("role", role);
+        message.put("content", content);
+        return message;
+    }
+
+    /**
+     * Check the availability of the Ollama server
+     *
+     * @return true if the server answers /api/version
+     */
+    @Override
+    public boolean isAvailable() {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/version"))
+                    .timeout(PROBE_TIMEOUT)
+                    .GET()
+                    .build();
+            HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+            return response.statusCode() == 200;
+        } catch (IOException e) {
+            System.err.println("Ollama server check failed: " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Get a list of installed models from /api/tags
+     *
+     * @return List of model names
+     */
+    @Override
+    public List<String> getInstalledModels() {
+        List<String> models = new ArrayList<>();
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/tags"))
+                    .timeout(PROBE_TIMEOUT)
+                    .GET()
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IOException("HTTP " + response.statusCode());
+            }
+            Object list = Json.parseObject(response.body()).get("models");
+            if (list instanceof List) {
+                for (Object entry : (List<?>) list) {
+                    if (entry instanceof Map) {
+                        Object name = ((Map<?, ?>) entry).get("name");
+                        if (name != null) {
+                            models.add(name.toString());
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to get installed models: " + e.getMessage());
+        }
+        return models;
+    }
+
+    /**
+     * POST a JSON body and read the newline-delimited JSON chunks of a streamed response.
+     * The context of the final chunk, if any, is stored in the request.
+     *
+     * @return Concatenated response text
+     */
+    private String postStreaming(String path, Map<String, Object> body, TokenListener listener,
+            GenerationRequest generationRequest) throws IOException, InterruptedException {
+        CancellationSignal signal = generationRequest.getCancellationSignal();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(Json.write(body)))
+                .build();
+
+        HttpResponse<InputStream> response = await(
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream()), signal);
+
+        // Closing the body aborts the exchange and stops Ollama from generating further
+        InputStream stream = response.body();
+        signal.onCancel(() -> {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        });
+
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                Map<String, Object> chunk = parseChunk(line, response.statusCode());
+                if (response.statusCode() != 200 || chunk.containsKey("error")) {
+                    throw new IOException("Ollama returned HTTP " + response.statusCode() + ": " + chunk.get("error"));
+                }
+
+                String token = chunkText(chunk);
+                if (!token.isEmpty()) {
+                    output.append(token);
+                    if (listener != null) {
+                        listener.onToken(token);
+                    }
+                }
+                if (Boolean.TRUE.equals(chunk.get("done"))) {
+                    generationRequest.setResultContext(contextOf(chunk));
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            signal.throwIfCancelled();
+            throw e;
+        }
+        signal.throwIfCancelled();
+        if (response.statusCode() != 200) {
+            throw new IOException("Ollama returned HTTP " + response.statusCode());
+        }
+        return output.toString();
+    }
+
+    /**
+     * Wait for the response headers, aborting the exchange when the request is cancelled
+     */
+    private static <T> HttpResponse<T> await(CompletableFuture<HttpResponse<T>> pending, CancellationSignal signal)
+            throws IOException, InterruptedException {
+        signal.onCancel(() -> pending.cancel(true));
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            pending.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            signal.throwIfCancelled();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                // Keeps ConnectException intact so LLMService can fall back to the process backend
+                throw (IOException) cause;
+            }
+            throw new IOException("HTTP request failed: " + cause, cause);
+        }
+    }
+
+    private static Map<String, Object> parseChunk(String line, int statusCode) throws IOException {
+        try {
+            return Json.parseObject(line);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid response from Ollama (HTTP " + statusCode + "): " + e.getMessage());
+        }
+    }
+
+    /**
+     * Extract the "context" token array of a final /api/generate chunk
+     *
+     * @return Context, or null if the chunk has none
+     */
+    static int[] contextOf(Map<String, Object> chunk) {
+        Object context = chunk.get("context");
+        if (!(context instanceof List) || ((List<?>) context).isEmpty()) {
+            return null;
+        }
+        List<?> values = (List<?>) context;
+        int[] tokens = new int[values.size()];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = ((Number) values.get(i)).intValue();
+        }
+        return tokens;
+    }
+
+    /**
+     * Extract the generated text of one chunk from /api/generate ("response")
+     * or /api/chat ("message.content")
+     */
+    private static String chunkText(Map<String, Object> chunk) {
+        Object text = chunk.get("response");
+        Object message = chunk.get("message");
+        if (text == null && message instanceof Map) {
+            text = ((Map<?, ?>) message).get("content");
+        }
+        return text != null ? text.toString() : "";
+    }
+}
@@ -0,0 +1,220 @@
+package com.nexuscore.llm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backend that spawns {@code ollama run <model>} for every request.
+ * Used as a fallback when no Ollama server is reachable over HTTP.
+ * The CLI has no flags for sampling options, so temperature and max tokens are ignored.
+ */
+public class OllamaProcessBackend implements LLMBackend {
+
+    private static final Duration WARMUP_TIMEOUT = Duration.ofMinutes(5); // Same as the HTTP backend
+
+    private volatile String ollamaPath;
+
+    /**
+     * Constructor
+     *
+     * @param ollamaPath Path to the Ollama executable
+     */
+    public OllamaProcessBackend(String ollamaPath) {
+        this.ollamaPath = ollamaPath;
+    }
+
+    /**
+     * Set the execution path for Ollama
+     *
+     * @param path Path to the Ollama executable
+     */
+    public void setOllamaPath(String path) {
+        this.ollamaPath = path;
+    }
+
+    /**
+     * Get the current Ollama path
+     *
+     * @return Path to the Ollama executable
+     */
+    public String getOllamaPath() {
+        return ollamaPath;
+    }
+
+    @Override
+    public String getName() {
+        return "Process (ollama run)";
+    }
+
+    /**
+     * Run the Ollama command and send the prompt
+     *
+     * @param request  Generation request
+     * @param listener Receives chunks of standard output as they are read (may be null)
+     * @return Response from Ollama
+     * @throws IOException          If process execution fails
+     * @throws InterruptedException If the thread is interrupted
+     */
+    @Override
+    public String generate(GenerationRequest request, TokenListener listener)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ollamaPath);
+        command.add("run");
+        command.add(request.getModel());
+
+        System.out.println("Executing command: " + String.join(" ", command));
+
+        // Error output goes to a temporary file so no extra reader thread is needed
+        Path errorFile = Files.createTempFile("nexus-ollama-", ".err");
+        try {
+            // Execute the command
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
+            processBuilder.redirectError(errorFile.toFile());
+            Process process = processBuilder.start();
+
+            // Kill the process (and anything it spawned) when the request is cancelled
+            CancellationSignal signal = request.getCancellationSignal();
+            signal.onCancel(() -> destroyProcessTree(process));
+
+            try {
+                // Write the prompt to standard input
+                process.getOutputStream().write((request.toPromptText() + "\n").getBytes());
+                process.getOutputStream().flush();
+                process.getOutputStream().close();
+
+                // Read the response from standard output on this thread, forwarding chunks as they arrive
+                StringBuilder output = new StringBuilder();
+                try (Reader reader = new InputStreamReader(process.getInputStream())) {
+                    char[] buffer = new char[256];
+                    int read;
+                    while ((read = reader.read(buffer)) != -1) {
+                        String chunk = new String(buffer, 0, read);
+                        output.append(chunk);
+                        if (listener != null) {
+                            listener.onToken(chunk);
+                        }
+                    }
+                } catch (IOException e) {
+                    signal.throwIfCancelled();
+                    throw e;
+                }
+
+                // Wait for the process to finish
+                int exitCode = process.waitFor();
+                signal.throwIfCancelled();
+
+                if (exitCode != 0) {
+                    throw new IOException("Ollama process exited with code " + exitCode + ": "
+                            + Files.readString(errorFile, Charset.defaultCharset()));
+                }
+
+                return output.toString().trim();
+            } catch (InterruptedException e) {
+                destroyProcessTree(process);
+                throw e;
+            } catch (IOException e) {
+                signal.throwIfCancelled();
+                destroyProcessTree(process);
+                throw e;
+            }
+        } finally {
+            Files.deleteIfExists(errorFile);
+        }
+    }
+
+    /**
+     * Forcibly stop a process and its descendants
+     */
+    private static void destroyProcessTree(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    /**
+     * Load the model by running it with an empty prompt. The process is killed
+     * if it does not finish within the warm-up timeout or the thread is interrupted.
+     */
+    @Override
+    public void warmUp(String model, String keepAlive) throws IOException, InterruptedException {
+        ProcessBuilder processBuilder = new ProcessBuilder(ollamaPath, "run", model, "--keepalive", keepAlive);
+        processBuilder.redirectErrorStream(true);
+        processBuilder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        Process process = processBuilder.start();
+        process.getOutputStream().close();
+
+        try {
+            if (!process.waitFor(WARMUP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                destroyProcessTree(process);
+                throw new IOException("Loading " + model + " timed out after " + WARMUP_TIMEOUT.toMinutes()
+                        + " minutes");
+            }
+        } catch (InterruptedException e) {
+            destroyProcessTree(process);
+            throw e;
+        }
+        if (process.exitValue() != 0) {
+            throw new IOException("Ollama process exited with code " + process.exitValue());
+        }
+    }
+
+    /**
+     * Check the availability of Ollama
+     *
+     * @return true if Ollama is available
+     */
+    @Override
+    public boolean isAvailable() {
+        try {
+            // Test by running Ollama's version command
+            ProcessBuilder processBuilder = new ProcessBuilder(ollamaPath, "--version");
+            Process process = processBuilder.start();
+            int exitCode = process.waitFor();
+            return exitCode == 0;
+        } catch (Exception e) {
+            System.err.println("Ollama availability check failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Get a list of installed models
+     *
+     * @return List of model names
+     */
+    @Override
+    public List<String> getInstalledModels() {
+        List<String> models = new ArrayList<>();
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder(ollamaPath, "list");
+            Process process = processBuilder.start();
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // Extract model name (first word in the line)
+                    if (!line.trim().isEmpty()) {
+                        String[] parts = line.trim().split("\\s+");
+                        if (parts.length > 0) {
+                            models.add(parts[0]);
+                        }
+                    }
+                }
+            }
+
+            process.waitFor();
+        } catch (Exception e) {
+            System.err.println("Failed to get installed models: " + e.getMessage());
+        }
+        return models;
+    }
+}
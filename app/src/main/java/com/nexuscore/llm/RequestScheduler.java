@@ -0,0 +1,376 @@
+package com.nexuscore.llm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control in front of the {@link LLMExecutor}.
+ * At most {@code maxParallel} generations run at once; the rest wait in a
+ * queue per priority class. Within a class, conversations are served
+ * round-robin, so one conversation (or batch job) with many queued requests
+ * cannot starve the others. Queue depth and queue-wait times are tracked to
+ * help size the machine and Ollama's own parallelism (OLLAMA_NUM_PARALLEL).
+ */
+public class RequestScheduler {
+
+    /**
+     * Maximum number of generations running at once ({@code -Dnexuscore.llm.maxParallel})
+     */
+    public static final String MAX_PARALLEL_PROPERTY = "nexuscore.llm.maxParallel";
+
+    /**
+     * Priority classes; a request is only started when no request of a higher class is waiting
+     */
+    public enum Priority {
+        /** Requests a user is waiting for (GUI and CLI prompts) */
+        INTERACTIVE,
+        /** Batch and maintenance work */
+        BACKGROUND
+    }
+
+    private static RequestScheduler shared;
+
+    private final LLMExecutor executor;
+    private final Object lock = new Object();
+    private final List<Map<Object, ArrayDeque<Job<?>>>> queues = new ArrayList<>(); // One per priority
+    private int maxParallel;
+    private int running;
+
+    // Statistics (guarded by lock)
+    private final long[] dispatchedByPriority = new long[Priority.values().length];
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    /**
+     * Constructor
+     *
+     * @param executor    Executor that runs the requests
+     * @param maxParallel Maximum number of requests running at once
+     */
+    public RequestScheduler(LLMExecutor executor, int maxParallel) {
+        this.executor = executor;
+        this.maxParallel = Math.max(1, maxParallel);
+        for (int i = 0; i < Priority.values().length; i++) {
+            // Insertion order of the conversation keys is the round-robin order
+            queues.add(new LinkedHashMap<>());
+        }
+    }
+
+    /**
+     * Get the process-wide scheduler on the shared executor
+     *
+     * @return Shared scheduler
+     */
+    public static synchronized RequestScheduler getShared() {
+        if (shared == null) {
+            shared = new RequestScheduler(LLMExecutor.getShared(), defaultMaxParallel());
+            System.out.println("LLM scheduler started (max " + shared.getMaxParallel() + " parallel requests)");
+        }
+        return shared;
+    }
+
+    /**
+     * Default parallelism: the system property, else Ollama's OLLAMA_NUM_PARALLEL, else 1
+     *
+     * @return Maximum number of requests running at once
+     */
+    public static int defaultMaxParallel() {
+        Integer configured = Integer.getInteger(MAX_PARALLEL_PROPERTY);
+        if (configured != null) {
+            return Math.max(1, configured);
+        }
+        try {
+            String ollamaParallel = System.getenv("OLLAMA_NUM_PARALLEL");
+            if (ollamaParallel != null) {
+                return Math.max(1, Integer.parseInt(ollamaParallel.trim()));
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the default
+        }
+        return 1;
+    }
+
+    /**
+     * Queue a task. Cancelling the returned future removes a waiting task from
+     * the queue, or stops a running one through its signal.
+     *
+     * @param task        Task to run
+     * @param priority    Priority class
+     * @param fairnessKey Requests with the same key (e.g. a conversation ID) share one turn in the rotation
+     * @param signal      Cancellation signal of the task
+     * @return Future completed with the task's result
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task, Priority priority, Object fairnessKey,
+            CancellationSignal signal) {
+        Job<T> job = new Job<>(task, priority, fairnessKey, signal);
+        job.result.whenComplete((result, error) -> {
+            if (job.result.isCancelled()) {
+                cancel(job);
+            }
+        });
+
+        synchronized (lock) {
+            queues.get(priority.ordinal()).computeIfAbsent(fairnessKey, key -> new ArrayDeque<>()).add(job);
+        }
+        dispatch();
+        return job.result;
+    }
+
+    /**
+     * Change the maximum number of requests running at once
+     *
+     * @param maxParallel New limit (at least 1)
+     */
+    public void setMaxParallel(int maxParallel) {
+        synchronized (lock) {
+            this.maxParallel = Math.max(1, maxParallel);
+        }
+        dispatch();
+    }
+
+    public int getMaxParallel() {
+        synchronized (lock) {
+            return maxParallel;
+        }
+    }
+
+    /**
+     * Executor that runs the requests
+     *
+     * @return Executor
+     */
+    public LLMExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Get a snapshot of queue depth and wait times
+     *
+     * @return Current statistics
+     */
+    public Stats getStats() {
+        synchronized (lock) {
+            int[] queued = new int[queues.size()];
+            long oldestWaitNanos = 0;
+            long now = System.nanoTime();
+            for (int i = 0; i < queues.size(); i++) {
+                for (ArrayDeque<Job<?>> jobs : queues.get(i).values()) {
+                    queued[i] += jobs.size();
+                    for (Job<?> job : jobs) {
+                        oldestWaitNanos = Math.max(oldestWaitNanos, now - job.enqueuedAt);
+                    }
+                }
+            }
+            long dispatched = 0;
+            for (long count : dispatchedByPriority) {
+                dispatched += count;
+            }
+            return new Stats(maxParallel, running, queued, dispatchedByPriority.clone(),
+                    dispatched == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / dispatched),
+                    TimeUnit.NANOSECONDS.toMillis(maxWaitNanos), TimeUnit.NANOSECONDS.toMillis(oldestWaitNanos));
+        }
+    }
+
+    /**
+     * Start queued jobs while there are free slots
+     */
+    private void dispatch() {
+        List<Job<?>> toStart = new ArrayList<>();
+        synchronized (lock) {
+            while (running < maxParallel) {
+                Job<?> job = pollNext();
+                if (job == null) {
+                    break;
+                }
+                running++;
+                long waited = System.nanoTime() - job.enqueuedAt;
+                totalWaitNanos += waited;
+                maxWaitNanos = Math.max(maxWaitNanos, waited);
+                dispatchedByPriority[job.priority.ordinal()]++;
+                job.started = true;
+                toStart.add(job);
+            }
+        }
+        for (Job<?> job : toStart) {
+            start(job);
+        }
+    }
+
+    /**
+     * Take the next job: highest priority first, round-robin across keys within a priority
+     */
+    private Job<?> pollNext() {
+        for (Map<Object, ArrayDeque<Job<?>>> queue : queues) {
+            Iterator<Map.Entry<Object, ArrayDeque<Job<?>>>> keys = queue.entrySet().iterator();
+            if (!keys.hasNext()) {
+                continue;
+            }
+            Map.Entry<Object, ArrayDeque<Job<?>>> first = keys.next();
+            Job<?> job = first.getValue().poll();
+            keys.remove();
+            if (!first.getValue().isEmpty()) {
+                // The key goes to the back of the rotation
+                queue.put(first.getKey(), first.getValue());
+            }
+            return job;
+        }
+        return null;
+    }
+
+    private <T> void start(Job<T> job) {
+        CompletableFuture<T> execution = executor.submit(job.task, job.signal, this::release);
+        synchronized (lock) {
+            job.execution = execution;
+        }
+        if (job.result.isCancelled()) {
+            execution.cancel(true);
+        }
+        execution.whenComplete((result, error) -> {
+            if (error != null) {
+                job.result.completeExceptionally(error);
+            } else {
+                job.result.complete(result);
+            }
+        });
+    }
+
+    /**
+     * Free a slot once a task has really stopped running
+     */
+    private void release() {
+        synchronized (lock) {
+            running--;
+        }
+        dispatch();
+    }
+
+    /**
+     * Remove a cancelled job from its queue, or stop it if it is already running
+     */
+    private void cancel(Job<?> job) {
+        CompletableFuture<?> execution;
+        synchronized (lock) {
+            if (!job.started) {
+                Map<Object, ArrayDeque<Job<?>>> queue = queues.get(job.priority.ordinal());
+                ArrayDeque<Job<?>> jobs = queue.get(job.fairnessKey);
+                if (jobs != null) {
+                    jobs.remove(job);
+                    if (jobs.isEmpty()) {
+                        queue.remove(job.fairnessKey);
+                    }
+                }
+            }
+            execution = job.execution;
+        }
+        job.signal.cancel();
+        if (execution != null) {
+            execution.cancel(true);
+        }
+    }
+
+    private static final class Job<T> {
+        final Callable<T> task;
+        final Priority priority;
+        final Object fairnessKey;
+        final CancellationSignal signal;
+        final long enqueuedAt = System.nanoTime();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        boolean started; // Guarded by the scheduler lock
+        CompletableFuture<T> execution; // Guarded by the scheduler lock
+
+        Job(Callable<T> task, Priority priority, Object fairnessKey, CancellationSignal signal) {
+            this.task = task;
+            this.priority = priority;
+            this.fairnessKey = fairnessKey;
+            this.signal = signal;
+        }
+    }
+
+    /**
+     * Snapshot of scheduler counters
+     */
+    public static class Stats {
+        private final int maxParallel;
+        private final int running;
+        private final int[] queuedByPriority;
+        private final long[] dispatchedByPriority;
+        private final long averageWaitMillis;
+        private final long maxWaitMillis;
+        private final long oldestWaitMillis;
+
+        public Stats(int maxParallel, int running, int[] queuedByPriority, long[] dispatchedByPriority,
+                long averageWaitMillis, long maxWaitMillis, long oldestWaitMillis) {
+            this.maxParallel = maxParallel;
+            this.running = running;
+            this.queuedByPriority = queuedByPriority;
+            this.dispatchedByPriority = dispatchedByPriority;
+            this.averageWaitMillis = averageWaitMillis;
+            this.maxWaitMillis = maxWaitMillis;
+            this.oldestWaitMillis = oldestWaitMillis;
+        }
+
+        public int getMaxParallel() {
+            return maxParallel;
+        }
+
+        /** Requests holding a slot */
+        public int getRunning() {
+            return running;
+        }
+
+        /** Requests waiting for a slot, all priorities */
+        public int getQueued() {
+            int total = 0;
+            for (int queued : queuedByPriority) {
+                total += queued;
+            }
+            return total;
+        }
+
+        /** Requests of one priority waiting for a slot */
+        public int getQueued(Priority priority) {
+            return queuedByPriority[priority.ordinal()];
+        }
+
+        /** Requests of one priority started so far */
+        public long getDispatched(Priority priority) {
+            return dispatchedByPriority[priority.ordinal()];
+        }
+
+        /** Average time started requests spent in the queue */
+        public long getAverageWaitMillis() {
+            return averageWaitMillis;
+        }
+
+        /** Longest time a started request spent in the queue */
+        public long getMaxWaitMillis() {
+            return maxWaitMillis;
+        }
+
+        /** How long the oldest still-waiting request has been queued */
+        public long getOldestWaitMillis() {
+            return oldestWaitMillis;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("running=").append(running).append('/').append(maxParallel);
+            for (Priority priority : Priority.values()) {
+                sb.append(", ").append(priority.name().toLowerCase()).append("Queued=")
+                        .append(queuedByPriority[priority.ordinal()]);
+            }
+            sb.append(", avgWaitMs=").append(averageWaitMillis)
+                    .append(", maxWaitMs=").append(maxWaitMillis)
+                    .append(", oldestWaitMs=").append(oldestWaitMillis);
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.nexuscore.llm;
+
+import com.nexuscore.database.DatabaseManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in two-tier cache of LLM responses: a bounded in-memory LRU in front
+ * of a persistent table managed by {@link DatabaseManager}.
+ * Entries are keyed on (model, full assembled prompt, temperature, maxTokens).
+ * By default only deterministic requests (temperature 0) are cached.
+ */
+public class ResponseCache {
+
+    public static final int DEFAULT_MEMORY_ENTRIES = 256;
+    public static final int DEFAULT_PERSISTENT_ENTRIES = 10_000;
+    public static final Duration DEFAULT_TTL = Duration.ofDays(7);
+
+    private static final int EVICTION_INTERVAL = 100; // Persistent eviction runs every N stores
+
+    private final int maxMemoryEntries;
+    private final int maxPersistentEntries;
+    private final long ttlMillis;
+    private final DatabaseManager store;
+    private final LinkedHashMap<String, Entry> memory;
+
+    private volatile boolean enabled;
+    private volatile boolean cacheNonDeterministic;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong persistentHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+
+    /**
+     * Constructor with default sizes and TTL
+     *
+     * @param store Persistent tier (null for memory only)
+     */
+    public ResponseCache(DatabaseManager store) {
+        this(DEFAULT_MEMORY_ENTRIES, DEFAULT_PERSISTENT_ENTRIES, DEFAULT_TTL, store);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxMemoryEntries     Size of the in-memory LRU tier
+     * @param maxPersistentEntries Size limit of the persistent tier
+     * @param ttl                  How long an entry stays valid
+     * @param store                Persistent tier (null for memory only)
+     */
+    public ResponseCache(int maxMemoryEntries, int maxPersistentEntries, Duration ttl, DatabaseManager store) {
+        this.maxMemoryEntries = maxMemoryEntries;
+        this.maxPersistentEntries = maxPersistentEntries;
+        this.ttlMillis = ttl.toMillis();
+        this.store = store;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ResponseCache.this.maxMemoryEntries;
+            }
+        };
+    }
+
+    /**
+     * Enable or disable the cache (disabled by default)
+     *
+     * @param enabled true to serve and store responses
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Also cache requests with a temperature above 0, whose responses would normally vary
+     *
+     * @param cacheNonDeterministic true to cache every request
+     */
+    public void setCacheNonDeterministic(boolean cacheNonDeterministic) {
+        this.cacheNonDeterministic = cacheNonDeterministic;
+    }
+
+    /**
+     * Check whether a request may be served from and stored in the cache
+     *
+     * @param request Generation request
+     * @return true if cacheable
+     */
+    public boolean isCacheable(GenerationRequest request) {
+        return enabled && (cacheNonDeterministic || request.getTemperature() <= 0f);
+    }
+
+    /**
+     * Look up a cached response
+     *
+     * @param request Generation request
+     * @return Cached response, or null on a miss
+     */
+    public String get(GenerationRequest request) {
+        String key = keyOf(request);
+        long now = System.currentTimeMillis();
+
+        synchronized (memory) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (now - entry.createdAt <= ttlMillis) {
+                    memoryHits.incrementAndGet();
+                    return entry.response;
+                }
+                memory.remove(key);
+            }
+        }
+
+        if (store != null) {
+            DatabaseManager.CachedResponse cached = store.getCachedResponse(key, now - ttlMillis);
+            if (cached != null) {
+                synchronized (memory) {
+                    memory.put(key, new Entry(cached.getResponse(), cached.getCreatedAt()));
+                }
+                persistentHits.incrementAndGet();
+                return cached.getResponse();
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Store a response in both tiers
+     *
+     * @param request  Generation request
+     * @param response Response produced by the model
+     */
+    public void put(GenerationRequest request, String response) {
+        String key = keyOf(request);
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            memory.put(key, new Entry(response, now));
+        }
+        if (store != null) {
+            store.putCachedResponse(key, request.getModel(), response, now);
+            if (stores.incrementAndGet() % EVICTION_INTERVAL == 0) {
+                store.evictCachedResponses(now - ttlMillis, maxPersistentEntries);
+            }
+        } else {
+            stores.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drop every cached response in both tiers
+     */
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+        }
+        if (store != null) {
+            store.clearCachedResponses();
+        }
+    }
+
+    /**
+     * Get hit/miss counters
+     *
+     * @return Statistics snapshot
+     */
+    public Stats getStats() {
+        int size;
+        synchronized (memory) {
+            size = memory.size();
+        }
+        return new Stats(memoryHits.get(), persistentHits.get(), misses.get(), stores.get(), size);
+    }
+
+    /**
+     * Compute the cache key of a request
+     */
+    static String keyOf(GenerationRequest request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String material = request.getModel() + '\u0000' + request.toPromptText() + '\u0000'
+                    + request.getTemperature() + '\u0000' + request.getMaxTokens();
+            byte[] hash = digest.digest(material.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class Entry {
+        final String response;
+        final long createdAt;
+
+        Entry(String response, long createdAt) {
+            this.response = response;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * Snapshot of cache counters
+     */
+    public static class Stats {
+        private final long memoryHits;
+        private final long persistentHits;
+        private final long misses;
+        private final long stores;
+        private final int memoryEntries;
+
+        public Stats(long memoryHits, long persistentHits, long misses, long stores, int memoryEntries) {
+            this.memoryHits = memoryHits;
+            this.persistentHits = persistentHits;
+            this.misses = misses;
+            this.stores = stores;
+            this.memoryEntries = memoryEntries;
+        }
+
+        public long getMemoryHits() {
+            return memoryHits;
+        }
+
+        public long getPersistentHits() {
+            return persistentHits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getStores() {
+            return stores;
+        }
+
+        public int getMemoryEntries() {
+            return memoryEntries;
+        }
+
+        @Override
+        public String toString() {
+            return "memoryHits=" + memoryHits + ", persistentHits=" + persistentHits + ", misses=" + misses
+                    + ", stores=" + stores + ", memoryEntries=" + memoryEntries;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.nexuscore.llm;
+
+import com.nexuscore.database.DatabaseManager;
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in semantic memory over all stored messages.
+ * A background thread computes an embedding for every saved message with
+ * the embedding model, stores it next to the message in the database and adds
+ * it to an in-memory {@link VectorIndex}. Embedding requests go through the
+ * request scheduler at background priority, so they never hold up a chat
+ * response. Before a Think-mode request is sent, {@link #recall} embeds the
+ * prompt and returns the most similar past messages from any conversation,
+ * which LLMService adds to the prompt.
+ */
+public class SemanticMemory {
+
+    public static final String DEFAULT_MODEL = "nomic-embed-text";
+    public static final int DEFAULT_TOP_K = 5;
+    public static final float DEFAULT_MIN_SIMILARITY = 0.5f;
+
+    private static final int BATCH_SIZE = 32;
+    private static final int MAX_EMBED_CHARS = 4000; // Longer messages are embedded by their beginning
+    private static final long POLL_MILLIS = 30_000;
+    private static final long RETRY_MILLIS = 60_000;
+
+    private final DatabaseManager store;
+    private final LLMService llmService;
+
+    private volatile boolean enabled;
+    private volatile String model = DEFAULT_MODEL;
+    private volatile int topK = DEFAULT_TOP_K;
+    private volatile float minSimilarity = DEFAULT_MIN_SIMILARITY;
+
+    private volatile VectorIndex index; // null until the first vector of the model is known
+    private volatile String indexModel;
+    private long lastScannedId; // Used by the indexing thread only
+    private volatile boolean rescanRequested; // Restored messages lie below lastScannedId
+
+    private final Object wakeUp = new Object();
+    private boolean updateRequested; // Guarded by wakeUp
+    private Thread worker;
+    private volatile boolean stopped;
+    private volatile boolean failing;
+
+    private final AtomicLong embedded = new AtomicLong();
+    private final AtomicLong recalls = new AtomicLong();
+    private final AtomicLong recalledMessages = new AtomicLong();
+    private final AtomicLong recallNanos = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param store      Database holding the messages and their embeddings
+     * @param llmService Service whose Ollama servers compute the embeddings
+     */
+    public SemanticMemory(DatabaseManager store, LLMService llmService) {
+        this.store = store;
+        this.llmService = llmService;
+        store.addArchiveListener(new DatabaseManager.ArchiveListener() {
+            @Override
+            public void conversationArchived(int conversationId, List<Long> messageIds) {
+                // Archived messages can no longer be recalled (their stored embeddings are deleted too)
+                VectorIndex current = index;
+                if (current != null) {
+                    for (long id : messageIds) {
+                        current.remove(id);
+                    }
+                }
+            }
+
+            @Override
+            public void conversationRestored(int conversationId) {
+                rescanRequested = true;
+                requestUpdate();
+            }
+        });
+    }
+
+    /**
+     * Enable or disable the memory (disabled by default). Enabling starts
+     * indexing the messages that have no embedding yet.
+     *
+     * @param enabled true to index messages and recall them in Think mode
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled && worker == null && !stopped) {
+            worker = new Thread(this::run, "nexus-memory-indexer");
+            worker.setDaemon(true);
+            worker.start();
+        }
+        requestUpdate();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Set the embedding model; the index is rebuilt from the stored embeddings of that model
+     *
+     * @param model Ollama embedding model (e.g. nomic-embed-text)
+     */
+    public void setModel(String model) {
+        if (model != null && !model.isBlank()) {
+            this.model = model.trim();
+            requestUpdate();
+        }
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * Set how many past messages are recalled at most
+     */
+    public void setTopK(int topK) {
+        this.topK = Math.max(1, topK);
+    }
+
+    /**
+     * Set the cosine similarity a past message needs to be recalled
+     */
+    public void setMinSimilarity(float minSimilarity) {
+        this.minSimilarity = minSimilarity;
+    }
+
+    /**
+     * Index new messages now instead of at the next poll
+     */
+    public void requestUpdate() {
+        synchronized (wakeUp) {
+            updateRequested = true;
+            wakeUp.notifyAll();
+        }
+    }
+
+    /**
+     * Find past messages related to a prompt
+     *
+     * @param prompt      User's prompt
+     * @param excludeIds  Ids of messages that are already part of the request
+     * @param tokenBudget Estimated tokens the recalled messages may use together
+     * @return Related messages, most similar first (empty if disabled or unavailable)
+     */
+    public List<ConversationMessage> recall(String prompt, Set<Long> excludeIds, int tokenBudget) {
+        List<ConversationMessage> related = new ArrayList<>();
+        VectorIndex current = index;
+        if (!enabled || current == null || current.size() == 0 || tokenBudget <= 0) {
+            return related;
+        }
+
+        long start = System.nanoTime();
+        float[] query;
+        try {
+            query = llmService.embed(indexModel, List.of(truncate(prompt))).get(0);
+        } catch (IOException e) {
+            System.err.println("Semantic recall skipped: " + e.getMessage());
+            return related;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return related;
+        }
+        if (query.length != current.getDimensions()) {
+            return related;
+        }
+
+        int k = topK;
+        List<Long> ids = new ArrayList<>();
+        for (VectorIndex.Neighbor neighbor : current.search(query, k * 2, id -> !excludeIds.contains(id))) {
+            if (neighbor.getScore() >= minSimilarity) {
+                ids.add(neighbor.getId());
+            }
+        }
+
+        int used = 0;
+        for (ConversationMessage message : store.getMessages(ids)) {
+            // The prompt itself is usually stored already
+            if (message.getContent() == null || message.getContent().trim().equals(prompt.trim())) {
+                continue;
+            }
+            int tokens = HistoryPacker.estimateTokens(message.getContent()) + HistoryPacker.MESSAGE_OVERHEAD_TOKENS;
+            if (used + tokens > tokenBudget) {
+                continue;
+            }
+            used += tokens;
+            related.add(message);
+            if (related.size() == k) {
+                break;
+            }
+        }
+
+        recalls.incrementAndGet();
+        recalledMessages.addAndGet(related.size());
+        recallNanos.addAndGet(System.nanoTime() - start);
+        System.out.println("Recalled " + related.size() + " related messages (" + used + " tokens) in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return related;
+    }
+
+    /**
+     * Stop the indexing thread
+     */
+    public synchronized void shutdown() {
+        stopped = true;
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+    }
+
+    /**
+     * Statistics of the memory, for diagnostics
+     */
+    public String getStats() {
+        VectorIndex current = index;
+        long count = recalls.get();
+        return "model=" + model + ", indexed=" + (current != null ? current.size() : 0)
+                + (current != null && current.isApproximate() ? " (approximate)" : " (exact)")
+                + ", embeddedThisSession=" + embedded.get() + ", recalls=" + count
+                + ", avgRecalled=" + (count > 0 ? recalledMessages.get() / count : 0)
+                + ", avgRecallMs=" + (count > 0 ? recallNanos.get() / count / 1_000_000 : 0);
+    }
+
+    /**
+     * Indexing loop: load the stored embeddings, then embed new messages in batches
+     */
+    private void run() {
+        while (!stopped) {
+            long wait = POLL_MILLIS;
+            if (enabled) {
+                String current = model;
+                if (!current.equals(indexModel)) {
+                    loadIndex(current);
+                }
+                if (rescanRequested) {
+                    rescanRequested = false;
+                    lastScannedId = 0;
+                }
+                int processed = indexPending(current);
+                if (processed == BATCH_SIZE) {
+                    continue; // More messages are waiting
+                }
+                VectorIndex loaded = index;
+                if (loaded != null && loaded.trainIfNeeded()) {
+                    System.out.println("Trained semantic index clusters for " + loaded.size() + " messages");
+                }
+                wait = processed < 0 ? RETRY_MILLIS : POLL_MILLIS;
+            }
+            if (!awaitWork(wait, failing)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Wait for an update request or the timeout
+     *
+     * @param ignoreRequests true to wait the full time (after a failure)
+     * @return false if the thread was interrupted
+     */
+    private boolean awaitWork(long millis, boolean ignoreRequests) {
+        long deadline = System.currentTimeMillis() + millis;
+        synchronized (wakeUp) {
+            try {
+                while (!stopped && (ignoreRequests || !updateRequested)) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    wakeUp.wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                return false;
+            }
+            updateRequested = false;
+        }
+        return !stopped;
+    }
+
+    private void loadIndex(String model) {
+        long start = System.nanoTime();
+        VectorIndex[] loaded = new VectorIndex[1];
+        store.loadEmbeddings(model, (id, vector) -> {
+            if (loaded[0] == null) {
+                loaded[0] = new VectorIndex(vector.length);
+            }
+            if (vector.length == loaded[0].getDimensions()) {
+                loaded[0].add(id, vector);
+            }
+        });
+        index = loaded[0];
+        indexModel = model;
+        lastScannedId = 0; // Messages without an embedding can be anywhere
+        System.out.println("Loaded " + (loaded[0] != null ? loaded[0].size() : 0) + " embeddings of " + model
+                + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Embed the next batch of messages that have no embedding yet
+     *
+     * @return Number of messages processed, or -1 if embedding failed
+     */
+    private int indexPending(String model) {
+        List<ConversationMessage> batch = store.getMessagesWithoutEmbedding(model, lastScannedId, BATCH_SIZE);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        List<Long> ids = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (ConversationMessage message : batch) {
+            if (message.getContent() != null && !message.getContent().isBlank()) {
+                ids.add(message.getId());
+                texts.add(truncate(message.getContent()));
+            }
+        }
+
+        if (!texts.isEmpty()) {
+            List<float[]> vectors;
+            try {
+                vectors = llmService.embedAsync(model, texts).get();
+            } catch (ExecutionException e) {
+                if (!failing) {
+                    System.err.println("Failed to compute embeddings with " + model + ": "
+                            + e.getCause().getMessage() + " (will retry)");
+                }
+                failing = true;
+                return -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+            failing = false;
+            if (!store.saveEmbeddings(model, ids, vectors)) {
+                return -1;
+            }
+
+            VectorIndex current = index;
+            if (current == null) {
+                current = new VectorIndex(vectors.get(0).length);
+                index = current;
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                if (vectors.get(i).length == current.getDimensions()) {
+                    current.add(ids.get(i), vectors.get(i));
+                }
+            }
+            embedded.addAndGet(ids.size());
+        }
+        lastScannedId = batch.get(batch.size() - 1).getId();
+        return batch.size();
+    }
+
+    private static String truncate(String text) {
+        return text.length() > MAX_EMBED_CHARS ? text.substring(0, MAX_EMBED_CHARS) : text;
+    }
+}
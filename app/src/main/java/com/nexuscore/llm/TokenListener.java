@@ -0,0 +1,16 @@
+package com.nexuscore.llm;
+
+/**
+ * Callback that receives response text as the model produces it
+ */
+@FunctionalInterface
+public interface TokenListener {
+
+    /**
+     * Called for every chunk of generated text, in order.
+     * Invoked on a background thread; GUI code must hop to the FX thread itself.
+     *
+     * @param token Newly generated text
+     */
+    void onToken(String token);
+}
@@ -0,0 +1,540 @@
+package com.nexuscore.llm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory nearest-neighbour index of embedding vectors, by cosine similarity.
+ * Vectors are normalized on insert and stored in one contiguous array.
+ * Small indexes are searched exactly by scanning every vector. Once the index
+ * holds {@code approximateThreshold} vectors, {@link #trainIfNeeded()} groups
+ * them into clusters with k-means (an inverted file index): a query then only
+ * scans the clusters whose centroids are closest to it. New vectors are added
+ * to their nearest cluster right away; the clusters are retrained in the
+ * background when the index has doubled in size since the last training.
+ */
+public class VectorIndex {
+
+    public static final int DEFAULT_APPROXIMATE_THRESHOLD = 20_000;
+
+    private static final int KMEANS_ITERATIONS = 6;
+    private static final int KMEANS_SAMPLE_PER_CLUSTER = 32;
+    private static final long REMOVED = Long.MIN_VALUE;
+
+    private final int dimensions;
+    private final int approximateThreshold;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private float[] vectors = new float[0]; // Row-major, normalized; rows are never rewritten
+    private long[] ids = new long[0];
+    private int size; // Rows in use, including removed ones
+    private int removed;
+    private final Map<Long, Integer> rowOfId = new HashMap<>();
+
+    private Clusters clusters; // null while the index is searched exactly
+    private int probes; // Clusters scanned per query (0 = automatic)
+    private final AtomicBoolean training = new AtomicBoolean();
+
+    /**
+     * A search hit
+     */
+    public static class Neighbor {
+        private final long id;
+        private final float score;
+
+        Neighbor(long id, float score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /** Cosine similarity to the query */
+        public float getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return id + " (" + score + ")";
+        }
+    }
+
+    /**
+     * Constructor with the default threshold for approximate search
+     *
+     * @param dimensions Length of every vector
+     */
+    public VectorIndex(int dimensions) {
+        this(dimensions, DEFAULT_APPROXIMATE_THRESHOLD);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param dimensions           Length of every vector
+     * @param approximateThreshold Number of vectors from which clusters are trained
+     */
+    public VectorIndex(int dimensions, int approximateThreshold) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("dimensions must be positive");
+        }
+        this.dimensions = dimensions;
+        this.approximateThreshold = Math.max(1, approximateThreshold);
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Number of vectors in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size - removed;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether queries are answered from the clusters (approximate) rather than by a full scan
+     */
+    public boolean isApproximate() {
+        lock.readLock().lock();
+        try {
+            return clusters != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Set how many clusters a query scans; more is slower but finds more of the true neighbours
+     *
+     * @param probes Clusters per query, 0 for automatic (an eighth of the clusters, at least 4)
+     */
+    public void setProbes(int probes) {
+        lock.writeLock().lock();
+        try {
+            this.probes = Math.max(0, probes);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add a vector, replacing any vector stored under the same id
+     *
+     * @param id     Id of the vector (e.g. message id)
+     * @param vector Vector of {@link #getDimensions()} values; it is copied
+     */
+    public void add(long id, float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        if (id == REMOVED) {
+            throw new IllegalArgumentException("Invalid id");
+        }
+        float[] normalized = normalize(vector);
+
+        lock.writeLock().lock();
+        try {
+            removeRow(id);
+            if (size == ids.length) {
+                int capacity = Math.max(1024, ids.length * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                vectors = Arrays.copyOf(vectors, capacity * dimensions);
+            }
+            int row = size++;
+            ids[row] = id;
+            System.arraycopy(normalized, 0, vectors, row * dimensions, dimensions);
+            rowOfId.put(id, row);
+            if (clusters != null) {
+                clusters.add(row, vectors, dimensions);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a vector
+     *
+     * @param id Id of the vector
+     * @return true if it was in the index
+     */
+    public boolean remove(long id) {
+        lock.writeLock().lock();
+        try {
+            return removeRow(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the vectors most similar to the query
+     *
+     * @param query  Query vector
+     * @param k      Maximum number of results
+     * @param filter Accepts the ids that may be returned (null for all)
+     * @return Neighbours, most similar first
+     */
+    public List<Neighbor> search(float[] query, int k, LongPredicate filter) {
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + query.length);
+        }
+        float[] q = normalize(query);
+        TopK top = new TopK(Math.max(1, k));
+
+        lock.readLock().lock();
+        try {
+            if (clusters == null) {
+                scan(q, 0, size, null, filter, top);
+            } else {
+                int nprobe = probes > 0 ? probes : Math.max(4, clusters.count / 8);
+                for (int cluster : clusters.nearest(q, Math.min(nprobe, clusters.count), dimensions)) {
+                    scan(q, 0, clusters.sizes[cluster], clusters.rows[cluster], filter, top);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return top.toList();
+    }
+
+    /**
+     * Find the most similar vectors by scanning all of them, regardless of the clusters
+     *
+     * @param query Query vector
+     * @param k     Maximum number of results
+     * @return Neighbours, most similar first
+     */
+    public List<Neighbor> searchExact(float[] query, int k) {
+        float[] q = normalize(query);
+        TopK top = new TopK(Math.max(1, k));
+        lock.readLock().lock();
+        try {
+            scan(q, 0, size, null, null, top);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return top.toList();
+    }
+
+    /**
+     * Train the clusters if the index has become large enough, or has doubled
+     * since the last training. Runs on the calling thread; searches and
+     * inserts continue meanwhile and use the previous clusters (or a full scan).
+     *
+     * @return true if the clusters were (re)trained
+     */
+    public boolean trainIfNeeded() {
+        int live;
+        int trainedRows;
+        lock.readLock().lock();
+        try {
+            live = size - removed;
+            trainedRows = clusters != null ? clusters.trainedRows : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (live < approximateThreshold || (trainedRows > 0 && live < trainedRows * 2)) {
+            return false;
+        }
+        train();
+        return true;
+    }
+
+    /**
+     * Train the clusters from the vectors currently in the index
+     */
+    public void train() {
+        if (!training.compareAndSet(false, true)) {
+            return; // Another thread is training
+        }
+        try {
+            float[] data;
+            long[] rowIds;
+            int rows;
+            lock.readLock().lock();
+            try {
+                // Rows below "rows" never change, so they can be read without the lock
+                data = vectors;
+                rowIds = ids;
+                rows = size;
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            Clusters trained = Clusters.train(data, rowIds, rows, dimensions);
+
+            lock.writeLock().lock();
+            try {
+                // Rows added while training go to their nearest cluster
+                for (int row = rows; row < size; row++) {
+                    trained.add(row, vectors, dimensions);
+                }
+                clusters = trained;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            training.set(false);
+        }
+    }
+
+    private boolean removeRow(long id) {
+        Integer row = rowOfId.remove(id);
+        if (row == null) {
+            return false;
+        }
+        ids[row] = REMOVED;
+        removed++;
+        return true;
+    }
+
+    /**
+     * Score rows and keep the best ones
+     *
+     * @param rowList Rows to scan, or null for rows from..to
+     */
+    private void scan(float[] q, int from, int to, int[] rowList, LongPredicate filter, TopK top) {
+        for (int i = from; i < to; i++) {
+            int row = rowList != null ? rowList[i] : i;
+            long id = ids[row];
+            if (id == REMOVED) {
+                continue;
+            }
+            float score = dot(q, vectors, row * dimensions, dimensions);
+            if (score > top.threshold() && (filter == null || filter.test(id))) {
+                top.offer(id, score);
+            }
+        }
+    }
+
+    /**
+     * Dot product of a vector with a row of a matrix (four accumulators keep the CPU pipeline busy)
+     */
+    static float dot(float[] q, float[] matrix, int offset, int length) {
+        return dot(q, 0, matrix, offset, length);
+    }
+
+    private static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    /**
+     * Cluster centroids and the rows assigned to each of them
+     */
+    private static final class Clusters {
+        final int count;
+        final float[] centroids;
+        final int[][] rows;
+        final int[] sizes;
+        final int trainedRows;
+
+        private Clusters(float[] centroids, int count, int trainedRows) {
+            this.count = count;
+            this.centroids = centroids;
+            this.rows = new int[count][];
+            this.sizes = new int[count];
+            this.trainedRows = trainedRows;
+            for (int c = 0; c < count; c++) {
+                rows[c] = new int[16];
+            }
+        }
+
+        /**
+         * Spherical k-means on a sample of the rows, then assign every row to its nearest centroid
+         */
+        static Clusters train(float[] data, long[] ids, int rows, int dimensions) {
+            List<Integer> live = new ArrayList<>();
+            for (int row = 0; row < rows; row++) {
+                if (ids[row] != REMOVED) {
+                    live.add(row);
+                }
+            }
+            int count = Math.max(1, (int) Math.sqrt(live.size()) / 2);
+            Random random = new Random(42);
+
+            // Sample of rows to fit the centroids on
+            int sampleSize = Math.min(live.size(), count * KMEANS_SAMPLE_PER_CLUSTER);
+            int[] sample = new int[sampleSize];
+            for (int i = 0; i < sampleSize; i++) {
+                // Partial Fisher-Yates shuffle
+                int j = i + random.nextInt(live.size() - i);
+                Integer swap = live.get(i);
+                live.set(i, live.get(j));
+                live.set(j, swap);
+                sample[i] = live.get(i);
+            }
+
+            float[] centroids = new float[count * dimensions];
+            for (int c = 0; c < count; c++) {
+                System.arraycopy(data, sample[c % sampleSize] * dimensions, centroids, c * dimensions, dimensions);
+            }
+
+            int[] assignment = new int[sampleSize];
+            for (int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++) {
+                float[] current = centroids;
+                IntStream.range(0, sampleSize).parallel().forEach(i ->
+                        assignment[i] = nearestCentroid(current, count, data, sample[i] * dimensions, dimensions));
+
+                float[] sums = new float[count * dimensions];
+                int[] members = new int[count];
+                for (int i = 0; i < sampleSize; i++) {
+                    int c = assignment[i];
+                    members[c]++;
+                    int offset = sample[i] * dimensions;
+                    for (int d = 0; d < dimensions; d++) {
+                        sums[c * dimensions + d] += data[offset + d];
+                    }
+                }
+                for (int c = 0; c < count; c++) {
+                    if (members[c] == 0) {
+                        // Restart an empty cluster at a random sample
+                        System.arraycopy(data, sample[random.nextInt(sampleSize)] * dimensions,
+                                sums, c * dimensions, dimensions);
+                    }
+                    float[] centroid = normalize(Arrays.copyOfRange(sums, c * dimensions, (c + 1) * dimensions));
+                    System.arraycopy(centroid, 0, sums, c * dimensions, dimensions);
+                }
+                centroids = sums;
+            }
+
+            Clusters clusters = new Clusters(centroids, count, live.size());
+            int[] all = new int[rows];
+            float[] trained = centroids;
+            IntStream.range(0, rows).parallel().forEach(row ->
+                    all[row] = ids[row] == REMOVED ? -1 : nearestCentroid(trained, count, data, row * dimensions, dimensions));
+            for (int row = 0; row < rows; row++) {
+                if (all[row] >= 0) {
+                    clusters.append(all[row], row);
+                }
+            }
+            return clusters;
+        }
+
+        void add(int row, float[] data, int dimensions) {
+            append(nearestCentroid(centroids, count, data, row * dimensions, dimensions), row);
+        }
+
+        private void append(int cluster, int row) {
+            if (sizes[cluster] == rows[cluster].length) {
+                rows[cluster] = Arrays.copyOf(rows[cluster], rows[cluster].length * 2);
+            }
+            rows[cluster][sizes[cluster]++] = row;
+        }
+
+        /**
+         * The n clusters whose centroids are most similar to the query
+         */
+        int[] nearest(float[] q, int n, int dimensions) {
+            TopK top = new TopK(n);
+            for (int c = 0; c < count; c++) {
+                top.offer(c, dot(q, centroids, c * dimensions, dimensions));
+            }
+            List<Neighbor> best = top.toList();
+            int[] result = new int[best.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = (int) best.get(i).getId();
+            }
+            return result;
+        }
+
+        private static int nearestCentroid(float[] centroids, int count, float[] data, int offset, int dimensions) {
+            int best = 0;
+            float bestScore = Float.NEGATIVE_INFINITY;
+            for (int c = 0; c < count; c++) {
+                float score = dot(centroids, c * dimensions, data, offset, dimensions);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = c;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Bounded collection of the k best scores, kept sorted (k is small)
+     */
+    private static final class TopK {
+        private final long[] ids;
+        private final float[] scores;
+        private int count;
+
+        TopK(int k) {
+            ids = new long[k];
+            scores = new float[k];
+        }
+
+        /** Score a candidate must exceed to enter */
+        float threshold() {
+            return count < scores.length ? Float.NEGATIVE_INFINITY : scores[count - 1];
+        }
+
+        void offer(long id, float score) {
+            if (score <= threshold()) {
+                return;
+            }
+            int position = count < scores.length ? count++ : count - 1;
+            while (position > 0 && scores[position - 1] < score) {
+                scores[position] = scores[position - 1];
+                ids[position] = ids[position - 1];
+                position--;
+            }
+            scores[position] = score;
+            ids[position] = id;
+        }
+
+        List<Neighbor> toList() {
+            List<Neighbor> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(new Neighbor(ids[i], scores[i]));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.DatabaseManager.ArchiveHit;
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests archiving, searching and restoring conversations
+ */
+class ConversationArchiveTest {
+
+    private Path dir;
+    private DatabaseManager dbManager;
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        if (dbManager != null) {
+            dbManager.closeConnection();
+        }
+        if (dir != null) {
+            try (var files = Files.walk(dir)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void snippetsAreCutAroundTheMatch() {
+        String content = "a".repeat(200) + " checkpoint\n" + "b".repeat(200);
+        String snippet = ConversationArchive.snippet(content, "checkpoint");
+        assertTrue(snippet.startsWith("..."));
+        assertTrue(snippet.endsWith("..."));
+        assertTrue(snippet.contains(" checkpoint b"));
+        assertEquals("short", ConversationArchive.snippet("short", "missing"));
+    }
+
+    @Test
+    void archivedConversationIsSearchableAndRestoredWithItsIds() throws Exception {
+        dir = Files.createTempDirectory("nexus-archive");
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dir.resolve("archive.db"));
+        int old = dbManager.createConversation("Old topic");
+        dbManager.saveMessage(old, "User", "How do WAL checkpoints work?");
+        dbManager.saveMessage(old, "LLM", "They copy pages from the log back into the database.");
+        int kept = dbManager.createConversation("Current");
+        dbManager.saveMessage(kept, "User", "Hello");
+        List<ConversationMessage> before = dbManager.getConversationHistory(old, 10);
+
+        assertTrue(dbManager.archiveConversation(old));
+        assertTrue(Files.exists(dir.resolve("archive").resolve(ConversationArchive.fileName(old))));
+        assertEquals(1, dbManager.getConversations(0, 10).size());
+        assertTrue(dbManager.getConversationHistory(old, 10).isEmpty());
+        assertTrue(dbManager.searchMessages("checkpoints", null, 10).getResults().isEmpty());
+        assertEquals(2, dbManager.getArchivedConversations(0, 10).get(0).getMessageCount());
+
+        List<ArchiveHit> hits = dbManager.searchArchives("WAL checkpoints", 10);
+        assertEquals(1, hits.size());
+        assertEquals(old, hits.get(0).getConversation().getId());
+        assertEquals("User", hits.get(0).getSender());
+        assertTrue(dbManager.searchArchives("nothing like this", 10).isEmpty());
+
+        assertTrue(dbManager.restoreConversation(old));
+        List<ConversationMessage> after = dbManager.getConversationHistory(old, 10);
+        assertEquals(before.size(), after.size());
+        for (int i = 0; i < before.size(); i++) {
+            assertEquals(before.get(i).getId(), after.get(i).getId());
+            assertEquals(before.get(i).getContent(), after.get(i).getContent());
+            assertEquals(before.get(i).getTimestamp(), after.get(i).getTimestamp());
+        }
+        assertEquals(1, dbManager.searchMessages("checkpoints", null, 10).getResults().size());
+        assertTrue(dbManager.getArchivedConversations(0, 10).isEmpty());
+        assertFalse(dbManager.restoreConversation(old));
+    }
+
+    @Test
+    void embeddingsOfEachModelAreKeptAndArchivedMessagesAreReported() throws Exception {
+        dir = Files.createTempDirectory("nexus-archive");
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dir.resolve("archive.db"));
+        int old = dbManager.createConversation("Old topic");
+        dbManager.saveMessage(old, "User", "How do WAL checkpoints work?");
+        List<Long> ids = List.of(dbManager.getConversationHistory(old, 10).get(0).getId());
+
+        // A second model does not replace the first model's vector
+        assertTrue(dbManager.saveEmbeddings("model-a", ids, List.of(new float[] { 1, 0 })));
+        assertTrue(dbManager.saveEmbeddings("model-b", ids, List.of(new float[] { 0, 1, 0 })));
+        assertEquals(1, dbManager.loadEmbeddings("model-a", (id, vector) -> assertEquals(2, vector.length)));
+        assertEquals(1, dbManager.loadEmbeddings("model-b", (id, vector) -> assertEquals(3, vector.length)));
+        assertTrue(dbManager.getMessagesWithoutEmbedding("model-a", 0, 10).isEmpty());
+
+        List<Long> archived = new ArrayList<>();
+        List<Integer> restored = new ArrayList<>();
+        dbManager.addArchiveListener(new DatabaseManager.ArchiveListener() {
+            @Override
+            public void conversationArchived(int conversationId, List<Long> messageIds) {
+                archived.addAll(messageIds);
+            }
+
+            @Override
+            public void conversationRestored(int conversationId) {
+                restored.add(conversationId);
+            }
+        });
+        assertTrue(dbManager.archiveConversation(old));
+        assertEquals(ids, archived);
+        assertEquals(0, dbManager.loadEmbeddings("model-a", (id, vector) -> { }));
+
+        assertTrue(dbManager.restoreConversation(old));
+        assertEquals(List.of(old), restored);
+    }
+}
@@ -0,0 +1,111 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark of the SQLite and segment conversation stores: append throughput
+ * with concurrent writers, then history-read throughput with concurrent
+ * readers while one writer keeps appending.
+ * Not part of the test suite; run with
+ * {@code java -cp <test classpath> com.nexuscore.database.ConversationStoreBenchmark [messages] [threads]}.
+ */
+public class ConversationStoreBenchmark {
+
+    private static final int CONVERSATIONS = 200;
+    private static final int PAGE_SIZE = 50;
+    private static final long READ_MILLIS = 3000;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        List<String[]> corpus = MessageStorageBenchmark.corpus(count, 13);
+        System.out.printf("Messages: %d, threads: %d%n", count, threads);
+
+        for (boolean segments : new boolean[] {false, true}) {
+            Path dir = Files.createTempDirectory("nexus-store");
+            ConversationStore store = segments
+                    ? new SegmentConversationStore(dir.resolve("segments"))
+                    : new DatabaseManager("jdbc:sqlite:" + dir.resolve("bench.db"));
+            System.out.println(segments ? "Segment store:" : "SQLite store:");
+            int[] conversations = new int[CONVERSATIONS];
+            for (int i = 0; i < CONVERSATIONS; i++) {
+                conversations[i] = store.createConversation("Conversation " + i);
+            }
+            ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+
+            // Each writer appends an interleaved share of the corpus
+            long start = System.nanoTime();
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                writers.add(pool.submit(() -> {
+                    for (int i = first; i < corpus.size(); i += threads) {
+                        store.saveMessage(conversations[i % CONVERSATIONS], corpus.get(i)[0], corpus.get(i)[1]);
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            store.flushMessages().join();
+            long writeNanos = System.nanoTime() - start;
+            System.out.printf("  append: %d ms, %.0f messages/s%n", writeNanos / 1_000_000, count / (writeNanos / 1e9));
+
+            // Readers page through random conversations while one writer keeps appending.
+            // The writer waits for every batch of messages to be stored, so it cannot pile up
+            // a backlog in the write-behind queue that the readers would then wait for.
+            AtomicLong pages = new AtomicLong();
+            AtomicLong appended = new AtomicLong();
+            long deadline = System.nanoTime() + READ_MILLIS * 1_000_000;
+            List<Future<?>> workers = new ArrayList<>();
+            workers.add(pool.submit(() -> {
+                for (int i = 0; System.nanoTime() < deadline; i++) {
+                    String[] message = corpus.get(i % corpus.size());
+                    CompletableFuture<Long> stored =
+                            store.saveMessageAsync(conversations[i % CONVERSATIONS], message[0], message[1]);
+                    if ((i + 1) % WriteBehindQueue.DEFAULT_MAX_BATCH_SIZE == 0) {
+                        stored.join();
+                    }
+                    appended.incrementAndGet();
+                }
+            }));
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                workers.add(pool.submit(() -> {
+                    Random random = new Random(seed);
+                    while (System.nanoTime() < deadline) {
+                        int conversation = conversations[random.nextInt(CONVERSATIONS)];
+                        List<ConversationMessage> page = store.getConversationHistory(conversation, PAGE_SIZE);
+                        if (!page.isEmpty()) {
+                            store.getMessagesBefore(conversation, page.get(0).getId(), PAGE_SIZE);
+                        }
+                        pages.addAndGet(2);
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            store.flushMessages().join();
+            System.out.printf("  history: %.0f pages/s with %d readers, %.0f appends/s alongside%n",
+                    pages.get() * 1000.0 / READ_MILLIS, threads, appended.get() * 1000.0 / READ_MILLIS);
+
+            pool.shutdown();
+            store.closeConnection();
+            try (var files = Files.walk(dir)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.DatabaseManager.TransferReport;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Benchmark of JSONL export and import on a synthetic corpus.
+ * Not part of the test suite; run with
+ * {@code java -cp <test classpath> com.nexuscore.database.JsonlTransferBenchmark [messages]}.
+ */
+public class JsonlTransferBenchmark {
+
+    private static final int CONVERSATIONS = 500;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Path dir = Files.createTempDirectory("nexus-transfer");
+        List<String[]> corpus = MessageStorageBenchmark.corpus(count, 11);
+
+        DatabaseManager source = new DatabaseManager("jdbc:sqlite:" + dir.resolve("source.db"));
+        int[] conversations = new int[CONVERSATIONS];
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            conversations[i] = source.createConversation("Conversation " + i);
+        }
+        for (int i = 0; i < corpus.size(); i++) {
+            source.saveMessage(conversations[i % CONVERSATIONS], corpus.get(i)[0], corpus.get(i)[1]);
+        }
+        source.flushMessages().join();
+
+        Path file = dir.resolve("export.jsonl");
+        TransferReport exported = source.exportConversations(file);
+        source.closeConnection();
+        System.out.printf("Export: %s, file: %.1f MB%n", exported, Files.size(file) / 1e6);
+
+        for (boolean compact : new boolean[] {false, true}) {
+            DatabaseManager target = new DatabaseManager("jdbc:sqlite:" + dir.resolve("target-" + compact + ".db"));
+            target.setCompactStorage(compact);
+            TransferReport imported = target.importConversations(file);
+            System.out.println((compact ? "Import (compact): " : "Import: ") + imported);
+            target.closeConnection();
+        }
+
+        try (var files = Files.walk(dir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+}
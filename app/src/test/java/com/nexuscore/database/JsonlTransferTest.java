@@ -0,0 +1,104 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+import com.nexuscore.database.DatabaseManager.ConversationSummary;
+import com.nexuscore.database.DatabaseManager.TransferReport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests JSONL export and import
+ */
+class JsonlTransferTest {
+
+    private Path dir;
+    private DatabaseManager source;
+    private DatabaseManager target;
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        if (source != null) {
+            source.closeConnection();
+        }
+        if (target != null) {
+            target.closeConnection();
+        }
+        if (dir != null) {
+            try (var files = Files.walk(dir)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void conversationsRoundTripWithNewIds() throws Exception {
+        dir = Files.createTempDirectory("nexus-transfer");
+        source = new DatabaseManager("jdbc:sqlite:" + dir.resolve("source.db"));
+        int first = source.createConversation("First");
+        int second = source.createConversation("Second");
+        source.saveMessage(first, "User", "Line one\nline two \"quoted\" 日本語");
+        source.saveMessage(second, "User", "Another question about checkpoints");
+        source.saveMessage(first, "LLM", "Answer");
+
+        Path file = dir.resolve("export.jsonl");
+        TransferReport exported = source.exportConversations(file);
+        assertEquals(2, exported.getConversations());
+        assertEquals(3, exported.getMessages());
+        assertTrue(exported.isComplete());
+
+        // The target already has a conversation, so the imported ones get other ids
+        target = new DatabaseManager("jdbc:sqlite:" + dir.resolve("target.db"));
+        target.createConversation("Existing");
+        TransferReport imported = target.importConversations(file);
+        assertEquals(2, imported.getConversations());
+        assertEquals(3, imported.getMessages());
+
+        List<ConversationSummary> conversations = target.getConversations(0, 10);
+        assertEquals(List.of("Second", "First", "Existing"),
+                conversations.stream().map(ConversationSummary::getTitle).collect(Collectors.toList()));
+        List<ConversationMessage> history = target.getConversationHistory(conversations.get(1).getId(), 10);
+        assertEquals("Line one\nline two \"quoted\" 日本語", history.get(0).getContent());
+        assertEquals("Answer", history.get(1).getContent());
+        assertEquals(1, target.searchMessages("checkpoints", null, 10).getResults().size());
+
+        // A finished import is not applied again
+        assertEquals(0, target.importConversations(file).getMessages());
+        assertEquals(3, target.getConversations(0, 10).size());
+    }
+
+    @Test
+    void interruptedExportIsContinued() throws Exception {
+        dir = Files.createTempDirectory("nexus-transfer");
+        source = new DatabaseManager("jdbc:sqlite:" + dir.resolve("source.db"));
+        int conversation = source.createConversation("Long");
+        for (int i = 0; i < 10; i++) {
+            source.saveMessage(conversation, "User", "Message " + i);
+        }
+        Path file = dir.resolve("export.jsonl");
+        source.exportConversations(file);
+
+        // Cut the file in the middle of the sixth message (header, conversation, five messages remain)
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        long length = 0;
+        for (int i = 0; i < 7; i++) {
+            length += lines.get(i).getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(length + 10);
+        }
+
+        TransferReport resumed = source.exportConversations(file);
+        assertTrue(resumed.isResumed());
+        assertEquals(5, resumed.getMessages());
+        assertEquals(lines, Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,81 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+import com.nexuscore.database.DatabaseManager.SearchPage;
+import com.nexuscore.database.DatabaseManager.StorageReport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests compressed, deduplicated message bodies
+ */
+class MessageBodiesTest {
+
+    private Path dir;
+    private DatabaseManager dbManager;
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        if (dbManager != null) {
+            dbManager.closeConnection();
+        }
+        if (dir != null) {
+            try (var files = Files.walk(dir)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void bodiesRoundTrip() throws Exception {
+        String text = "データベース and text ".repeat(100);
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = MessageBodies.deflate(raw);
+        assertTrue(compressed.length < raw.length / 4);
+        assertEquals(text, MessageBodies.decode(MessageBodies.ENCODING_DEFLATE, compressed));
+        assertEquals("plain", MessageBodies.decode(MessageBodies.ENCODING_TEXT, "plain".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(java.sql.SQLException.class,
+                () -> MessageBodies.decode(MessageBodies.ENCODING_DEFLATE, new byte[] {1, 2, 3}));
+    }
+
+    @Test
+    void compactContentsAreReadAndSearchedTransparently() throws Exception {
+        dir = Files.createTempDirectory("nexus-bodies");
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dir.resolve("bodies.db"));
+        dbManager.setCompactStorage(true);
+        String longAnswer = "Checkpoints copy pages from the write-ahead log back into the database. ".repeat(20);
+        int conversation = dbManager.createConversation("Compact");
+        dbManager.saveMessage(conversation, "User", "What is a checkpoint?");
+        dbManager.saveMessage(conversation, "LLM", longAnswer);
+        dbManager.saveMessage(conversation, "LLM", longAnswer);
+
+        StorageReport report = dbManager.getStorageReport();
+        assertEquals(3, report.getMessages());
+        assertEquals(2, report.getCompactMessages());
+        assertEquals(1, report.getBodies());
+        assertTrue(report.getBodyStoredBytes() < longAnswer.length() / 4);
+
+        // Every read path returns the original text
+        List<ConversationMessage> history = dbManager.getConversationHistory(conversation, 10);
+        assertEquals(longAnswer, history.get(1).getContent());
+        assertEquals(longAnswer, dbManager.getMessages(List.of(history.get(2).getId())).get(0).getContent());
+        try (Stream<ConversationMessage> messages = dbManager.streamAllMessages(0)) {
+            assertEquals(List.of("What is a checkpoint?", longAnswer, longAnswer),
+                    messages.map(ConversationMessage::getContent).collect(Collectors.toList()));
+        }
+
+        // The full-text index sees the decoded text
+        SearchPage page = dbManager.searchMessages("\"write-ahead log\"", null, 10);
+        assertEquals(2, page.getResults().size());
+        assertTrue(page.getResults().get(0).getSnippet().contains("write-ahead"));
+    }
+}
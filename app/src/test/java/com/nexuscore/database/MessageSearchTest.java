@@ -0,0 +1,90 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.DatabaseManager.SearchPage;
+import com.nexuscore.database.DatabaseManager.SearchResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests query building and ranked, paginated full-text search
+ */
+class MessageSearchTest {
+
+    private Path dir;
+    private DatabaseManager dbManager;
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        if (dbManager != null) {
+            dbManager.closeConnection();
+        }
+        if (dir != null) {
+            try (var files = Files.walk(dir)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void userInputIsQuotedTermByTerm() {
+        assertEquals("\"database\" \"index\"", MessageSearch.toMatchQuery("  database   index "));
+        assertEquals("\"write ahead log\"", MessageSearch.toMatchQuery("\"write ahead log\""));
+        // FTS5 operators are searched literally
+        assertEquals("\"NOT\" \"foo*\"", MessageSearch.toMatchQuery("NOT foo*"));
+        // Terms too short for the trigram index are dropped
+        assertEquals("\"データベース\"", MessageSearch.toMatchQuery("の データベース"));
+        assertEquals("", MessageSearch.toMatchQuery("a b"));
+        assertEquals("", MessageSearch.toMatchQuery(null));
+    }
+
+    @Test
+    void resultsAreRankedAndPaged() throws Exception {
+        dir = Files.createTempDirectory("nexus-search");
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dir.resolve("search.db"));
+        int conversation = dbManager.createConversation("Search test");
+        dbManager.saveMessage(conversation, "User", "How do I enable WAL mode in SQLite?");
+        dbManager.saveMessage(conversation, "LLM", "Run PRAGMA journal_mode=WAL. WAL lets readers and the WAL writer work together.");
+        dbManager.saveMessage(conversation, "User", "Thanks, and what about indexes?");
+        for (int i = 0; i < 25; i++) {
+            dbManager.saveMessage(conversation, "LLM", "Unrelated answer number " + i + " mentioning wal once");
+        }
+
+        SearchPage first = dbManager.searchMessages("WAL", null, 10);
+        assertEquals(10, first.getResults().size());
+        assertTrue(first.hasMore());
+        // The message that mentions WAL most often in little text ranks first
+        SearchResult best = first.getResults().get(0);
+        assertEquals("LLM", best.getSender());
+        assertEquals(conversation, best.getConversationId());
+        assertTrue(best.getSnippet().contains(SearchResult.HIGHLIGHT_START + "WAL" + SearchResult.HIGHLIGHT_END),
+                best.getSnippet());
+
+        // Following the cursor visits every match exactly once, in score order
+        List<SearchResult> all = new ArrayList<>(first.getResults());
+        SearchPage page = first;
+        while (page.hasMore()) {
+            page = dbManager.searchMessages("WAL", page.getNextCursor(), 10);
+            all.addAll(page.getResults());
+        }
+        assertEquals(27, all.size());
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < all.size(); i++) {
+            assertTrue(ids.add(all.get(i).getMessageId()));
+            if (i > 0) {
+                assertTrue(all.get(i - 1).getScore() <= all.get(i).getScore());
+            }
+        }
+
+        assertEquals(1, dbManager.searchMessages("indexes", null, 10).getResults().size());
+        assertTrue(dbManager.searchMessages("postgres", null, 10).getResults().isEmpty());
+    }
+}
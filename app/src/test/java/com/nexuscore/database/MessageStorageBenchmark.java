@@ -0,0 +1,143 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark of inline versus compact (deduplicated and compressed) message
+ * storage on a synthetic corpus: write time, file size, and the time to
+ * stream every message and to page through conversations.
+ * Not part of the test suite; run with
+ * {@code java -cp <test classpath> com.nexuscore.database.MessageStorageBenchmark [messages]}.
+ */
+public class MessageStorageBenchmark {
+
+    private static final int CONVERSATIONS = 200;
+    private static final int PAGE_SIZE = 50;
+
+    private static final String[] SENTENCES = {
+            "SQLite stores the database in a single file, which makes backups simple.",
+            "In WAL mode readers see the last committed state and never wait for the writer.",
+            "An index on (conversation_id, id) turns the history query into a short range scan.",
+            "The model answers faster when the prompt only contains the new question.",
+            "You can check the query plan with EXPLAIN QUERY PLAN before adding an index.",
+            "Keep transactions short so that checkpoints can reset the write-ahead log.",
+            "```java\ntry (ResultSet rs = statement.executeQuery()) {\n    while (rs.next()) {\n        process(rs);\n    }\n}\n```",
+            "1. Open the settings dialog.\n2. Select the model.\n3. Press Save.",
+            "Deflate works well on natural language and source code, typically by a factor of two to four.",
+            "この設定を変更すると、次のメッセージから新しいモデルが使用されます。",
+            "Ollama keeps the model in memory for the keep-alive duration after the last request.",
+            "**Note:** large responses are streamed token by token to the chat window."
+    };
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        List<String[]> corpus = corpus(count, 7);
+        long textBytes = 0;
+        for (String[] message : corpus) {
+            textBytes += message[1].getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
+        }
+        System.out.printf("Messages: %d, text: %.1f MB%n", count, textBytes / 1e6);
+
+        for (boolean compact : new boolean[] {false, true}) {
+            Path dir = Files.createTempDirectory("nexus-storage");
+            Path file = dir.resolve("bench.db");
+            String url = "jdbc:sqlite:" + file;
+            System.out.println(compact ? "Compact storage:" : "Inline storage:");
+
+            DatabaseManager db = new DatabaseManager(url);
+            db.setCompactStorage(compact);
+            int[] conversations = new int[CONVERSATIONS];
+            for (int i = 0; i < CONVERSATIONS; i++) {
+                conversations[i] = db.createConversation("Conversation " + i);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < corpus.size(); i++) {
+                db.saveMessage(conversations[i % CONVERSATIONS], corpus.get(i)[0], corpus.get(i)[1]);
+            }
+            db.flushMessages().join();
+            long writeNanos = System.nanoTime() - start;
+            System.out.println("  " + db.getStorageReport());
+            db.closeConnection(); // Checkpoints the WAL into the database file
+            System.out.printf("  write: %d ms (%.1f µs per message), file: %.2f MB%n", writeNanos / 1_000_000,
+                    writeNanos / 1000.0 / count, Files.size(file) / 1e6);
+
+            db = new DatabaseManager(url);
+            for (int round = 0; round < 2; round++) { // The first round warms up the JIT and page cache
+                start = System.nanoTime();
+                long chars = 0;
+                try (Stream<ConversationMessage> messages = db.streamAllMessages(0)) {
+                    chars += messages.mapToLong(message -> message.getContent().length()).sum();
+                }
+                long streamNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                int pages = 0;
+                for (int conversation : conversations) {
+                    long beforeId = 0;
+                    List<ConversationMessage> page;
+                    while (!(page = db.getMessagesBefore(conversation, beforeId, PAGE_SIZE)).isEmpty()) {
+                        beforeId = page.get(0).getId();
+                        pages++;
+                    }
+                }
+                long pageNanos = System.nanoTime() - start;
+                if (round == 1) {
+                    System.out.printf("  stream all: %d ms (%d chars), %d history pages: %d ms (%.2f ms per page)%n",
+                            streamNanos / 1_000_000, chars, pages, pageNanos / 1_000_000,
+                            pageNanos / 1e6 / pages);
+                }
+            }
+            db.closeConnection();
+
+            try (var files = Files.walk(dir)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Alternating prompts and answers; a tenth of the answers repeat an earlier
+     * answer (regenerated or cached responses) and some are error texts
+     */
+    static List<String[]> corpus(int count, long seed) {
+        Random random = new Random(seed);
+        List<String[]> messages = new ArrayList<>(count);
+        List<String> answers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (i % 2 == 0) {
+                messages.add(new String[] {"User", "Question " + i + ": " + SENTENCES[random.nextInt(SENTENCES.length)]});
+                continue;
+            }
+            String answer;
+            int kind = random.nextInt(20);
+            if (kind < 2 && !answers.isEmpty()) {
+                answer = answers.get(random.nextInt(answers.size()));
+            } else if (kind == 2) {
+                answer = "I'm sorry, I couldn't connect to Ollama. Error: Connection refused. Please make sure the "
+                        + "Ollama server is running (ollama serve) and that the host in Settings is correct. "
+                        + "The request will work again once the server is reachable.";
+            } else {
+                StringBuilder text = new StringBuilder();
+                int sentences = 4 + random.nextInt(30);
+                for (int s = 0; s < sentences; s++) {
+                    text.append(SENTENCES[random.nextInt(SENTENCES.length)]);
+                    text.append(random.nextInt(4) == 0 ? "\n\n" : " ");
+                    if (random.nextInt(3) == 0) {
+                        text.append("(step ").append(random.nextInt(1000)).append(") ");
+                    }
+                }
+                answer = text.toString();
+                answers.add(answer);
+            }
+            messages.add(new String[] {"LLM", answer});
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,113 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+import com.nexuscore.database.DatabaseManager.ConversationSummary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests keyset pagination and streaming reads of messages and conversations
+ */
+class MessageStreamsTest {
+
+    private Path dir;
+    private DatabaseManager dbManager;
+    private int first;
+    private int second;
+
+    @BeforeEach
+    void createDatabase() throws Exception {
+        dir = Files.createTempDirectory("nexus-streams");
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dir.resolve("streams.db"));
+        first = dbManager.createConversation("First");
+        second = dbManager.createConversation("Second");
+        for (int i = 0; i < 25; i++) {
+            dbManager.saveMessage(first, i % 2 == 0 ? "User" : "LLM", "first " + i);
+            if (i < 3) {
+                dbManager.saveMessage(second, "User", "second " + i);
+            }
+        }
+    }
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        dbManager.closeConnection();
+        try (var files = Files.walk(dir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void pagesWalkBackwardsAndForwardsWithoutGaps() {
+        List<String> seen = new ArrayList<>();
+        long beforeId = 0;
+        List<ConversationMessage> page;
+        while (!(page = dbManager.getMessagesBefore(first, beforeId, 10)).isEmpty()) {
+            List<String> contents = page.stream().map(ConversationMessage::getContent).collect(Collectors.toList());
+            seen.addAll(0, contents);
+            beforeId = page.get(0).getId();
+        }
+        assertEquals(25, seen.size());
+        assertEquals("first 0", seen.get(0));
+        assertEquals("first 24", seen.get(24));
+
+        List<ConversationMessage> afterPage = dbManager.getMessagesAfter(first, 0, 10);
+        assertEquals("first 0", afterPage.get(0).getContent());
+        assertEquals(first, afterPage.get(0).getConversationId());
+        assertNotNull(afterPage.get(0).getTimestamp());
+        assertEquals("first 10", dbManager.getMessagesAfter(first, afterPage.get(9).getId(), 10).get(0).getContent());
+
+        // The history used by Think mode is the newest page
+        List<ConversationMessage> history = dbManager.getConversationHistory(first, 5);
+        assertEquals("first 20", history.get(0).getContent());
+        assertEquals("first 24", history.get(4).getContent());
+    }
+
+    @Test
+    void streamsReadRowsLazilyAndResume() {
+        try (Stream<ConversationMessage> messages = dbManager.streamAllMessages(0)) {
+            assertEquals(28, messages.count());
+        }
+
+        long resumeAfter;
+        try (Stream<ConversationMessage> messages = dbManager.streamMessages(first, 0)) {
+            Iterator<ConversationMessage> iterator = messages.iterator();
+            iterator.next();
+            resumeAfter = iterator.next().getId();
+            // Closed before the end: the connection goes back to the pool
+        }
+        try (Stream<ConversationMessage> messages = dbManager.streamMessages(first, resumeAfter)) {
+            assertEquals("first 2", messages.findFirst().orElseThrow().getContent());
+        }
+
+        // More streams than reader connections, each read to the end
+        for (int i = 0; i < ConnectionPool.DEFAULT_READERS * 3; i++) {
+            assertEquals(3, dbManager.streamMessages(second, 0).count());
+        }
+    }
+
+    @Test
+    void conversationsArePagedNewestFirstWithCounts() {
+        List<ConversationSummary> page = dbManager.getConversations(0, 1);
+        assertEquals(1, page.size());
+        assertEquals(second, page.get(0).getId());
+        assertEquals(3, page.get(0).getMessageCount());
+
+        page = dbManager.getConversations(page.get(0).getId(), 10);
+        assertEquals(1, page.size());
+        assertEquals("First", page.get(0).getTitle());
+        assertEquals(25, page.get(0).getMessageCount());
+        assertTrue(dbManager.getConversations(first, 10).isEmpty());
+    }
+}
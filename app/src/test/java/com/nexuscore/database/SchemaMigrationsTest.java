@@ -0,0 +1,119 @@
+package com.nexuscore.database;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests in-place upgrade of a database created before schema versioning
+ */
+class SchemaMigrationsTest {
+
+    private Path dir;
+    private String url;
+    private ConnectionPool connections;
+
+    @BeforeEach
+    void createDatabase() throws Exception {
+        dir = Files.createTempDirectory("nexus-migrations");
+        url = "jdbc:sqlite:" + dir.resolve("legacy.db");
+    }
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        if (connections != null) {
+            connections.close();
+        }
+        try (var files = Files.walk(dir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void legacyDatabaseIsUpgradedInPlace() throws Exception {
+        // The schema as the unversioned application created it, with some history
+        try (Connection legacy = DriverManager.getConnection(url);
+             Statement statement = legacy.createStatement()) {
+            statement.execute("CREATE TABLE conversations (id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "start_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP, title TEXT)");
+            statement.execute("CREATE TABLE messages (id INTEGER PRIMARY KEY AUTOINCREMENT, conversation_id INTEGER, " +
+                    "timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP, sender TEXT, content TEXT, " +
+                    "FOREIGN KEY (conversation_id) REFERENCES conversations(id))");
+            statement.execute("INSERT INTO conversations (title) VALUES ('old')");
+            statement.execute("INSERT INTO messages (conversation_id, sender, content) VALUES (1, 'User', 'a')");
+            statement.execute("INSERT INTO messages (conversation_id, sender, content) VALUES (1, 'LLM', 'b')");
+        }
+
+        connections = new ConnectionPool(url, 1);
+        int latest = SchemaMigrations.MIGRATIONS.get(SchemaMigrations.MIGRATIONS.size() - 1).version;
+        assertEquals(latest, SchemaMigrations.migrate(connections));
+        assertEquals(latest, SchemaMigrations.currentVersion(connections));
+
+        List<String> contents = connections.read(db -> {
+            List<String> rows = new ArrayList<>();
+            try (ResultSet rs = db.prepare("SELECT content FROM messages ORDER BY id").executeQuery()) {
+                while (rs.next()) {
+                    rows.add(rs.getString(1));
+                }
+            }
+            return rows;
+        });
+        assertEquals(List.of("a", "b"), contents);
+
+        // Running again applies nothing
+        assertEquals(latest, SchemaMigrations.migrate(connections));
+        assertEquals(latest, (int) connections.read(db -> {
+            try (ResultSet rs = db.prepare("SELECT COUNT(*) FROM schema_version").executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }));
+    }
+
+    @Test
+    void historyQueryUsesTheConversationIndex() throws Exception {
+        connections = new ConnectionPool(url, 1);
+        SchemaMigrations.migrate(connections);
+
+        String plan = connections.read(db -> {
+            StringBuilder details = new StringBuilder();
+            try (ResultSet rs = db.prepare("EXPLAIN QUERY PLAN SELECT id, sender, content FROM messages " +
+                    "WHERE conversation_id = 1 ORDER BY id DESC LIMIT 10").executeQuery()) {
+                while (rs.next()) {
+                    details.append(rs.getString("detail")).append('\n');
+                }
+            }
+            return details.toString();
+        });
+        assertTrue(plan.contains("idx_messages_conversation"), plan);
+        assertFalse(plan.contains("TEMP B-TREE"), plan);
+    }
+
+    @Test
+    void failedMigrationLeavesPreviousVersion() throws Exception {
+        connections = new ConnectionPool(url, 1);
+        List<SchemaMigrations.Migration> migrations = List.of(
+                new SchemaMigrations.Migration(1, "ok", SchemaMigrations.sql("CREATE TABLE t (x INTEGER)")),
+                new SchemaMigrations.Migration(2, "broken", SchemaMigrations.sql(
+                        "CREATE TABLE u (x INTEGER)", "INSERT INTO missing VALUES (1)")));
+
+        assertThrows(java.sql.SQLException.class, () -> SchemaMigrations.migrate(connections, migrations));
+        assertEquals(1, SchemaMigrations.currentVersion(connections));
+        // The partial work of migration 2 was rolled back
+        assertEquals(0, (int) connections.read(db -> {
+            try (ResultSet rs = db.prepare("SELECT COUNT(*) FROM sqlite_master WHERE name = 'u'").executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }));
+    }
+}
@@ -0,0 +1,114 @@
+package com.nexuscore.database;
+
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+import com.nexuscore.database.DatabaseManager.ConversationSummary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the append-only segment store
+ */
+class SegmentConversationStoreTest {
+
+    private Path dir;
+    private SegmentConversationStore store;
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        if (store != null) {
+            store.closeConnection();
+        }
+        if (dir != null) {
+            try (var files = Files.walk(dir)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void historyIsPagedAndStreamedInIdOrder() throws Exception {
+        dir = Files.createTempDirectory("nexus-segments");
+        store = new SegmentConversationStore(dir, 256);
+        int first = store.createConversation("First");
+        int second = store.createConversation("Second");
+        for (int i = 0; i < 10; i++) {
+            store.saveMessage(i % 2 == 0 ? first : second, "User", "Message " + i + " 日本語");
+        }
+        assertTrue(store.getSegmentCount() > 1);
+
+        List<ConversationMessage> latest = store.getConversationHistory(first, 3);
+        assertEquals(List.of("Message 4 日本語", "Message 6 日本語", "Message 8 日本語"),
+                latest.stream().map(ConversationMessage::getContent).collect(Collectors.toList()));
+        assertEquals(first, latest.get(0).getConversationId());
+        assertEquals(19, latest.get(0).getTimestamp().length());
+        List<ConversationMessage> older = store.getMessagesBefore(first, latest.get(0).getId(), 10);
+        assertEquals(2, older.size());
+        assertEquals("Message 0 日本語", older.get(0).getContent());
+
+        try (Stream<ConversationMessage> messages = store.streamMessages(second, older.get(1).getId())) {
+            assertEquals(4, messages.count());
+        }
+        try (Stream<ConversationMessage> messages = store.streamAllMessages(5)) {
+            assertEquals(List.of(6L, 7L, 8L, 9L, 10L),
+                    messages.map(ConversationMessage::getId).collect(Collectors.toList()));
+        }
+
+        List<ConversationSummary> conversations = store.getConversations(0, 10);
+        assertEquals(List.of("Second", "First"),
+                conversations.stream().map(ConversationSummary::getTitle).collect(Collectors.toList()));
+        assertEquals(5, conversations.get(0).getMessageCount());
+        assertEquals(1, store.getConversations(second, 10).size());
+        assertTrue(store.saveMessageAsync(99, "User", "Nowhere").isCompletedExceptionally());
+    }
+
+    @Test
+    void reopenedStoreRecoversTheIndexAndDropsATornTail() throws Exception {
+        dir = Files.createTempDirectory("nexus-segments");
+        store = new SegmentConversationStore(dir, 4096);
+        int conversation = store.createConversation("Log");
+        for (int i = 0; i < 100; i++) {
+            store.saveMessage(conversation, i % 2 == 0 ? "User" : "LLM", "Message " + i);
+        }
+        int segments = store.getSegmentCount();
+        store.closeConnection();
+
+        store = new SegmentConversationStore(dir, 4096);
+        assertEquals(segments, store.getSegmentCount());
+        List<ConversationMessage> history = store.getConversationHistory(conversation, 1000);
+        assertEquals(100, history.size());
+        assertEquals("LLM", history.get(99).getSender());
+        assertEquals(101L, store.saveMessageAsync(conversation, "User", "Torn").get().longValue());
+        segments = store.getSegmentCount();
+        store.closeConnection();
+
+        // Corrupt the last record as if the process died while writing it
+        Path last = dir.resolve(String.format("segment-%06d.log", segments - 1));
+        try (RandomAccessFile file = new RandomAccessFile(last.toFile(), "rw")) {
+            long end = 0;
+            while (true) {
+                file.seek(end);
+                int length = file.readInt();
+                if (length == 0) {
+                    break;
+                }
+                end += 8 + length;
+            }
+            file.seek(end - 2);
+            file.writeShort(0x7f7f);
+        }
+
+        store = new SegmentConversationStore(dir, 4096);
+        assertEquals(100, store.getConversationHistory(conversation, 1000).size());
+        assertEquals(101L, store.saveMessageAsync(conversation, "User", "Again").get().longValue());
+        assertEquals("Again", store.getConversationHistory(conversation, 1).get(0).getContent());
+    }
+}
@@ -0,0 +1,136 @@
+package com.nexuscore.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests batching and draining of the write-behind queue
+ */
+class WriteBehindQueueTest {
+
+    private final List<List<String>> transactions = new CopyOnWriteArrayList<>();
+    private long nextId = 1;
+
+    private synchronized long[] record(List<WriteBehindQueue.PendingMessage> batch) {
+        List<String> contents = new ArrayList<>();
+        long[] ids = new long[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            contents.add(batch.get(i).content);
+            ids[i] = nextId++;
+        }
+        transactions.add(contents);
+        return ids;
+    }
+
+    @Test
+    void messagesArrivingTogetherShareOneTransaction() throws Exception {
+        CountDownLatch writerBusy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        WriteBehindQueue queue = new WriteBehindQueue(batch -> {
+            if (batch.get(0).content.equals("first")) {
+                writerBusy.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return record(batch);
+        }, 10, 1000);
+
+        queue.enqueue(1, "User", "first");
+        assertTrue(writerBusy.await(5, TimeUnit.SECONDS));
+
+        // While the writer is busy, these pile up and go out in one batch of at most 10
+        List<CompletableFuture<Long>> pending = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            pending.add(queue.enqueue(1, "User", "m" + i));
+        }
+        release.countDown();
+        assertTrue(queue.close(5000));
+
+        assertEquals(List.of("first"), transactions.get(0));
+        assertEquals(10, transactions.get(1).size());
+        assertEquals(List.of("m10", "m11"), transactions.get(2));
+        assertEquals(13, pending.get(11).get().longValue());
+        assertEquals(13, queue.getMessagesWritten());
+        assertEquals(3, queue.getTransactions());
+    }
+
+    @Test
+    void batchIsWrittenAfterDelay() throws Exception {
+        WriteBehindQueue queue = new WriteBehindQueue(this::record, 100, 20);
+
+        CompletableFuture<Long> id = queue.enqueue(1, "User", "hello");
+        assertEquals(1, id.get(5, TimeUnit.SECONDS).longValue());
+        assertEquals(id, queue.flushed());
+        queue.close(5000);
+    }
+
+    @Test
+    void flushWritesWithoutWaitingForTheDelay() throws Exception {
+        WriteBehindQueue queue = new WriteBehindQueue(this::record, 100, 60_000);
+        queue.enqueue(1, "User", "a");
+        CompletableFuture<Long> id = queue.enqueue(1, "User", "b");
+
+        assertEquals(2, queue.flush().get(5, TimeUnit.SECONDS).longValue());
+        assertTrue(id.isDone());
+        assertEquals(List.of(List.of("a", "b")), transactions);
+
+        // Nothing pending: no marker is queued
+        queue.flush();
+        assertEquals(0, queue.getPendingCount());
+        queue.close(5000);
+    }
+
+    @Test
+    void conversationFlushWaitsOnlyForThatConversation() throws Exception {
+        WriteBehindQueue queue = new WriteBehindQueue(this::record, 100, 60_000);
+        CompletableFuture<Long> id = queue.enqueue(1, "User", "a");
+
+        // Another conversation has nothing queued: nothing is written for it
+        assertTrue(queue.flush(2).isDone());
+        assertFalse(id.isDone());
+
+        assertEquals(1, queue.flush(1).get(5, TimeUnit.SECONDS).longValue());
+        assertEquals(List.of(List.of("a")), transactions);
+
+        // Written messages no longer count as pending
+        assertTrue(queue.flush(1).isDone());
+        assertEquals(0, queue.getPendingCount());
+        queue.close(5000);
+    }
+
+    @Test
+    void closeDrainsPendingMessages() throws Exception {
+        WriteBehindQueue queue = new WriteBehindQueue(this::record, 100, 60_000);
+        for (int i = 0; i < 5; i++) {
+            queue.enqueue(2, "LLM", "m" + i);
+        }
+
+        assertTrue(queue.close(5000));
+        assertEquals(5, queue.getMessagesWritten());
+        assertEquals(0, queue.getPendingCount());
+
+        CompletableFuture<Long> late = queue.enqueue(2, "LLM", "late");
+        assertThrows(ExecutionException.class, late::get);
+    }
+
+    @Test
+    void failedTransactionFailsItsMessages() {
+        WriteBehindQueue queue = new WriteBehindQueue(batch -> {
+            throw new java.sql.SQLException("disk full");
+        }, 10, 0);
+
+        CompletableFuture<Long> id = queue.enqueue(1, "User", "lost");
+        ExecutionException error = assertThrows(ExecutionException.class, () -> id.get(5, TimeUnit.SECONDS));
+        assertEquals("disk full", error.getCause().getMessage());
+        queue.close(5000);
+        assertEquals(1, queue.getFailedMessages());
+    }
+}
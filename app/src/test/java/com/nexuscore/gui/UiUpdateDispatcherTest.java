@@ -0,0 +1,68 @@
+package com.nexuscore.gui;
+
+import com.nexuscore.gui.components.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests merging and ordering of queued UI updates (frames are run directly, without the JavaFX toolkit)
+ */
+class UiUpdateDispatcherTest {
+
+    private final AtomicInteger scrolls = new AtomicInteger();
+    private final AtomicInteger timerStarts = new AtomicInteger();
+    private final UiUpdateDispatcher dispatcher = new UiUpdateDispatcher(scrolls::incrementAndGet,
+            command -> timerStarts.incrementAndGet());
+
+    @Test
+    void appendsAreMergedAndScrollingHappensOncePerFrame() {
+        ChatMessage message = ChatMessage.system("Nexus", "");
+        message.setStreaming(true);
+        List<String> changes = new ArrayList<>();
+        message.textProperty().addListener((observable, oldText, newText) -> changes.add(newText));
+
+        for (String token : new String[] {"Hel", "lo", ", ", "world"}) {
+            dispatcher.appendText(message, token);
+            dispatcher.requestScrollToBottom();
+        }
+        assertEquals(1, timerStarts.get());
+        assertEquals(1, dispatcher.getStats().getQueued());
+
+        dispatcher.runFrame(UiUpdateDispatcher.FRAME_BUDGET_NANOS);
+        assertEquals("Hello, world", message.getText());
+        assertEquals(List.of("Hello, world"), changes);
+        assertEquals(1, scrolls.get());
+        assertEquals(3, dispatcher.getStats().getMergedAppends());
+
+        // The timer stopped with the queue empty, so the next update starts it again
+        dispatcher.appendText(message, "!");
+        assertEquals(2, timerStarts.get());
+    }
+
+    @Test
+    void updatesKeepTheirOrderAndLateAppendsAreDropped() {
+        ChatMessage message = ChatMessage.system("Nexus", "");
+        message.setStreaming(true);
+        List<String> log = new ArrayList<>();
+
+        dispatcher.appendText(message, "partial");
+        dispatcher.post(() -> {
+            log.add("final:" + message.getText());
+            message.setStreaming(false);
+            message.setText("final answer");
+        });
+        // Must not be merged into the append before the final update
+        dispatcher.appendText(message, " late");
+        assertEquals(3, dispatcher.getStats().getQueued());
+
+        dispatcher.flush();
+        assertEquals(List.of("final:partial"), log);
+        assertEquals("final answer", message.getText());
+        assertEquals(0, dispatcher.getStats().getQueued());
+    }
+}
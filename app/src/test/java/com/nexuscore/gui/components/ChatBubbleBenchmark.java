@@ -0,0 +1,124 @@
+package com.nexuscore.gui.components;
+
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.function.IntFunction;
+
+/**
+ * Micro-benchmark of chat bubble creation: the previous construction (fonts
+ * looked up, inline styles and the current time formatted per bubble) against
+ * the current {@link ChatBubble} with shared fonts and stylesheet classes.
+ * Each round creates a batch of bubbles, attaches them to a scene with the
+ * application stylesheet and runs a CSS and layout pass, which is what
+ * reopening a conversation costs.
+ * Not part of the test suite; needs a display. Run with
+ * {@code java -cp <test classpath> com.nexuscore.gui.components.ChatBubbleBenchmark [bubbles]}.
+ */
+public class ChatBubbleBenchmark {
+
+    private static final int ROUNDS = 10; // The first half warms up the JIT
+    private static final String TEXT = "In WAL mode readers see the last committed state and never wait for the "
+            + "writer, so the history query does not block while a response is being saved.";
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        CountDownLatch started = new CountDownLatch(1);
+        Platform.startup(started::countDown);
+        started.await();
+
+        String stylesheet = ChatBubbleBenchmark.class.getResource("/css/styles.css").toExternalForm();
+        run("Before (inline styles, per-bubble fonts)", count, stylesheet,
+                i -> new LegacyChatBubble(i % 2 == 0 ? "You" : "Nexus", TEXT, i % 2 == 0));
+        run("After (shared fonts, style classes)", count, stylesheet,
+                i -> new ChatBubble(i % 2 == 0 ? "You" : "Nexus", TEXT, i % 2 == 0));
+        Platform.exit();
+    }
+
+    private static void run(String name, int count, String stylesheet, IntFunction<Node> factory) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        FutureTask<long[]> task = new FutureTask<>(() -> {
+            VBox root = new VBox();
+            Scene scene = new Scene(root, 800, 600);
+            scene.getStylesheets().add(stylesheet);
+            long nanos = 0;
+            long bytes = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                root.getChildren().clear();
+                long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    root.getChildren().add(factory.apply(i));
+                }
+                root.applyCss();
+                root.layout();
+                if (round >= ROUNDS / 2) {
+                    nanos += System.nanoTime() - start;
+                    bytes += threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+                }
+            }
+            return new long[] {nanos, bytes};
+        });
+        Platform.runLater(task);
+        long[] result = task.get();
+        long bubbles = (long) count * (ROUNDS - ROUNDS / 2);
+        System.out.printf("%s: %.0f bubbles/s, %.1f KB allocated per bubble%n", name,
+                bubbles / (result[0] / 1e9), result[1] / 1024.0 / bubbles);
+    }
+
+    /**
+     * ChatBubble as it was built before: three Font.font lookups, two inline
+     * styles, Color.web parsing and LocalDateTime.now() for every bubble
+     */
+    private static class LegacyChatBubble extends HBox {
+        private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
+        LegacyChatBubble(String sender, String message, boolean isUser) {
+            super(10);
+            setAlignment(isUser ? Pos.CENTER_RIGHT : Pos.CENTER_LEFT);
+            VBox messageBox = new VBox(5);
+            messageBox.setMaxWidth(500);
+            HBox header = new HBox(5);
+            Label senderLabel = new Label(sender);
+            senderLabel.setFont(Font.font("Segoe UI", FontWeight.BOLD, 12));
+            Region spacer = new Region();
+            HBox.setHgrow(spacer, Priority.ALWAYS);
+            Label timeLabel = new Label(LocalDateTime.now().format(TIME_FORMATTER));
+            timeLabel.setFont(Font.font("Segoe UI", 10));
+            timeLabel.setTextFill(Color.GRAY);
+            header.getChildren().addAll(senderLabel, spacer, timeLabel);
+            Label messageLabel = new Label(message);
+            messageLabel.setWrapText(true);
+            messageLabel.setFont(Font.font("Segoe UI", 14));
+            messageLabel.setTextFill(Color.BLACK);
+            messageLabel.setMaxWidth(480);
+            messageBox.getChildren().addAll(header, messageLabel);
+            messageBox.setPadding(new Insets(10));
+            if (isUser) {
+                messageBox.setStyle("-fx-background-color: #e3f2fd; -fx-background-radius: 15px 2px 15px 15px;");
+                senderLabel.setTextFill(Color.web("#0277bd"));
+            } else {
+                messageBox.setStyle("-fx-background-color: #f5f5f5; -fx-background-radius: 2px 15px 15px 15px;");
+                senderLabel.setTextFill(Color.web("#2c3e50"));
+            }
+            getChildren().add(messageBox);
+            setPadding(new Insets(5, 20, 5, 20));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.nexuscore.gui.components;
+
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests building chat rows from stored messages
+ */
+class ChatMessageTest {
+
+    @Test
+    void storedTimestampsAreShownInLocalTime() {
+        LocalDateTime local = LocalDateTime.of(2024, 3, 9, 18, 5, 30);
+        String stored = local.atZone(ZoneId.systemDefault()).withZoneSameInstant(ZoneOffset.UTC)
+                .toLocalDateTime().toString().replace('T', ' ');
+
+        assertEquals("18:05", ChatMessage.formatStoredTime(stored, local.toLocalDate()));
+        assertEquals("2024/03/09 18:05", ChatMessage.formatStoredTime(stored, LocalDate.of(2024, 3, 10)));
+        assertEquals("", ChatMessage.formatStoredTime(null, LocalDate.now()));
+        assertEquals("not a time", ChatMessage.formatStoredTime("not a time", LocalDate.now()));
+    }
+
+    @Test
+    void storedMessagesKeepTheirIdAndSide() {
+        ChatMessage user = ChatMessage.stored(new ConversationMessage(7, 1, "User", "Question", null));
+        assertTrue(user.isUser());
+        assertEquals("You", user.getSender());
+        assertEquals(7, user.getId());
+
+        ChatMessage answer = ChatMessage.stored(new ConversationMessage(8, 1, "LLM", "Answer", null));
+        assertFalse(answer.isUser());
+        assertEquals("Nexus", answer.getSender());
+        assertEquals("Answer", answer.getText());
+    }
+}
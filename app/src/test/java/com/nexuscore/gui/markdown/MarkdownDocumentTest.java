@@ -0,0 +1,99 @@
+package com.nexuscore.gui.markdown;
+
+import com.nexuscore.gui.markdown.MarkdownBlock.Kind;
+import com.nexuscore.gui.markdown.MarkdownBlock.Span;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests parsing Markdown into blocks, in one pass and while text streams in
+ */
+class MarkdownDocumentTest {
+
+    private static final String RESPONSE = "# Summary\n"
+            + "Use **bold** and `code` here.\n"
+            + "\n"
+            + "- first\n"
+            + "  - nested *item*\n"
+            + "2. numbered\n"
+            + "\n"
+            + "```java\n"
+            + "int x = 1;\n"
+            + "\n"
+            + "return x;\n"
+            + "```\n"
+            + "> quoted\n"
+            + "> text\n"
+            + "\n"
+            + "---\n"
+            + "See [docs](https://example.com) for 2 * 3.";
+
+    @Test
+    void parsesBlocksAndInlineFormatting() {
+        List<MarkdownBlock> blocks = new MarkdownDocument(new BlockCache(100)).update(RESPONSE, true);
+
+        assertEquals(9, blocks.size(), blocks.toString());
+        assertEquals(Kind.HEADING, blocks.get(0).getKind());
+        assertEquals(1, blocks.get(0).getLevel());
+        assertEquals("Summary", blocks.get(0).getContent());
+
+        List<Span> spans = blocks.get(1).getSpans();
+        assertEquals(Kind.PARAGRAPH, blocks.get(1).getKind());
+        assertEquals(5, spans.size());
+        assertEquals("bold", spans.get(1).getText());
+        assertTrue(spans.get(1).has(Span.BOLD));
+        assertEquals("code", spans.get(3).getText());
+        assertTrue(spans.get(3).has(Span.CODE));
+
+        assertEquals(Kind.LIST_ITEM, blocks.get(2).getKind());
+        assertEquals("•", blocks.get(2).getMarker());
+        assertEquals(1, blocks.get(3).getLevel());
+        assertTrue(blocks.get(3).getSpans().get(1).has(Span.ITALIC));
+        assertEquals("2.", blocks.get(4).getMarker());
+
+        assertEquals(Kind.CODE, blocks.get(5).getKind());
+        assertEquals("java", blocks.get(5).getLanguage());
+        assertEquals("int x = 1;\n\nreturn x;", blocks.get(5).getContent());
+
+        assertEquals(Kind.QUOTE, blocks.get(6).getKind());
+        assertEquals("quoted\ntext", blocks.get(6).getContent());
+        assertEquals(Kind.RULE, blocks.get(7).getKind());
+
+        spans = blocks.get(8).getSpans();
+        assertEquals("docs", spans.get(1).getText());
+        assertEquals("https://example.com", spans.get(1).getUrl());
+        assertEquals(" for 2 * 3.", spans.get(2).getText()); // A lone "*" stays literal
+    }
+
+    @Test
+    void streamingParsesOnlyTheTail() {
+        BlockCache cache = new BlockCache(100);
+        MarkdownDocument document = new MarkdownDocument(cache);
+        List<MarkdownBlock> first = null;
+        int updates = 0;
+        for (int end = 1; end <= RESPONSE.length(); end += 3) {
+            List<MarkdownBlock> blocks = document.update(RESPONSE.substring(0, end), false);
+            updates++;
+            if (first == null && blocks.size() > 1) {
+                first = blocks;
+            }
+        }
+        List<MarkdownBlock> blocks = document.update(RESPONSE, true);
+        updates++;
+
+        // Same result as parsing the whole text at once
+        List<MarkdownBlock> expected = new MarkdownDocument(new BlockCache(100)).update(RESPONSE, true);
+        assertEquals(expected.toString(), blocks.toString());
+
+        // Closed blocks are kept, not parsed again: per update only the tail (the open block and
+        // the unfinished line) is parsed, plus each block once when it is closed
+        assertSame(first.get(0), blocks.get(0));
+        assertTrue(cache.getMisses() <= 2L * updates + blocks.size(), "parsed " + cache.getMisses());
+
+        // Text that does not extend the previous text is parsed from the start
+        assertEquals(Kind.PARAGRAPH, document.update("Something else", true).get(0).getKind());
+    }
+}
@@ -0,0 +1,63 @@
+package com.nexuscore.llm;
+
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests token-budget packing of the conversation history
+ */
+class HistoryPackerTest {
+
+    private static List<ConversationMessage> conversation(String... contents) {
+        List<ConversationMessage> messages = new ArrayList<>();
+        for (int i = 0; i < contents.length; i++) {
+            messages.add(new ConversationMessage(i + 1, i % 2 == 0 ? "User" : "LLM", contents[i]));
+        }
+        return messages;
+    }
+
+    @Test
+    void estimatesLatinAndJapaneseText() {
+        assertEquals(0, HistoryPacker.estimateTokens(""));
+        assertEquals(2, HistoryPacker.estimateTokens("abcdefgh"));
+        assertEquals(3, HistoryPacker.estimateTokens("こんに"));
+    }
+
+    @Test
+    void keepsNewestMessagesWithinBudget() {
+        HistoryPacker packer = new HistoryPacker();
+        List<ConversationMessage> history = conversation("a".repeat(400), "b".repeat(40), "c".repeat(40), "d".repeat(40));
+
+        HistoryPacker.PackedHistory packed = packer.pack(history, 50);
+
+        assertEquals(3, packed.getMessages().size());
+        assertEquals(history.subList(1, 4), packed.getMessages());
+        assertEquals(3 * (10 + HistoryPacker.MESSAGE_OVERHEAD_TOKENS), packed.getTokens());
+        assertEquals(1, packed.getDroppedMessages());
+    }
+
+    @Test
+    void latestExchangeIsKeptOverBudget() {
+        HistoryPacker packer = new HistoryPacker();
+        List<ConversationMessage> history = conversation("short", "x".repeat(4000), "y".repeat(4000));
+
+        HistoryPacker.PackedHistory packed = packer.pack(history, 10);
+
+        assertEquals(history.subList(1, 3), packed.getMessages());
+        assertTrue(packed.getTokens() > 10);
+    }
+
+    @Test
+    void tokenCountIsCachedPerStoredMessage() {
+        HistoryPacker packer = new HistoryPacker();
+        int first = packer.tokensOf(new ConversationMessage(5, "User", "a".repeat(40)));
+        // Same row ID: the cached count is returned without re-estimating
+        assertEquals(first, packer.tokensOf(new ConversationMessage(5, "User", "")));
+        assertEquals(HistoryPacker.MESSAGE_OVERHEAD_TOKENS, packer.tokensOf(new ConversationMessage("User", "")));
+    }
+}
@@ -0,0 +1,97 @@
+package com.nexuscore.llm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * Tests timeouts and cancellation of LLMService against a stub "ollama" script
+ */
+class LLMServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LLMExecutor executor;
+    private LLMService service;
+    private Path pidFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        assumeFalse(System.getProperty("os.name").toLowerCase().contains("win"), "Requires a POSIX shell");
+        pidFile = tempDir.resolve("pid");
+
+        // Prints one chunk, then hangs like a stuck model
+        Path script = tempDir.resolve("ollama");
+        Files.writeString(script, "#!/bin/sh\necho $$ > " + pidFile + "\necho 'partial'\nexec sleep 60\n");
+        assertTrue(script.toFile().setExecutable(true));
+
+        executor = new LLMExecutor(2, false);
+        service = new LLMService("llama2", executor);
+        service.setUseHttpBackend(false);
+        service.setOllamaPath(script.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void timeoutKillsProcess() throws Exception {
+        service.setTimeout(1);
+
+        String response = service.sendPromptAsync("Hi").get(10, TimeUnit.SECONDS);
+
+        assertTrue(response.startsWith("Sorry, the response took too long"), response);
+        assertProcessStops();
+        assertEquals(1, executor.getStats().getTimedOut());
+        assertEventually(() -> executor.getStats().getInFlight() == 0 && executor.getStats().getLeaked() == 0);
+    }
+
+    @Test
+    void cancelKillsProcess() throws Exception {
+        service.setTimeout(30);
+        StringBuilder streamed = new StringBuilder();
+
+        CompletableFuture<String> future = service.sendPromptAsync("Hi", streamed::append);
+        assertEventually(() -> streamed.toString().contains("partial"));
+        assertTrue(future.cancel(true));
+
+        assertProcessStops();
+        assertEquals(1, executor.getStats().getCancelled());
+        assertEventually(() -> executor.getStats().getInFlight() == 0 && executor.getStats().getLeaked() == 0);
+    }
+
+    private void assertProcessStops() throws Exception {
+        assertEventually(() -> Files.exists(pidFile));
+        long pid = Long.parseLong(Files.readString(pidFile).trim());
+        assertEventually(() -> {
+            Optional<ProcessHandle> handle = ProcessHandle.of(pid);
+            return handle.isEmpty() || !handle.get().isAlive();
+        });
+    }
+
+    private static void assertEventually(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met within 10 seconds");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
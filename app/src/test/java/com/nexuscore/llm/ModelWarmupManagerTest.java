@@ -0,0 +1,100 @@
+package com.nexuscore.llm;
+
+import com.nexuscore.llm.ModelWarmupManager.ModelState;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests state tracking of the model warm-up manager
+ */
+class ModelWarmupManagerTest {
+
+    @Test
+    void warmUpReportsLoadingThenWarm() throws Exception {
+        List<String> loaded = new CopyOnWriteArrayList<>();
+        ModelWarmupManager manager = new ModelWarmupManager((model, keepAlive) -> loaded.add(model + "@" + keepAlive));
+        List<ModelState> states = new CopyOnWriteArrayList<>();
+        manager.addListener((model, state) -> states.add(state));
+        manager.setKeepAlive("10m");
+
+        assertTrue(manager.warmUp("llama2").get(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("llama2@10m"), loaded);
+        assertEquals(List.of(ModelState.LOADING, ModelState.WARM), states);
+        assertEquals(ModelState.WARM, manager.getState());
+
+        // Already warm: no second load
+        assertTrue(manager.warmUp("llama2").get(5, TimeUnit.SECONDS));
+        assertEquals(1, loaded.size());
+        manager.shutdown();
+    }
+
+    @Test
+    void failedLoadIsReported() throws Exception {
+        ModelWarmupManager manager = new ModelWarmupManager((model, keepAlive) -> {
+            throw new java.io.IOException("model not found");
+        });
+
+        assertFalse(manager.warmUp("missing").get(5, TimeUnit.SECONDS));
+        assertEquals(ModelState.FAILED, manager.getState());
+        manager.shutdown();
+    }
+
+    @Test
+    void shutdownCancelsWarmUpInProgress() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        ModelWarmupManager manager = new ModelWarmupManager((model, keepAlive) -> {
+            loading.countDown();
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+        });
+
+        CompletableFuture<Boolean> result = manager.warmUp("llama2");
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        manager.shutdown();
+
+        assertFalse(result.get(5, TimeUnit.SECONDS));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertFalse(manager.warmUp("mistral").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void modelTurnsColdAfterKeepAlive() throws Exception {
+        ModelWarmupManager manager = new ModelWarmupManager((model, keepAlive) -> { });
+        CountDownLatch cold = new CountDownLatch(1);
+        manager.addListener((model, state) -> {
+            if (state == ModelState.COLD) {
+                cold.countDown();
+            }
+        });
+        manager.setKeepAlive("1s");
+
+        manager.warmUp("llama2").get(5, TimeUnit.SECONDS);
+        assertTrue(cold.await(5, TimeUnit.SECONDS));
+        assertEquals(ModelState.COLD, manager.getState());
+        manager.shutdown();
+    }
+
+    @Test
+    void parsesOllamaKeepAliveFormat() {
+        assertEquals(Duration.ofSeconds(30), ModelWarmupManager.parseKeepAlive("30s"));
+        assertEquals(Duration.ofMinutes(5), ModelWarmupManager.parseKeepAlive("5m"));
+        assertEquals(Duration.ofHours(1), ModelWarmupManager.parseKeepAlive("1h"));
+        assertEquals(Duration.ofSeconds(90), ModelWarmupManager.parseKeepAlive("90"));
+        assertNull(ModelWarmupManager.parseKeepAlive("-1"));
+        assertThrows(IllegalArgumentException.class, () -> ModelWarmupManager.parseKeepAlive("soon"));
+    }
+}
@@ -0,0 +1,154 @@
+package com.nexuscore.llm;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests routing of the endpoint pool across several stub Ollama servers on different ports
+ */
+class OllamaEndpointPoolTest {
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private OllamaEndpointPool pool;
+
+    @AfterEach
+    void stopServers() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        for (HttpServer server : servers) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Start a stub server that answers with its own name, after waiting for the gate
+     */
+    private String startServer(String name, CountDownLatch gate) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/generate", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = ("{\"response\":\"" + name + "\",\"done\":true}\n").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/api/version", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        servers.add(server);
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static String closedPortUrl() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return "http://127.0.0.1:" + socket.getLocalPort();
+        }
+    }
+
+    private static GenerationRequest request(int conversationId) {
+        GenerationRequest request = new GenerationRequest("llama2", "Hi");
+        request.setConversationId(conversationId);
+        return request;
+    }
+
+    private CompletableFuture<String> generateAsync(GenerationRequest request) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.generate(request);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private void awaitOutstanding(int endpoint, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getEndpoints().get(endpoint).getOutstanding() != count) {
+            assertTrue(System.currentTimeMillis() < deadline, "endpoint never reached " + count + " outstanding");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void busyEndpointIsAvoided() throws Exception {
+        CountDownLatch slowGate = new CountDownLatch(1);
+        pool = new OllamaEndpointPool(List.of(startServer("a", slowGate), startServer("b", new CountDownLatch(0))));
+
+        CompletableFuture<String> slow = generateAsync(request(GenerationRequest.NO_CONVERSATION));
+        awaitOutstanding(0, 1);
+
+        assertEquals("b", pool.generate(request(GenerationRequest.NO_CONVERSATION)));
+
+        slowGate.countDown();
+        assertEquals("a", slow.get(5, TimeUnit.SECONDS));
+        assertEquals(1, pool.getEndpoints().get(0).getRequestCount());
+        assertEquals(1, pool.getEndpoints().get(1).getRequestCount());
+    }
+
+    @Test
+    void conversationStaysOnItsEndpoint() throws Exception {
+        CountDownLatch slowGate = new CountDownLatch(1);
+        pool = new OllamaEndpointPool(List.of(startServer("a", slowGate), startServer("b", new CountDownLatch(0))));
+
+        // First turn lands on b because a is busy
+        CompletableFuture<String> slow = generateAsync(request(GenerationRequest.NO_CONVERSATION));
+        awaitOutstanding(0, 1);
+        assertEquals("b", pool.generate(request(5)));
+        slowGate.countDown();
+        slow.get(5, TimeUnit.SECONDS);
+
+        // Both are idle now, but the conversation goes back to b while another one starts on a
+        assertEquals("b", pool.generate(request(5)));
+        assertEquals("a", pool.generate(request(6)));
+    }
+
+    @Test
+    void unreachableEndpointIsDrained() throws Exception {
+        String down = closedPortUrl();
+        pool = new OllamaEndpointPool(List.of(down, startServer("b", new CountDownLatch(0))), Duration.ofHours(1));
+
+        assertEquals("b", pool.generate(request(1)));
+        assertFalse(pool.getEndpoints().get(0).isHealthy());
+        assertNotNull(pool.getEndpoints().get(0).getLastError());
+
+        // A health check keeps it out of rotation while it stays down
+        assertTrue(pool.isAvailable());
+        assertFalse(pool.getEndpoints().get(0).isHealthy());
+        assertEquals(down, pool.candidates(request(2)).get(1).getBaseUrl());
+    }
+
+    @Test
+    void allEndpointsDownThrowsConnectException() throws Exception {
+        pool = new OllamaEndpointPool(List.of(closedPortUrl(), closedPortUrl()), Duration.ofHours(1));
+
+        assertThrows(ConnectException.class, () -> pool.generate(request(1)));
+        assertFalse(pool.isAvailable());
+    }
+}
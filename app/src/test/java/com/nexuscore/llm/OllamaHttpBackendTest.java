@@ -0,0 +1,297 @@
+package com.nexuscore.llm;
+
+import com.nexuscore.database.DatabaseManager.ConversationMessage;
+import com.nexuscore.util.Json;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the HTTP backend against a stub Ollama server
+ */
+class OllamaHttpBackendTest {
+
+    private HttpServer server;
+    private final AtomicReference<Map<String, Object>> lastBody = new AtomicReference<>();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/generate", exchange -> {
+            lastBody.set(Json.parseObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)));
+            respond(exchange, 200, "{\"model\":\"test\",\"response\":\"Hello \",\"done\":false}\n"
+                    + "{\"model\":\"test\",\"response\":\"from generate\",\"done\":false}\n"
+                    + "{\"model\":\"test\",\"response\":\"\",\"done\":true,\"context\":[1,2,3]}\n");
+        });
+        server.createContext("/api/chat", exchange -> {
+            lastBody.set(Json.parseObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)));
+            respond(exchange, 200,
+                    "{\"model\":\"test\",\"message\":{\"role\":\"assistant\",\"content\":\"Hello from chat\"},\"done\":false}\n"
+                            + "{\"model\":\"test\",\"message\":{\"role\":\"assistant\",\"content\":\"\"},\"done\":true}\n");
+        });
+        server.createContext("/api/tags", exchange -> respond(exchange, 200,
+                "{\"models\":[{\"name\":\"llama2:latest\"},{\"name\":\"mistral:7b\"}]}"));
+        server.createContext("/api/version", exchange -> respond(exchange, 200, "{\"version\":\"0.0.0\"}"));
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private static void respond(com.sun.net.httpserver.HttpExchange exchange, int status, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Test
+    void generateSendsOptionsAndParsesResponse() throws Exception {
+        OllamaHttpBackend backend = new OllamaHttpBackend(baseUrl());
+        GenerationRequest request = new GenerationRequest("llama2", "Hi");
+        request.setTemperature(0.0f);
+        request.setMaxTokens(64);
+
+        assertEquals("Hello from generate", backend.generate(request));
+
+        Map<String, Object> body = lastBody.get();
+        assertEquals("llama2", body.get("model"));
+        assertEquals("Hi", body.get("prompt"));
+        assertEquals(Boolean.TRUE, body.get("stream"));
+        Map<?, ?> options = (Map<?, ?>) body.get("options");
+        assertEquals(0.0, ((Number) options.get("temperature")).doubleValue());
+        assertEquals(64L, options.get("num_predict"));
+    }
+
+    @Test
+    void conversationTurnsCarryModelContext() throws Exception {
+        OllamaHttpBackend backend = new OllamaHttpBackend(baseUrl());
+        List<ConversationMessage> history = List.of(new ConversationMessage("User", "Earlier question"));
+
+        // No stored context: the full history goes out as one prompt, and the context comes back
+        GenerationRequest first = new GenerationRequest("llama2", "Hi", history);
+        first.setConversationId(7);
+        backend.generate(first);
+        assertEquals(first.toPromptText(), lastBody.get().get("prompt"));
+        assertNull(lastBody.get().get("context"));
+        assertArrayEquals(new int[] { 1, 2, 3 }, first.getResultContext());
+
+        // With the previous context only the new prompt is sent
+        GenerationRequest next = new GenerationRequest("llama2", "And now?", history);
+        next.setConversationId(7);
+        next.setContext(first.getResultContext());
+        backend.generate(next);
+        assertEquals("And now?", lastBody.get().get("prompt"));
+        assertEquals(List.of(1L, 2L, 3L), lastBody.get().get("context"));
+    }
+
+    @Test
+    void turnWithoutHistoryDropsStoredContext() throws Exception {
+        LLMService service = new LLMService("llama2");
+        service.setOllamaHost(baseUrl());
+        List<ConversationMessage> history = List.of(new ConversationMessage("User", "Earlier question"));
+
+        // Think: the full history goes out and the returned context is stored
+        service.sendPromptInConversationAsync(7, "Hi", history, null).get(10, TimeUnit.SECONDS);
+        assertNull(lastBody.get().get("context"));
+
+        // Normal turn: not part of that context, so the context is dropped
+        service.sendPromptAsync(7, "Plain question", null).get(10, TimeUnit.SECONDS);
+        assertEquals("Plain question", lastBody.get().get("prompt"));
+
+        // Think again: rebuilt from the history, which now includes the normal turn
+        List<ConversationMessage> later = List.of(new ConversationMessage("User", "Earlier question"),
+                new ConversationMessage("User", "Plain question"));
+        service.sendPromptInConversationAsync(7, "And now?", later, null).get(10, TimeUnit.SECONDS);
+        assertNull(lastBody.get().get("context"));
+        assertTrue(lastBody.get().get("prompt").toString().contains("Plain question"), lastBody.get().toString());
+        assertEquals(0, service.getContextStore().getReusedCount());
+        assertEquals(2, service.getContextStore().getRebuiltCount());
+    }
+
+    @Test
+    void contextOverTheBudgetIsNotReused() throws Exception {
+        LLMService service = new LLMService("llama2");
+        service.setOllamaHost(baseUrl());
+        List<ConversationMessage> history = List.of(new ConversationMessage("User", "Earlier question"));
+
+        service.sendPromptInConversationAsync(7, "Hi", history, null).get(10, TimeUnit.SECONDS);
+        service.sendPromptInConversationAsync(7, "Next", history, null).get(10, TimeUnit.SECONDS);
+        assertEquals(List.of(1L, 2L, 3L), lastBody.get().get("context"));
+
+        // The stored context no longer fits: the packed history is sent instead
+        service.setContextBudget("llama2", 1);
+        service.sendPromptInConversationAsync(7, "And now?", history, null).get(10, TimeUnit.SECONDS);
+        assertNull(lastBody.get().get("context"));
+        assertEquals(1, service.getContextStore().getReusedCount());
+        assertEquals(2, service.getContextStore().getRebuiltCount());
+    }
+
+    @Test
+    void chunksAreStreamedToListener() throws Exception {
+        OllamaHttpBackend backend = new OllamaHttpBackend(baseUrl());
+        List<String> tokens = new ArrayList<>();
+
+        String response = backend.generate(new GenerationRequest("llama2", "Hi"), tokens::add);
+
+        assertEquals(List.of("Hello ", "from generate"), tokens);
+        assertEquals("Hello from generate", response);
+    }
+
+    @Test
+    void cancelAbortsStreamingRequest() throws Exception {
+        server.removeContext("/api/generate");
+        server.createContext("/api/generate", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            out.write("{\"response\":\"first\",\"done\":false}\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            try {
+                // Keep the stream open like a slow model until the client goes away
+                while (true) {
+                    Thread.sleep(100);
+                    out.write("\n".getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                exchange.close();
+            }
+        });
+
+        OllamaHttpBackend backend = new OllamaHttpBackend(baseUrl());
+        GenerationRequest request = new GenerationRequest("llama2", "Hi");
+        CountDownLatch firstToken = new CountDownLatch(1);
+        CompletableFuture<String> result = CompletableFuture.supplyAsync(() -> {
+            try {
+                return backend.generate(request, token -> firstToken.countDown());
+            } catch (IOException | InterruptedException e) {
+                throw new CompletionException(e);
+            }
+        });
+
+        assertTrue(firstToken.await(5, TimeUnit.SECONDS));
+        request.getCancellationSignal().cancel();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof CancellationException, String.valueOf(e.getCause()));
+    }
+
+    @Test
+    void historyIsSentAsChatMessages() throws Exception {
+        OllamaHttpBackend backend = new OllamaHttpBackend(baseUrl());
+        GenerationRequest request = new GenerationRequest("llama2", "And now?", List.of(
+                new ConversationMessage("User", "First question"),
+                new ConversationMessage("LLM", "First answer")));
+
+        assertEquals("Hello from chat", backend.generate(request));
+
+        List<?> messages = (List<?>) lastBody.get().get("messages");
+        assertEquals(3, messages.size());
+        assertEquals("user", ((Map<?, ?>) messages.get(0)).get("role"));
+        assertEquals("assistant", ((Map<?, ?>) messages.get(1)).get("role"));
+        assertEquals("And now?", ((Map<?, ?>) messages.get(2)).get("content"));
+        assertFalse(((Map<?, ?>) lastBody.get().get("options")).containsKey("num_predict"));
+    }
+
+    @Test
+    void relatedMessagesAreSentBeforeTheConversation() throws Exception {
+        OllamaHttpBackend backend = new OllamaHttpBackend(baseUrl());
+        GenerationRequest request = new GenerationRequest("llama2", "And now?", List.of(
+                new ConversationMessage("User", "First question")));
+        request.setRelatedMessages(List.of(new ConversationMessage("LLM", "An answer from last week")));
+
+        backend.generate(request);
+        List<?> messages = (List<?>) lastBody.get().get("messages");
+        assertEquals(3, messages.size());
+        assertEquals("system", ((Map<?, ?>) messages.get(0)).get("role"));
+        assertTrue(((String) ((Map<?, ?>) messages.get(0)).get("content")).contains("An answer from last week"));
+
+        // Without history the related messages are part of the prompt
+        GenerationRequest plain = new GenerationRequest("llama2", "Hi");
+        plain.setRelatedMessages(request.getRelatedMessages());
+        backend.generate(plain);
+        String prompt = (String) lastBody.get().get("prompt");
+        assertTrue(prompt.startsWith(GenerationRequest.RELATED_HEADER));
+        assertTrue(prompt.endsWith("User: Hi\n\nAssistant: "));
+    }
+
+    @Test
+    void embeddingsAreParsedInOrder() throws Exception {
+        server.createContext("/api/embed", exchange -> {
+            lastBody.set(Json.parseObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)));
+            respond(exchange, 200, "{\"model\":\"nomic-embed-text\",\"embeddings\":[[0.5,-1],[2,0.25]]}");
+        });
+
+        OllamaHttpBackend backend = new OllamaHttpBackend(baseUrl());
+        List<float[]> vectors = backend.embed("nomic-embed-text", List.of("a", "b"));
+
+        assertEquals(List.of("a", "b"), lastBody.get().get("input"));
+        assertEquals(2, vectors.size());
+        assertArrayEquals(new float[] {0.5f, -1f}, vectors.get(0), 1e-6f);
+        assertArrayEquals(new float[] {2f, 0.25f}, vectors.get(1), 1e-6f);
+    }
+
+    @Test
+    void listsModelsAndReportsAvailability() {
+        OllamaHttpBackend backend = new OllamaHttpBackend(baseUrl() + "/");
+        assertTrue(backend.isAvailable());
+        assertEquals(List.of("llama2:latest", "mistral:7b"), backend.getInstalledModels());
+    }
+
+    @Test
+    void serverErrorIsReportedAsIOException() {
+        server.removeContext("/api/generate");
+        server.createContext("/api/generate", exchange -> respond(exchange, 404, "{\"error\":\"model not found\"}"));
+
+        OllamaHttpBackend backend = new OllamaHttpBackend(baseUrl());
+        IOException e = assertThrows(IOException.class,
+                () -> backend.generate(new GenerationRequest("missing", "Hi")));
+        assertTrue(e.getMessage().contains("model not found"));
+    }
+
+    @Test
+    void serviceFallsBackToProcessBackendWhenServerIsDown() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        LLMService service = new LLMService("llama2");
+        service.setOllamaHost("http://127.0.0.1:" + port);
+        service.setOllamaPath("/nonexistent/ollama");
+        service.setTimeout(5);
+
+        // Both backends unavailable: the fallback text reports the process error
+        String response = service.sendPrompt("Hi");
+        assertTrue(response.startsWith("I'm sorry, I couldn't connect to Ollama."), response);
+        assertFalse(service.isAvailable());
+    }
+}
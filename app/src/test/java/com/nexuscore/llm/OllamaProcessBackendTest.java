@@ -0,0 +1,60 @@
+package com.nexuscore.llm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * Tests the process backend against a stub "ollama" shell script
+ */
+class OllamaProcessBackendTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String writeStubOllama(String body) throws IOException {
+        assumeFalse(System.getProperty("os.name").toLowerCase().contains("win"), "Requires a POSIX shell");
+        Path script = tempDir.resolve("ollama");
+        Files.writeString(script, "#!/bin/sh\n" + body + "\n");
+        assertTrue(script.toFile().setExecutable(true));
+        return script.toString();
+    }
+
+    @Test
+    void generatePipesPromptThroughProcess() throws Exception {
+        String path = writeStubOllama("if [ \"$1\" = \"run\" ]; then echo \"model=$2\"; cat; fi");
+        OllamaProcessBackend backend = new OllamaProcessBackend(path);
+
+        String response = backend.generate(new GenerationRequest("llama2", "ping"));
+        assertEquals("model=llama2\nping", response);
+    }
+
+    @Test
+    void nonZeroExitIsReportedAsIOException() throws Exception {
+        String path = writeStubOllama("cat > /dev/null; echo 'model not found' >&2; exit 1");
+        OllamaProcessBackend backend = new OllamaProcessBackend(path);
+
+        IOException e = assertThrows(IOException.class,
+                () -> backend.generate(new GenerationRequest("missing", "ping")));
+        assertTrue(e.getMessage().contains("model not found"));
+    }
+
+    @Test
+    void listsModelsAndReportsAvailability() throws Exception {
+        String path = writeStubOllama("case \"$1\" in\n"
+                + "  --version) echo 'ollama version 0.0.0' ;;\n"
+                + "  list) printf 'llama2:latest  abc  3.8 GB\\nmistral:7b  def  4.1 GB\\n' ;;\n"
+                + "esac");
+        OllamaProcessBackend backend = new OllamaProcessBackend(path);
+
+        assertTrue(backend.isAvailable());
+        assertEquals(List.of("llama2:latest", "mistral:7b"), backend.getInstalledModels());
+    }
+}
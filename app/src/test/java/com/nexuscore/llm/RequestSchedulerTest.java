@@ -0,0 +1,129 @@
+package com.nexuscore.llm;
+
+import com.nexuscore.llm.RequestScheduler.Priority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests admission order and limits of the request scheduler
+ */
+class RequestSchedulerTest {
+
+    private final LLMExecutor executor = new LLMExecutor(4, false);
+    private final List<String> order = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Occupy the only slot until the returned latch is released
+     */
+    private CountDownLatch block(RequestScheduler scheduler) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(() -> {
+            started.countDown();
+            release.await();
+            return "blocker";
+        }, Priority.INTERACTIVE, "blocker", new CancellationSignal());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private CompletableFuture<String> record(RequestScheduler scheduler, String name, Priority priority, Object key) {
+        return scheduler.submit(() -> {
+            order.add(name);
+            return name;
+        }, priority, key, new CancellationSignal());
+    }
+
+    @Test
+    void interactiveRequestsGoBeforeBackgroundWork() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(executor, 1);
+        CountDownLatch release = block(scheduler);
+
+        record(scheduler, "batch-1", Priority.BACKGROUND, 1);
+        record(scheduler, "batch-2", Priority.BACKGROUND, 1);
+        CompletableFuture<String> last = record(scheduler, "user", Priority.INTERACTIVE, 2);
+
+        RequestScheduler.Stats stats = scheduler.getStats();
+        assertEquals(1, stats.getRunning());
+        assertEquals(2, stats.getQueued(Priority.BACKGROUND));
+        assertEquals(1, stats.getQueued(Priority.INTERACTIVE));
+
+        release.countDown();
+        last.get(5, TimeUnit.SECONDS);
+        record(scheduler, "end", Priority.BACKGROUND, 3).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("user", "batch-1", "batch-2", "end"), order);
+    }
+
+    @Test
+    void conversationsTakeTurns() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(executor, 1);
+        CountDownLatch release = block(scheduler);
+
+        record(scheduler, "a1", Priority.INTERACTIVE, "a");
+        record(scheduler, "a2", Priority.INTERACTIVE, "a");
+        record(scheduler, "a3", Priority.INTERACTIVE, "a");
+        CompletableFuture<String> b1 = record(scheduler, "b1", Priority.INTERACTIVE, "b");
+
+        release.countDown();
+        b1.get(5, TimeUnit.SECONDS);
+        record(scheduler, "end", Priority.BACKGROUND, "c").get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("a1", "b1", "a2", "a3", "end"), order);
+    }
+
+    @Test
+    void cancelledRequestLeavesTheQueue() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(executor, 1);
+        CountDownLatch release = block(scheduler);
+
+        CancellationSignal signal = new CancellationSignal();
+        CompletableFuture<String> queued = scheduler.submit(() -> {
+            order.add("cancelled");
+            return "cancelled";
+        }, Priority.INTERACTIVE, "a", signal);
+        assertEquals(1, scheduler.getStats().getQueued());
+
+        queued.cancel(true);
+        assertTrue(signal.isCancelled());
+        assertEquals(0, scheduler.getStats().getQueued());
+
+        release.countDown();
+        record(scheduler, "next", Priority.INTERACTIVE, "a").get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("next"), order);
+        assertEquals(0, scheduler.getStats().getRunning());
+    }
+
+    @Test
+    void parallelismIsLimited() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(executor, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch twoStarted = new CountDownLatch(2);
+        for (int i = 0; i < 4; i++) {
+            scheduler.submit(() -> {
+                twoStarted.countDown();
+                release.await();
+                return "";
+            }, Priority.INTERACTIVE, i, new CancellationSignal());
+        }
+        assertTrue(twoStarted.await(5, TimeUnit.SECONDS));
+        assertEquals(2, scheduler.getStats().getRunning());
+        assertEquals(2, scheduler.getStats().getQueued());
+
+        // Raising the limit starts the waiting requests
+        scheduler.setMaxParallel(4);
+        assertEquals(4, scheduler.getStats().getRunning());
+        release.countDown();
+    }
+}
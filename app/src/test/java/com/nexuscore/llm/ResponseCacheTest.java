@@ -0,0 +1,71 @@
+package com.nexuscore.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the in-memory tier of the response cache
+ */
+class ResponseCacheTest {
+
+    private static GenerationRequest request(String prompt, float temperature) {
+        GenerationRequest request = new GenerationRequest("llama2", prompt);
+        request.setTemperature(temperature);
+        return request;
+    }
+
+    @Test
+    void onlyDeterministicRequestsAreCacheableByDefault() {
+        ResponseCache cache = new ResponseCache(null);
+        assertFalse(cache.isCacheable(request("hi", 0f)));
+
+        cache.setEnabled(true);
+        assertTrue(cache.isCacheable(request("hi", 0f)));
+        assertFalse(cache.isCacheable(request("hi", 0.7f)));
+
+        cache.setCacheNonDeterministic(true);
+        assertTrue(cache.isCacheable(request("hi", 0.7f)));
+    }
+
+    @Test
+    void hitsAndMissesAreCounted() {
+        ResponseCache cache = new ResponseCache(null);
+        cache.setEnabled(true);
+
+        assertNull(cache.get(request("hi", 0f)));
+        cache.put(request("hi", 0f), "hello");
+        assertEquals("hello", cache.get(request("hi", 0f)));
+        // Different temperature is a different key
+        assertNull(cache.get(request("hi", 0.5f)));
+
+        ResponseCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getMemoryHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(1, stats.getStores());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        ResponseCache cache = new ResponseCache(2, 10, Duration.ofMinutes(1), null);
+        cache.put(request("a", 0f), "A");
+        cache.put(request("b", 0f), "B");
+        cache.get(request("a", 0f));
+        cache.put(request("c", 0f), "C");
+
+        assertEquals("A", cache.get(request("a", 0f)));
+        assertNull(cache.get(request("b", 0f)));
+        assertEquals("C", cache.get(request("c", 0f)));
+    }
+
+    @Test
+    void expiredEntriesAreNotServed() throws Exception {
+        ResponseCache cache = new ResponseCache(10, 10, Duration.ofMillis(20), null);
+        cache.put(request("a", 0f), "A");
+        Thread.sleep(50);
+        assertNull(cache.get(request("a", 0f)));
+        assertEquals(0, cache.getStats().getMemoryEntries());
+    }
+}
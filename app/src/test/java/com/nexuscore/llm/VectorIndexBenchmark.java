@@ -0,0 +1,99 @@
+package com.nexuscore.llm;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Benchmark of the vector index: bulk load, cluster training, incremental
+ * inserts and query latency of exact and approximate search, with recall@10
+ * of held-out queries.
+ * Not part of the test suite; run with
+ * {@code java -cp <test classpath> com.nexuscore.llm.VectorIndexBenchmark [vectors] [dimensions] [spread]},
+ * where a larger spread makes the topics overlap (0.6 by default).
+ */
+public class VectorIndexBenchmark {
+
+    private static final int QUERIES = 200;
+    private static final int INCREMENTAL = 10_000;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int dimensions = args.length > 1 ? Integer.parseInt(args[1]) : 768;
+        float spread = args.length > 2 ? Float.parseFloat(args[2]) : 0.6f;
+        System.out.println("Vectors: " + count + ", dimensions: " + dimensions + ", spread: " + spread);
+
+        // Queries are held out: drawn from the same topics as the stored vectors, but never indexed
+        float[][] vectors = VectorIndexTest.clusteredVectors(count + INCREMENTAL + QUERIES, dimensions, 500, spread, 1);
+        float[][] queries = java.util.Arrays.copyOfRange(vectors, count + INCREMENTAL, vectors.length);
+
+        VectorIndex index = new VectorIndex(dimensions);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            index.add(i, vectors[i]);
+        }
+        report("Load", start, count);
+
+        // Warm up the JIT before measuring queries
+        for (int i = 0; i < 20; i++) {
+            index.searchExact(queries[i], 10);
+        }
+        long[] exactNanos = new long[QUERIES];
+        @SuppressWarnings("unchecked")
+        Set<Long>[] truth = new Set[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            long t = System.nanoTime();
+            List<VectorIndex.Neighbor> hits = index.searchExact(queries[i], 10);
+            exactNanos[i] = System.nanoTime() - t;
+            truth[i] = new HashSet<>();
+            for (VectorIndex.Neighbor hit : hits) {
+                truth[i].add(hit.getId());
+            }
+        }
+        printLatency("Exact query", exactNanos);
+
+        start = System.nanoTime();
+        index.trainIfNeeded();
+        report("Train clusters", start, count);
+
+        for (int probes : new int[] {0, 12, 40}) {
+            index.setProbes(probes);
+            for (int i = 0; i < 20; i++) {
+                index.search(queries[i], 10, null);
+            }
+            long[] nanos = new long[QUERIES];
+            int found = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                long t = System.nanoTime();
+                List<VectorIndex.Neighbor> hits = index.search(queries[i], 10, null);
+                nanos[i] = System.nanoTime() - t;
+                for (VectorIndex.Neighbor hit : hits) {
+                    if (truth[i].contains(hit.getId())) {
+                        found++;
+                    }
+                }
+            }
+            printLatency("Approximate query (probes=" + (probes == 0 ? "auto" : probes) + ")", nanos);
+            System.out.printf("  recall@10: %.3f%n", found / (QUERIES * 10.0));
+        }
+        index.setProbes(0);
+
+        start = System.nanoTime();
+        for (int i = count; i < count + INCREMENTAL; i++) {
+            index.add(i, vectors[i]);
+        }
+        report("Incremental insert", start, INCREMENTAL);
+    }
+
+    private static void report(String label, long start, int items) {
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%s: %d ms (%.1f µs per vector)%n", label, nanos / 1_000_000, nanos / 1000.0 / items);
+    }
+
+    private static void printLatency(String label, long[] nanos) {
+        long[] sorted = nanos.clone();
+        java.util.Arrays.sort(sorted);
+        System.out.printf("%s: p50 %.2f ms, p95 %.2f ms%n", label,
+                sorted[sorted.length / 2] / 1e6, sorted[(int) (sorted.length * 0.95)] / 1e6);
+    }
+}
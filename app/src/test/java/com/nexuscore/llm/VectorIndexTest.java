@@ -0,0 +1,120 @@
+package com.nexuscore.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests exact and approximate nearest-neighbour search of the vector index
+ */
+class VectorIndexTest {
+
+    /**
+     * Vectors grouped around a number of random topics, like embeddings of chat messages
+     */
+    static float[][] clusteredVectors(int count, int dimensions, int topics, long seed) {
+        return clusteredVectors(count, dimensions, topics, 0.6f, seed);
+    }
+
+    /**
+     * @param spread Standard deviation of a vector around its topic center (the centers have 1)
+     */
+    static float[][] clusteredVectors(int count, int dimensions, int topics, float spread, long seed) {
+        Random random = new Random(seed);
+        float[][] centers = new float[topics][dimensions];
+        for (float[] center : centers) {
+            for (int d = 0; d < dimensions; d++) {
+                center[d] = (float) random.nextGaussian();
+            }
+        }
+        float[][] vectors = new float[count][dimensions];
+        for (int i = 0; i < count; i++) {
+            float[] center = centers[random.nextInt(topics)];
+            for (int d = 0; d < dimensions; d++) {
+                vectors[i][d] = center[d] + spread * (float) random.nextGaussian();
+            }
+        }
+        return vectors;
+    }
+
+    @Test
+    void exactSearchFindsMostSimilarVectors() {
+        VectorIndex index = new VectorIndex(3);
+        index.add(1, new float[] {1, 0, 0});
+        index.add(2, new float[] {0, 1, 0});
+        index.add(3, new float[] {10, 1, 0}); // Length does not matter
+        index.add(4, new float[] {-1, 0, 0});
+
+        List<VectorIndex.Neighbor> hits = index.search(new float[] {1, -0.05f, 0}, 2, null);
+        assertEquals(2, hits.size());
+        assertEquals(1, hits.get(0).getId());
+        assertEquals(3, hits.get(1).getId());
+        assertTrue(hits.get(0).getScore() > 0.99f);
+
+        // Filtered ids are skipped
+        assertEquals(3, index.search(new float[] {1, 0, 0}, 1, id -> id != 1).get(0).getId());
+        assertFalse(index.isApproximate());
+    }
+
+    @Test
+    void replacedAndRemovedVectorsAreNotReturned() {
+        VectorIndex index = new VectorIndex(2);
+        index.add(1, new float[] {1, 0});
+        index.add(2, new float[] {0, 1});
+        index.add(1, new float[] {0, -1}); // Replace
+
+        assertEquals(2, index.size());
+        assertEquals(2, index.search(new float[] {1, 0.1f}, 1, null).get(0).getId());
+        assertTrue(index.remove(2));
+        assertFalse(index.remove(2));
+        assertEquals(1, index.search(new float[] {1, 0.1f}, 5, null).size());
+    }
+
+    @Test
+    void approximateSearchKeepsHighRecall() {
+        int dimensions = 64;
+        float[][] vectors = clusteredVectors(5000, dimensions, 50, 1);
+        VectorIndex index = new VectorIndex(dimensions, 1000);
+        for (int i = 0; i < vectors.length; i++) {
+            index.add(i, vectors[i]);
+        }
+        assertTrue(index.trainIfNeeded());
+        assertTrue(index.isApproximate());
+        assertFalse(index.trainIfNeeded()); // Not grown since training
+
+        // Vectors added after training are found as well
+        float[][] late = clusteredVectors(200, dimensions, 50, 1);
+        for (int i = 0; i < late.length; i++) {
+            index.add(10_000 + i, late[i]);
+        }
+
+        // Queries resemble stored vectors, like a prompt resembling earlier messages
+        Random random = new Random(2);
+        float[][] queries = new float[100][dimensions];
+        for (float[] query : queries) {
+            float[] base = vectors[random.nextInt(vectors.length)];
+            for (int d = 0; d < dimensions; d++) {
+                query[d] = base[d] + 0.3f * (float) random.nextGaussian();
+            }
+        }
+        int found = 0;
+        for (float[] query : queries) {
+            Set<Long> exact = new HashSet<>();
+            for (VectorIndex.Neighbor neighbor : index.searchExact(query, 10)) {
+                exact.add(neighbor.getId());
+            }
+            for (VectorIndex.Neighbor neighbor : index.search(query, 10, null)) {
+                if (exact.contains(neighbor.getId())) {
+                    found++;
+                }
+            }
+        }
+        double recall = found / (queries.length * 10.0);
+        assertTrue(recall >= 0.9, "recall@10 was " + recall);
+    }
+}